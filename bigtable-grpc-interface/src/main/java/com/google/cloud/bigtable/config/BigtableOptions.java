@@ -18,6 +18,7 @@ package com.google.cloud.bigtable.config;
 import com.google.api.client.repackaged.com.google.common.annotations.VisibleForTesting;
 import com.google.api.client.util.Strings;
 import com.google.auth.Credentials;
+import com.google.cloud.bigtable.grpc.RequestPriority;
 import com.google.cloud.bigtable.naming.BigtableClusterName;
 import com.google.common.base.Preconditions;
 
@@ -32,6 +33,7 @@ public class BigtableOptions {
       "bigtableclusteradmin.googleapis.com";
   public static final String BIGTABLE_HOST_DEFAULT = "bigtable.googleapis.com";
   public static final int DEFAULT_BIGTABLE_PORT = 443;
+  public static final int DEFAULT_BATCH_THREAD_COUNT = 4;
 
   private static final Logger LOG = new Logger(BigtableOptions.class);
 
@@ -55,6 +57,12 @@ public class BigtableOptions {
     private RetryOptions retryOptions = null;
     private long timeoutMs = 0;
     private int channelCount = 1;
+    private int batchChannelCount = 0;
+    private int batchThreadCount = DEFAULT_BATCH_THREAD_COUNT;
+    private int interactiveMaxInflightRpcs = 0;
+    private int batchMaxInflightRpcs = 0;
+    private int maxAsyncReadRows = 0;
+    private long maxAsyncReadBytes = 0;
 
     public Builder setTableAdminHost(String tableAdminHost) {
       this.tableAdminHost = tableAdminHost;
@@ -130,6 +138,60 @@ public class BigtableOptions {
       return this;
     }
 
+    /**
+     * The number of channels dedicated to {@link RequestPriority#BATCH} requests.  0, the
+     * default, disables priority lanes and sends all requests on the same channels.
+     */
+    public Builder setBatchChannelCount(int batchChannelCount) {
+      this.batchChannelCount = batchChannelCount;
+      return this;
+    }
+
+    /**
+     * The number of executor threads dedicated to {@link RequestPriority#BATCH} requests.  This
+     * is only used when priority lanes are enabled.
+     */
+    public Builder setBatchThreadCount(int batchThreadCount) {
+      this.batchThreadCount = batchThreadCount;
+      return this;
+    }
+
+    /**
+     * The maximum number of concurrent {@link RequestPriority#INTERACTIVE} RPCs.  0 means no
+     * limit.  This is only used when priority lanes are enabled.
+     */
+    public Builder setInteractiveMaxInflightRpcs(int interactiveMaxInflightRpcs) {
+      this.interactiveMaxInflightRpcs = interactiveMaxInflightRpcs;
+      return this;
+    }
+
+    /**
+     * The maximum number of concurrent {@link RequestPriority#BATCH} RPCs.  0 means no limit.
+     * This is only used when priority lanes are enabled.
+     */
+    public Builder setBatchMaxInflightRpcs(int batchMaxInflightRpcs) {
+      this.batchMaxInflightRpcs = batchMaxInflightRpcs;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of rows an asynchronous read may return before it fails.  0 means
+     * no limit.
+     */
+    public Builder setMaxAsyncReadRows(int maxAsyncReadRows) {
+      this.maxAsyncReadRows = maxAsyncReadRows;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of response bytes an asynchronous read may return before it fails.
+     * 0 means no limit.
+     */
+    public Builder setMaxAsyncReadBytes(long maxAsyncReadBytes) {
+      this.maxAsyncReadBytes = maxAsyncReadBytes;
+      return this;
+    }
+
     public Builder setRetryOptions(RetryOptions retryOptions) {
       this.retryOptions = retryOptions;
       return this;
@@ -157,7 +219,13 @@ public class BigtableOptions {
           callStatusReportPath,
           retryOptions,
           timeoutMs,
-          channelCount);
+          channelCount,
+          batchChannelCount,
+          batchThreadCount,
+          interactiveMaxInflightRpcs,
+          batchMaxInflightRpcs,
+          maxAsyncReadRows,
+          maxAsyncReadBytes);
     }
   }
 
@@ -177,6 +245,12 @@ public class BigtableOptions {
   private final RetryOptions retryOptions;
   private final long timeoutMs;
   private final int channelCount;
+  private final int batchChannelCount;
+  private final int batchThreadCount;
+  private final int interactiveMaxInflightRpcs;
+  private final int batchMaxInflightRpcs;
+  private final int maxAsyncReadRows;
+  private final long maxAsyncReadBytes;
 
   @VisibleForTesting
   BigtableOptions() {
@@ -196,6 +270,12 @@ public class BigtableOptions {
       retryOptions = null;
       timeoutMs = 0;
       channelCount = 1;
+      batchChannelCount = 0;
+      batchThreadCount = DEFAULT_BATCH_THREAD_COUNT;
+      interactiveMaxInflightRpcs = 0;
+      batchMaxInflightRpcs = 0;
+      maxAsyncReadRows = 0;
+      maxAsyncReadBytes = 0;
   }
 
   private BigtableOptions(
@@ -214,7 +294,13 @@ public class BigtableOptions {
       String callStatusReportPath,
       RetryOptions retryOptions,
       long timeoutMs,
-      int channelCount) {
+      int channelCount,
+      int batchChannelCount,
+      int batchThreadCount,
+      int interactiveMaxInflightRpcs,
+      int batchMaxInflightRpcs,
+      int maxAsyncReadRows,
+      long maxAsyncReadBytes) {
     Preconditions.checkArgument(
         !Strings.isNullOrEmpty(projectId), "ProjectId must not be empty or null.");
     Preconditions.checkArgument(
@@ -224,6 +310,14 @@ public class BigtableOptions {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(userAgent),
         "UserAgent must not be empty or null");
     Preconditions.checkArgument(channelCount > 0, "Channel count has to be at least 1.");
+    Preconditions.checkArgument(batchChannelCount >= 0,
+      "Batch channel count has to be 0 (disabled) or more.");
+    Preconditions.checkArgument(batchChannelCount == 0 || batchThreadCount > 0,
+      "Batch thread count has to be at least 1 when priority lanes are enabled.");
+    Preconditions.checkArgument(interactiveMaxInflightRpcs >= 0 && batchMaxInflightRpcs >= 0,
+      "Max inflight RPCs has to be 0 (unlimited) or more.");
+    Preconditions.checkArgument(maxAsyncReadRows >= 0 && maxAsyncReadBytes >= 0,
+      "Max async read rows and bytes have to be 0 (unlimited) or more.");
     Preconditions.checkArgument(timeoutMs >= -1,
       "ChannelTimeoutMs has to be positive, or -1 for none.");
 
@@ -243,6 +337,12 @@ public class BigtableOptions {
     this.retryOptions = retryOptions;
     this.timeoutMs = timeoutMs;
     this.channelCount = channelCount;
+    this.batchChannelCount = batchChannelCount;
+    this.batchThreadCount = batchThreadCount;
+    this.interactiveMaxInflightRpcs = interactiveMaxInflightRpcs;
+    this.batchMaxInflightRpcs = batchMaxInflightRpcs;
+    this.maxAsyncReadRows = maxAsyncReadRows;
+    this.maxAsyncReadBytes = maxAsyncReadBytes;
 
     LOG.debug("Connection Configuration: projectId: %s, zoneId: %s, clusterId: %s, data host %s, "
         + "table admin host %s, cluster admin host %s.",
@@ -347,6 +447,58 @@ public class BigtableOptions {
     return channelCount;
   }
 
+  /**
+   * Whether {@link RequestPriority#BATCH} requests get their own channels and executor.
+   */
+  public boolean isPriorityLanesEnabled() {
+    return batchChannelCount > 0;
+  }
+
+  /**
+   * The number of channels to create for {@link RequestPriority#BATCH} requests, or 0 if
+   * priority lanes are disabled.
+   */
+  public int getBatchChannelCount() {
+    return batchChannelCount;
+  }
+
+  /**
+   * The number of executor threads for {@link RequestPriority#BATCH} requests.
+   */
+  public int getBatchThreadCount() {
+    return batchThreadCount;
+  }
+
+  /**
+   * The maximum number of concurrent {@link RequestPriority#INTERACTIVE} RPCs, or 0 for no limit.
+   */
+  public int getInteractiveMaxInflightRpcs() {
+    return interactiveMaxInflightRpcs;
+  }
+
+  /**
+   * The maximum number of concurrent {@link RequestPriority#BATCH} RPCs, or 0 for no limit.
+   */
+  public int getBatchMaxInflightRpcs() {
+    return batchMaxInflightRpcs;
+  }
+
+  /**
+   * The maximum number of rows an asynchronous read may return before it fails, or 0 for no
+   * limit.
+   */
+  public int getMaxAsyncReadRows() {
+    return maxAsyncReadRows;
+  }
+
+  /**
+   * The maximum number of response bytes an asynchronous read may return before it fails, or 0
+   * for no limit.
+   */
+  public long getMaxAsyncReadBytes() {
+    return maxAsyncReadBytes;
+  }
+
   public BigtableClusterName getClusterName() {
     return new BigtableClusterName(getProjectId(), getZoneId(), getClusterId());
   }
@@ -28,6 +28,8 @@ import com.google.common.util.concurrent.ListenableFuture;
 import com.google.protobuf.Empty;
 import com.google.protobuf.ServiceException;
 
+import io.grpc.stub.StreamObserver;
+
 import java.util.List;
 
 /**
@@ -87,9 +89,23 @@ public interface BigtableClient {
    */
   ResultScanner<Row> readRows(ReadRowsRequest request);
 
+  /**
+   * Perform a scan over rows, returning each row as consecutive Rows of at most cellsPerRow
+   * cells.  The parts of a row are returned as it is read, so a wide row is never held in memory
+   * as a whole.
+   */
+  ResultScanner<Row> readRows(ReadRowsRequest request, int cellsPerRow);
+
   /**
    * Read multiple Rows into an in-memory list, returning a Future that will complete when the
    * readRows call has completed.
    */
   ListenableFuture<List<Row>> readRowsAsync(ReadRowsRequest request);
+
+  /**
+   * Read rows, passing each Row to the rowObserver as soon as it is complete, so that the rows
+   * don't need to be held in memory together.  The observer is called on a gRPC thread, and must
+   * not block.
+   */
+  void readRowsAsync(ReadRowsRequest request, StreamObserver<Row> rowObserver);
 }
@@ -26,9 +26,10 @@ import com.google.bigtable.v1.ReadRowsResponse;
 import com.google.bigtable.v1.Row;
 import com.google.bigtable.v1.SampleRowKeysRequest;
 import com.google.bigtable.v1.SampleRowKeysResponse;
+import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.RetryOptions;
-import com.google.cloud.bigtable.grpc.StreamingBigtableResultScanner.RowMerger;
 import com.google.common.base.Function;
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -43,7 +44,6 @@ import io.grpc.stub.Calls;
 import io.grpc.stub.StreamObserver;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 
@@ -143,14 +143,18 @@ public class BigtableGrpcClient implements BigtableClient {
   private final Channel channel;
   private final ExecutorService executorService;
   private final RetryOptions retryOptions;
+  private final int maxAsyncReadRows;
+  private final long maxAsyncReadBytes;
 
   public BigtableGrpcClient(
       Channel channel,
       ExecutorService executorService,
-      RetryOptions retryOptions) {
+      BigtableOptions options) {
     this.channel = channel;
     this.executorService = executorService;
-    this.retryOptions = retryOptions;
+    this.retryOptions = options.getRetryOptions();
+    this.maxAsyncReadRows = options.getMaxAsyncReadRows();
+    this.maxAsyncReadBytes = options.getMaxAsyncReadBytes();
   }
 
   protected static <T, V> ListenableFuture<V> listenableAsyncCall(
@@ -231,13 +235,20 @@ public class BigtableGrpcClient implements BigtableClient {
 
   @Override
   public ResultScanner<Row> readRows(ReadRowsRequest request) {
-    return readRows(request, retryOptions.enableRetries());
+    return readRows(request, retryOptions.enableRetries(), 0);
+  }
+
+  @Override
+  public ResultScanner<Row> readRows(ReadRowsRequest request, int cellsPerRow) {
+    Preconditions.checkArgument(cellsPerRow > 0, "cellsPerRow must be positive");
+    return readRows(request, retryOptions.enableRetries(), cellsPerRow);
   }
 
   /**
    * Begin reading rows, optionally with a resumable scanner.
    */
-  private ResultScanner<Row> readRows(ReadRowsRequest request, boolean resumable) {
+  private ResultScanner<Row> readRows(
+      ReadRowsRequest request, boolean resumable, final int cellsPerRow) {
     // Delegate all resumable operations to the scanner. It will request a non-resumable
     // scanner during operation.
     if (resumable) {
@@ -247,9 +258,10 @@ public class BigtableGrpcClient implements BigtableClient {
           new BigtableResultScannerFactory() {
             @Override
             public ResultScanner<Row> createScanner(ReadRowsRequest request) {
-              return readRows(request, false);
+              return readRows(request, false, cellsPerRow);
             }
-          });
+          },
+          cellsPerRow);
     }
 
     final Call<ReadRowsRequest , ReadRowsResponse> readRowsCall =
@@ -268,7 +280,9 @@ public class BigtableGrpcClient implements BigtableClient {
         new StreamingBigtableResultScanner(
           retryOptions.getStreamingBufferSize(),
           retryOptions.getReadPartialRowTimeoutMillis(),
-          cancellationToken);
+          cancellationToken,
+          request.getAllowRowInterleaving(),
+          cellsPerRow);
 
     Calls.asyncServerStreamingCall(
         readRowsCall,
@@ -279,35 +293,26 @@ public class BigtableGrpcClient implements BigtableClient {
   }
 
   @Override
-  public ListenableFuture<List<Row>> readRowsAsync(final ReadRowsRequest request) {
-    final Call<ReadRowsRequest , ReadRowsResponse> readRowsCall =
-        channel.newCall(BigtableServiceGrpc.CONFIG.readRows);
+  public ListenableFuture<List<Row>> readRowsAsync(ReadRowsRequest request) {
+    CollectingStreamObserver<Row> rowCollector = new CollectingStreamObserver<>();
+    readRowsAsync(request, rowCollector);
+    return rowCollector.getResponseCompleteFuture();
+  }
 
-    CollectingStreamObserver<ReadRowsResponse> responseCollector =
-        new CollectingStreamObserver<>();
+  @Override
+  public void readRowsAsync(ReadRowsRequest request, StreamObserver<Row> rowObserver) {
+    Call<ReadRowsRequest, ReadRowsResponse> readRowsCall =
+        channel.newCall(BigtableServiceGrpc.CONFIG.readRows);
 
     Calls.asyncServerStreamingCall(
         readRowsCall,
         request,
-        responseCollector);
-
-    return Futures.transform(
-        responseCollector.getResponseCompleteFuture(),
-        new Function<List<ReadRowsResponse>, List<Row>>() {
-          @Override
-          public List<Row> apply(List<ReadRowsResponse> responses) {
-            List<Row> result = new ArrayList<>();
-            Iterator<ReadRowsResponse> responseIterator = responses.iterator();
-            while (responseIterator.hasNext()) {
-              RowMerger currentRowMerger = new RowMerger();
-              while (responseIterator.hasNext() && !currentRowMerger.isRowCommitted()) {
-                currentRowMerger.addPartialRow(responseIterator.next());
-              }
-              result.add(currentRowMerger.buildRow());
-            }
-            return result;
-          }
-        });
+        new RowMergingStreamObserver(
+            request,
+            readRowsCall,
+            rowObserver,
+            maxAsyncReadRows,
+            maxAsyncReadBytes));
   }
 
   @VisibleForTesting
@@ -95,6 +95,8 @@ public class BigtableSession implements AutoCloseable {
   /** Number of threads to use to initiate retry calls */
   public static final String RETRY_THREADPOOL_NAME = "bigtable-rpc-retry";
   public static final int RETRY_THREAD_COUNT = 4;
+  /** Name of the threads that handle {@link RequestPriority#BATCH} calls */
+  public static final String BATCH_LANE_THREADPOOL_NAME = "bigtable-batch-lane";
 
   private final Map<MethodDescriptor<?, ?>, Predicate<?>> methodsToRetryMap =
       createMethodRetryMap();
@@ -218,6 +220,8 @@ public class BigtableSession implements AutoCloseable {
   }
 
   private BigtableClient client;
+  private BigtableClient batchClient;
+  private ExecutorService batchLaneExecutor;
   private BigtableTableAdminClient tableAdminClient;
   private BigtableClusterAdminClient clusterAdminClient;
 
@@ -269,12 +273,40 @@ public class BigtableSession implements AutoCloseable {
         (scheduledRetries == null) ? createDefaultRetryExecutor() : scheduledRetries;
   }
 
-  public synchronized BigtableClient getDataClient() throws IOException {
+  /**
+   * Get the client for {@link RequestPriority#INTERACTIVE} requests.
+   */
+  public BigtableClient getDataClient() throws IOException {
+    return getDataClient(RequestPriority.INTERACTIVE);
+  }
+
+  /**
+   * Get a client for requests of the given priority.  If priority lanes are enabled, each
+   * {@link RequestPriority} gets its own channels, executor and concurrency cap.  Otherwise, all
+   * priorities share the same client.
+   */
+  public synchronized BigtableClient getDataClient(RequestPriority priority) throws IOException {
     if (this.client == null) {
-      Channel channel = createChannel(options.getDataHost(), options.getChannelCount());
-      this.client = new BigtableGrpcClient(channel, batchPool, options.getRetryOptions());
+      Channel channel = createChannel(options.getDataHost(), options.getChannelCount(), batchPool,
+        options.isPriorityLanesEnabled() ? options.getInteractiveMaxInflightRpcs() : 0);
+      this.client = new BigtableGrpcClient(channel, batchPool, options);
+    }
+    if (priority != RequestPriority.BATCH || !options.isPriorityLanesEnabled()) {
+      return client;
     }
-    return client;
+    if (this.batchClient == null) {
+      batchLaneExecutor = Executors.newFixedThreadPool(
+          options.getBatchThreadCount(),
+          new ThreadFactoryBuilder()
+              .setDaemon(true)
+              .setNameFormat(BATCH_LANE_THREADPOOL_NAME + "-%d")
+              .build());
+      Channel channel = createChannel(options.getDataHost(), options.getBatchChannelCount(),
+        batchLaneExecutor, options.getBatchMaxInflightRpcs());
+      this.batchClient =
+          new BigtableGrpcClient(channel, batchLaneExecutor, options);
+    }
+    return batchClient;
   }
 
   public synchronized BigtableTableAdminClient getTableAdminClient() throws IOException {
@@ -315,18 +347,38 @@ public class BigtableSession implements AutoCloseable {
    * </p>
    */
   protected Channel createChannel(String hostString, int channelCount) throws IOException {
+    return createChannel(hostString, channelCount, batchPool, 0);
+  }
+
+  /**
+   * <p>
+   * Create a new Channel whose calls are executed on the given executor and, if
+   * {@code maxInflightRpcs} is positive, of which at most {@code maxInflightRpcs} calls can be
+   * active at any time.
+   * </p>
+   */
+  protected Channel createChannel(String hostString, int channelCount, ExecutorService executor,
+      int maxInflightRpcs) throws IOException {
     InetSocketAddress host = getSocketAddress(hostString);
     Channel channels[] = new Channel[channelCount];
     for (int i = 0; i < channelCount; i++) {
-      ReconnectingChannel reconnectingChannel = createReconnectingChannel(host);
+      ReconnectingChannel reconnectingChannel = createReconnectingChannel(host, executor);
       clientCloseHandlers.add(reconnectingChannel);
       channels[i] = reconnectingChannel;
     }
-    return wrapChannel(new ChannelPool(channels));
+    Channel channel = new ChannelPool(channels);
+    if (maxInflightRpcs > 0) {
+      // Limit the calls that are on the wire.  This is applied below the retry logic so that calls
+      // waiting on a retry backoff don't hold on to a slot.  Calls over the limit are queued and
+      // started on the channel's executor.
+      channel = ClientInterceptors.intercept(channel,
+        new ConcurrencyLimitingInterceptor(maxInflightRpcs, executor));
+    }
+    return wrapChannel(channel);
   }
 
-  protected ReconnectingChannel createReconnectingChannel(final InetSocketAddress host)
-      throws IOException {
+  protected ReconnectingChannel createReconnectingChannel(final InetSocketAddress host,
+      final ExecutorService executor) throws IOException {
     return new ReconnectingChannel(options.getTimeoutMs(), new ReconnectingChannel.Factory() {
       @SuppressWarnings("deprecation")
       @Override
@@ -335,7 +387,7 @@ public class BigtableSession implements AutoCloseable {
             .forAddress(host)
             .sslContext(SslContext.newClientContext())
             .eventLoopGroup(elg)
-            .executor(batchPool)
+            .executor(executor)
             .negotiationType(NegotiationType.TLS)
             .streamWindowSize(1 << 20) // 1 MB -- TODO(sduskis): make this configurable
             .build();
@@ -368,6 +420,9 @@ public class BigtableSession implements AutoCloseable {
     elg.shutdownGracefully();
     batchPool.shutdown();
     scheduledRetries.shutdown();
+    if (batchLaneExecutor != null) {
+      batchLaneExecutor.shutdown();
+    }
     for (Closeable clientCloseHandler : clientCloseHandlers) {
       try {
         clientCloseHandler.close();
@@ -378,6 +433,9 @@ public class BigtableSession implements AutoCloseable {
     awaiteTerminated(batchPool);
     awaiteTerminated(elg);
     awaiteTerminated(scheduledRetries);
+    if (batchLaneExecutor != null) {
+      awaiteTerminated(batchLaneExecutor);
+    }
   }
 
   private static void awaiteTerminated(ExecutorService executorService) {
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import io.grpc.Call;
+import io.grpc.Channel;
+import io.grpc.ClientInterceptor;
+import io.grpc.ForwardingCallListener.SimpleForwardingCallListener;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A {@link ClientInterceptor} that caps the number of calls that are waiting on the server at the
+ * same time.  A call holds a permit from the time it is started until its first response arrives
+ * or it is closed, so a streaming call gives up its permit once responses start flowing instead
+ * of holding it for the whole stream.
+ * <p>
+ * Starting a call never blocks.  While all permits are in use, started calls are queued, along
+ * with anything sent on them, and are started in order on the given executor as permits are
+ * released.
+ */
+public class ConcurrencyLimitingInterceptor implements ClientInterceptor {
+
+  private final Semaphore permits;
+  private final int maxConcurrentCalls;
+  private final Executor executor;
+  private final Queue<LimitedCall<?, ?>> queuedCalls = new ConcurrentLinkedQueue<>();
+
+  public ConcurrencyLimitingInterceptor(int maxConcurrentCalls, Executor executor) {
+    Preconditions.checkArgument(maxConcurrentCalls > 0, "maxConcurrentCalls must be positive");
+    this.maxConcurrentCalls = maxConcurrentCalls;
+    this.permits = new Semaphore(maxConcurrentCalls);
+    this.executor = Preconditions.checkNotNull(executor, "executor");
+  }
+
+  @Override
+  public <ReqT, RespT> Call<ReqT, RespT> interceptCall(MethodDescriptor<ReqT, RespT> method,
+      Channel next) {
+    return new LimitedCall<>(next.newCall(method));
+  }
+
+  /**
+   * Start queued calls for as long as there are permits available.  This is called whenever a
+   * call is queued or a permit is released, so a queued call can't be missed by a concurrent
+   * release.
+   */
+  private void startQueuedCalls() {
+    while (!queuedCalls.isEmpty() && permits.tryAcquire()) {
+      final LimitedCall<?, ?> call = queuedCalls.poll();
+      if (call == null) {
+        permits.release();
+        continue;
+      }
+      try {
+        executor.execute(new Runnable() {
+          @Override
+          public void run() {
+            call.startQueued();
+          }
+        });
+      } catch (RejectedExecutionException e) {
+        call.release();
+        call.closeListener(Status.fromThrowable(e));
+      }
+    }
+  }
+
+  /**
+   * The number of calls that currently hold a permit.
+   */
+  @VisibleForTesting
+  int getActiveCallCount() {
+    return maxConcurrentCalls - permits.availablePermits();
+  }
+
+  /**
+   * The number of calls that are waiting for a permit.
+   */
+  @VisibleForTesting
+  int getQueuedCallCount() {
+    return queuedCalls.size();
+  }
+
+  /**
+   * A call that only starts its delegate once it has a permit.  Until then, the operations
+   * invoked on it are buffered and they are replayed on the delegate once it is started.
+   */
+  private class LimitedCall<ReqT, RespT> extends Call<ReqT, RespT> {
+
+    private final Call<ReqT, RespT> delegate;
+    private final AtomicBoolean released = new AtomicBoolean(false);
+
+    private Listener<RespT> responseListener;
+    // Forwards to responseListener, releasing this call's permit on the first response or close.
+    private Listener<RespT> releasingListener;
+    private Metadata.Headers headers;
+    // The operations to replay once the delegate is started; null once it has been started.
+    private List<Runnable> pendingOperations = new ArrayList<>();
+    private boolean cancelled = false;
+
+    LimitedCall(Call<ReqT, RespT> delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void start(Listener<RespT> responseListener, Metadata.Headers headers) {
+      synchronized (this) {
+        Preconditions.checkState(this.responseListener == null, "Already started");
+        this.responseListener = responseListener;
+        this.releasingListener = new SimpleForwardingCallListener<RespT>(responseListener) {
+          @Override
+          public void onPayload(RespT payload) {
+            release();
+            super.onPayload(payload);
+          }
+
+          @Override
+          public void onClose(Status status, Metadata.Trailers trailers) {
+            release();
+            super.onClose(status, trailers);
+          }
+        };
+        this.headers = headers;
+      }
+      if (isCancelled()) {
+        closeListener(Status.CANCELLED);
+      } else if (queuedCalls.isEmpty() && permits.tryAcquire()) {
+        startDelegate();
+      } else {
+        queuedCalls.add(this);
+        startQueuedCalls();
+      }
+    }
+
+    /**
+     * Start the delegate of a call that was queued.  This runs on the interceptor's executor, so
+     * a failure is reported to the listener rather than thrown.
+     */
+    void startQueued() {
+      try {
+        startDelegate();
+      } catch (RuntimeException e) {
+        closeListener(Status.fromThrowable(e));
+      }
+    }
+
+    /**
+     * Start the delegate and replay the operations buffered so far.  The caller must hold a
+     * permit for this call.
+     */
+    private void startDelegate() {
+      synchronized (this) {
+        if (cancelled) {
+          // The listener was closed when the call was cancelled.
+          release();
+          return;
+        }
+        try {
+          delegate.start(releasingListener, headers);
+          // Index through the list, since a listener callback could buffer another operation.
+          for (int i = 0; i < pendingOperations.size(); i++) {
+            pendingOperations.get(i).run();
+          }
+        } catch (RuntimeException e) {
+          release();
+          throw e;
+        } finally {
+          pendingOperations = null;
+        }
+      }
+    }
+
+    private void execute(Runnable operation) {
+      synchronized (this) {
+        if (pendingOperations != null) {
+          pendingOperations.add(operation);
+          return;
+        }
+      }
+      operation.run();
+    }
+
+    @Override
+    public void request(final int numMessages) {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate.request(numMessages);
+        }
+      });
+    }
+
+    @Override
+    public void sendPayload(final ReqT payload) {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate.sendPayload(payload);
+        }
+      });
+    }
+
+    @Override
+    public void halfClose() {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          delegate.halfClose();
+        }
+      });
+    }
+
+    @Override
+    public void cancel() {
+      boolean closeListener;
+      synchronized (this) {
+        if (pendingOperations == null) {
+          closeListener = false;
+        } else if (cancelled) {
+          return;
+        } else {
+          // The delegate hasn't been started, and now it never will be.
+          cancelled = true;
+          queuedCalls.remove(this);
+          closeListener = responseListener != null;
+        }
+      }
+      if (closeListener) {
+        closeListener(Status.CANCELLED);
+      } else if (!isCancelled()) {
+        delegate.cancel();
+      }
+    }
+
+    @Override
+    public boolean isReady() {
+      synchronized (this) {
+        if (pendingOperations != null) {
+          return false;
+        }
+      }
+      return delegate.isReady();
+    }
+
+    private synchronized boolean isCancelled() {
+      return cancelled;
+    }
+
+    /**
+     * Close the call's listener without going through the delegate.  This doesn't release the
+     * call's permit.
+     */
+    void closeListener(Status status) {
+      Listener<RespT> listener;
+      synchronized (this) {
+        listener = responseListener;
+      }
+      listener.onClose(status, new Metadata.Trailers());
+    }
+
+    void release() {
+      if (released.compareAndSet(false, true)) {
+        permits.release();
+        startQueuedCalls();
+      }
+    }
+  }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc;
+
+/**
+ * The traffic class of a request.  When priority lanes are enabled in
+ * {@link com.google.cloud.bigtable.config.BigtableOptions}, each class is sent on its own set of
+ * channels and executor threads, with its own concurrency cap.
+ */
+public enum RequestPriority {
+  /**
+   * Latency sensitive requests, such as single row reads and writes.
+   */
+  INTERACTIVE,
+
+  /**
+   * Throughput oriented requests, such as large scans and buffered writes.
+   */
+  BATCH
+}
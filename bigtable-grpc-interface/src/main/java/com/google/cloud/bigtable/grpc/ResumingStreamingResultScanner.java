@@ -18,8 +18,9 @@ package com.google.cloud.bigtable.grpc;
 import com.google.api.client.util.BackOff;
 import com.google.api.client.util.ExponentialBackOff;
 import com.google.api.client.util.ExponentialBackOff.Builder;
-import com.google.api.client.util.Preconditions;
 import com.google.api.client.util.Sleeper;
+import com.google.bigtable.v1.Column;
+import com.google.bigtable.v1.Family;
 import com.google.bigtable.v1.ReadRowsRequest;
 import com.google.bigtable.v1.Row;
 import com.google.cloud.bigtable.config.RetryOptions;
@@ -31,16 +32,34 @@ import org.apache.commons.logging.LogFactory;
 import io.grpc.Status;
 
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 
 /**
  * A ResultScanner that attempts to resume the readRows call when it
  * encounters gRPC INTERNAL errors.
+ *
+ * <p>Rows of a request without row interleaving arrive in key order, so the request is resumed
+ * after the last row that was returned. Rows of a request with allow_row_interleaving arrive in
+ * no particular order, so there is no such row. Instead, the keys of the returned rows are
+ * remembered, the original request is reissued, and rows that were already returned are
+ * skipped. This costs memory for every returned row key and reads the rows of the original
+ * request again on every resume, so keys are only remembered for the first
+ * {@link #MAX_INTERLEAVED_ROW_KEYS} rows. Errors after that fail the read instead of resuming it.
+ *
+ * <p>When rows are returned in parts, the request is resumed at the row that was being returned,
+ * and the cells of that row that were already returned are skipped.
  */
 public class ResumingStreamingResultScanner extends AbstractBigtableResultScanner {
 
   protected static final Log LOG = LogFactory.getLog(ResumingStreamingResultScanner.class);
 
+  /**
+   * The number of row keys that are remembered to resume a read with allow_row_interleaving.
+   */
+  public static final int MAX_INTERLEAVED_ROW_KEYS = 100000;
+
   private static final ByteString NEXT_ROW_SUFFIX = ByteString.copyFrom(new byte[]{0x00});
   private final BigtableResultScannerFactory scannerFactory;
 
@@ -58,21 +77,44 @@ public class ResumingStreamingResultScanner extends AbstractBigtableResultScanne
   private BackOff currentBackoff;
   private ResultScanner<Row> currentDelegate;
   private ByteString lastRowKey = null;
+  // The keys of the returned rows; only set for requests that allow row interleaving, until more
+  // than maxInterleavedRowKeys rows were returned.
+  private Set<ByteString> returnedRowKeys;
+  int maxInterleavedRowKeys = MAX_INTERLEAVED_ROW_KEYS;
+  // The number of cells per returned Row when rows are returned in parts, otherwise 0.
+  private final int cellsPerRow;
+  // The row that parts were last returned for, and the number of its cells returned.
+  private ByteString partialRowKey = null;
+  private int partialRowCells = 0;
+  // The number of cells of partialRowKey to skip after the request was reissued, or -1.
+  private int cellsToSkip = -1;
   private Sleeper sleeper = Sleeper.DEFAULT;
 
   public ResumingStreamingResultScanner(
       RetryOptions retryOptions,
       ReadRowsRequest originalRequest,
       BigtableResultScannerFactory scannerFactory) {
-    Preconditions.checkArgument(
-        !originalRequest.getAllowRowInterleaving(),
-        "Row interleaving is not supported when using resumable streams");
+    this(retryOptions, originalRequest, scannerFactory, 0);
+  }
+
+  /**
+   * @param cellsPerRow If positive, the scanners created by the scannerFactory return rows in
+   *        parts of at most this many cells.
+   */
+  public ResumingStreamingResultScanner(
+      RetryOptions retryOptions,
+      ReadRowsRequest originalRequest,
+      BigtableResultScannerFactory scannerFactory,
+      int cellsPerRow) {
     retryOnDeadlineExceeded = retryOptions.retryOnDeadlineExceeded();
     this.backOffBuilder = new ExponentialBackOff.Builder()
         .setInitialIntervalMillis(retryOptions.getInitialBackoffMillis())
         .setMaxElapsedTimeMillis(retryOptions.getMaxElaspedBackoffMillis())
         .setMultiplier(retryOptions.getBackoffMultiplier());
     this.originalRequest = originalRequest;
+    this.returnedRowKeys =
+        originalRequest.getAllowRowInterleaving() ? new HashSet<ByteString>() : null;
+    this.cellsPerRow = cellsPerRow;
     this.scannerFactory = scannerFactory;
     this.currentBackoff = backOffBuilder.build();
     this.currentDelegate = scannerFactory.createScanner(originalRequest);
@@ -84,7 +126,19 @@ public class ResumingStreamingResultScanner extends AbstractBigtableResultScanne
       try {
         Row result = currentDelegate.next();
         if (result != null) {
-          lastRowKey = result.getKey();
+          if (originalRequest.getAllowRowInterleaving()) {
+            if (!trackInterleavedRow(result.getKey())) {
+              // The row was returned before the request was reissued.
+              continue;
+            }
+          } else if (cellsPerRow > 0) {
+            result = trackRowPart(result);
+            if (result == null) {
+              continue;
+            }
+          } else {
+            lastRowKey = result.getKey();
+          }
         }
         // We've had at least one successful RPC, reset the backoff
         currentBackoff.reset();
@@ -117,6 +171,10 @@ public class ResumingStreamingResultScanner extends AbstractBigtableResultScanne
    */
   private void backOffAndRetry(IOException cause) throws IOException,
       BigtableRetriesExhaustedException {
+    if (originalRequest.getAllowRowInterleaving() && returnedRowKeys == null) {
+      throw new IOException("Cannot resume a read with allow_row_interleaving after more than "
+          + maxInterleavedRowKeys + " rows were returned.", cause);
+    }
     long nextBackOff = currentBackoff.nextBackOffMillis();
     if (nextBackOff == BackOff.STOP) {
       LOG.warn("RetriesExhausted: ", cause);
@@ -141,12 +199,95 @@ public class ResumingStreamingResultScanner extends AbstractBigtableResultScanne
     }
 
     ReadRowsRequest.Builder newRequest = originalRequest.toBuilder();
-    if (lastRowKey != null) {
+    if (partialRowKey != null) {
+      newRequest.getRowRangeBuilder().setStartKey(partialRowKey);
+      cellsToSkip = partialRowCells;
+    } else if (lastRowKey != null) {
       newRequest.getRowRangeBuilder().setStartKey(nextRowKey(lastRowKey));
     }
     currentDelegate = scannerFactory.createScanner(newRequest.build());
   }
 
+  /**
+   * Record the key of a row of an interleaved read that is about to be returned.
+   * @return false if the row was already returned.
+   */
+  private boolean trackInterleavedRow(ByteString rowKey) {
+    if (returnedRowKeys == null) {
+      return true;
+    }
+    if (!returnedRowKeys.add(rowKey)) {
+      return false;
+    }
+    if (returnedRowKeys.size() > maxInterleavedRowKeys) {
+      LOG.info("Read with allow_row_interleaving returned more than " + maxInterleavedRowKeys
+          + " rows, and can no longer be resumed.");
+      returnedRowKeys = null;
+    }
+    return true;
+  }
+
+  /**
+   * Record a part of a row that is about to be returned.
+   * @return The part without the cells that were returned before the request was reissued, or
+   *         null if all of its cells were.
+   */
+  private Row trackRowPart(Row part) {
+    ByteString rowKey = part.getKey();
+    if (cellsToSkip >= 0) {
+      if (rowKey.equals(partialRowKey)) {
+        int cellCount = countCells(part);
+        if (cellCount <= cellsToSkip) {
+          cellsToSkip -= cellCount;
+          return null;
+        }
+        part = skipCells(part, cellsToSkip);
+      }
+      cellsToSkip = -1;
+    }
+    if (!rowKey.equals(partialRowKey)) {
+      partialRowKey = rowKey;
+      partialRowCells = 0;
+    }
+    partialRowCells += countCells(part);
+    return part;
+  }
+
+  private static int countCells(Row row) {
+    int count = 0;
+    for (Family family : row.getFamiliesList()) {
+      for (Column column : family.getColumnsList()) {
+        count += column.getCellsCount();
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return A copy of the row without its first {@code count} cells.
+   */
+  private static Row skipCells(Row row, int count) {
+    Row.Builder builder = Row.newBuilder().setKey(row.getKey());
+    for (Family family : row.getFamiliesList()) {
+      Family.Builder familyBuilder = null;
+      for (Column column : family.getColumnsList()) {
+        int cellCount = column.getCellsCount();
+        if (count >= cellCount) {
+          count -= cellCount;
+          continue;
+        }
+        if (familyBuilder == null) {
+          familyBuilder = builder.addFamiliesBuilder().setNameBytes(family.getNameBytes());
+        }
+        familyBuilder.addColumnsBuilder()
+            .setQualifier(column.getQualifier())
+            .addAllCells(column.getCellsList().subList(count, cellCount));
+        count = 0;
+      }
+    }
+    return builder.build();
+  }
+
   private void sleep(long millis) throws IOException {
     try {
       sleeper.sleep(millis);
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.ReadRowsResponse;
+import com.google.bigtable.v1.Row;
+import com.google.cloud.bigtable.grpc.StreamingBigtableResultScanner.InterleavedRowMerger;
+import com.google.cloud.bigtable.grpc.StreamingBigtableResultScanner.RowMerger;
+
+import io.grpc.Call;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+
+/**
+ * A StreamObserver that merges ReadRowsResponses into Rows as they arrive, and passes each Row
+ * to a row observer, so that only the row being merged is held in memory.  If the stream has
+ * more rows or response bytes than allowed, the call is cancelled and the row observer fails.
+ */
+class RowMergingStreamObserver implements StreamObserver<ReadRowsResponse> {
+  private final Call<ReadRowsRequest, ReadRowsResponse> call;
+  private final StreamObserver<Row> rowObserver;
+  private final int maxRows;
+  private final long maxBytes;
+  // Only one of the mergers is set, depending on whether the request allows row interleaving.
+  private final RowMerger rowMerger;
+  private final InterleavedRowMerger interleavedRowMerger;
+
+  private boolean merging = false;
+  private boolean failed = false;
+  private int rowCount = 0;
+  private long byteCount = 0;
+
+  /**
+   * @param maxRows The maximum number of rows the stream may have, or 0 for no limit.
+   * @param maxBytes The maximum number of response bytes the stream may have, or 0 for no limit.
+   */
+  RowMergingStreamObserver(
+      ReadRowsRequest request,
+      Call<ReadRowsRequest, ReadRowsResponse> call,
+      StreamObserver<Row> rowObserver,
+      int maxRows,
+      long maxBytes) {
+    this.call = call;
+    this.rowObserver = rowObserver;
+    this.maxRows = maxRows;
+    this.maxBytes = maxBytes;
+    if (request.getAllowRowInterleaving()) {
+      this.rowMerger = null;
+      this.interleavedRowMerger = new InterleavedRowMerger();
+    } else {
+      this.rowMerger = new RowMerger();
+      this.interleavedRowMerger = null;
+    }
+  }
+
+  @Override
+  public void onValue(ReadRowsResponse response) {
+    if (failed) {
+      return;
+    }
+    byteCount += response.getSerializedSize();
+    if (maxBytes > 0 && byteCount > maxBytes) {
+      fail(new IOException(
+          String.format("The read returned more than the maximum of %d bytes.", maxBytes)));
+      return;
+    }
+
+    Row row;
+    try {
+      row = merge(response);
+    } catch (RuntimeException e) {
+      fail(e);
+      return;
+    }
+    if (row != null) {
+      if (maxRows > 0 && ++rowCount > maxRows) {
+        fail(new IOException(
+            String.format("The read returned more than the maximum of %d rows.", maxRows)));
+        return;
+      }
+      rowObserver.onValue(row);
+    }
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    if (!failed) {
+      failed = true;
+      rowObserver.onError(throwable);
+    }
+  }
+
+  @Override
+  public void onCompleted() {
+    if (failed) {
+      return;
+    }
+    if (merging || (interleavedRowMerger != null && interleavedRowMerger.hasPartialRows())) {
+      failed = true;
+      rowObserver.onError(
+          new IllegalStateException("End of stream marker encountered while merging a row."));
+    } else {
+      rowObserver.onCompleted();
+    }
+  }
+
+  /**
+   * @return The row that the response completed, or null if it didn't complete one.
+   */
+  private Row merge(ReadRowsResponse response) {
+    if (interleavedRowMerger != null) {
+      return interleavedRowMerger.addPartialRow(response);
+    }
+    merging = true;
+    rowMerger.addPartialRow(response);
+    if (!rowMerger.isRowCommitted()) {
+      return null;
+    }
+    Row row = rowMerger.buildRow();
+    rowMerger.reset();
+    merging = false;
+    return row;
+  }
+
+  private void fail(Throwable throwable) {
+    failed = true;
+    // Cancelling reports an error for the call, which is ignored since the observer failed.
+    call.cancel();
+    rowObserver.onError(throwable);
+  }
+}
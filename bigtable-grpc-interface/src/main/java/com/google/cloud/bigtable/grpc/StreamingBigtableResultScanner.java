@@ -15,17 +15,24 @@
  */
 package com.google.cloud.bigtable.grpc;
 
+import com.google.bigtable.v1.Cell;
+import com.google.bigtable.v1.Column;
 import com.google.bigtable.v1.Family;
 import com.google.bigtable.v1.ReadRowsResponse;
 import com.google.bigtable.v1.ReadRowsResponse.Chunk;
 import com.google.bigtable.v1.ReadRowsResponse.Chunk.ChunkCase;
 import com.google.bigtable.v1.Row;
-import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.protobuf.ByteString;
 
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -38,11 +45,12 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
 
   /**
    * <p>Builds a complete Row from partial ReadRowsResponse objects. This class
-   * does not currently handle multiple interleaved rows. It is assumed that it is
-   * handling results for a request with allow_row_interleaving = false.
+   * does not handle multiple interleaved rows. It is assumed that it is
+   * handling results for a request with allow_row_interleaving = false; see
+   * {@link InterleavedRowMerger} for requests that allow interleaving.
    * </p>
-   * <p>Each RowMerger object is valid only for building a single Row. Expected usage
-   * is along the lines of:
+   * <p>A RowMerger builds a single Row at a time, and can be {@link #reset()} to build the next
+   * one. Expected usage is along the lines of:
    * </p>
    * <pre>
    * RowMerger rm = new RowMerger();
@@ -50,12 +58,16 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
    *   rm.addPartialRow(...);
    * }
    * Row r = rm.buildRow();
+   * rm.reset();
    * </pre>
    */
   public static class RowMerger {
-    private final Map<String, Family.Builder> familyMap = new HashMap<>();
+    private final Map<ByteString, Family.Builder> familyMap = new LinkedHashMap<>();
     private boolean committed = false;
     private ByteString currentRowKey;
+    // The response that held the whole row, if it arrived in a single response.  Its families are
+    // used as they are, without merging.
+    private ReadRowsResponse completeResponse;
 
     /**
      * Add a partial row response to this builder.
@@ -67,6 +79,11 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
 
       if (currentRowKey == null) {
         currentRowKey = partialRow.getRowKey();
+        if (isCompleteRow(partialRow)) {
+          completeResponse = partialRow;
+          committed = true;
+          return;
+        }
       }
 
       for (Chunk chunk : partialRow.getChunksList()) {
@@ -100,15 +117,58 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
           "Cannot build a Row object if we have not yet encountered a COMMIT_ROW chunk.");
       Row.Builder currentRowBuilder = Row.newBuilder();
       currentRowBuilder.setKey(currentRowKey);
-      for (Family.Builder builder : familyMap.values()) {
-        currentRowBuilder.addFamilies(builder.build());
+      if (completeResponse != null) {
+        for (Chunk chunk : completeResponse.getChunksList()) {
+          if (chunk.getChunkCase() == ChunkCase.ROW_CONTENTS) {
+            currentRowBuilder.addFamilies(chunk.getRowContents());
+          }
+        }
+      } else {
+        for (Family.Builder builder : familyMap.values()) {
+          currentRowBuilder.addFamilies(builder.build());
+        }
       }
       return currentRowBuilder.build();
     }
 
+    /**
+     * Clear this merger so that it can build another row.
+     */
+    public void reset() {
+      familyMap.clear();
+      committed = false;
+      currentRowKey = null;
+      completeResponse = null;
+    }
+
+    /**
+     * @return true if a response holds a whole row: row contents with no family repeated,
+     *         followed by a COMMIT_ROW.
+     */
+    private static boolean isCompleteRow(ReadRowsResponse response) {
+      List<Chunk> chunks = response.getChunksList();
+      int last = chunks.size() - 1;
+      if (last < 0 || chunks.get(last).getChunkCase() != ChunkCase.COMMIT_ROW) {
+        return false;
+      }
+      for (int i = 0; i < last; i++) {
+        Chunk chunk = chunks.get(i);
+        if (chunk.getChunkCase() != ChunkCase.ROW_CONTENTS) {
+          return false;
+        }
+        ByteString familyName = chunk.getRowContents().getNameBytes();
+        for (int j = 0; j < i; j++) {
+          if (chunks.get(j).getRowContents().getNameBytes().equals(familyName)) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
     // Merge newRowContents into the map of family builders, creating one if necessary.
     private void merge(
-        Map<String, Family.Builder> familyBuilderMap,
+        Map<ByteString, Family.Builder> familyBuilderMap,
         Family newRowContents) {
       Family.Builder familyBuilder =
           getOrCreateFamilyBuilder(familyBuilderMap, newRowContents);
@@ -116,17 +176,186 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
     }
 
     private Family.Builder getOrCreateFamilyBuilder(
-        Map<String, Family.Builder> familyBuilderMap, Family rowContents) {
-      Family.Builder familyBuilder = familyBuilderMap.get(rowContents.getName());
+        Map<ByteString, Family.Builder> familyBuilderMap, Family rowContents) {
+      ByteString familyName = rowContents.getNameBytes();
+      Family.Builder familyBuilder = familyBuilderMap.get(familyName);
       if (familyBuilder == null) {
         familyBuilder = Family.newBuilder();
-        familyBuilder.setName(rowContents.getName());
-        familyBuilderMap.put(familyBuilder.getName(), familyBuilder);
+        familyBuilder.setNameBytes(familyName);
+        familyBuilderMap.put(familyName, familyBuilder);
       }
       return familyBuilder;
     }
   }
 
+  /**
+   * <p>Builds complete Rows from partial ReadRowsResponse objects for a request with
+   * allow_row_interleaving = true, where the responses of several rows may be interleaved.
+   * Each row is assembled by its own {@link RowMerger}, and is returned as soon as its
+   * COMMIT_ROW arrives. Rows are therefore returned in commit order rather than key order.
+   * </p>
+   */
+  public static class InterleavedRowMerger {
+    private final Map<ByteString, RowMerger> partialRows = new HashMap<>();
+    // Mergers of committed rows, kept to build later rows.
+    private final ArrayDeque<RowMerger> freeMergers = new ArrayDeque<>();
+
+    /**
+     * Add a partial row response.
+     * @return The row that the response belongs to if the response committed it, otherwise null.
+     */
+    public Row addPartialRow(ReadRowsResponse partialRow) {
+      ByteString rowKey = partialRow.getRowKey();
+      RowMerger rowMerger = partialRows.get(rowKey);
+      boolean started = rowMerger != null;
+      if (!started) {
+        rowMerger = freeMergers.isEmpty() ? new RowMerger() : freeMergers.pop();
+      }
+      rowMerger.addPartialRow(partialRow);
+      if (!rowMerger.isRowCommitted()) {
+        if (!started) {
+          partialRows.put(rowKey, rowMerger);
+        }
+        return null;
+      }
+      if (started) {
+        partialRows.remove(rowKey);
+      }
+      Row row = rowMerger.buildRow();
+      rowMerger.reset();
+      freeMergers.push(rowMerger);
+      return row;
+    }
+
+    /**
+     * @return true if there are rows that were started but not committed.
+     */
+    public boolean hasPartialRows() {
+      return !partialRows.isEmpty();
+    }
+  }
+
+  /**
+   * <p>Splits the rows of a request with allow_row_interleaving = false into Rows of at most
+   * cellsPerRow cells. A Row is available as soon as it is full, rather than when its row is
+   * committed, so a wide row is never held in memory as a whole. A row with more cells is
+   * returned as consecutive Rows with the same key, and a row without cells as one empty Row.
+   * Families and columns without cells are left out.
+   * </p>
+   * <p>A RESET_ROW drops the parts of the row that weren't returned yet.  Parts that were
+   * returned can't be taken back, so a RESET_ROW after that fails with an ABORTED status, which
+   * {@link ResumingStreamingResultScanner} resumes at the row, skipping the returned cells.
+   * </p>
+   */
+  public static class RowFragmenter {
+    private final int cellsPerRow;
+    private final ArrayDeque<Row> fragments = new ArrayDeque<>();
+    private ByteString currentRowKey;
+    private Row.Builder fragment;
+    private int fragmentCells;
+    // The number of parts of the current row that are available but weren't polled yet.  They are
+    // at the end of fragments.
+    private int queuedFragments;
+    // Whether a part of the current row was polled.
+    private boolean fragmentReturned;
+
+    public RowFragmenter(int cellsPerRow) {
+      Preconditions.checkArgument(cellsPerRow > 0, "cellsPerRow must be positive");
+      this.cellsPerRow = cellsPerRow;
+    }
+
+    /**
+     * Add a partial row response, making any Rows that it fills available from {@link #poll()}.
+     * @throws IOExceptionWithStatus If the row is reset after part of it was polled.
+     */
+    public void addPartialRow(ReadRowsResponse partialRow) throws IOExceptionWithStatus {
+      Preconditions.checkState(
+          currentRowKey == null || currentRowKey.equals(partialRow.getRowKey()),
+          "Interleaved ReadRowResponse messages are not supported.");
+
+      if (currentRowKey == null) {
+        currentRowKey = partialRow.getRowKey();
+        fragment = Row.newBuilder().setKey(currentRowKey);
+      }
+
+      for (Chunk chunk : partialRow.getChunksList()) {
+        Preconditions.checkState(currentRowKey != null, "Encountered chunk after row commit.");
+        if (chunk.getChunkCase() == ChunkCase.ROW_CONTENTS) {
+          add(chunk.getRowContents());
+        } else if (chunk.getChunkCase() == ChunkCase.RESET_ROW) {
+          if (fragmentReturned) {
+            throw new IOExceptionWithStatus(
+                "Encountered a row reset after part of the row was returned.",
+                new StatusRuntimeException(Status.ABORTED));
+          }
+          for (; queuedFragments > 0; queuedFragments--) {
+            fragments.pollLast();
+          }
+          fragment = Row.newBuilder().setKey(currentRowKey);
+          fragmentCells = 0;
+        } else if (chunk.getChunkCase() == ChunkCase.COMMIT_ROW) {
+          if (fragmentCells > 0 || (queuedFragments == 0 && !fragmentReturned)) {
+            fragments.add(fragment.build());
+          }
+          currentRowKey = null;
+          fragment = null;
+          fragmentCells = 0;
+          queuedFragments = 0;
+          fragmentReturned = false;
+        } else {
+          throw new IllegalStateException(
+              String.format("Unknown ChunkCase encountered %s", chunk.getChunkCase()));
+        }
+      }
+    }
+
+    /**
+     * @return The next available Row, or null if there is none.
+     */
+    public Row poll() {
+      Row row = fragments.poll();
+      if (row != null && fragments.size() < queuedFragments) {
+        // The row is a part of the current row.
+        queuedFragments--;
+        fragmentReturned = true;
+      }
+      return row;
+    }
+
+    /**
+     * @return true if a row was started but not committed.
+     */
+    public boolean isMerging() {
+      return currentRowKey != null;
+    }
+
+    private void add(Family rowContents) {
+      Family.Builder familyBuilder = null;
+      for (Column column : rowContents.getColumnsList()) {
+        Column.Builder columnBuilder = null;
+        for (Cell cell : column.getCellsList()) {
+          if (fragmentCells == cellsPerRow) {
+            // The fragment is full; the rest of the column goes into the next one.
+            fragments.add(fragment.build());
+            queuedFragments++;
+            fragment = Row.newBuilder().setKey(currentRowKey);
+            fragmentCells = 0;
+            familyBuilder = null;
+            columnBuilder = null;
+          }
+          if (familyBuilder == null) {
+            familyBuilder = fragment.addFamiliesBuilder().setNameBytes(rowContents.getNameBytes());
+          }
+          if (columnBuilder == null) {
+            columnBuilder = familyBuilder.addColumnsBuilder().setQualifier(column.getQualifier());
+          }
+          columnBuilder.addCells(cell);
+          fragmentCells++;
+        }
+      }
+    }
+  }
+
   /**
    * Helper to read a queue of ResultQueueEntries and use the RowMergers to reconstruct
    * complete Row objects from the partial ReadRowsResponse objects.
@@ -134,25 +363,48 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
   protected static class ResponseQueueReader {
     private final BlockingQueue<ResultQueueEntry<ReadRowsResponse>> resultQueue;
     private final int readPartialRowTimeoutMillis;
+    private final RowMerger rowMerger = new RowMerger();
+    // Only set for requests that allow row interleaving.
+    private final InterleavedRowMerger interleavedRowMerger;
+    // Only set for requests that return rows in parts.
+    private final RowFragmenter rowFragmenter;
     private boolean lastResponseProcessed = false;
 
     public ResponseQueueReader(
         BlockingQueue<ResultQueueEntry<ReadRowsResponse>> resultQueue,
         int readPartialRowTimeoutMillis) {
+      this(resultQueue, readPartialRowTimeoutMillis, false, 0);
+    }
+
+    public ResponseQueueReader(
+        BlockingQueue<ResultQueueEntry<ReadRowsResponse>> resultQueue,
+        int readPartialRowTimeoutMillis,
+        boolean allowRowInterleaving,
+        int cellsPerRow) {
+      Preconditions.checkArgument(!allowRowInterleaving || cellsPerRow == 0,
+          "Rows can't be returned in parts when row interleaving is allowed.");
       this.resultQueue = resultQueue;
       this.readPartialRowTimeoutMillis = readPartialRowTimeoutMillis;
+      this.interleavedRowMerger = allowRowInterleaving ? new InterleavedRowMerger() : null;
+      this.rowFragmenter = cellsPerRow > 0 ? new RowFragmenter(cellsPerRow) : null;
     }
 
     /**
      * Get the next complete Row object from the response queue.
-     * @return Optional.absent() if end-of-stream, otherwise a complete Row.
+     * @return null if end-of-stream, otherwise a complete Row.
      * @throws IOException On errors.
      */
-    public Optional<Row> getNextMergedRow() throws IOException {
+    public Row getNextMergedRow() throws IOException {
       ResultQueueEntry<ReadRowsResponse> queueEntry;
-      RowMerger builder = null;
+      boolean merging = false;
 
       while (!lastResponseProcessed) {
+        if (rowFragmenter != null) {
+          Row fragment = rowFragmenter.poll();
+          if (fragment != null) {
+            return fragment;
+          }
+        }
         try {
           queueEntry = resultQueue.poll(readPartialRowTimeoutMillis, TimeUnit.MILLISECONDS);
         } catch (InterruptedException e) {
@@ -169,24 +421,39 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
         }
 
         ReadRowsResponse partialRow = queueEntry.getResponseOrThrow();
-        if (builder == null) {
-          builder = new RowMerger();
+        if (interleavedRowMerger != null) {
+          Row row = interleavedRowMerger.addPartialRow(partialRow);
+          if (row != null) {
+            return row;
+          }
+          continue;
         }
+        if (rowFragmenter != null) {
+          rowFragmenter.addPartialRow(partialRow);
+          continue;
+        }
+        merging = true;
+        rowMerger.addPartialRow(partialRow);
 
-        builder.addPartialRow(partialRow);
-
-        if (builder.isRowCommitted()) {
-          return Optional.of(builder.buildRow());
+        if (rowMerger.isRowCommitted()) {
+          Row row = rowMerger.buildRow();
+          rowMerger.reset();
+          return row;
         }
       }
 
+      if (interleavedRowMerger != null) {
+        merging = interleavedRowMerger.hasPartialRows();
+      } else if (rowFragmenter != null) {
+        merging = rowFragmenter.isMerging();
+      }
       Preconditions.checkState(
-          builder == null,
+          !merging,
           "End of stream marker encountered while merging a row.");
       Preconditions.checkState(
           lastResponseProcessed,
           "Should only exit merge loop with by returning a complete Row or hitting end of stream.");
-      return Optional.absent();
+      return null;
     }
   }
 
@@ -198,12 +465,39 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
       int capacity,
       int readPartialRowTimeoutMillis,
       CancellationToken cancellationToken) {
+    this(capacity, readPartialRowTimeoutMillis, cancellationToken, false);
+  }
+
+  /**
+   * @param allowRowInterleaving Whether the request allows the server to interleave the
+   *        responses of several rows.
+   */
+  public StreamingBigtableResultScanner(
+      int capacity,
+      int readPartialRowTimeoutMillis,
+      CancellationToken cancellationToken,
+      boolean allowRowInterleaving) {
+    this(capacity, readPartialRowTimeoutMillis, cancellationToken, allowRowInterleaving, 0);
+  }
+
+  /**
+   * @param allowRowInterleaving Whether the request allows the server to interleave the
+   *        responses of several rows.
+   * @param cellsPerRow If positive, rows are returned in parts of at most this many cells, as
+   *        described in {@link RowFragmenter}.
+   */
+  public StreamingBigtableResultScanner(
+      int capacity,
+      int readPartialRowTimeoutMillis,
+      CancellationToken cancellationToken,
+      boolean allowRowInterleaving,
+      int cellsPerRow) {
     Preconditions.checkArgument(cancellationToken != null, "cancellationToken cannot be null");
     Preconditions.checkArgument(capacity > 0, "capacity must be a positive integer");
     this.cancellationToken = cancellationToken;
     this.resultQueue = new LinkedBlockingQueue<>(capacity);
     this.responseQueueReader = new ResponseQueueReader(
-        resultQueue, readPartialRowTimeoutMillis);
+        resultQueue, readPartialRowTimeoutMillis, allowRowInterleaving, cellsPerRow);
   }
 
   private void add(ResultQueueEntry<ReadRowsResponse> entry) {
@@ -229,12 +523,7 @@ public class StreamingBigtableResultScanner extends AbstractBigtableResultScanne
 
   @Override
   public Row next() throws IOException {
-    Optional<Row> next = responseQueueReader.getNextMergedRow();
-    if (next.isPresent()) {
-      return next.get();
-    } else {
-      return null;
-    }
+    return responseQueueReader.getNextMergedRow();
   }
 
   @Override
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.bigtable.v1.BigtableServiceGrpc;
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Empty;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import io.grpc.Call;
+import io.grpc.Channel;
+import io.grpc.Metadata;
+import io.grpc.Status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class ConcurrencyLimitingInterceptorTest {
+
+  @Mock
+  private Channel channelStub;
+  @Mock
+  private Call<MutateRowRequest, Empty> callStub;
+  @Mock
+  private Call.Listener<Empty> responseListenerStub;
+
+  private final List<Call.Listener<Empty>> startedListeners = new ArrayList<>();
+
+  private ConcurrencyLimitingInterceptor interceptor;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    interceptor = new ConcurrencyLimitingInterceptor(1, MoreExecutors.directExecutor());
+    when(channelStub.newCall(BigtableServiceGrpc.CONFIG.mutateRow)).thenReturn(callStub);
+    doAnswer(new Answer<Void>() {
+      @SuppressWarnings("unchecked")
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        synchronized (startedListeners) {
+          startedListeners.add((Call.Listener<Empty>) invocation.getArguments()[0]);
+        }
+        return null;
+      }
+    }).when(callStub).start(any(Call.Listener.class), any(Metadata.Headers.class));
+  }
+
+  @Test
+  public void testPermitReleasedOnClose() {
+    startCall();
+    Assert.assertEquals(1, interceptor.getActiveCallCount());
+    startedListeners.get(0).onClose(Status.OK, new Metadata.Trailers());
+    Assert.assertEquals(0, interceptor.getActiveCallCount());
+
+    // Closing twice should not release a second permit.
+    startedListeners.get(0).onClose(Status.OK, new Metadata.Trailers());
+    Assert.assertEquals(0, interceptor.getActiveCallCount());
+  }
+
+  @Test
+  public void testStartQueuesWhileAtCapacity() {
+    startCall();
+    Call<MutateRowRequest, Empty> queuedCall = startCall();
+    queuedCall.request(1);
+    queuedCall.sendPayload(MutateRowRequest.getDefaultInstance());
+    queuedCall.halfClose();
+
+    // The second call returned without being started, and nothing was sent on it.
+    Assert.assertEquals(1, startedListeners.size());
+    Assert.assertEquals(1, interceptor.getQueuedCallCount());
+    verify(callStub, never()).request(anyInt());
+    verify(callStub, never()).sendPayload(any(MutateRowRequest.class));
+
+    startedListeners.get(0).onClose(Status.OK, new Metadata.Trailers());
+    Assert.assertEquals(2, startedListeners.size());
+    Assert.assertEquals(0, interceptor.getQueuedCallCount());
+    Assert.assertEquals(1, interceptor.getActiveCallCount());
+    InOrder inOrder = inOrder(callStub);
+    inOrder.verify(callStub).request(1);
+    inOrder.verify(callStub).sendPayload(MutateRowRequest.getDefaultInstance());
+    inOrder.verify(callStub).halfClose();
+  }
+
+  @Test
+  public void testPermitReleasedOnFirstPayload() {
+    startCall();
+    startCall();
+    Assert.assertEquals(1, startedListeners.size());
+
+    // A streaming call gives up its permit once responses start flowing.
+    startedListeners.get(0).onPayload(Empty.getDefaultInstance());
+    Assert.assertEquals(2, startedListeners.size());
+    startedListeners.get(0).onPayload(Empty.getDefaultInstance());
+    startedListeners.get(0).onClose(Status.OK, new Metadata.Trailers());
+    Assert.assertEquals(1, interceptor.getActiveCallCount());
+  }
+
+  @Test
+  public void testCancelQueuedCall() {
+    startCall();
+    Call<MutateRowRequest, Empty> queuedCall = startCall();
+    queuedCall.cancel();
+
+    ArgumentCaptor<Status> status = ArgumentCaptor.forClass(Status.class);
+    verify(responseListenerStub).onClose(status.capture(), any(Metadata.Trailers.class));
+    Assert.assertEquals(Status.Code.CANCELLED, status.getValue().getCode());
+    Assert.assertEquals(0, interceptor.getQueuedCallCount());
+    verify(callStub, never()).cancel();
+
+    // The cancelled call is never started, and it doesn't hold on to a permit.
+    startedListeners.get(0).onClose(Status.OK, new Metadata.Trailers());
+    Assert.assertEquals(1, startedListeners.size());
+    Assert.assertEquals(0, interceptor.getActiveCallCount());
+  }
+
+  private Call<MutateRowRequest, Empty> startCall() {
+    Call<MutateRowRequest, Empty> wrappedCall =
+        interceptor.interceptCall(BigtableServiceGrpc.CONFIG.mutateRow, channelStub);
+    wrappedCall.start(responseListenerStub, new Metadata.Headers());
+    return wrappedCall;
+  }
+}
@@ -17,6 +17,7 @@ package com.google.cloud.bigtable.grpc;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -25,7 +26,10 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
+import com.google.bigtable.v1.Column;
+import com.google.bigtable.v1.Family;
 import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.ReadRowsResponse.Chunk;
 import com.google.bigtable.v1.Row;
 import com.google.cloud.bigtable.config.RetryOptions;
 import com.google.protobuf.ByteString;
@@ -163,6 +167,169 @@ public class ResumingStreamingResultScannerTest {
     verify(mockScannerFactory, times(1)).createScanner(eq(expectedResumeRequest.build()));
   }
 
+  @Test
+  public void testInterleavedRowsResumeWithoutDuplicates() throws IOException {
+    ReadRowsRequest interleavedRequest = readRowsRequest.toBuilder()
+        .setAllowRowInterleaving(true)
+        .build();
+
+    // Rows of an interleaved request don't arrive in key order, so the original request is
+    // reissued.
+    when(mockScannerFactory.createScanner(eq(interleavedRequest)))
+        .thenReturn(mockScanner)
+        .thenReturn(mockScannerPostResume);
+
+    ResumingStreamingResultScanner scanner =
+        new ResumingStreamingResultScanner(retryOptions, interleavedRequest, mockScannerFactory);
+
+    when(mockScanner.next())
+        .thenReturn(buildRow("row3"))
+        .thenReturn(buildRow("row1"))
+        .thenThrow(new IOExceptionWithStatus("Test", new StatusRuntimeException(Status.INTERNAL)));
+
+    when(mockScannerPostResume.next())
+        .thenReturn(buildRow("row1"))
+        .thenReturn(buildRow("row2"))
+        .thenReturn(buildRow("row3"))
+        .thenReturn(buildRow("row4"))
+        .thenReturn(null);
+
+    assertRowKey("row3", scanner.next());
+    assertRowKey("row1", scanner.next());
+    assertRowKey("row2", scanner.next());
+    assertRowKey("row4", scanner.next());
+    assertNull(scanner.next());
+
+    verify(mockScannerFactory, times(2)).createScanner(eq(interleavedRequest));
+    verify(mockScanner, times(1)).close();
+  }
+
+  @Test
+  public void testInterleavedRowsAreNotResumedAfterTooManyRows() throws IOException {
+    ReadRowsRequest interleavedRequest = readRowsRequest.toBuilder()
+        .setAllowRowInterleaving(true)
+        .build();
+    when(mockScannerFactory.createScanner(eq(interleavedRequest))).thenReturn(mockScanner);
+
+    ResumingStreamingResultScanner scanner =
+        new ResumingStreamingResultScanner(retryOptions, interleavedRequest, mockScannerFactory);
+    scanner.maxInterleavedRowKeys = 2;
+
+    IOExceptionWithStatus error =
+        new IOExceptionWithStatus("Test", new StatusRuntimeException(Status.INTERNAL));
+    when(mockScanner.next())
+        .thenReturn(buildRow("row3"))
+        .thenReturn(buildRow("row1"))
+        .thenReturn(buildRow("row2"))
+        .thenThrow(error);
+
+    assertRowKey("row3", scanner.next());
+    assertRowKey("row1", scanner.next());
+    assertRowKey("row2", scanner.next());
+    try {
+      scanner.next();
+      fail("Expected an IOException");
+    } catch (IOException e) {
+      assertEquals(error, e.getCause());
+    }
+    verify(mockScannerFactory, times(1)).createScanner(eq(interleavedRequest));
+  }
+
+  static Row buildRow(String rowKey, long... timestamps) {
+    Column.Builder column = Column.newBuilder();
+    for (long timestamp : timestamps) {
+      column.addCellsBuilder().setTimestampMicros(timestamp);
+    }
+    return Row.newBuilder()
+        .setKey(ByteString.copyFromUtf8(rowKey))
+        .addFamilies(Family.newBuilder().setName("Family1").addColumns(column))
+        .build();
+  }
+
+  @Test
+  public void testRowPartsResumeAtThePartialRow() throws IOException {
+    ReadRowsRequest.Builder expectedResumeRequest = readRowsRequest.toBuilder();
+    expectedResumeRequest.getRowRangeBuilder().setStartKey(ByteString.copyFromUtf8("row2"));
+
+    when(mockScannerFactory.createScanner(eq(readRowsRequest)))
+        .thenReturn(mockScanner);
+    when(mockScannerFactory.createScanner(eq(expectedResumeRequest.build())))
+        .thenReturn(mockScannerPostResume);
+
+    ResumingStreamingResultScanner scanner =
+        new ResumingStreamingResultScanner(retryOptions, readRowsRequest, mockScannerFactory, 2);
+
+    when(mockScanner.next())
+        .thenReturn(buildRow("row1", 1L))
+        .thenReturn(buildRow("row2", 5L, 4L))
+        .thenReturn(buildRow("row2", 3L))
+        .thenThrow(new IOExceptionWithStatus("Test", new StatusRuntimeException(Status.INTERNAL)));
+
+    // The three cells of row2 that were returned are skipped.
+    when(mockScannerPostResume.next())
+        .thenReturn(buildRow("row2", 5L, 4L))
+        .thenReturn(buildRow("row2", 3L, 2L))
+        .thenReturn(buildRow("row2", 1L))
+        .thenReturn(buildRow("row3", 1L))
+        .thenReturn(null);
+
+    assertRowKey("row1", scanner.next());
+    assertRowKey("row2", scanner.next());
+    assertRowKey("row2", scanner.next());
+    Row row = scanner.next();
+    assertRowKey("row2", row);
+    assertEquals(1, row.getFamilies(0).getColumns(0).getCellsCount());
+    assertEquals(2L, row.getFamilies(0).getColumns(0).getCells(0).getTimestampMicros());
+    assertRowKey("row2", scanner.next());
+    assertRowKey("row3", scanner.next());
+    assertNull(scanner.next());
+
+    verify(mockScanner, times(1)).close();
+    verify(mockScannerFactory, times(1)).createScanner(eq(expectedResumeRequest.build()));
+  }
+
+  @Test
+  public void testRowResetAfterAReturnedPartResumesAtThePartialRow() throws IOException {
+    ReadRowsRequest.Builder expectedResumeRequest = readRowsRequest.toBuilder();
+    expectedResumeRequest.getRowRangeBuilder().setStartKey(ByteString.copyFromUtf8("row1"));
+    Chunk commitChunk = Chunk.newBuilder().setCommitRow(true).build();
+    Chunk contentChunk = Chunk.newBuilder().setRowContents(Family.newBuilder()
+        .setName("Family1")
+        .addColumns(StreamingBigtableResultScannerTest.createColumn("c1", 3L, 2L, 1L)))
+        .build();
+
+    // The server resets row1 after two of its cells were returned.
+    StreamingBigtableResultScanner scanner =
+        new StreamingBigtableResultScanner(10, 1000, new CancellationToken(), false, 1);
+    scanner.addResult(StreamingBigtableResultScannerTest.createReadRowsResponse(
+        "row1", contentChunk));
+    scanner.addResult(StreamingBigtableResultScannerTest.createReadRowsResponse(
+        "row1", Chunk.newBuilder().setResetRow(true).build()));
+    StreamingBigtableResultScanner scannerPostResume =
+        new StreamingBigtableResultScanner(10, 1000, new CancellationToken(), false, 1);
+    scannerPostResume.addResult(StreamingBigtableResultScannerTest.createReadRowsResponse(
+        "row1", contentChunk, commitChunk));
+    scannerPostResume.complete();
+
+    when(mockScannerFactory.createScanner(eq(readRowsRequest)))
+        .thenReturn(scanner);
+    when(mockScannerFactory.createScanner(eq(expectedResumeRequest.build())))
+        .thenReturn(scannerPostResume);
+
+    ResumingStreamingResultScanner resumingScanner =
+        new ResumingStreamingResultScanner(retryOptions, readRowsRequest, mockScannerFactory, 1);
+
+    // The cells that were returned before the reset aren't returned again.
+    long[] expectedTimestamps = {3L, 2L, 1L};
+    for (long timestamp : expectedTimestamps) {
+      Row row = resumingScanner.next();
+      assertRowKey("row1", row);
+      assertEquals(timestamp, row.getFamilies(0).getColumns(0).getCells(0).getTimestampMicros());
+    }
+    assertNull(resumingScanner.next());
+    verify(mockScannerFactory, times(1)).createScanner(eq(expectedResumeRequest.build()));
+  }
+
   @Test
   public void testFailedPreconditionErrorsDoNotResume() throws IOException {
     doErrorsDoNotResume(Status.FAILED_PRECONDITION);
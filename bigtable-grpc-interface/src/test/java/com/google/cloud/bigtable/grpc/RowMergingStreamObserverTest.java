@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.grpc;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.bigtable.v1.Family;
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.ReadRowsResponse;
+import com.google.bigtable.v1.ReadRowsResponse.Chunk;
+import com.google.bigtable.v1.Row;
+import com.google.protobuf.ByteString;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import io.grpc.Call;
+import io.grpc.stub.StreamObserver;
+
+import java.io.IOException;
+
+/**
+ * Tests for {@link RowMergingStreamObserver}
+ */
+@RunWith(JUnit4.class)
+public class RowMergingStreamObserverTest {
+
+  private static final Chunk CONTENT_CHUNK = Chunk.newBuilder()
+      .setRowContents(Family.newBuilder().setName("Family1"))
+      .build();
+  private static final Chunk COMMIT_CHUNK = Chunk.newBuilder().setCommitRow(true).build();
+
+  @Mock
+  private Call<ReadRowsRequest, ReadRowsResponse> call;
+  @Mock
+  private StreamObserver<Row> rowObserver;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+  }
+
+  private static ReadRowsResponse createResponse(String rowKey, Chunk... chunks) {
+    ReadRowsResponse.Builder builder = ReadRowsResponse.newBuilder()
+        .setRowKey(ByteString.copyFromUtf8(rowKey));
+    for (Chunk chunk : chunks) {
+      builder.addChunks(chunk);
+    }
+    return builder.build();
+  }
+
+  @Test
+  public void testRowsArePassedOnWhenCommitted() {
+    RowMergingStreamObserver underTest = new RowMergingStreamObserver(
+        ReadRowsRequest.getDefaultInstance(), call, rowObserver, 0, 0);
+
+    underTest.onValue(createResponse("row-1", CONTENT_CHUNK));
+    verify(rowObserver, never()).onValue(any(Row.class));
+    underTest.onValue(createResponse("row-1", CONTENT_CHUNK, COMMIT_CHUNK));
+    underTest.onValue(createResponse("row-2", COMMIT_CHUNK));
+    underTest.onCompleted();
+
+    ArgumentCaptor<Row> rows = ArgumentCaptor.forClass(Row.class);
+    verify(rowObserver, times(2)).onValue(rows.capture());
+    Assert.assertEquals("row-1", rows.getAllValues().get(0).getKey().toStringUtf8());
+    Assert.assertEquals(1, rows.getAllValues().get(0).getFamiliesCount());
+    Assert.assertEquals("row-2", rows.getAllValues().get(1).getKey().toStringUtf8());
+    verify(rowObserver).onCompleted();
+    verify(call, never()).cancel();
+  }
+
+  @Test
+  public void testTooManyRowsCancelsTheCall() {
+    RowMergingStreamObserver underTest = new RowMergingStreamObserver(
+        ReadRowsRequest.getDefaultInstance(), call, rowObserver, 1, 0);
+
+    underTest.onValue(createResponse("row-1", COMMIT_CHUNK));
+    underTest.onValue(createResponse("row-2", COMMIT_CHUNK));
+    // The cancelled call reports an error, which is ignored.
+    underTest.onError(new RuntimeException("Cancelled"));
+
+    verify(rowObserver, times(1)).onValue(any(Row.class));
+    verify(call).cancel();
+    verify(rowObserver, times(1)).onError(any(IOException.class));
+    verify(rowObserver, never()).onCompleted();
+  }
+
+  @Test
+  public void testTooManyBytesCancelsTheCall() {
+    ReadRowsResponse response = createResponse("row-1", CONTENT_CHUNK, COMMIT_CHUNK);
+    RowMergingStreamObserver underTest = new RowMergingStreamObserver(
+        ReadRowsRequest.getDefaultInstance(), call, rowObserver, 0,
+        response.getSerializedSize() + 1);
+
+    underTest.onValue(response);
+    underTest.onValue(response);
+    underTest.onCompleted();
+
+    verify(rowObserver, times(1)).onValue(any(Row.class));
+    verify(call).cancel();
+    verify(rowObserver, times(1)).onError(any(IOException.class));
+    verify(rowObserver, never()).onCompleted();
+  }
+
+  @Test
+  public void testEndOfStreamInARowFails() {
+    RowMergingStreamObserver underTest = new RowMergingStreamObserver(
+        ReadRowsRequest.newBuilder().setAllowRowInterleaving(true).build(), call, rowObserver,
+        0, 0);
+
+    underTest.onValue(createResponse("row-1", CONTENT_CHUNK));
+    underTest.onValue(createResponse("row-2", COMMIT_CHUNK));
+    underTest.onCompleted();
+
+    verify(rowObserver, times(1)).onValue(any(Row.class));
+    verify(rowObserver).onError(any(IllegalStateException.class));
+    verify(rowObserver, never()).onCompleted();
+  }
+}
@@ -37,6 +37,8 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import io.grpc.Status;
+
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -118,6 +120,15 @@ public class StreamingBigtableResultScannerTest {
     return Chunk.newBuilder().setRowContents(familyBuilder).build();
   }
 
+  static Column createColumn(String columnQualifier, long... timestamps) {
+    Column.Builder columnBuilder = Column.newBuilder()
+        .setQualifier(ByteString.copyFromUtf8(columnQualifier));
+    for (long timestamp : timestamps) {
+      columnBuilder.addCellsBuilder().setTimestampMicros(timestamp);
+    }
+    return columnBuilder.build();
+  }
+
   static ReadRowsResponse createReadRowsResponse(String rowKey, Chunk ... chunks) {
     return ReadRowsResponse.newBuilder()
         .setRowKey(ByteString.copyFromUtf8(rowKey))
@@ -314,6 +325,194 @@ public class StreamingBigtableResultScannerTest {
     assertScannerEmpty(scanner);
   }
 
+  @Test
+  public void rowsInASingleResponseAreNotMerged() throws IOException {
+    Chunk contentChunk = createContentChunk("Family1", "c1", randomBytes(10), 100L);
+    Chunk contentChunk2 = createContentChunk("Family2", "c2", randomBytes(10), 100L);
+    Chunk rowCompleteChunk = Chunk.newBuilder().setCommitRow(true).build();
+
+    StreamingBigtableResultScanner.RowMerger merger =
+        new StreamingBigtableResultScanner.RowMerger();
+    merger.addPartialRow(
+        createReadRowsResponse("row-1", contentChunk, contentChunk2, rowCompleteChunk));
+    Assert.assertTrue(merger.isRowCommitted());
+    Row row = merger.buildRow();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-1"), row.getKey());
+    Assert.assertSame(contentChunk.getRowContents(), row.getFamilies(0));
+    Assert.assertSame(contentChunk2.getRowContents(), row.getFamilies(1));
+
+    // The merger can be reused, and a repeated family is still merged.
+    merger.reset();
+    Assert.assertFalse(merger.isRowCommitted());
+    Chunk contentChunk3 = createContentChunk("Family1", "c3", randomBytes(10), 100L);
+    merger.addPartialRow(
+        createReadRowsResponse("row-2", contentChunk, contentChunk3, rowCompleteChunk));
+    row = merger.buildRow();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-2"), row.getKey());
+    Assert.assertEquals(1, row.getFamiliesCount());
+    Assert.assertEquals(2, row.getFamilies(0).getColumnsCount());
+  }
+
+  @Test
+  public void interleavedRowsAreReturnedWhenCommitted() throws IOException {
+    Chunk contentChunk = createContentChunk("Family1", "c1", randomBytes(10), 100L);
+    Chunk contentChunk2 = createContentChunk("Family1", "c2", randomBytes(10), 100L);
+    Chunk rowCompleteChunk = Chunk.newBuilder().setCommitRow(true).build();
+
+    CancellationToken cancellationToken = new CancellationToken();
+    StreamingBigtableResultScanner scanner =
+        new StreamingBigtableResultScanner(10, defaultTimeout, cancellationToken, true);
+
+    scanner.addResult(createReadRowsResponse("row-1", contentChunk));
+    scanner.addResult(createReadRowsResponse("row-2", contentChunk));
+    scanner.addResult(createReadRowsResponse("row-3", contentChunk, rowCompleteChunk));
+    scanner.addResult(createReadRowsResponse("row-2", contentChunk2, rowCompleteChunk));
+    scanner.addResult(createReadRowsResponse("row-1", contentChunk2));
+    scanner.addResult(createReadRowsResponse("row-1", rowCompleteChunk));
+    scanner.complete();
+
+    Row row = scanner.next();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-3"), row.getKey());
+    Assert.assertEquals(1, row.getFamilies(0).getColumnsCount());
+    for (String rowKey : Arrays.asList("row-2", "row-1")) {
+      row = scanner.next();
+      Assert.assertEquals(ByteString.copyFromUtf8(rowKey), row.getKey());
+      Assert.assertEquals(1, row.getFamiliesCount());
+      Assert.assertEquals(2, row.getFamilies(0).getColumnsCount());
+    }
+    assertScannerEmpty(scanner);
+  }
+
+  @Test
+  public void endOfStreamWithUncommittedInterleavedRowThrows() throws IOException {
+    Chunk contentChunk = createContentChunk("Family1", "c1", randomBytes(10), 100L);
+    Chunk rowCompleteChunk = Chunk.newBuilder().setCommitRow(true).build();
+
+    CancellationToken cancellationToken = new CancellationToken();
+    StreamingBigtableResultScanner scanner =
+        new StreamingBigtableResultScanner(10, defaultTimeout, cancellationToken, true);
+
+    scanner.addResult(createReadRowsResponse("row-1", contentChunk));
+    scanner.addResult(createReadRowsResponse("row-2", contentChunk, rowCompleteChunk));
+    scanner.complete();
+
+    Assert.assertEquals(ByteString.copyFromUtf8("row-2"), scanner.next().getKey());
+    expectedException.expect(IllegalStateException.class);
+    expectedException.expectMessage("End of stream marker encountered while merging a row.");
+    scanner.next();
+  }
+
+  @Test
+  public void wideRowsAreReturnedInParts() throws IOException {
+    Chunk contentChunk = Chunk.newBuilder().setRowContents(Family.newBuilder()
+        .setName("Family1")
+        .addColumns(createColumn("c1", 3L, 2L, 1L))
+        .addColumns(createColumn("c2", 1L)))
+        .build();
+    Chunk contentChunk2 = Chunk.newBuilder().setRowContents(Family.newBuilder()
+        .setName("Family2")
+        .addColumns(createColumn("c3", 1L)))
+        .build();
+    Chunk rowCompleteChunk = Chunk.newBuilder().setCommitRow(true).build();
+
+    CancellationToken cancellationToken = new CancellationToken();
+    StreamingBigtableResultScanner scanner =
+        new StreamingBigtableResultScanner(10, defaultTimeout, cancellationToken, false, 2);
+
+    scanner.addResult(createReadRowsResponse("row-1", contentChunk));
+    scanner.addResult(createReadRowsResponse("row-1", contentChunk2, rowCompleteChunk));
+    scanner.addResult(createReadRowsResponse("row-2", rowCompleteChunk));
+    scanner.addResult(createReadRowsResponse("row-3", contentChunk2, rowCompleteChunk));
+
+    // The first part is returned before the row is committed.
+    Row part = scanner.next();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-1"), part.getKey());
+    Assert.assertEquals(1, part.getFamiliesCount());
+    Assert.assertEquals(1, part.getFamilies(0).getColumnsCount());
+    Assert.assertEquals(2, part.getFamilies(0).getColumns(0).getCellsCount());
+
+    scanner.complete();
+
+    part = scanner.next();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-1"), part.getKey());
+    Assert.assertEquals(1, part.getFamiliesCount());
+    Assert.assertEquals(2, part.getFamilies(0).getColumnsCount());
+    Assert.assertEquals(1L, part.getFamilies(0).getColumns(0).getCells(0).getTimestampMicros());
+    Assert.assertEquals(ByteString.copyFromUtf8("c2"),
+        part.getFamilies(0).getColumns(1).getQualifier());
+
+    part = scanner.next();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-1"), part.getKey());
+    Assert.assertEquals("Family2", part.getFamilies(0).getName());
+
+    part = scanner.next();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-2"), part.getKey());
+    Assert.assertEquals(0, part.getFamiliesCount());
+
+    part = scanner.next();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-3"), part.getKey());
+    Assert.assertEquals(1, part.getFamiliesCount());
+    assertScannerEmpty(scanner);
+  }
+
+  @Test
+  public void resetAfterReturningPartOfARowThrows() throws IOException {
+    Chunk contentChunk = Chunk.newBuilder().setRowContents(Family.newBuilder()
+        .setName("Family1")
+        .addColumns(createColumn("c1", 1L)))
+        .build();
+    Chunk contentChunk2 = Chunk.newBuilder().setRowContents(Family.newBuilder()
+        .setName("Family1")
+        .addColumns(createColumn("c2", 1L)))
+        .build();
+    Chunk rowResetChunk = Chunk.newBuilder().setResetRow(true).build();
+
+    CancellationToken cancellationToken = new CancellationToken();
+    StreamingBigtableResultScanner scanner =
+        new StreamingBigtableResultScanner(10, defaultTimeout, cancellationToken, false, 1);
+
+    scanner.addResult(createReadRowsResponse("row-1", contentChunk, contentChunk2));
+    scanner.addResult(createReadRowsResponse("row-1", rowResetChunk));
+
+    Assert.assertEquals(ByteString.copyFromUtf8("row-1"), scanner.next().getKey());
+    try {
+      scanner.next();
+      Assert.fail("Expected an IOExceptionWithStatus");
+    } catch (IOExceptionWithStatus e) {
+      // ResumingStreamingResultScanner resumes reads that fail with ABORTED.
+      Assert.assertEquals(Status.Code.ABORTED, e.getStatus().getCode());
+    }
+  }
+
+  @Test
+  public void resetDropsPartsOfARowThatWereNotReturned() throws IOException {
+    Chunk contentChunk = Chunk.newBuilder().setRowContents(Family.newBuilder()
+        .setName("Family1")
+        .addColumns(createColumn("c1", 2L, 1L)))
+        .build();
+    Chunk contentChunk2 = Chunk.newBuilder().setRowContents(Family.newBuilder()
+        .setName("Family1")
+        .addColumns(createColumn("c2", 1L)))
+        .build();
+    Chunk rowResetChunk = Chunk.newBuilder().setResetRow(true).build();
+    Chunk rowCompleteChunk = Chunk.newBuilder().setCommitRow(true).build();
+
+    CancellationToken cancellationToken = new CancellationToken();
+    StreamingBigtableResultScanner scanner =
+        new StreamingBigtableResultScanner(10, defaultTimeout, cancellationToken, false, 1);
+
+    // The first part of row-1 is available, but it is reset before it is returned.
+    scanner.addResult(createReadRowsResponse("row-1", contentChunk, rowResetChunk));
+    scanner.addResult(createReadRowsResponse("row-1", contentChunk2, rowCompleteChunk));
+    scanner.complete();
+
+    Row part = scanner.next();
+    Assert.assertEquals(ByteString.copyFromUtf8("row-1"), part.getKey());
+    Assert.assertEquals(ByteString.copyFromUtf8("c2"),
+        part.getFamilies(0).getColumns(0).getQualifier());
+    assertScannerEmpty(scanner);
+  }
+
   @Test
   public void rowsCanBeReset() throws IOException {
     String rowKey = "row-1";
@@ -39,10 +39,12 @@ import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
 import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
 import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FamilyFilter;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.FilterList.Operator;
 import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
 import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.filter.MultipleColumnPrefixFilter;
 import org.apache.hadoop.hbase.filter.NullComparator;
@@ -57,6 +59,7 @@ import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.filter.SubstringComparator;
 import org.apache.hadoop.hbase.filter.TimestampsFilter;
 import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.filter.WhileMatchFilter;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Assert;
 import org.junit.Test;
@@ -324,7 +327,6 @@ public class TestFilters extends AbstractTest {
    * Bytes.compareTo(byte[], byte[]).
    */
   @Test
-  @Category(KnownGap.class)
   public void testRowFilterBinaryComparator() throws Exception {
     // Initialize data
     Table table = getConnection().getTable(TABLE_NAME);
@@ -396,7 +398,6 @@ public class TestFilters extends AbstractTest {
    * the length of this byte array.
    */
   @Test
-  @Category(KnownGap.class)
   public void testRowFilterBinaryPrefixComparator() throws Exception {
     // Initialize data
     Table table = getConnection().getTable(TABLE_NAME);
@@ -1382,6 +1383,166 @@ public class TestFilters extends AbstractTest {
     Assert.assertEquals(1, result.size());
   }
 
+  @Test
+  public void testQualifierFilterWithBinaryPrefixComparator() throws IOException {
+    byte[] rowKey = dataHelper.randomData("testQualifierPrefixFilter");
+    byte[] qualA = Bytes.toBytes("qualA");
+    byte[] qualA1 = Bytes.toBytes("qualA1");
+    byte[] qualB = Bytes.toBytes("qualB");
+    byte[] qualC = Bytes.toBytes("qualC");
+    byte[] value = Bytes.toBytes("value");
+    Table table = getConnection().getTable(TABLE_NAME);
+    Put put = new Put(rowKey);
+    for (byte[] qualifier : new byte[][] { qualA, qualA1, qualB, qualC }) {
+      put.addColumn(COLUMN_FAMILY, qualifier, value);
+    }
+    table.put(put);
+
+    Get get = new Get(rowKey).addFamily(COLUMN_FAMILY);
+    BinaryPrefixComparator prefixA = new BinaryPrefixComparator(qualA);
+
+    get.setFilter(new QualifierFilter(CompareOp.EQUAL, prefixA));
+    Result result = table.get(get);
+    Assert.assertEquals(2, result.size());
+    Assert.assertTrue(result.containsColumn(COLUMN_FAMILY, qualA1));
+
+    get.setFilter(new QualifierFilter(CompareOp.GREATER, prefixA));
+    result = table.get(get);
+    Assert.assertEquals(2, result.size());
+    Assert.assertTrue(result.containsColumn(COLUMN_FAMILY, qualB));
+    Assert.assertTrue(result.containsColumn(COLUMN_FAMILY, qualC));
+
+    get.setFilter(new QualifierFilter(CompareOp.LESS_OR_EQUAL, prefixA));
+    result = table.get(get);
+    Assert.assertEquals(2, result.size());
+    Assert.assertFalse(result.containsColumn(COLUMN_FAMILY, qualB));
+
+    get.setFilter(
+        new QualifierFilter(CompareOp.NOT_EQUAL, new BinaryPrefixComparator(qualB)));
+    result = table.get(get);
+    Assert.assertEquals(3, result.size());
+    Assert.assertFalse(result.containsColumn(COLUMN_FAMILY, qualB));
+
+    table.close();
+  }
+
+  @Test
+  public void testMultipleColumnPrefixesThatOverlap() throws IOException {
+    Table table = getConnection().getTable(TABLE_NAME);
+    byte[] rowKey = dataHelper.randomData("testRow-");
+    byte[] value = Bytes.toBytes("value");
+    Put put = new Put(rowKey);
+    put.addColumn(COLUMN_FAMILY, Bytes.toBytes("a-1"), value);
+    put.addColumn(COLUMN_FAMILY, Bytes.toBytes("a-2"), value);
+    put.addColumn(COLUMN_FAMILY, Bytes.toBytes("b-1"), value);
+    table.put(put);
+
+    // Every column that starts with "a-1" also starts with "a-".
+    Filter filter = new MultipleColumnPrefixFilter(new byte[][]{
+        Bytes.toBytes("a-1"),
+        Bytes.toBytes("a-")
+    });
+
+    Result result = table.get(new Get(rowKey).setFilter(filter));
+    Assert.assertEquals("Each column should be returned once.", 2, result.rawCells().length);
+
+    result = table.get(new Get(rowKey).addFamily(COLUMN_FAMILY).setFilter(filter));
+    Assert.assertEquals("Each column should be returned once.", 2, result.rawCells().length);
+
+    table.close();
+  }
+
+  @Test
+  public void testFamilyFilter() throws IOException {
+    Table table = getConnection().getTable(TABLE_NAME);
+    byte[] rowKey = dataHelper.randomData("testFamilyFilter-");
+    byte[] qualifier = Bytes.toBytes("qualifier");
+    byte[] value = Bytes.toBytes("value");
+    Put put = new Put(rowKey);
+    put.addColumn(COLUMN_FAMILY, qualifier, value);
+    put.addColumn(COLUMN_FAMILY2, qualifier, value);
+    table.put(put);
+
+    // COLUMN_FAMILY is a prefix of COLUMN_FAMILY2, so it sorts first.
+    Result result = table.get(new Get(rowKey).setFilter(
+        new FamilyFilter(CompareOp.EQUAL, new BinaryComparator(COLUMN_FAMILY))));
+    Assert.assertEquals(1, result.size());
+    Assert.assertTrue(result.containsColumn(COLUMN_FAMILY, qualifier));
+
+    result = table.get(new Get(rowKey).setFilter(
+        new FamilyFilter(CompareOp.GREATER, new BinaryComparator(COLUMN_FAMILY))));
+    Assert.assertEquals(1, result.size());
+    Assert.assertTrue(result.containsColumn(COLUMN_FAMILY2, qualifier));
+
+    result = table.get(new Get(rowKey).setFilter(
+        new FamilyFilter(CompareOp.LESS, new BinaryComparator(COLUMN_FAMILY2))));
+    Assert.assertEquals(1, result.size());
+    Assert.assertTrue(result.containsColumn(COLUMN_FAMILY, qualifier));
+
+    result = table.get(new Get(rowKey).setFilter(
+        new FamilyFilter(CompareOp.NOT_EQUAL, new BinaryComparator(COLUMN_FAMILY2))));
+    Assert.assertEquals(1, result.size());
+    Assert.assertTrue(result.containsColumn(COLUMN_FAMILY, qualifier));
+
+    result = table.get(new Get(rowKey).setFilter(
+        new FamilyFilter(CompareOp.EQUAL, new BinaryPrefixComparator(COLUMN_FAMILY))));
+    Assert.assertEquals(2, result.size());
+
+    table.close();
+  }
+
+  @Test
+  public void testInclusiveStopFilter() throws IOException {
+    Table table = getConnection().getTable(TABLE_NAME);
+    String rowKeyPrefix = "testInclusiveStopFilter-" + RandomStringUtils.randomAlphabetic(10);
+    byte[] rowA = Bytes.toBytes(rowKeyPrefix + "A");
+    byte[] rowB = Bytes.toBytes(rowKeyPrefix + "B");
+    byte[] rowBB = Bytes.toBytes(rowKeyPrefix + "BB");
+    byte[] rowC = Bytes.toBytes(rowKeyPrefix + "C");
+    byte[] qual = Bytes.toBytes("testqual");
+    byte[] value = Bytes.toBytes("testvalue");
+    for (byte[] rowKey : new byte[][] { rowA, rowB, rowBB, rowC }) {
+      table.put(new Put(rowKey).addColumn(COLUMN_FAMILY, qual, value));
+    }
+
+    Filter filter = new InclusiveStopFilter(rowB);
+    Result[] results = scanWithFilter(table, rowA, rowC, qual, filter);
+    Assert.assertEquals("# results", 2, results.length);
+    Assert.assertArrayEquals(rowA, results[0].getRow());
+    Assert.assertArrayEquals(rowB, results[1].getRow());
+
+    table.close();
+  }
+
+  @Test
+  public void testWhileMatchFilter() throws IOException {
+    Table table = getConnection().getTable(TABLE_NAME);
+    String rowKeyPrefix = "testWhileMatchFilter-" + RandomStringUtils.randomAlphabetic(10);
+    byte[] rowA = Bytes.toBytes(rowKeyPrefix + "A");
+    byte[] rowB = Bytes.toBytes(rowKeyPrefix + "B");
+    byte[] rowBB = Bytes.toBytes(rowKeyPrefix + "BB");
+    byte[] rowC = Bytes.toBytes(rowKeyPrefix + "C");
+    byte[] qual = Bytes.toBytes("testqual");
+    byte[] value = Bytes.toBytes("testvalue");
+    for (byte[] rowKey : new byte[][] { rowA, rowB, rowBB, rowC }) {
+      table.put(new Put(rowKey).addColumn(COLUMN_FAMILY, qual, value));
+    }
+
+    Filter filter = new WhileMatchFilter(
+        new RowFilter(CompareOp.LESS_OR_EQUAL, new BinaryPrefixComparator(rowB)));
+    Result[] results = scanWithFilter(table, rowA, rowC, qual, filter);
+    Assert.assertEquals("# results", 3, results.length);
+    Assert.assertArrayEquals(rowA, results[0].getRow());
+    Assert.assertArrayEquals(rowBB, results[2].getRow());
+
+    filter = new WhileMatchFilter(new InclusiveStopFilter(rowA));
+    results = scanWithFilter(table, rowA, rowC, qual, filter);
+    Assert.assertEquals("# results", 1, results.length);
+    Assert.assertArrayEquals(rowA, results[0].getRow());
+
+    table.close();
+  }
+
   @Test
   public void testPageFilters() throws IOException {
     byte[][] rowKeys = dataHelper.randomData("pageFilter-", 100);
@@ -29,6 +29,7 @@ import org.apache.hadoop.hbase.KeyValueUtil;
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.classification.InterfaceAudience;
 import org.apache.hadoop.hbase.classification.InterfaceStability;
+import org.apache.hadoop.hbase.client.AbstractBigtableConnection;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.ConnectionFactory;
 import org.apache.hadoop.hbase.client.Delete;
@@ -456,6 +457,11 @@ public class Import extends Configured implements Tool {
     System.err.println("For performance consider the following options:\n"
         + "  -Dmapreduce.map.speculative=false\n"
         + "  -Dmapreduce.reduce.speculative=false\n");
+    System.err.println("To limit the write rate of each map task, use the following options:\n"
+        + "  -D" + AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MUTATIONS_PER_SECOND_KEY
+        + "=<mutations per second>\n"
+        + "  -D" + AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_BYTES_PER_SECOND_KEY
+        + "=<bytes per second>\n");
   }
 
   @Override
@@ -17,8 +17,11 @@ package com.google.cloud.bigtable.hbase;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
 import javax.annotation.Nullable;
@@ -27,6 +30,7 @@ import org.apache.hadoop.hbase.client.Append;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
 import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
@@ -38,6 +42,7 @@ import com.google.api.client.util.Preconditions;
 import com.google.bigtable.v1.MutateRowRequest;
 import com.google.bigtable.v1.ReadModifyWriteRowRequest;
 import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowFilter;
 import com.google.cloud.bigtable.hbase.adapters.AppendAdapter;
 import com.google.cloud.bigtable.hbase.adapters.DefaultReadHooks;
 import com.google.cloud.bigtable.hbase.adapters.IncrementAdapter;
@@ -48,6 +53,7 @@ import com.google.cloud.bigtable.hbase.adapters.RowMutationsAdapter;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.RequestPriority;
 import com.google.cloud.bigtable.hbase.adapters.ReadHooks;
 import com.google.cloud.bigtable.naming.BigtableTableName;
 import com.google.common.base.Function;
@@ -56,6 +62,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.Empty;
 import com.google.protobuf.GeneratedMessage;
 
@@ -83,6 +90,36 @@ public class BatchExecutor {
         }
       };
 
+  private static final Function<List<com.google.bigtable.v1.Row>, Map<ByteString, com.google.bigtable.v1.Row>> ROWS_BY_KEY_CONVERTER =
+      new Function<List<com.google.bigtable.v1.Row>, Map<ByteString, com.google.bigtable.v1.Row>>() {
+        @Override
+        public Map<ByteString, com.google.bigtable.v1.Row> apply(
+            List<com.google.bigtable.v1.Row> rows) {
+          Map<ByteString, com.google.bigtable.v1.Row> rowsByKey = new HashMap<>(rows.size() * 2);
+          for (com.google.bigtable.v1.Row row : rows) {
+            rowsByKey.put(row.getKey(), row);
+          }
+          return rowsByKey;
+        }
+      };
+
+  /**
+   * Finds the row of one Get in the rows of a range read, or null if the row doesn't exist.
+   */
+  private static final class RowLookup
+      implements Function<Map<ByteString, com.google.bigtable.v1.Row>, com.google.bigtable.v1.Row> {
+    private final ByteString rowKey;
+
+    public RowLookup(ByteString rowKey) {
+      this.rowKey = rowKey;
+    }
+
+    @Override
+    public com.google.bigtable.v1.Row apply(Map<ByteString, com.google.bigtable.v1.Row> rowsByKey) {
+      return rowsByKey.get(rowKey);
+    }
+  }
+
   private static final class RowResultConverter implements Function<GeneratedMessage, Object> {
     private final ResponseAdapter<com.google.bigtable.v1.Row, Result> rowToResultAdapter;
 
@@ -163,6 +200,7 @@ public class BatchExecutor {
   }
 
   protected final BigtableClient client;
+  protected final BigtableClient batchClient;
   protected final BigtableOptions options;
   protected final BigtableTableName bigtableTableName;
   protected final ListeningExecutorService service;
@@ -174,6 +212,8 @@ public class BatchExecutor {
   protected final IncrementAdapter incrementAdapter;
   protected final ResponseAdapter<com.google.bigtable.v1.Row, Result> rowToResultAdapter;
   protected final RowResultConverter rowResultConverter;
+  protected final MultiGetPlanner multiGetPlanner;
+  protected final RequestPriority defaultPriority;
 
   public BatchExecutor(
       BigtableClient client,
@@ -187,7 +227,54 @@ public class BatchExecutor {
       AppendAdapter appendAdapter,
       IncrementAdapter incrementAdapter,
       ResponseAdapter<com.google.bigtable.v1.Row, Result> rowToResultAdapter) {
+    this(client, client, options, bigtableTableName, service, getAdapter, putAdapter,
+        deleteAdapter, rowMutationsAdapter, appendAdapter, incrementAdapter, rowToResultAdapter);
+  }
+
+  /**
+   * Operations tagged with {@link RequestPriority#BATCH} (see {@link OperationPriority}) are sent
+   * through {@code batchClient}, and everything else is sent through {@code client}.
+   */
+  public BatchExecutor(
+      BigtableClient client,
+      BigtableClient batchClient,
+      BigtableOptions options,
+      BigtableTableName bigtableTableName,
+      ListeningExecutorService service,
+      ReadOperationAdapter<Get> getAdapter,
+      OperationAdapter<Put, MutateRowRequest.Builder> putAdapter,
+      OperationAdapter<Delete, MutateRowRequest.Builder> deleteAdapter,
+      RowMutationsAdapter rowMutationsAdapter,
+      AppendAdapter appendAdapter,
+      IncrementAdapter incrementAdapter,
+      ResponseAdapter<com.google.bigtable.v1.Row, Result> rowToResultAdapter) {
+    this(client, batchClient, options, bigtableTableName, service, getAdapter, putAdapter,
+        deleteAdapter, rowMutationsAdapter, appendAdapter, incrementAdapter, rowToResultAdapter,
+        null, RequestPriority.INTERACTIVE);
+  }
+
+  /**
+   * @param multiGetPlanner Combines the Gets of a batch into range reads, or null to send one read
+   *        per Get.
+   * @param defaultPriority The priority of operations that weren't tagged with one.
+   */
+  BatchExecutor(
+      BigtableClient client,
+      BigtableClient batchClient,
+      BigtableOptions options,
+      BigtableTableName bigtableTableName,
+      ListeningExecutorService service,
+      ReadOperationAdapter<Get> getAdapter,
+      OperationAdapter<Put, MutateRowRequest.Builder> putAdapter,
+      OperationAdapter<Delete, MutateRowRequest.Builder> deleteAdapter,
+      RowMutationsAdapter rowMutationsAdapter,
+      AppendAdapter appendAdapter,
+      IncrementAdapter incrementAdapter,
+      ResponseAdapter<com.google.bigtable.v1.Row, Result> rowToResultAdapter,
+      @Nullable MultiGetPlanner multiGetPlanner,
+      RequestPriority defaultPriority) {
     this.client = client;
+    this.batchClient = batchClient;
     this.options = options;
     this.bigtableTableName = bigtableTableName;
     this.service = service;
@@ -198,6 +285,8 @@ public class BatchExecutor {
     this.appendAdapter = appendAdapter;
     this.incrementAdapter = incrementAdapter;
     this.rowToResultAdapter = rowToResultAdapter;
+    this.multiGetPlanner = multiGetPlanner;
+    this.defaultPriority = defaultPriority;
     rowResultConverter = new RowResultConverter(rowToResultAdapter);
   }
 
@@ -208,7 +297,7 @@ public class BatchExecutor {
     LOG.trace("issueDeleteRequest(Delete)");
     MutateRowRequest.Builder requestBuilder = deleteAdapter.adapt(delete);
     requestBuilder.setTableName(bigtableTableName.toString());
-    return client.mutateRowAsync(requestBuilder.build());
+    return getClient(delete).mutateRowAsync(requestBuilder.build());
   }
 
   /**
@@ -217,12 +306,79 @@ public class BatchExecutor {
    */
   ListenableFuture<com.google.bigtable.v1.Row> issueGetRequest(Get get) {
     LOG.trace("issueGetRequest(Get)");
+    return issueGetRequest(getClient(get), adaptGetRequest(get));
+  }
+
+  private ListenableFuture<com.google.bigtable.v1.Row> issueGetRequest(
+      BigtableClient client, ReadRowsRequest request) {
+    return Futures.transform(client.readRowsAsync(request), ROWS_TO_ROW_CONVERTER);
+  }
+
+  /**
+   * Adapt a Get into a complete ReadRowsRequest.
+   */
+  ReadRowsRequest adaptGetRequest(Get get) {
     ReadHooks readHooks = new DefaultReadHooks();
     ReadRowsRequest.Builder builder = getAdapter.adapt(get, readHooks);
     builder.setTableName(bigtableTableName.toString());
-    ReadRowsRequest request = readHooks.applyPreSendHook(builder.build());
+    return readHooks.applyPreSendHook(builder.build());
+  }
 
-    return Futures.transform(client.readRowsAsync(request), ROWS_TO_ROW_CONVERTER);
+  /**
+   * Adapt a Get into a ReadRowsRequest that only checks whether the row exists.  The request
+   * returns at most one cell of the row, without its value.
+   */
+  ReadRowsRequest adaptExistsRequest(Get get) {
+    ReadRowsRequest request = adaptGetRequest(get);
+    RowFilter.Chain.Builder chain = RowFilter.Chain.newBuilder();
+    if (request.hasFilter()) {
+      chain.addFilters(request.getFilter());
+    }
+    chain
+        .addFilters(RowFilter.newBuilder().setCellsPerRowLimitFilter(1))
+        .addFilters(RowFilter.newBuilder().setStripValueTransformer(true));
+    return request.toBuilder()
+        .setFilter(RowFilter.newBuilder().setChain(chain))
+        .build();
+  }
+
+  /**
+   * Issue the Gets of a batch that are sent through {@code client}, combining Gets of nearby rows
+   * into range reads where the {@link MultiGetPlanner}, if any, finds them.
+   * @param existenceOnly Whether to only check whether the rows exist.
+   * @param futures The futures of the batch, into which the future of each issued Get is stored.
+   */
+  private void issueGetRequests(BigtableClient client, List<? extends Row> actions,
+      boolean existenceOnly, List<? super ListenableFuture<com.google.bigtable.v1.Row>> futures) {
+    List<ReadRowsRequest> requests = new ArrayList<>(actions.size());
+    boolean hasGets = false;
+    for (Row row : actions) {
+      if (row instanceof Get && getClient(row) == client) {
+        requests.add(existenceOnly ? adaptExistsRequest((Get) row) : adaptGetRequest((Get) row));
+        hasGets = true;
+      } else {
+        requests.add(null);
+      }
+    }
+    if (!hasGets) {
+      return;
+    }
+    if (multiGetPlanner != null) {
+      for (MultiGetPlanner.RangeRead rangeRead : multiGetPlanner.plan(requests)) {
+        ListenableFuture<Map<ByteString, com.google.bigtable.v1.Row>> rowsByKey = Futures
+            .transform(client.readRowsAsync(rangeRead.getRequest()), ROWS_BY_KEY_CONVERTER);
+        for (int index : rangeRead.getIndexes()) {
+          futures.set(index,
+            Futures.transform(rowsByKey, new RowLookup(requests.get(index).getRowKey())));
+          requests.set(index, null);
+        }
+      }
+    }
+    for (int index = 0; index < requests.size(); index++) {
+      if (requests.get(index) != null) {
+        futures.set(index, issueGetRequest(client, requests.get(index)));
+      }
+    }
   }
 
   /**
@@ -235,7 +391,7 @@ public class BatchExecutor {
     builder.setTableName(bigtableTableName.toString());
     ReadModifyWriteRowRequest request = builder.build();
 
-    return client.readModifyWriteRowAsync(request);
+    return getClient(append).readModifyWriteRowAsync(request);
   }
 
   /**
@@ -248,7 +404,7 @@ public class BatchExecutor {
     builder.setTableName(bigtableTableName.toString());
     ReadModifyWriteRowRequest request = builder.build();
 
-    return client.readModifyWriteRowAsync(request);
+    return getClient(increment).readModifyWriteRowAsync(request);
   }
 
   /**
@@ -259,7 +415,56 @@ public class BatchExecutor {
     MutateRowRequest.Builder requestBuilder = putAdapter.adapt(put);
     requestBuilder.setTableName(bigtableTableName.toString());
 
-    return client.mutateRowAsync(requestBuilder.build());
+    return getClient(put).mutateRowAsync(requestBuilder.build());
+  }
+
+  /**
+   * Adapt a Put or Delete into a complete MutateRowRequest, so that it can be stored and issued
+   * later with {@link #issueMutateRowRequest(MutateRowRequest, RequestPriority)}.
+   */
+  MutateRowRequest adaptMutateRowRequest(Mutation mutation) {
+    MutateRowRequest.Builder requestBuilder;
+    if (mutation instanceof Put) {
+      requestBuilder = putAdapter.adapt((Put) mutation);
+    } else if (mutation instanceof Delete) {
+      requestBuilder = deleteAdapter.adapt((Delete) mutation);
+    } else {
+      throw new IllegalArgumentException("Cannot adapt " + mutation.getClass()
+          + " to a MutateRowRequest");
+    }
+    requestBuilder.setTableName(bigtableTableName.toString());
+    return requestBuilder.build();
+  }
+
+  /**
+   * Adapt an Increment into a complete ReadModifyWriteRowRequest, so that it can be combined with
+   * other increments and issued later with
+   * {@link #issueReadModifyWriteRowRequest(ReadModifyWriteRowRequest, RequestPriority)}.
+   */
+  ReadModifyWriteRowRequest adaptIncrementRequest(Increment increment) {
+    ReadModifyWriteRowRequest.Builder builder = incrementAdapter.adapt(increment);
+    builder.setTableName(bigtableTableName.toString());
+    return builder.build();
+  }
+
+  /**
+   * Issue a ReadModifyWriteRowRequest that was created by
+   * {@link #adaptIncrementRequest(Increment)}, through the client of the given priority.
+   */
+  ListenableFuture<com.google.bigtable.v1.Row> issueReadModifyWriteRowRequest(
+      ReadModifyWriteRowRequest request, RequestPriority priority) {
+    LOG.trace("issueReadModifyWriteRowRequest(ReadModifyWriteRowRequest, RequestPriority)");
+    return getClient(priority).readModifyWriteRowAsync(request);
+  }
+
+  /**
+   * Issue a MutateRowRequest that was created by {@link #adaptMutateRowRequest(Mutation)}, through
+   * the client of the given priority.
+   */
+  ListenableFuture<Empty> issueMutateRowRequest(MutateRowRequest request,
+      RequestPriority priority) {
+    LOG.trace("issueMutateRowRequest(MutateRowRequest, RequestPriority)");
+    return getClient(priority).mutateRowAsync(request);
   }
 
   /**
@@ -268,7 +473,7 @@ public class BatchExecutor {
   ListenableFuture<Empty> issueRowMutationsRequest(RowMutations mutations) {
     MutateRowRequest.Builder requestBuilder = rowMutationsAdapter.adapt(mutations);
 
-    return client.mutateRowAsync(requestBuilder.build());
+    return getClient(mutations).mutateRowAsync(requestBuilder.build());
   }
 
   /**
@@ -285,9 +490,49 @@ public class BatchExecutor {
   <R extends Row,T> ListenableFuture<Object> issueRowRequest(
       final Row row, final Batch.Callback<T> callback, final Object[] results, final int index) {
     LOG.trace("issueRowRequest(Row, Batch.Callback, Object[], index");
+    return addResultCallback(issueRequest(row), row, callback, results, index);
+  }
+
+  /**
+   * Issue the RPCs of a batch, recording the results as
+   * {@link #issueRowRequest(Row, Batch.Callback, Object[], int)} does for each action.  If a
+   * {@link MultiGetPlanner} was supplied, Gets of nearby rows may share one read.
+   * @return A ListenableFuture for the result of each action.
+   */
+  <T> List<ListenableFuture<Object>> issueRowRequests(
+      List<? extends Row> actions, Batch.Callback<T> callback, Object[] results) {
+    List<ListenableFuture<Object>> resultFutures = new ArrayList<>(actions.size());
+    if (multiGetPlanner == null) {
+      int index = 0;
+      for (Row row : actions) {
+        resultFutures.add(issueRowRequest(row, callback, results, index++));
+      }
+      return resultFutures;
+    }
+
+    List<ListenableFuture<? extends GeneratedMessage>> futures =
+        new ArrayList<>(Collections.<ListenableFuture<? extends GeneratedMessage>> nCopies(
+            actions.size(), null));
+    issueGetRequests(client, actions, false, futures);
+    if (batchClient != client) {
+      issueGetRequests(batchClient, actions, false, futures);
+    }
+    for (int index = 0; index < actions.size(); index++) {
+      Row row = actions.get(index);
+      ListenableFuture<? extends GeneratedMessage> future = futures.get(index);
+      if (future == null) {
+        future = issueRequest(row);
+      }
+      resultFutures.add(addResultCallback(future, row, callback, results, index));
+    }
+    return resultFutures;
+  }
+
+  private <T> ListenableFuture<Object> addResultCallback(
+      ListenableFuture<? extends GeneratedMessage> future, Row row, Batch.Callback<T> callback,
+      Object[] results, int index) {
     SettableFuture<Object> resultFuture = SettableFuture.create();
     results[index] = null;
-    ListenableFuture<? extends GeneratedMessage> future = issueRequest(row);
     Futures.addCallback(future,
       new RpcResultFutureCallback<T, GeneratedMessage>(
           row, callback, index, results, resultFuture, rowResultConverter),
@@ -295,6 +540,14 @@ public class BatchExecutor {
     return resultFuture;
   }
 
+  private BigtableClient getClient(Row row) {
+    return getClient(OperationPriority.getPriority(row, defaultPriority));
+  }
+
+  private BigtableClient getClient(RequestPriority priority) {
+    return priority == RequestPriority.BATCH ? batchClient : client;
+  }
+
   ListenableFuture<? extends GeneratedMessage> issueRequest(Row row) {
     if (row instanceof Put) {
       return issuePutRequest((Put) row);
@@ -326,11 +579,7 @@ public class BatchExecutor {
     }
     Preconditions.checkArgument(results.length == actions.size(),
         "Result array must have same dimensions as actions list.");
-    int index = 0;
-    List<ListenableFuture<Object>> resultFutures = new ArrayList<>(actions.size());
-    for (Row row : actions) {
-      resultFutures.add(issueRowRequest(row, null, results, index++));
-    }
+    List<ListenableFuture<Object>> resultFutures = issueRowRequests(actions, null, results);
     try {
       // Don't want to throw an exception for failed futures, instead the place in results is
       // set to null.
@@ -382,11 +631,7 @@ public class BatchExecutor {
       Batch.Callback<R> callback) throws IOException, InterruptedException {
     LOG.trace("batchCallback(List<>, Batch.Callback)");
     Result[] results = new Result[actions.size()];
-    int index = 0;
-    List<ListenableFuture<Object>> resultFutures = new ArrayList<>(actions.size());
-    for (Row row : actions) {
-      resultFutures.add(issueRowRequest(row, callback, results, index++));
-    }
+    List<ListenableFuture<Object>> resultFutures = issueRowRequests(actions, callback, results);
     try {
       Futures.allAsList(resultFutures).get();
     } catch (ExecutionException e) {
@@ -405,11 +650,7 @@ public class BatchExecutor {
     LOG.trace("batchCallback(List<>, Object[], Batch.Callback)");
     Preconditions.checkArgument(results.length == actions.size(),
         "Result array must be the same length as actions.");
-    int index = 0;
-    List<ListenableFuture<Object>> resultFutures = new ArrayList<>(actions.size());
-    for (Row row : actions) {
-      resultFutures.add(issueRowRequest(row, callback, results, index++));
-    }
+    List<ListenableFuture<Object>> resultFutures = issueRowRequests(actions, callback, results);
     try {
       // Don't want to throw an exception for failed futures, instead the place in results is
       // set to null.
@@ -421,17 +662,47 @@ public class BatchExecutor {
   }
 
   /**
-   * Implementation of {@link org.apache.hadoop.hbase.client.HTable#exists(List)}.
+   * Implementation of {@link org.apache.hadoop.hbase.client.HTable#exists(List)}.  Each row is
+   * checked with a read that returns at most one cell without its value, and Gets of nearby rows
+   * share a read if a {@link MultiGetPlanner} was supplied.
    */
   public Boolean[] exists(List<Get> gets) throws IOException {
     LOG.trace("exists(List<>)");
-    // get(gets) will throw if there are any errors:
-    Result[] getResults = (Result[]) batch(gets);
+    List<ListenableFuture<com.google.bigtable.v1.Row>> futures = new ArrayList<>(
+        Collections.<ListenableFuture<com.google.bigtable.v1.Row>> nCopies(gets.size(), null));
+    issueGetRequests(client, gets, true, futures);
+    if (batchClient != client) {
+      issueGetRequests(batchClient, gets, true, futures);
+    }
 
-    Boolean[] exists = new Boolean[getResults.length];
-    for (int index = 0; index < getResults.length; index++) {
-      exists[index] = !getResults[index].isEmpty();
+    Boolean[] exists = new Boolean[gets.size()];
+    List<Throwable> problems = new ArrayList<Throwable>();
+    List<Row> problemActions = new ArrayList<Row>();
+    try {
+      for (int index = 0; index < exists.length; index++) {
+        try {
+          exists[index] = rowExists(futures.get(index).get());
+        } catch (ExecutionException e) {
+          problemActions.add(gets.get(index));
+          problems.add(e.getCause());
+        }
+      }
+    } catch (InterruptedException e) {
+      LOG.error("Encountered exception in exists(List<>).", e);
+      throw new IOException("Batch error", e);
+    }
+    if (problems.size() > 0) {
+      throw new RetriesExhaustedWithDetailsException(
+          problems, problemActions, new ArrayList<String>(problems.size()));
     }
     return exists;
   }
+
+  /**
+   * @return true if a row returned by an exists read has any cells.  Reads can return a row without
+   *         any, for example if their filter removed all of its cells.
+   */
+  static boolean rowExists(@Nullable com.google.bigtable.v1.Row row) {
+    return row != null && row.getFamiliesCount() > 0;
+  }
 }
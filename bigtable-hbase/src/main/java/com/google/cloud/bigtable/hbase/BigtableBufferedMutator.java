@@ -15,13 +15,22 @@
  */
 package com.google.cloud.bigtable.hbase;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
@@ -29,16 +38,25 @@ import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AbstractBigtableConnection;
 import org.apache.hadoop.hbase.client.Append;
 import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Increment;
 import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
 import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.ClassSize;
 
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.bigtable.v1.Mutation.MutationCase;
+import com.google.bigtable.v1.ReadModifyWriteRowRequest;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.RequestPriority;
 import com.google.cloud.bigtable.hbase.adapters.AppendAdapter;
 import com.google.cloud.bigtable.hbase.adapters.DeleteAdapter;
 import com.google.cloud.bigtable.hbase.adapters.GetAdapter;
@@ -51,13 +69,18 @@ import com.google.cloud.bigtable.hbase.adapters.ScanAdapter;
 import com.google.cloud.bigtable.hbase.adapters.UnsupportedOperationAdapter;
 import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.AsyncFunction;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.protobuf.ByteString;
 import com.google.protobuf.GeneratedMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
 
 /**
  * Bigtable's {@link BufferedMutator} implementation.
@@ -67,9 +90,8 @@ public class BigtableBufferedMutator implements BufferedMutator {
 
   protected static final Logger LOG = new Logger(BigtableBufferedMutator.class);
 
-  // Flush is not properly synchronized with respect to waiting. It will never exit
-  // improperly, but it might wait more than it has to. Setting this to a low value ensures
-  // that improper waiting is minimal.
+  // Mutations that are waiting for buffer space are woken up as soon as an operation completes.
+  // This is an upper bound on the wait in case a notification is missed.
   private static final long WAIT_MILLIS = 250;
 
   // In flush, wait up to this number of milliseconds without any operations completing.  If
@@ -77,28 +99,48 @@ public class BigtableBufferedMutator implements BufferedMutator {
   // will still wait to complete.
   private static final long INTERVAL_NO_SUCCESS_WARNING = 300000;
 
-  protected final ExecutorService heapSizeExecutor = Executors.newCachedThreadPool(
-    new ThreadFactoryBuilder()
-        .setNameFormat("heapSize-async-%s")
-        .setDaemon(true)
-        .build());
+  /**
+   * The executor that runs the completion callbacks of the mutations.  This is usually shared with
+   * the other mutators of the same connection.
+   */
+  protected final ExecutorService heapSizeExecutor;
+  private final boolean ownsHeapSizeExecutor;
+
+  /**
+   * Create an executor for mutation completion callbacks.  A single one can be shared by many
+   * mutators.
+   */
+  public static ExecutorService createHeapSizeExecutor() {
+    return Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder()
+          .setNameFormat("heapSize-async-%s")
+          .setDaemon(true)
+          .build());
+  }
 
   /**
    * This class ensures that operations meet heap size and max RPC counts.  A wait will occur
-   * if RPCs are requested after heap and RPC count thresholds are exceeded.
+   * if RPCs are requested after heap and RPC count thresholds are exceeded.  Each mutator has its
+   * own instance, and a connection can also have one that all of its mutators share, so that the
+   * total memory and RPC count are limited no matter how many tables are written to.
    */
-  @VisibleForTesting
-  static class HeapSizeManager {
+  public static class HeapSizeManager {
     private final long maxHeapSize;
     private final int maxInFlightRpcs;
     private long currentWriteBufferSize = 0;
     private long operationSequenceGenerator = 0;
 
     @VisibleForTesting
-    final Map<Long, Long> pendingOperationsWithSize = new HashMap<>();
+    final NavigableMap<Long, Long> pendingOperationsWithSize = new TreeMap<>();
     private long lastOperationChange = System.currentTimeMillis();
 
-    HeapSizeManager(long maxHeapSize, int maxInflightRpcs) {
+    /**
+     * Flushes that are waiting for operations to complete, keyed by the id of the last operation
+     * that was registered when the flush was requested.
+     */
+    private final NavigableMap<Long, SettableFuture<Void>> pendingFlushes = new TreeMap<>();
+
+    public HeapSizeManager(long maxHeapSize, int maxInflightRpcs) {
       this.maxHeapSize = maxHeapSize;
       this.maxInFlightRpcs = maxInflightRpcs;
     }
@@ -107,32 +149,91 @@ public class BigtableBufferedMutator implements BufferedMutator {
       return maxHeapSize;
     }
 
-    private synchronized void waitUntilAllOperationsAreDone() throws InterruptedException {
+    /**
+     * @return A future that is set when every operation that has been registered so far is
+     *         complete.  Operations registered afterwards don't delay it.
+     */
+    private synchronized ListenableFuture<Void> registerFlush() {
+      return registerFlush(operationSequenceGenerator);
+    }
+
+    /**
+     * @return A future that is set when every operation with an id up to
+     *         {@code lastOperationId} is complete.
+     */
+    private synchronized ListenableFuture<Void> registerFlush(long lastOperationId) {
+      if (pendingOperationsWithSize.isEmpty()
+          || pendingOperationsWithSize.firstKey() > lastOperationId) {
+        return Futures.immediateFuture(null);
+      }
+      SettableFuture<Void> future = pendingFlushes.get(lastOperationId);
+      if (future == null) {
+        future = SettableFuture.create();
+        pendingFlushes.put(lastOperationId, future);
+      }
+      return future;
+    }
+
+    private void waitUntilAllOperationsAreDone() throws InterruptedException {
+      waitForFlush(registerFlush());
+    }
+
+    /**
+     * Wait for a future from {@link #registerFlush()}, warning if no operations complete for a
+     * long time.
+     */
+    private void waitForFlush(ListenableFuture<?> flushFuture) throws InterruptedException {
       boolean performedWarning = false;
-      while(!pendingOperationsWithSize.isEmpty()) {
-        if (!performedWarning
-            && lastOperationChange + INTERVAL_NO_SUCCESS_WARNING < System.currentTimeMillis()) {
-          long lastUpdated = (System.currentTimeMillis() - lastOperationChange) / 1000;
-          LOG.warn("No operations completed within the last %d seconds."
-              + "There are still %d operations in progress.", lastUpdated,
-            pendingOperationsWithSize.size());
-          performedWarning = true;
+      while (true) {
+        try {
+          flushFuture.get(INTERVAL_NO_SUCCESS_WARNING, TimeUnit.MILLISECONDS);
+          break;
+        } catch (ExecutionException e) {
+          // registerFlush() futures are never failed.
+          throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+          synchronized (this) {
+            if (!performedWarning
+                && lastOperationChange + INTERVAL_NO_SUCCESS_WARNING < System.currentTimeMillis()) {
+              long lastUpdated = (System.currentTimeMillis() - lastOperationChange) / 1000;
+              LOG.warn("No operations completed within the last %d seconds."
+                  + "There are still %d operations in progress.", lastUpdated,
+                pendingOperationsWithSize.size());
+              performedWarning = true;
+            }
+          }
         }
-        wait(WAIT_MILLIS);
       }
       if (performedWarning) {
         LOG.info("flush() completed");
       }
     }
 
+    /**
+     * @return The id of the last operation that was registered.
+     */
+    private synchronized long getLastOperationId() {
+      return operationSequenceGenerator;
+    }
+
+    /**
+     * Take an id for an operation that failed before it could be registered, so that it is
+     * ordered with the operations that were.
+     */
+    private synchronized long nextOperationId() {
+      return ++operationSequenceGenerator;
+    }
+
     private synchronized long registerOperationWithHeapSize(long heapSize)
         throws InterruptedException {
-      long operationId = ++operationSequenceGenerator;
       while (currentWriteBufferSize >= maxHeapSize
           || pendingOperationsWithSize.size() >= maxInFlightRpcs) {
         wait(WAIT_MILLIS);
       }
 
+      // The id is assigned once the operation is registered, so that a flush never waits for an
+      // operation that isn't in pendingOperationsWithSize yet.
+      long operationId = ++operationSequenceGenerator;
       lastOperationChange = System.currentTimeMillis();
       pendingOperationsWithSize.put(operationId, heapSize);
       currentWriteBufferSize += heapSize;
@@ -140,16 +241,50 @@ public class BigtableBufferedMutator implements BufferedMutator {
     }
 
     @VisibleForTesting
-    synchronized void operationComplete(long operationSequenceId) {
-      lastOperationChange = System.currentTimeMillis();
-      Long heapSize = pendingOperationsWithSize.remove(operationSequenceId);
-      if (heapSize != null) {
-        currentWriteBufferSize -= heapSize;
-        notifyAll();
-      } else {
-        LOG.warn("An operation completion was recieved multiple times. Your operations completed."
-            + " Please notify Google that this occurred.");
+    void operationComplete(long operationSequenceId) {
+      List<SettableFuture<Void>> completedFlushes = null;
+      synchronized (this) {
+        lastOperationChange = System.currentTimeMillis();
+        Long heapSize = pendingOperationsWithSize.remove(operationSequenceId);
+        if (heapSize != null) {
+          currentWriteBufferSize -= heapSize;
+          notifyAll();
+          completedFlushes = removeCompletedFlushes();
+        } else {
+          LOG.warn("An operation completion was recieved multiple times. Your operations completed."
+              + " Please notify Google that this occurred.");
+        }
+      }
+      // Set the futures outside of the lock, since they may run listeners.
+      if (completedFlushes != null) {
+        for (SettableFuture<Void> flush : completedFlushes) {
+          flush.set(null);
+        }
+      }
+    }
+
+    /**
+     * Remove the flushes whose operations are all complete.  Must be called while holding the
+     * lock.
+     */
+    private List<SettableFuture<Void>> removeCompletedFlushes() {
+      if (pendingFlushes.isEmpty()) {
+        return null;
+      }
+      Map<Long, SettableFuture<Void>> completed = pendingOperationsWithSize.isEmpty()
+          ? pendingFlushes
+          : pendingFlushes.headMap(pendingOperationsWithSize.firstKey(), false);
+      if (completed.isEmpty()) {
+        return null;
       }
+      List<SettableFuture<Void>> result = new ArrayList<>(completed.values());
+      completed.clear();
+      return result;
+    }
+
+    private synchronized boolean hasCapacity() {
+      return currentWriteBufferSize < maxHeapSize
+          && pendingOperationsWithSize.size() < maxInFlightRpcs;
     }
 
     private synchronized boolean hasInflightRequests() {
@@ -166,10 +301,17 @@ public class BigtableBufferedMutator implements BufferedMutator {
   static class MutationException {
     private final Row mutation;
     private final Throwable throwable;
+    // The id of the failed operation in the mutator's sizeManager, or 0 if it's not known.
+    private final long operationSequenceId;
 
     MutationException(Row mutation, Throwable throwable) {
+      this(mutation, throwable, 0);
+    }
+
+    MutationException(Row mutation, Throwable throwable, long operationSequenceId) {
       this.mutation = mutation;
       this.throwable = throwable;
+      this.operationSequenceId = operationSequenceId;
     }
   }
 
@@ -178,11 +320,17 @@ public class BigtableBufferedMutator implements BufferedMutator {
 
   @VisibleForTesting
   final HeapSizeManager sizeManager;
+
+  /**
+   * The connection-wide budget, or null if this mutator is only limited by {@link #sizeManager}.
+   */
+  private final HeapSizeManager sharedSizeManager;
   private boolean closed = false;
 
   /**
-   * Makes sure that mutations and flushes are safe to proceed.  Ensures that while the mutator
-   * is closing, there will be no additional writes.
+   * Makes sure that mutations and close are safe to proceed.  Ensures that while the mutator
+   * is closing, there will be no additional writes.  Flushes don't need the lock, since they only
+   * wait for mutations that were already submitted.
    */
   private final ReentrantReadWriteLock mutationLock = new ReentrantReadWriteLock();
   private final BatchExecutor batchExecutor;
@@ -196,6 +344,81 @@ public class BigtableBufferedMutator implements BufferedMutator {
 
   private final String host;
 
+  /**
+   * Throttles mutations before they are issued.  This is usually shared with the other mutators
+   * of the same connection.
+   */
+  private final WriteRateLimiter writeRateLimiter;
+
+  // Estimated heap overhead of a protobuf message with a few fields, and of a String or ByteString
+  // field beyond its bytes.
+  private static final long PROTOBUF_MESSAGE_OVERHEAD =
+      ClassSize.align(ClassSize.OBJECT + 4 * ClassSize.REFERENCE + 2 * Bytes.SIZEOF_INT);
+  private static final long PROTOBUF_BYTES_FIELD_OVERHEAD =
+      ClassSize.align(ClassSize.OBJECT + ClassSize.REFERENCE + Bytes.SIZEOF_INT)
+          + ClassSize.align(ClassSize.ARRAY);
+
+  // Types of the records in the spill log.
+  private static final byte SPILL_TYPE_PUT = 1;
+  private static final byte SPILL_TYPE_DELETE = 2;
+
+  /**
+   * Puts and Deletes are written here instead of waiting when the memory budget is exhausted, or
+   * null if spilling is disabled.
+   */
+  private final SpillLog spillLog;
+
+  /**
+   * The id in the {@link #sizeManager} of the last record that was taken from the
+   * {@link #spillLog}.  Only written by the drainer thread.
+   */
+  private volatile long lastTakenSpillOperationId = 0;
+
+  /**
+   * If true, Puts and Deletes are serialized as soon as they are submitted, and only the
+   * serialized bytes are kept until the RPC is issued.
+   */
+  private final boolean serializeMutations;
+
+  /**
+   * If not null, mutations are assigned to a lane by the hash of their row key, and each mutation
+   * is only issued once the previous mutation in its lane has completed.  Each element is set when
+   * the last mutation issued in that lane completes.
+   */
+  private final ListenableFuture<?>[] laneTails;
+
+  /**
+   * If not null, Puts and Deletes for a row that already has a request in flight are merged into
+   * the row's next request.
+   */
+  private final MutationCoalescer coalescer;
+
+  /**
+   * If not null, Increments are summed here and sent periodically by the
+   * {@link #incrementFlusher}, instead of being sent one by one.
+   */
+  private final IncrementAccumulator incrementAccumulator;
+  private final ScheduledExecutorService incrementFlusher;
+
+  public BigtableBufferedMutator(
+      Configuration configuration,
+      TableName tableName,
+      int maxInflightRpcs,
+      long maxHeapSize,
+      BigtableClient client,
+      BigtableOptions options,
+      ExecutorService executorService,
+      BufferedMutator.ExceptionListener listener,
+      WriteRateLimiter writeRateLimiter) throws IOException {
+    this(configuration, tableName, maxInflightRpcs, maxHeapSize, client, options, executorService,
+        listener, writeRateLimiter, null, null);
+  }
+
+  /**
+   * @param sharedSizeManager A memory and RPC budget shared with other mutators, or null.
+   * @param heapSizeExecutor An executor for completion callbacks that is shared with other
+   *          mutators, or null to create one that is shut down when this mutator is closed.
+   */
   public BigtableBufferedMutator(
       Configuration configuration,
       TableName tableName,
@@ -204,14 +427,116 @@ public class BigtableBufferedMutator implements BufferedMutator {
       BigtableClient client,
       BigtableOptions options,
       ExecutorService executorService,
-      BufferedMutator.ExceptionListener listener) {
+      BufferedMutator.ExceptionListener listener,
+      WriteRateLimiter writeRateLimiter,
+      HeapSizeManager sharedSizeManager,
+      ExecutorService heapSizeExecutor) throws IOException {
+    this(configuration, tableName, maxInflightRpcs, maxHeapSize, client, client, options,
+        executorService, listener, writeRateLimiter, sharedSizeManager, heapSizeExecutor);
+  }
+
+  /**
+   * Mutations are sent through {@code batchClient}, unless they are tagged with
+   * {@link RequestPriority#INTERACTIVE} (see {@link OperationPriority}), in which case they are
+   * sent through {@code client}.  Tagged mutations are neither coalesced nor summed, and spilled
+   * mutations are always sent through {@code batchClient}.
+   */
+  public BigtableBufferedMutator(
+      Configuration configuration,
+      TableName tableName,
+      int maxInflightRpcs,
+      long maxHeapSize,
+      BigtableClient client,
+      BigtableClient batchClient,
+      BigtableOptions options,
+      ExecutorService executorService,
+      BufferedMutator.ExceptionListener listener,
+      WriteRateLimiter writeRateLimiter,
+      HeapSizeManager sharedSizeManager,
+      ExecutorService heapSizeExecutor) throws IOException {
+    this(configuration, tableName, maxInflightRpcs, maxHeapSize,
+        createBatchExecutor(configuration, tableName, client, batchClient, options,
+          executorService),
+        options.getDataHost().toString(), listener, writeRateLimiter, sharedSizeManager,
+        heapSizeExecutor);
+  }
+
+  /**
+   * @param batchExecutor The executor from {@link #createBatchExecutor}, which may be shared with
+   *          the other mutators of the table.
+   * @param host The host that failures are reported for.
+   */
+  public BigtableBufferedMutator(
+      Configuration configuration,
+      TableName tableName,
+      int maxInflightRpcs,
+      long maxHeapSize,
+      BatchExecutor batchExecutor,
+      String host,
+      BufferedMutator.ExceptionListener listener,
+      WriteRateLimiter writeRateLimiter,
+      HeapSizeManager sharedSizeManager,
+      ExecutorService heapSizeExecutor) throws IOException {
+    this.batchExecutor = batchExecutor;
+    this.host = host;
     this.sizeManager = new HeapSizeManager(maxHeapSize, maxInflightRpcs);
+    this.sharedSizeManager = sharedSizeManager;
     this.configuration = configuration;
     this.tableName = tableName;
     this.exceptionListener = listener;
+    this.writeRateLimiter = writeRateLimiter;
+    this.serializeMutations = configuration.getBoolean(
+      AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_SERIALIZE_MUTATIONS_KEY, false);
+    this.laneTails = createLaneTails(configuration.getInt(
+      AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_ORDERED_LANES_KEY, 0));
+    long incrementFlushIntervalMs = configuration.getLong(
+      AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_INCREMENT_FLUSH_INTERVAL_MS_KEY, 0);
+    this.incrementAccumulator = incrementFlushIntervalMs <= 0 ? null
+        : new IncrementAccumulator(configuration.getInt(
+            AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_INCREMENT_MAX_COUNTERS_KEY,
+            AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_INCREMENT_MAX_COUNTERS_DEFAULT),
+            incrementFlushIntervalMs);
+    this.incrementFlusher = startIncrementFlusher();
+    this.ownsHeapSizeExecutor = heapSizeExecutor == null;
+    this.heapSizeExecutor =
+        heapSizeExecutor == null ? createHeapSizeExecutor() : heapSizeExecutor;
+    // The coalescer completes requests on the heapSizeExecutor, so it's created afterwards.
+    this.coalescer = createCoalescer(configuration.getBoolean(
+      AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_COALESCE_MUTATIONS_KEY, false));
 
-    this.host = options.getDataHost().toString();
+    String spillDirectory =
+        configuration.get(AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_SPILL_DIRECTORY_KEY);
+    if (spillDirectory == null) {
+      this.spillLog = null;
+    } else {
+      this.spillLog = new SpillLog(
+          new File(new File(spillDirectory, tableName.getNamespaceAsString()),
+              tableName.getQualifierAsString()),
+          configuration.getInt(
+            AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_SPILL_SEGMENT_SIZE_KEY,
+            AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_SPILL_SEGMENT_SIZE_DEFAULT),
+          configuration.getLong(
+            AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_SPILL_MAX_SIZE_KEY,
+            AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_SPILL_MAX_SIZE_DEFAULT));
+      startSpillDrainer();
+    }
+  }
 
+  /**
+   * Create the executor that mutators of a table send their mutations through.  It holds the
+   * table's clients and adapters but no state of its own, so a connection creates one per table
+   * and shares it between all of the table's mutators.  Untagged mutations are sent through
+   * {@code batchClient}.
+   * @param executorService Runs the callbacks of {@link BatchExecutor#batch}, which mutators don't
+   *          use.
+   */
+  public static BatchExecutor createBatchExecutor(
+      Configuration configuration,
+      TableName tableName,
+      BigtableClient client,
+      BigtableClient batchClient,
+      BigtableOptions options,
+      ExecutorService executorService) {
     DeleteAdapter deleteAdapter = new DeleteAdapter();
     PutAdapter putAdapter = new PutAdapter(configuration);
     ScanAdapter scanAdapter = new ScanAdapter(FilterAdapter.buildAdapter());
@@ -228,8 +553,9 @@ public class BigtableBufferedMutator implements BufferedMutator {
     ListeningExecutorService listeningExecutorService =
         MoreExecutors.listeningDecorator(executorService);
 
-    batchExecutor = new BatchExecutor(
+    return new BatchExecutor(
         client,
+        batchClient,
         options,
         options.getClusterName().toTableName(tableName.getNameAsString()),
         listeningExecutorService,
@@ -239,7 +565,9 @@ public class BigtableBufferedMutator implements BufferedMutator {
         rowMutationsAdapter,
         new AppendAdapter(),
         new IncrementAdapter(),
-        new RowAdapter());
+        new RowAdapter(),
+        null,
+        RequestPriority.BATCH);
   }
 
   @VisibleForTesting
@@ -250,12 +578,110 @@ public class BigtableBufferedMutator implements BufferedMutator {
       String host,
       int maxInflightRpcs,
       TableName tableName) {
+    this(batchExecutor, maxHeapSize, exceptionListener, host, maxInflightRpcs, tableName,
+        new WriteRateLimiter());
+  }
+
+  @VisibleForTesting
+  public BigtableBufferedMutator(
+      BatchExecutor batchExecutor,
+      long maxHeapSize,
+      ExceptionListener exceptionListener,
+      String host,
+      int maxInflightRpcs,
+      TableName tableName,
+      WriteRateLimiter writeRateLimiter) {
+    this(batchExecutor, maxHeapSize, exceptionListener, host, maxInflightRpcs, tableName,
+        writeRateLimiter, null, false, 0, false, null);
+  }
+
+  @VisibleForTesting
+  BigtableBufferedMutator(
+      BatchExecutor batchExecutor,
+      long maxHeapSize,
+      ExceptionListener exceptionListener,
+      String host,
+      int maxInflightRpcs,
+      TableName tableName,
+      WriteRateLimiter writeRateLimiter,
+      SpillLog spillLog,
+      boolean serializeMutations,
+      int orderedLanes,
+      boolean coalesceMutations,
+      IncrementAccumulator incrementAccumulator) {
     this.batchExecutor = batchExecutor;
     this.configuration = null;
     this.exceptionListener = exceptionListener;
     this.host = host;
     this.tableName = tableName;
     this.sizeManager = new HeapSizeManager(maxHeapSize, maxInflightRpcs);
+    this.sharedSizeManager = null;
+    this.writeRateLimiter = writeRateLimiter;
+    this.ownsHeapSizeExecutor = true;
+    this.heapSizeExecutor = createHeapSizeExecutor();
+    this.spillLog = spillLog;
+    this.serializeMutations = serializeMutations;
+    this.laneTails = createLaneTails(orderedLanes);
+    this.coalescer = createCoalescer(coalesceMutations);
+    this.incrementAccumulator = incrementAccumulator;
+    this.incrementFlusher = startIncrementFlusher();
+    if (spillLog != null) {
+      startSpillDrainer();
+    }
+  }
+
+  private static ListenableFuture<?>[] createLaneTails(int orderedLanes) {
+    return orderedLanes > 0 ? new ListenableFuture<?>[orderedLanes] : null;
+  }
+
+  private MutationCoalescer createCoalescer(boolean coalesceMutations) {
+    if (!coalesceMutations) {
+      return null;
+    }
+    return new MutationCoalescer(
+        new Function<MutateRowRequest, ListenableFuture<? extends GeneratedMessage>>() {
+          @Override
+          public ListenableFuture<? extends GeneratedMessage> apply(MutateRowRequest request) {
+            return issueInLane(request.getRowKey().toByteArray(),
+              createIssuer(request, RequestPriority.BATCH));
+          }
+        }, heapSizeExecutor);
+  }
+
+  private ScheduledExecutorService startIncrementFlusher() {
+    if (incrementAccumulator == null) {
+      return null;
+    }
+    ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder()
+          .setNameFormat("bigtable-increment-flusher-%s")
+          .setDaemon(true)
+          .build());
+    long interval = incrementAccumulator.getFlushIntervalMillis();
+    flusher.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        ReadLock lock = mutationLock.readLock();
+        lock.lock();
+        try {
+          if (!closed) {
+            flushIncrements();
+          }
+        } finally {
+          lock.unlock();
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+    return flusher;
+  }
+
+  private void startSpillDrainer() {
+    new ThreadFactoryBuilder()
+        .setNameFormat("bigtable-spill-drainer-%s")
+        .setDaemon(true)
+        .build()
+        .newThread(new SpillDrainer())
+        .start();
   }
 
   @Override
@@ -266,27 +692,99 @@ public class BigtableBufferedMutator implements BufferedMutator {
       if (!closed) {
         closed = true;
         doFlush();
-        heapSizeExecutor.shutdown();
+        if (incrementFlusher != null) {
+          incrementFlusher.shutdown();
+        }
+        if (spillLog != null) {
+          spillLog.close();
+        }
+        if (ownsHeapSizeExecutor) {
+          heapSizeExecutor.shutdown();
+        }
       }
     } finally {
       lock.unlock();
     }
   }
 
+  /**
+   * Wait until every mutation that was submitted before this call is acknowledged.  Unlike
+   * {@link #close()}, this does not block other threads from submitting new mutations.
+   */
   @Override
   public void flush() throws IOException {
-    WriteLock lock = mutationLock.writeLock();
-    lock.lock();
+    LOG.trace("Flushing");
     try {
-      doFlush();
-    } finally {
-      lock.unlock();
+      sizeManager.waitForFlush(registerFlush());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
+    LOG.trace("Done flushing");
+    handleExceptions();
+  }
+
+  /**
+   * Start a flush without blocking.  The returned future is set once every mutation that was
+   * submitted before this call is acknowledged; mutations submitted afterwards don't delay it.
+   * If any of the mutations that were submitted before this call failed, the future fails with a
+   * {@link RetriesExhaustedWithDetailsException} for them instead.  Those failures are not passed
+   * to the {@link ExceptionListener}, since the future completes on another thread.  Failures of
+   * later mutations are left for the next flush or mutation.
+   */
+  public ListenableFuture<Void> flushAsync() {
+    return Futures.transform(registerFlush(), new AsyncFunction<Long, Void>() {
+      @Override
+      public ListenableFuture<Void> apply(Long lastOperationId) {
+        RetriesExhaustedWithDetailsException exception = takeExceptions(lastOperationId);
+        return exception == null
+            ? Futures.<Void> immediateFuture(null)
+            : Futures.<Void> immediateFailedFuture(exception);
+      }
+    });
+  }
+
+  /**
+   * @return A future that is set when every mutation that was submitted so far is complete,
+   *         including the ones that were spilled, to the id of the last operation it waited for.
+   */
+  private ListenableFuture<Long> registerFlush() {
+    flushIncrements();
+    // The spilled mutations are counted first, so that a record that's taken in between has an
+    // id up to lastOperationId.
+    ListenableFuture<Void> spillFlush = spillLog == null ? null : spillLog.registerFlush();
+    final long lastOperationId = sizeManager.getLastOperationId();
+    if (spillFlush == null || spillFlush.isDone()) {
+      return registerFlush(lastOperationId);
+    }
+    // Spilled mutations are registered with the sizeManager just before they are taken from the
+    // log, and the flush of the log is set by the take of its last record.  Ids only grow, so
+    // when the flush of the log is set, the last taken record has the id of the last spilled
+    // mutation to wait for, or a later one.
+    return Futures.transform(spillFlush, new AsyncFunction<Void, Long>() {
+      @Override
+      public ListenableFuture<Long> apply(Void ignored) {
+        return registerFlush(Math.max(lastOperationId, lastTakenSpillOperationId));
+      }
+    }, MoreExecutors.sameThreadExecutor());
+  }
+
+  private ListenableFuture<Long> registerFlush(final long lastOperationId) {
+    return Futures.transform(sizeManager.registerFlush(lastOperationId),
+      new Function<Void, Long>() {
+        @Override
+        public Long apply(Void ignored) {
+          return lastOperationId;
+        }
+      });
   }
 
   private void doFlush() throws IOException {
     LOG.trace("Flushing");
+    flushIncrements();
     try {
+      if (spillLog != null) {
+        sizeManager.waitForFlush(spillLog.registerFlush());
+      }
       sizeManager.waitUntilAllOperationsAreDone();
     } catch (InterruptedException e) {
       Thread.currentThread().interrupt();
@@ -310,6 +808,23 @@ public class BigtableBufferedMutator implements BufferedMutator {
     return this.sizeManager.getMaxHeapSize();
   }
 
+  /**
+   * @return The number of Puts and Deletes that were submitted for coalescing, or 0 if
+   *         coalescing is disabled.
+   */
+  public long getCoalescedMutationCount() {
+    return coalescer == null ? 0 : coalescer.getMutationCount();
+  }
+
+  /**
+   * @return The number of requests that coalesced Puts and Deletes were sent in, or 0 if
+   *         coalescing is disabled.  The ratio with {@link #getCoalescedMutationCount()} is the
+   *         average number of mutations merged into each request.
+   */
+  public long getCoalescedRequestCount() {
+    return coalescer == null ? 0 : coalescer.getRequestCount();
+  }
+
   @Override
   public void mutate(List<? extends Mutation> mutations) throws IOException {
     // Ensure that close() or flush() aren't current being called.
@@ -349,16 +864,56 @@ public class BigtableBufferedMutator implements BufferedMutator {
   }
 
   private void doMutation(final Mutation mutation) throws RetriesExhaustedWithDetailsException {
+    RequestPriority priority = OperationPriority.getPriority(mutation, RequestPriority.BATCH);
+    if (incrementAccumulator != null) {
+      if (mutation instanceof Increment && priority == RequestPriority.BATCH) {
+        accumulateIncrement((Increment) mutation);
+        return;
+      }
+      // Send the row's pending increments first, so that they aren't applied after this mutation.
+      ReadModifyWriteRowRequest pendingIncrements =
+          incrementAccumulator.drain(ByteString.copyFrom(mutation.getRow()));
+      if (pendingIncrements != null) {
+        issueIncrements(pendingIncrements);
+      }
+    }
     Long sequenceId = null;
+    Long sharedSequenceId = null;
+    MutateRowRequest request =
+        serializeMutations || coalescer != null ? adaptMutateRowRequest(mutation) : null;
+    // The adapted request wraps the mutation's arrays, so when serializing, its bytes are copied
+    // into one array of their own and the budget counts just those.  Otherwise the request's
+    // protobuf objects take up about as much heap as the mutation, and are kept until the RPC is
+    // issued.
+    byte[] serializedRequest =
+        serializeMutations && request != null ? request.toByteArray() : null;
+    long heapSize = serializedRequest != null ? serializedRequest.length : mutation.heapSize();
+    // Wait for the configured rate limits before taking up buffer space, so that a throttled
+    // mutation does not count against the in-flight RPC limit.
+    writeRateLimiter.acquire(heapSize);
     try {
+      if (spillLog != null && spillIfNeeded(mutation, request, serializedRequest)) {
+        return;
+      }
       // registerOperationWithHeapSize() waits until both the memory and rpc count maximum
-      // requirements are achieved.
-      sequenceId = sizeManager.registerOperationWithHeapSize(mutation.heapSize());
+      // requirements are achieved.  The mutator's own limits are checked first so that a mutator
+      // that is over its limits doesn't hold on to the connection's budget while it waits.
+      sequenceId = sizeManager.registerOperationWithHeapSize(heapSize);
+      if (sharedSizeManager != null) {
+        sharedSequenceId = sharedSizeManager.registerOperationWithHeapSize(heapSize);
+      }
     } catch (InterruptedException e) {
+      if (sequenceId != null) {
+        sizeManager.operationComplete(sequenceId);
+      }
       synchronized (globalExceptions) {
         // Add the exception to the list of global exceptions and handle the
         // RetriesExhaustedWithDetailsException.
-        addGlobalException(mutation, e);
+        if (sequenceId != null) {
+          addGlobalException(mutation, e, sequenceId);
+        } else {
+          addGlobalException(mutation, e);
+        }
         handleExceptions();
       }
       // The handleExceptions() or may not throw an exception.  Don't continue processing.
@@ -366,8 +921,335 @@ public class BigtableBufferedMutator implements BufferedMutator {
       return;
     }
 
-    AccountingFutureCallback callback = new AccountingFutureCallback(mutation, sequenceId);
-    Futures.addCallback(issueRequest(mutation), callback, heapSizeExecutor);
+    if (request == null) {
+      AccountingFutureCallback callback =
+          new AccountingFutureCallback(mutation, sequenceId, sharedSequenceId, null);
+      Futures.addCallback(issueInLane(mutation.getRow(),
+        new Callable<ListenableFuture<? extends GeneratedMessage>>() {
+          @Override
+          public ListenableFuture<? extends GeneratedMessage> call() {
+            return issueRequest(mutation);
+          }
+        }), callback, heapSizeExecutor);
+    } else {
+      // Only keep the row key, so that the mutation can be garbage collected while it's in flight.
+      Row row = serializeMutations
+          ? createRowKeyOnlyMutation(mutation instanceof Delete, mutation.getRow()) : mutation;
+      AccountingFutureCallback callback =
+          new AccountingFutureCallback(row, sequenceId, sharedSequenceId, null);
+      if (coalescer != null && priority == RequestPriority.BATCH) {
+        if (serializedRequest != null) {
+          // Don't let the coalescer keep the mutation's arrays while the row is in flight.
+          try {
+            request = MutateRowRequest.parseFrom(serializedRequest);
+          } catch (InvalidProtocolBufferException e) {
+            callback.onFailure(e);
+            return;
+          }
+        }
+        coalescer.submit(request, callback);
+      } else if (serializedRequest != null) {
+        Futures.addCallback(
+          issueInLane(mutation.getRow(), createIssuer(serializedRequest, priority)),
+          callback, heapSizeExecutor);
+      } else {
+        Futures.addCallback(issueInLane(mutation.getRow(), createIssuer(request, priority)),
+          callback, heapSizeExecutor);
+      }
+    }
+  }
+
+  private void accumulateIncrement(Increment increment) {
+    ReadModifyWriteRowRequest request;
+    try {
+      request = batchExecutor.adaptIncrementRequest(increment);
+    } catch (RuntimeException e) {
+      addGlobalException(increment, e);
+      return;
+    }
+    if (incrementAccumulator.add(request)) {
+      flushIncrements();
+    }
+  }
+
+  /**
+   * Send the pending sums of the {@link #incrementAccumulator}, if any.
+   */
+  private void flushIncrements() {
+    if (incrementAccumulator == null) {
+      return;
+    }
+    for (ReadModifyWriteRowRequest request : incrementAccumulator.drain()) {
+      issueIncrements(request);
+    }
+  }
+
+  /**
+   * Send the summed increments of one row.
+   */
+  private void issueIncrements(final ReadModifyWriteRowRequest request) {
+    byte[] rowKey = request.getRowKey().toByteArray();
+    // The summed Increments aren't kept, so failures are reported with just the row key.
+    Increment row = new Increment(rowKey);
+    long heapSize = estimateHeapSize(request);
+    writeRateLimiter.acquire(heapSize);
+    Long sequenceId = null;
+    Long sharedSequenceId = null;
+    try {
+      sequenceId = sizeManager.registerOperationWithHeapSize(heapSize);
+      if (sharedSizeManager != null) {
+        sharedSequenceId = sharedSizeManager.registerOperationWithHeapSize(heapSize);
+      }
+    } catch (InterruptedException e) {
+      if (sequenceId != null) {
+        sizeManager.operationComplete(sequenceId);
+        addGlobalException(row, e, sequenceId);
+      } else {
+        addGlobalException(row, e);
+      }
+      Thread.currentThread().interrupt();
+      return;
+    }
+    Futures.addCallback(issueInLane(rowKey,
+      new Callable<ListenableFuture<? extends GeneratedMessage>>() {
+        @Override
+        public ListenableFuture<? extends GeneratedMessage> call() {
+          return batchExecutor.issueReadModifyWriteRowRequest(request, RequestPriority.BATCH);
+        }
+      }), new AccountingFutureCallback(row, sequenceId, sharedSequenceId, null),
+      heapSizeExecutor);
+  }
+
+  /**
+   * Estimate the heap that a request's protobuf objects take up: its serialized bytes, plus the
+   * overhead of the request and rule messages and of their String and ByteString fields.
+   */
+  @VisibleForTesting
+  static long estimateHeapSize(ReadModifyWriteRowRequest request) {
+    int rules = request.getRulesCount();
+    return request.getSerializedSize()
+        + (1 + rules) * PROTOBUF_MESSAGE_OVERHEAD
+        + (2 + 2 * rules) * PROTOBUF_BYTES_FIELD_OVERHEAD;
+  }
+
+  private Callable<ListenableFuture<? extends GeneratedMessage>> createIssuer(
+      final MutateRowRequest request, final RequestPriority priority) {
+    return new Callable<ListenableFuture<? extends GeneratedMessage>>() {
+      @Override
+      public ListenableFuture<? extends GeneratedMessage> call() {
+        return batchExecutor.issueMutateRowRequest(request, priority);
+      }
+    };
+  }
+
+  /**
+   * Create an issuer that parses the request from its serialized bytes when it is called, so
+   * that only the bytes are kept until then.
+   */
+  private Callable<ListenableFuture<? extends GeneratedMessage>> createIssuer(
+      final byte[] serializedRequest, final RequestPriority priority) {
+    return new Callable<ListenableFuture<? extends GeneratedMessage>>() {
+      @Override
+      public ListenableFuture<? extends GeneratedMessage> call()
+          throws InvalidProtocolBufferException {
+        return batchExecutor.issueMutateRowRequest(MutateRowRequest.parseFrom(serializedRequest),
+          priority);
+      }
+    };
+  }
+
+  /**
+   * Issue an RPC for a mutation of {@code rowKey}.  If ordered lanes are enabled, the RPC waits
+   * until the previous RPC in the row's lane has completed, successfully or not.  RPCs in
+   * different lanes run in parallel.
+   */
+  private ListenableFuture<? extends GeneratedMessage> issueInLane(byte[] rowKey,
+      final Callable<ListenableFuture<? extends GeneratedMessage>> issuer) {
+    if (laneTails == null) {
+      return call(issuer);
+    }
+    int lane = (Arrays.hashCode(rowKey) & Integer.MAX_VALUE) % laneTails.length;
+    final SettableFuture<Void> done = SettableFuture.create();
+    ListenableFuture<?> previous;
+    synchronized (laneTails) {
+      previous = laneTails[lane];
+      laneTails[lane] = done;
+    }
+    ListenableFuture<? extends GeneratedMessage> result;
+    if (previous == null || previous.isDone()) {
+      result = call(issuer);
+    } else {
+      result = Futures.transform(previous, new AsyncFunction<Object, GeneratedMessage>() {
+        @SuppressWarnings("unchecked")
+        @Override
+        public ListenableFuture<GeneratedMessage> apply(Object ignored) {
+          return (ListenableFuture<GeneratedMessage>) call(issuer);
+        }
+      }, heapSizeExecutor);
+    }
+    result.addListener(new Runnable() {
+      @Override
+      public void run() {
+        done.set(null);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    return result;
+  }
+
+  private static ListenableFuture<? extends GeneratedMessage> call(
+      Callable<ListenableFuture<? extends GeneratedMessage>> issuer) {
+    try {
+      return issuer.call();
+    } catch (Exception e) {
+      return Futures.immediateFailedFuture(e);
+    }
+  }
+
+  /**
+   * @return The MutateRowRequest for a Put or Delete, or null for other mutations or if the
+   *         mutation is invalid.  Invalid mutations are reported when they are issued.
+   */
+  private MutateRowRequest adaptMutateRowRequest(Mutation mutation) {
+    if (!(mutation instanceof Put || mutation instanceof Delete)) {
+      return null;
+    }
+    try {
+      return batchExecutor.adaptMutateRowRequest(mutation);
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Create a stand-in for a mutation whose HBase object wasn't kept, for
+   * {@link RetriesExhaustedWithDetailsException}.
+   */
+  private static Row createRowKeyOnlyMutation(boolean isDelete, byte[] rowKey) {
+    return isDelete ? new Delete(rowKey) : new Put(rowKey);
+  }
+
+  /**
+   * Append a Put or Delete to the spill log if there are already spilled mutations (to keep the
+   * order) or if the memory budget is exhausted.  Spilled mutations may be sent again after a
+   * restart, so only idempotent ones are spilled: Deletes, and Puts whose cells all have a
+   * timestamp.  A Put with a cell that the server would stamp writes a new version every time it's
+   * sent, so like Increments and Appends it waits for the spilled mutations to be sent instead.
+   * @return true if the mutation was spilled.
+   */
+  private boolean spillIfNeeded(Mutation mutation, MutateRowRequest request,
+      byte[] serializedRequest) throws InterruptedException {
+    byte type;
+    if (mutation instanceof Put) {
+      type = SPILL_TYPE_PUT;
+    } else if (mutation instanceof Delete) {
+      type = SPILL_TYPE_DELETE;
+    } else {
+      sizeManager.waitForFlush(spillLog.registerFlush());
+      return false;
+    }
+    if (!shouldSpill()) {
+      return false;
+    }
+    if (request == null) {
+      request = adaptMutateRowRequest(mutation);
+      if (request == null) {
+        // Let the usual path report the invalid mutation.
+        return false;
+      }
+    }
+    if (type == SPILL_TYPE_PUT && !hasTimestamps(request)) {
+      sizeManager.waitForFlush(spillLog.registerFlush());
+      return false;
+    }
+    byte[] data = serializedRequest != null ? serializedRequest : request.toByteArray();
+    if (!spillLog.canAppend(data.length)) {
+      sizeManager.waitForFlush(spillLog.registerFlush());
+      return false;
+    }
+    synchronized (spillLog) {
+      // Check again, since the log may have been drained in the meantime.
+      if (!shouldSpill()) {
+        return false;
+      }
+      try {
+        spillLog.append(type, data);
+      } catch (IOException e) {
+        LOG.warn("Could not spill a mutation.", e);
+        addGlobalException(mutation, e);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * @return true if none of the cells that the request sets is left for the server to stamp.
+   */
+  @VisibleForTesting
+  static boolean hasTimestamps(MutateRowRequest request) {
+    for (int i = 0; i < request.getMutationsCount(); i++) {
+      com.google.bigtable.v1.Mutation mutation = request.getMutations(i);
+      if (mutation.getMutationCase() == MutationCase.SET_CELL
+          && mutation.getSetCell().getTimestampMicros() == -1) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean shouldSpill() {
+    synchronized (spillLog) {
+      return !spillLog.isEmpty() || !sizeManager.hasCapacity()
+          || (sharedSizeManager != null && !sharedSizeManager.hasCapacity());
+    }
+  }
+
+  /**
+   * Takes spilled mutations from the {@link SpillLog} in order, and sends them as soon as there is
+   * room in the memory budget.
+   */
+  private class SpillDrainer implements Runnable {
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          SpillLog.Record record = spillLog.peek();
+          if (record == null) {
+            return;
+          }
+          long size = record.getData().length;
+          long sequenceId = sizeManager.registerOperationWithHeapSize(size);
+          Long sharedSequenceId = null;
+          if (sharedSizeManager != null) {
+            sharedSequenceId = sharedSizeManager.registerOperationWithHeapSize(size);
+          }
+          lastTakenSpillOperationId = sequenceId;
+          spillLog.take(record);
+          issueSpilledRecord(record, sequenceId, sharedSequenceId);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private void issueSpilledRecord(SpillLog.Record record, long sequenceId,
+      Long sharedSequenceId) {
+    ListenableFuture<? extends GeneratedMessage> future;
+    Row row;
+    try {
+      MutateRowRequest request = MutateRowRequest.parseFrom(record.getData());
+      // The original mutation isn't kept, so failures are reported with just the row key.
+      byte[] rowKey = request.getRowKey().toByteArray();
+      row = createRowKeyOnlyMutation(record.getType() == SPILL_TYPE_DELETE, rowKey);
+      // Spilled records don't keep the priority of their mutation.
+      future = issueInLane(rowKey, createIssuer(request, RequestPriority.BATCH));
+    } catch (InvalidProtocolBufferException | RuntimeException e) {
+      row = null;
+      future = Futures.immediateFailedFuture(e);
+    }
+    AccountingFutureCallback callback =
+        new AccountingFutureCallback(row, sequenceId, sharedSequenceId, record);
+    Futures.addCallback(future, callback, heapSizeExecutor);
   }
 
   private ListenableFuture<? extends GeneratedMessage> issueRequest(final Mutation mutation) {
@@ -380,9 +1262,16 @@ public class BigtableBufferedMutator implements BufferedMutator {
     }
   }
 
+  /**
+   * Record the failure of a mutation that wasn't registered with the {@link #sizeManager}.
+   */
   private void addGlobalException(Row mutation, Throwable t) {
+    addGlobalException(mutation, t, sizeManager.nextOperationId());
+  }
+
+  private void addGlobalException(Row mutation, Throwable t, long operationSequenceId) {
     synchronized (globalExceptions) {
-      globalExceptions.add(new MutationException(mutation, t));
+      globalExceptions.add(new MutationException(mutation, t, operationSequenceId));
       hasExceptions.set(true);
     }
   }
@@ -405,44 +1294,95 @@ public class BigtableBufferedMutator implements BufferedMutator {
         globalExceptions.clear();
       }
 
-      List<Throwable> problems = new ArrayList<>(mutationExceptions.size());
-      ArrayList<String> hostnames = new ArrayList<>(mutationExceptions.size());
-      List<Row> failedMutations = new ArrayList<>(mutationExceptions.size());
+      exceptionListener.onException(createException(mutationExceptions), this);
+    }
+  }
 
-      for (MutationException mutationException : mutationExceptions) {
-        problems.add(mutationException.throwable);
-        failedMutations.add(mutationException.mutation);
-        hostnames.add(host);
+  /**
+   * Remove the failures of the operations with an id up to {@code lastOperationId}.
+   * @return An exception for the failures, or null if there weren't any.
+   */
+  private RetriesExhaustedWithDetailsException takeExceptions(long lastOperationId) {
+    List<MutationException> mutationExceptions = new ArrayList<>();
+    synchronized (globalExceptions) {
+      Iterator<MutationException> iterator = globalExceptions.iterator();
+      while (iterator.hasNext()) {
+        MutationException mutationException = iterator.next();
+        if (mutationException.operationSequenceId <= lastOperationId) {
+          mutationExceptions.add(mutationException);
+          iterator.remove();
+        }
       }
+      hasExceptions.set(!globalExceptions.isEmpty());
+    }
+    return mutationExceptions.isEmpty() ? null : createException(mutationExceptions);
+  }
 
-      RetriesExhaustedWithDetailsException exception = new RetriesExhaustedWithDetailsException(
-          problems, failedMutations, hostnames);
-      exceptionListener.onException(exception, this);
+  private RetriesExhaustedWithDetailsException createException(
+      List<MutationException> mutationExceptions) {
+    List<Throwable> problems = new ArrayList<>(mutationExceptions.size());
+    ArrayList<String> hostnames = new ArrayList<>(mutationExceptions.size());
+    List<Row> failedMutations = new ArrayList<>(mutationExceptions.size());
+
+    for (MutationException mutationException : mutationExceptions) {
+      problems.add(mutationException.throwable);
+      failedMutations.add(mutationException.mutation);
+      hostnames.add(host);
     }
+
+    return new RetriesExhaustedWithDetailsException(problems, failedMutations, hostnames);
   }
 
   private class AccountingFutureCallback implements FutureCallback<GeneratedMessage> {
     private final long operationSequenceId;
+    private final Long sharedOperationSequenceId;
+    private final SpillLog.Record spillRecord;
     private final Row mutation;
 
-    public AccountingFutureCallback(Row mutation, long operationSequenceId) {
+    public AccountingFutureCallback(Row mutation, long operationSequenceId,
+        Long sharedOperationSequenceId, SpillLog.Record spillRecord) {
       this.mutation = mutation;
       this.operationSequenceId = operationSequenceId;
+      this.sharedOperationSequenceId = sharedOperationSequenceId;
+      this.spillRecord = spillRecord;
     }
 
     @Override
     public void onFailure(Throwable t) {
-      addGlobalException(mutation, t);
-      sizeManager.operationComplete(operationSequenceId);
+      addGlobalException(mutation, t, operationSequenceId);
+      operationComplete();
     }
 
     @Override
     public void onSuccess(GeneratedMessage ignored) {
+      operationComplete();
+    }
+
+    private void operationComplete() {
+      // Release the connection's budget first, since flushes only wait on this mutator's.
+      if (sharedOperationSequenceId != null) {
+        sharedSizeManager.operationComplete(sharedOperationSequenceId);
+      }
+      if (spillRecord != null) {
+        try {
+          spillLog.acknowledge(spillRecord);
+        } catch (IOException e) {
+          LOG.warn("Could not clean up the spill log.", e);
+        }
+      }
       sizeManager.operationComplete(operationSequenceId);
     }
   }
 
   public boolean hasInflightRequests() {
-    return sizeManager.hasInflightRequests();
+    return sizeManager.hasInflightRequests() || (spillLog != null && !spillLog.isEmpty());
+  }
+
+  /**
+   * The {@link WriteRateLimiter} that throttles this mutator.  Changes to its rates take effect
+   * immediately for all mutators that share it.
+   */
+  public WriteRateLimiter getWriteRateLimiter() {
+    return writeRateLimiter;
   }
 }
@@ -120,6 +120,106 @@ public class BigtableOptionsFactory {
       "google.bigtable.grpc.retry.max.elapsed.backoff.ms";
   public static final int MAX_ELAPSED_BACKOFF_MS_DEFAULT = 3 * 60 * 1000; // 3 minutes
 
+  /**
+   * The maximum number of rows that an asynchronous read, such as a batch of Gets, may return.
+   * A read that returns more fails instead of buffering them.  0 means no limit.
+   */
+  public static final String BIGTABLE_ASYNC_READ_MAX_ROWS_KEY =
+      "google.bigtable.grpc.async.read.max.rows";
+
+  /**
+   * The maximum number of response bytes that an asynchronous read, such as a batch of Gets, may
+   * return.  A read that returns more fails instead of buffering them.  0 means no limit.
+   */
+  public static final String BIGTABLE_ASYNC_READ_MAX_BYTES_KEY =
+      "google.bigtable.grpc.async.read.max.bytes";
+
+  /**
+   * The minimum number of distinct row keys that a batch of Gets must have in a dense run of keys
+   * before the run is read with a single range read instead of one read per Get.  Only Gets that
+   * read the same columns with the same filters are combined.  0 disables range reads.
+   */
+  public static final String BIGTABLE_MULTIGET_RANGE_MIN_KEYS_KEY =
+      "google.bigtable.multiget.range.min.keys";
+  public static final int BIGTABLE_MULTIGET_RANGE_MIN_KEYS_DEFAULT = 0;
+
+  /**
+   * The maximum number of possible row keys between two consecutive keys of a range read that
+   * serves a batch of Gets.  Every row in the range is scanned on the server, so a small gap keeps
+   * range reads to dense runs of keys.
+   */
+  public static final String BIGTABLE_MULTIGET_RANGE_MAX_KEY_GAP_KEY =
+      "google.bigtable.multiget.range.max.key.gap";
+  public static final long BIGTABLE_MULTIGET_RANGE_MAX_KEY_GAP_DEFAULT = 64;
+
+  /**
+   * The maximum number of distinct row keys that a range read serving a batch of Gets may have.
+   * The range read matches its keys with a regular expression that grows with each key, so longer
+   * runs of keys are split into several range reads to keep it within the server's limits.
+   */
+  public static final String BIGTABLE_MULTIGET_RANGE_MAX_KEYS_KEY =
+      "google.bigtable.multiget.range.max.keys";
+  public static final int BIGTABLE_MULTIGET_RANGE_MAX_KEYS_DEFAULT = 100;
+
+  /**
+   * A comma-separated list of the tables whose rows are cached on the client.  Gets of a cached
+   * table are served from the cache of its connection where possible.  Writes made through the
+   * same connection remove their rows from the cache, but writes made by other clients are only
+   * seen once a cached row expires.  Unset by default, which caches no tables.
+   */
+  public static final String BIGTABLE_ROW_CACHE_TABLES_KEY = "google.bigtable.row.cache.tables";
+
+  /**
+   * The maximum number of rows to cache for each cached table.
+   */
+  public static final String BIGTABLE_ROW_CACHE_MAX_ROWS_KEY =
+      "google.bigtable.row.cache.max.rows";
+  public static final long BIGTABLE_ROW_CACHE_MAX_ROWS_DEFAULT = 10000;
+
+  /**
+   * How long, in milliseconds, a row is cached after it was read.  This bounds how stale a cached
+   * row can be when it's written by other clients.
+   */
+  public static final String BIGTABLE_ROW_CACHE_TTL_MS_KEY = "google.bigtable.row.cache.ttl.ms";
+  public static final long BIGTABLE_ROW_CACHE_TTL_MS_DEFAULT = 10 * 1000;
+
+  /**
+   * If true, reads with identical requests that are issued while one of them is in flight share
+   * its RPC.  A read never shares an RPC that was sent before a write of its row made through the
+   * same connection completed.  Defaults to false.
+   */
+  public static final String BIGTABLE_COALESCE_READS_KEY = "google.bigtable.read.coalesce.enable";
+  public static final boolean BIGTABLE_COALESCE_READS_DEFAULT = false;
+
+  /**
+   * The maximum number of read shapes (families, qualifiers, max versions, time range and filter)
+   * whose adapted RowFilters are cached and reused by later Gets and Scans with the same shape.
+   * 0 disables the cache.  Defaults to 0.
+   */
+  public static final String BIGTABLE_FILTER_CACHE_MAX_ENTRIES_KEY =
+      "google.bigtable.filter.cache.max.entries";
+  public static final int BIGTABLE_FILTER_CACHE_MAX_ENTRIES_DEFAULT = 0;
+
+  /**
+   * If true, Scans whose filter isn't fully supported by Cloud Bigtable are no longer rejected.
+   * The supported part of the filter that is safe to apply first is sent to the server, and the
+   * whole filter is evaluated by the client on the rows that are returned.  The split is logged
+   * at debug level.  Defaults to false.
+   */
+  public static final String BIGTABLE_HYBRID_FILTERING_KEY =
+      "google.bigtable.filter.hybrid.enable";
+  public static final boolean BIGTABLE_HYBRID_FILTERING_DEFAULT = false;
+
+  /**
+   * If true, Puts that don't specify a timestamp are stamped on the client with a monotonic clock
+   * instead of leaving the timestamp for the server to assign.  This makes the mutations
+   * idempotent, so they can be retried on transient failures.  Cells still get a "latest" time,
+   * but from the client's clock rather than the server's.
+   */
+  public static final String BIGTABLE_USE_CLIENT_TIMESTAMPS_KEY =
+      "google.bigtable.client.timestamps.enable";
+  public static final boolean BIGTABLE_USE_CLIENT_TIMESTAMPS_DEFAULT = false;
+
   /**
    * The number of grpc channels to open for asynchronous processing such as puts.
    */
@@ -133,6 +233,36 @@ public class BigtableOptionsFactory {
       "google.bigtable.grpc.channel.timeout.ms";
   public static final long BIGTABLE_CHANNEL_TIMEOUT_MS_DEFAULT = 30 * 60 * 1000;
 
+  /**
+   * The number of grpc channels to open for batch traffic such as scans and buffered mutations.
+   * When this is greater than 0, batch traffic gets its own channels and executor threads so that
+   * it doesn't add latency to interactive requests.  0 sends all traffic over the same channels.
+   */
+  public static final String BIGTABLE_BATCH_CHANNEL_COUNT_KEY =
+      "google.bigtable.grpc.batch.channel.count";
+  public static final int BIGTABLE_BATCH_CHANNEL_COUNT_DEFAULT = 0;
+
+  /**
+   * The number of threads that process batch traffic responses, if batch channels are enabled.
+   */
+  public static final String BIGTABLE_BATCH_THREAD_COUNT_KEY =
+      "google.bigtable.grpc.batch.thread.count";
+
+  /**
+   * The maximum number of interactive RPCs that can be in flight at the same time.  This only
+   * applies if batch channels are enabled with {@link #BIGTABLE_BATCH_CHANNEL_COUNT_KEY}; otherwise
+   * interactive RPCs aren't limited.  0 means no limit.
+   */
+  public static final String BIGTABLE_INTERACTIVE_MAX_INFLIGHT_RPCS_KEY =
+      "google.bigtable.grpc.interactive.max.inflight.rpcs";
+
+  /**
+   * The maximum number of batch RPCs that can be in flight at the same time, if batch channels are
+   * enabled.  0 means no limit.
+   */
+  public static final String BIGTABLE_BATCH_MAX_INFLIGHT_RPCS_KEY =
+      "google.bigtable.grpc.batch.max.inflight.rpcs";
+
   public static BigtableOptions fromConfiguration(final Configuration configuration)
       throws IOException {
 
@@ -217,6 +347,22 @@ public class BigtableOptionsFactory {
         configuration.getInt(BIGTABLE_CHANNEL_COUNT_KEY, BIGTABLE_CHANNEL_COUNT_DEFAULT);
     builder.setChannelCount(channelCount);
 
+    builder.setBatchChannelCount(configuration.getInt(BIGTABLE_BATCH_CHANNEL_COUNT_KEY,
+        BIGTABLE_BATCH_CHANNEL_COUNT_DEFAULT));
+    builder.setBatchThreadCount(configuration.getInt(BIGTABLE_BATCH_THREAD_COUNT_KEY,
+        BigtableOptions.DEFAULT_BATCH_THREAD_COUNT));
+    builder.setInteractiveMaxInflightRpcs(
+        configuration.getInt(BIGTABLE_INTERACTIVE_MAX_INFLIGHT_RPCS_KEY, 0));
+    builder.setBatchMaxInflightRpcs(configuration.getInt(BIGTABLE_BATCH_MAX_INFLIGHT_RPCS_KEY, 0));
+
+    int maxAsyncReadRows = configuration.getInt(BIGTABLE_ASYNC_READ_MAX_ROWS_KEY, 0);
+    LOG.debug("gRPC async read max rows: %d", maxAsyncReadRows);
+    builder.setMaxAsyncReadRows(maxAsyncReadRows);
+
+    long maxAsyncReadBytes = configuration.getLong(BIGTABLE_ASYNC_READ_MAX_BYTES_KEY, 0);
+    LOG.debug("gRPC async read max bytes: %d", maxAsyncReadBytes);
+    builder.setMaxAsyncReadBytes(maxAsyncReadBytes);
+
     long channelTimeout =
         configuration.getLong(BIGTABLE_CHANNEL_TIMEOUT_MS_KEY, BIGTABLE_CHANNEL_TIMEOUT_MS_DEFAULT);
 
@@ -58,8 +58,10 @@ import com.google.bigtable.v1.ReadRowsRequest;
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.Logger;
 import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.RequestPriority;
 import com.google.cloud.bigtable.hbase.adapters.AppendAdapter;
 import com.google.cloud.bigtable.hbase.adapters.BigtableResultScannerAdapter;
+import com.google.cloud.bigtable.hbase.adapters.ClientSideFilterEvaluator;
 import com.google.cloud.bigtable.hbase.adapters.DefaultReadHooks;
 import com.google.cloud.bigtable.hbase.adapters.DeleteAdapter;
 import com.google.cloud.bigtable.hbase.adapters.GetAdapter;
@@ -69,10 +71,13 @@ import com.google.cloud.bigtable.hbase.adapters.PutAdapter;
 import com.google.cloud.bigtable.hbase.adapters.ReadOperationAdapter;
 import com.google.cloud.bigtable.hbase.adapters.ResponseAdapter;
 import com.google.cloud.bigtable.hbase.adapters.RowAdapter;
+import com.google.cloud.bigtable.hbase.adapters.RowFilterCache;
 import com.google.cloud.bigtable.hbase.adapters.RowMutationsAdapter;
 import com.google.cloud.bigtable.hbase.adapters.ScanAdapter;
 import com.google.cloud.bigtable.hbase.adapters.UnsupportedOperationAdapter;
 import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
+import com.google.cloud.bigtable.hbase.adapters.filters.HybridFilterPlan;
+import com.google.cloud.bigtable.hbase.adapters.filters.HybridFilterPlanner;
 import com.google.cloud.bigtable.hbase.adapters.ReadHooks;
 import com.google.cloud.bigtable.naming.BigtableTableName;
 import com.google.common.base.Function;
@@ -91,6 +96,7 @@ public class BigtableTable implements Table {
   protected final TableName tableName;
   protected final BigtableOptions options;
   protected final BigtableClient client;
+  protected final BigtableClient batchClient;
   protected final ResponseAdapter<com.google.bigtable.v1.Row, Result> rowAdapter = new RowAdapter();
   protected final PutAdapter putAdapter;
   protected final AppendAdapter appendAdapter = new AppendAdapter();
@@ -101,6 +107,8 @@ public class BigtableTable implements Table {
   protected final ReadOperationAdapter<Scan> scanAdapter;
   protected final ReadOperationAdapter<Get> getAdapter;
   protected final FilterAdapter filterAdapter;
+  // Null unless unsupported filters are evaluated by the client.
+  protected final HybridFilterPlanner hybridFilterPlanner;
   protected final BigtableResultScannerAdapter bigtableResultScannerAdapter =
       new BigtableResultScannerAdapter(rowAdapter);
   protected final BatchExecutor batchExecutor;
@@ -109,18 +117,30 @@ public class BigtableTable implements Table {
 
   private final AbstractBigtableConnection bigtableConnection;
 
+  public BigtableTable(AbstractBigtableConnection bigtableConnection,
+      TableName tableName,
+      BigtableOptions options,
+      BigtableClient client,
+      ExecutorService executorService) {
+    this(bigtableConnection, tableName, options, client, client, executorService);
+  }
+
   /**
-   * Constructed by BigtableConnection
+   * Constructed by BigtableConnection.  Operations with a {@link RequestPriority#BATCH} priority
+   * (see {@link OperationPriority}) are sent through {@code batchClient}, and everything else is
+   * sent through {@code client}.
    */
   public BigtableTable(AbstractBigtableConnection bigtableConnection,
       TableName tableName,
       BigtableOptions options,
       BigtableClient client,
+      BigtableClient batchClient,
       ExecutorService executorService) {
     this.bigtableConnection = bigtableConnection;
     this.tableName = tableName;
     this.options = options;
     this.client = client;
+    this.batchClient = batchClient;
     putAdapter = new PutAdapter(getConfiguration());
     mutationAdapter = new MutationAdapter(
         deleteAdapter,
@@ -131,10 +151,17 @@ public class BigtableTable implements Table {
     this.executorService = MoreExecutors.listeningDecorator(executorService);
     this.bigtableTableName = options.getClusterName().toTableName(tableName.getNameAsString());
     this.filterAdapter = FilterAdapter.buildAdapter();
-    this.scanAdapter = new ScanAdapter(this.filterAdapter);
-    this.getAdapter = new GetAdapter(new ScanAdapter(this.filterAdapter));
+    RowFilterCache rowFilterCache = bigtableConnection.getRowFilterCache();
+    this.scanAdapter = new ScanAdapter(this.filterAdapter, rowFilterCache);
+    this.getAdapter = new GetAdapter(new ScanAdapter(this.filterAdapter, rowFilterCache));
+    this.hybridFilterPlanner = getConfiguration().getBoolean(
+            BigtableOptionsFactory.BIGTABLE_HYBRID_FILTERING_KEY,
+            BigtableOptionsFactory.BIGTABLE_HYBRID_FILTERING_DEFAULT)
+        ? new HybridFilterPlanner(this.filterAdapter)
+        : null;
     this.batchExecutor = new BatchExecutor(
         client,
+        batchClient,
         options,
         this.bigtableTableName,
         this.executorService,
@@ -144,7 +171,9 @@ public class BigtableTable implements Table {
         rowMutationsAdapter,
         appendAdapter,
         incrementAdapter,
-        rowAdapter);
+        rowAdapter,
+        MultiGetPlanner.fromConfiguration(getConfiguration()),
+        RequestPriority.INTERACTIVE);
   }
 
   @Override
@@ -171,9 +200,25 @@ public class BigtableTable implements Table {
   @Override
   public boolean exists(Get get) throws IOException {
     LOG.trace("exists(Get)");
-    // TODO: make use of strip_value() or count to hopefully return no extra data
-    Result result = get(get);
-    return !result.isEmpty();
+    // The read returns at most one cell, without its value.
+    ReadRowsRequest request = batchExecutor.adaptExistsRequest(get);
+    try {
+      com.google.cloud.bigtable.grpc.ResultScanner<com.google.bigtable.v1.Row> scanner =
+          getClient(get, RequestPriority.INTERACTIVE).readRows(request);
+      boolean exists = BatchExecutor.rowExists(scanner.next());
+      scanner.close();
+
+      return exists;
+    } catch (Throwable throwable) {
+      LOG.error("Encountered exception when executing exists.", throwable);
+      throw new IOException(
+          makeGenericExceptionMessage(
+              "exists",
+              options.getProjectId(),
+              tableName.getQualifierAsString(),
+              get.getRow()),
+          throwable);
+    }
   }
 
   @Override
@@ -224,7 +269,7 @@ public class BigtableTable implements Table {
     try {
       ReadRowsRequest finalRequest = readHooks.applyPreSendHook(readRowsRequest.build());
       com.google.cloud.bigtable.grpc.ResultScanner<com.google.bigtable.v1.Row> scanner =
-          client.readRows(finalRequest);
+          getClient(get, RequestPriority.INTERACTIVE).readRows(finalRequest);
       Result response = rowAdapter.adaptResponse(scanner.next());
       scanner.close();
 
@@ -250,14 +295,21 @@ public class BigtableTable implements Table {
   @Override
   public ResultScanner getScanner(Scan scan) throws IOException {
     LOG.trace("getScanner(Scan)");
+    if (hybridFilterPlanner != null && !hybridFilterPlanner.isFilterSupported(scan)) {
+      return getHybridScanner(scan);
+    }
     ReadHooks readHooks = new DefaultReadHooks();
     ReadRowsRequest.Builder request = scanAdapter.adapt(scan, readHooks);
     request.setTableName(bigtableTableName.toString());
 
     try {
       ReadRowsRequest finalRequest = readHooks.applyPreSendHook(request.build());
+      BigtableClient scanClient = getClient(scan, RequestPriority.BATCH);
+      // With a batch, a row is returned as several Results of at most that many cells.
       com.google.cloud.bigtable.grpc.ResultScanner<com.google.bigtable.v1.Row> scanner =
-          client.readRows(finalRequest);
+          scan.getBatch() > 0
+              ? scanClient.readRows(finalRequest, scan.getBatch())
+              : scanClient.readRows(finalRequest);
       return bigtableResultScannerAdapter.adapt(scanner);
     } catch (Throwable throwable) {
       LOG.error("Encountered exception when executing getScanner.", throwable);
@@ -270,6 +322,36 @@ public class BigtableTable implements Table {
     }
   }
 
+  /**
+   * Scan with the supported part of the filter, and evaluate the whole filter on the rows that
+   * are returned.
+   */
+  private ResultScanner getHybridScanner(Scan scan) throws IOException {
+    HybridFilterPlan plan = hybridFilterPlanner.plan(scan);
+    LOG.debug("Filtering scan of %s with %s", tableName.getQualifierAsString(), plan);
+    ReadHooks readHooks = new DefaultReadHooks();
+    ReadRowsRequest.Builder request = scanAdapter.adapt(plan.getServerScan(), readHooks);
+    request.setTableName(bigtableTableName.toString());
+
+    try {
+      ReadRowsRequest finalRequest = readHooks.applyPreSendHook(request.build());
+      com.google.cloud.bigtable.grpc.ResultScanner<com.google.bigtable.v1.Row> scanner =
+          getClient(scan, RequestPriority.BATCH).readRows(finalRequest);
+      return bigtableResultScannerAdapter.adapt(
+          scanner,
+          new ClientSideFilterEvaluator(plan.getClientFilter(), plan.getClientMaxVersions()),
+          scan.getBatch());
+    } catch (Throwable throwable) {
+      LOG.error("Encountered exception when executing getScanner.", throwable);
+      throw new IOException(
+          makeGenericExceptionMessage(
+              "getScanner",
+              options.getProjectId(),
+              tableName.getQualifierAsString()),
+          throwable);
+    }
+  }
+
   @Override
   public ResultScanner getScanner(byte[] family) throws IOException {
     LOG.trace("getScanner(byte[])");
@@ -289,7 +371,7 @@ public class BigtableTable implements Table {
     rowMutationBuilder.setTableName(bigtableTableName.toString());
 
     try {
-      client.mutateRow(rowMutationBuilder.build());
+      getClient(put, RequestPriority.INTERACTIVE).mutateRow(rowMutationBuilder.build());
     } catch (Throwable throwable) {
       LOG.error("Encountered ServiceException when executing put.", throwable);
       throw new IOException(
@@ -330,7 +412,7 @@ public class BigtableTable implements Table {
 
     try {
       CheckAndMutateRowResponse response =
-          client.checkAndMutateRow(requestBuilder.build());
+          getClient(put, RequestPriority.INTERACTIVE).checkAndMutateRow(requestBuilder.build());
       return wasMutationApplied(requestBuilder, response);
     } catch (Throwable throwable) {
       throw new IOException(
@@ -350,7 +432,7 @@ public class BigtableTable implements Table {
     requestBuilder.setTableName(bigtableTableName.toString());
 
     try {
-      client.mutateRow(requestBuilder.build());
+      getClient(delete, RequestPriority.INTERACTIVE).mutateRow(requestBuilder.build());
     } catch (Throwable throwable) {
       LOG.error("Encountered ServiceException when executing delete.", throwable);
       throw new IOException(
@@ -391,7 +473,7 @@ public class BigtableTable implements Table {
 
     try {
       CheckAndMutateRowResponse response =
-          client.checkAndMutateRow(requestBuilder.build());
+          getClient(delete, RequestPriority.INTERACTIVE).checkAndMutateRow(requestBuilder.build());
       return wasMutationApplied(requestBuilder, response);
     } catch (Throwable throwable) {
       throw new IOException(
@@ -465,7 +547,8 @@ public class BigtableTable implements Table {
     appendRowRequest.setTableName(bigtableTableName.toString());
     try {
       com.google.bigtable.v1.Row response =
-          client.readModifyWriteRow(appendRowRequest.build());
+          getClient(append, RequestPriority.INTERACTIVE).readModifyWriteRow(
+              appendRowRequest.build());
       // The bigtable API will always return the mutated results. In order to maintain
       // compatibility, simply return null when results were not requested.
       if (append.isReturnResults()) {
@@ -493,7 +576,8 @@ public class BigtableTable implements Table {
     incrementRowRequest.setTableName(bigtableTableName.toString());
 
     try {
-      com.google.bigtable.v1.Row response = client.readModifyWriteRow(incrementRowRequest.build());
+      com.google.bigtable.v1.Row response = getClient(increment, RequestPriority.INTERACTIVE)
+          .readModifyWriteRow(incrementRowRequest.build());
       return rowAdapter.adaptResponse(response);
     } catch (Throwable e) {
       LOG.error("Encountered RuntimeException when executing increment.", e);
@@ -675,6 +759,12 @@ public class BigtableTable implements Table {
     return requestBuilder;
   }
 
+  private BigtableClient getClient(Object operation, RequestPriority defaultPriority) {
+    return OperationPriority.getPriority(operation, defaultPriority) == RequestPriority.BATCH
+        ? batchClient
+        : client;
+  }
+
   static String makeGenericExceptionMessage(String operation, String projectId, String tableName) {
     return String.format(
         "Failed to perform operation. Operation='%s', projectId='%s', tableName='%s'",
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.List;
+
+import com.google.bigtable.v1.CheckAndMutateRowRequest;
+import com.google.bigtable.v1.CheckAndMutateRowResponse;
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.bigtable.v1.ReadModifyWriteRowRequest;
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.Row;
+import com.google.bigtable.v1.SampleRowKeysRequest;
+import com.google.bigtable.v1.SampleRowKeysResponse;
+import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.ResultScanner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+import com.google.protobuf.ServiceException;
+
+import io.grpc.stub.StreamObserver;
+
+/**
+ * A BigtableClient that passes every request to another client, and calls
+ * {@link #onRowWritten(ByteString)} when a write of a row completes.  Subclasses override the
+ * requests that they handle differently.
+ */
+abstract class ForwardingBigtableClient implements BigtableClient {
+
+  protected final BigtableClient delegate;
+
+  protected ForwardingBigtableClient(BigtableClient delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Called when a write of a row completes, whether or not it succeeded, since a failed write may
+   * still have been applied.  The future of an asynchronous write completes after this returns.
+   */
+  protected void onRowWritten(ByteString rowKey) {
+  }
+
+  @Override
+  public Empty mutateRow(MutateRowRequest request) throws ServiceException {
+    try {
+      return delegate.mutateRow(request);
+    } finally {
+      onRowWritten(request.getRowKey());
+    }
+  }
+
+  @Override
+  public ListenableFuture<Empty> mutateRowAsync(MutateRowRequest request) {
+    return notifyOnCompletion(delegate.mutateRowAsync(request), request.getRowKey());
+  }
+
+  @Override
+  public CheckAndMutateRowResponse checkAndMutateRow(CheckAndMutateRowRequest request)
+      throws ServiceException {
+    try {
+      return delegate.checkAndMutateRow(request);
+    } finally {
+      onRowWritten(request.getRowKey());
+    }
+  }
+
+  @Override
+  public ListenableFuture<CheckAndMutateRowResponse> checkAndMutateRowAsync(
+      CheckAndMutateRowRequest request) {
+    return notifyOnCompletion(delegate.checkAndMutateRowAsync(request), request.getRowKey());
+  }
+
+  @Override
+  public Row readModifyWriteRow(ReadModifyWriteRowRequest request) {
+    try {
+      return delegate.readModifyWriteRow(request);
+    } finally {
+      onRowWritten(request.getRowKey());
+    }
+  }
+
+  @Override
+  public ListenableFuture<Row> readModifyWriteRowAsync(ReadModifyWriteRowRequest request) {
+    return notifyOnCompletion(delegate.readModifyWriteRowAsync(request), request.getRowKey());
+  }
+
+  @Override
+  public ImmutableList<SampleRowKeysResponse> sampleRowKeys(SampleRowKeysRequest request) {
+    return delegate.sampleRowKeys(request);
+  }
+
+  @Override
+  public ListenableFuture<ImmutableList<SampleRowKeysResponse>> sampleRowKeysAsync(
+      SampleRowKeysRequest request) {
+    return delegate.sampleRowKeysAsync(request);
+  }
+
+  @Override
+  public ResultScanner<Row> readRows(ReadRowsRequest request) {
+    return delegate.readRows(request);
+  }
+
+  @Override
+  public ResultScanner<Row> readRows(ReadRowsRequest request, int cellsPerRow) {
+    return delegate.readRows(request, cellsPerRow);
+  }
+
+  @Override
+  public ListenableFuture<List<Row>> readRowsAsync(ReadRowsRequest request) {
+    return delegate.readRowsAsync(request);
+  }
+
+  @Override
+  public void readRowsAsync(ReadRowsRequest request, StreamObserver<Row> rowObserver) {
+    delegate.readRowsAsync(request, rowObserver);
+  }
+
+  /**
+   * @return A future that completes once the write completed and
+   *         {@link #onRowWritten(ByteString)} returned.
+   */
+  private <T> ListenableFuture<T> notifyOnCompletion(ListenableFuture<T> future,
+      final ByteString rowKey) {
+    final SettableFuture<T> result = SettableFuture.create();
+    Futures.addCallback(future, new FutureCallback<T>() {
+      @Override
+      public void onSuccess(T value) {
+        onRowWritten(rowKey);
+        result.set(value);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        onRowWritten(rowKey);
+        result.setException(t);
+      }
+    }, MoreExecutors.directExecutor());
+    return result;
+  }
+}
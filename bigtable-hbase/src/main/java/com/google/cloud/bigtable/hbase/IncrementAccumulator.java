@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.bigtable.v1.ReadModifyWriteRowRequest;
+import com.google.bigtable.v1.ReadModifyWriteRule;
+import com.google.common.base.Preconditions;
+import com.google.protobuf.ByteString;
+
+/**
+ * Sums increments per row, family and qualifier so that many increments of the same counters can
+ * be sent as one ReadModifyWriteRowRequest per row.  Rows are spread over lock stripes so that
+ * increments of different rows don't contend.
+ */
+class IncrementAccumulator {
+
+  private static final int STRIPE_COUNT = 16;
+
+  private static class Column {
+    private final String family;
+    private final ByteString qualifier;
+
+    Column(String family, ByteString qualifier) {
+      this.family = family;
+      this.qualifier = qualifier;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Column)) {
+        return false;
+      }
+      Column other = (Column) obj;
+      return family.equals(other.family) && qualifier.equals(other.qualifier);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * family.hashCode() + qualifier.hashCode();
+    }
+  }
+
+  private static class RowCounters {
+    private final String tableName;
+    // The sum for each counter, in the order that the counters were first incremented.
+    private final Map<Column, long[]> sums = new LinkedHashMap<>();
+
+    RowCounters(String tableName) {
+      this.tableName = tableName;
+    }
+  }
+
+  private final List<Map<ByteString, RowCounters>> stripes = new ArrayList<>(STRIPE_COUNT);
+  private final AtomicInteger counterCount = new AtomicInteger();
+  private final int maxCounters;
+  private final long flushIntervalMillis;
+
+  /**
+   * @param maxCounters The number of pending counters at which {@link #add} asks for a flush.
+   * @param flushIntervalMillis How often the pending counters should be flushed.
+   */
+  IncrementAccumulator(int maxCounters, long flushIntervalMillis) {
+    Preconditions.checkArgument(maxCounters > 0, "maxCounters must be positive");
+    Preconditions.checkArgument(flushIntervalMillis > 0, "flushIntervalMillis must be positive");
+    this.maxCounters = maxCounters;
+    this.flushIntervalMillis = flushIntervalMillis;
+    for (int i = 0; i < STRIPE_COUNT; i++) {
+      stripes.add(new HashMap<ByteString, RowCounters>());
+    }
+  }
+
+  long getFlushIntervalMillis() {
+    return flushIntervalMillis;
+  }
+
+  /**
+   * Add the increments of a request to the pending sums.
+   * @return true if there are enough pending counters that they should be flushed.
+   */
+  boolean add(ReadModifyWriteRowRequest request) {
+    ByteString rowKey = request.getRowKey();
+    Map<ByteString, RowCounters> stripe = getStripe(rowKey);
+    synchronized (stripe) {
+      RowCounters row = stripe.get(rowKey);
+      if (row == null) {
+        row = new RowCounters(request.getTableName());
+        stripe.put(rowKey, row);
+      }
+      for (ReadModifyWriteRule rule : request.getRulesList()) {
+        Column column = new Column(rule.getFamilyName(), rule.getColumnQualifier());
+        long[] sum = row.sums.get(column);
+        if (sum == null) {
+          sum = new long[1];
+          row.sums.put(column, sum);
+          counterCount.incrementAndGet();
+        }
+        sum[0] += rule.getIncrementAmount();
+      }
+    }
+    return counterCount.get() >= maxCounters;
+  }
+
+  /**
+   * Remove the pending sums.
+   * @return One request per row with pending increments.
+   */
+  List<ReadModifyWriteRowRequest> drain() {
+    List<ReadModifyWriteRowRequest> requests = new ArrayList<>();
+    for (Map<ByteString, RowCounters> stripe : stripes) {
+      synchronized (stripe) {
+        for (Map.Entry<ByteString, RowCounters> entry : stripe.entrySet()) {
+          requests.add(toRequest(entry.getKey(), entry.getValue()));
+        }
+        stripe.clear();
+      }
+    }
+    return requests;
+  }
+
+  /**
+   * Remove the pending sums of one row.
+   * @return A request for the row's pending increments, or null if it has none.
+   */
+  ReadModifyWriteRowRequest drain(ByteString rowKey) {
+    Map<ByteString, RowCounters> stripe = getStripe(rowKey);
+    synchronized (stripe) {
+      RowCounters row = stripe.remove(rowKey);
+      return row == null ? null : toRequest(rowKey, row);
+    }
+  }
+
+  private ReadModifyWriteRowRequest toRequest(ByteString rowKey, RowCounters row) {
+    ReadModifyWriteRowRequest.Builder builder = ReadModifyWriteRowRequest.newBuilder()
+        .setTableName(row.tableName)
+        .setRowKey(rowKey);
+    for (Map.Entry<Column, long[]> sum : row.sums.entrySet()) {
+      builder.addRulesBuilder()
+          .setFamilyName(sum.getKey().family)
+          .setColumnQualifier(sum.getKey().qualifier)
+          .setIncrementAmount(sum.getValue()[0]);
+    }
+    counterCount.addAndGet(-row.sums.size());
+    return builder.build();
+  }
+
+  /**
+   * @return The number of distinct counters with pending increments.
+   */
+  int getCounterCount() {
+    return counterCount.get();
+  }
+
+  private Map<ByteString, RowCounters> getStripe(ByteString rowKey) {
+    return stripes.get((rowKey.hashCode() & Integer.MAX_VALUE) % STRIPE_COUNT);
+  }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowFilter;
+import com.google.cloud.bigtable.hbase.adapters.ReaderExpressionHelper;
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.protobuf.ByteString;
+
+/**
+ * Plans the point reads of a batch of Gets as fewer range reads.  Reads that only differ in their
+ * row key are sorted by key, and runs of keys that are close together become a single read of
+ * the range between the first and last key, with a row key filter that only matches the
+ * requested keys.  Keys that aren't in such a run stay point reads.
+ *
+ * <p>The server scans every row of a range, so a range read is only worthwhile when the keys are
+ * dense.  Two keys are close if they have the same length, and the number of keys of that length
+ * between them is at most the maximum key gap.  A run becomes a range read when it has at least
+ * the minimum number of distinct keys.  Runs are split after the maximum number of distinct keys,
+ * since the row key filter of a range read grows with its keys.
+ */
+class MultiGetPlanner {
+
+  private static final Comparator<byte[]> KEY_COMPARATOR =
+      UnsignedBytes.lexicographicalComparator();
+
+  // Keys whose differing suffix is longer than this are never close.
+  private static final int MAX_SUFFIX_LENGTH = 7;
+
+  private static final byte[] KEY_SEPARATOR = { '|' };
+
+  /**
+   * A range read that serves several point reads.
+   */
+  static class RangeRead {
+    private final ReadRowsRequest request;
+    private final List<Integer> indexes;
+
+    RangeRead(ReadRowsRequest request, List<Integer> indexes) {
+      this.request = request;
+      this.indexes = indexes;
+    }
+
+    ReadRowsRequest getRequest() {
+      return request;
+    }
+
+    /**
+     * @return The indexes of the point reads that this read serves.
+     */
+    List<Integer> getIndexes() {
+      return indexes;
+    }
+  }
+
+  /**
+   * Create a planner from the configuration.
+   * @return null if range reads are disabled.
+   */
+  static MultiGetPlanner fromConfiguration(Configuration configuration) {
+    int minKeysPerRange = configuration.getInt(
+        BigtableOptionsFactory.BIGTABLE_MULTIGET_RANGE_MIN_KEYS_KEY,
+        BigtableOptionsFactory.BIGTABLE_MULTIGET_RANGE_MIN_KEYS_DEFAULT);
+    if (minKeysPerRange == 0) {
+      return null;
+    }
+    long maxKeyGap = configuration.getLong(
+        BigtableOptionsFactory.BIGTABLE_MULTIGET_RANGE_MAX_KEY_GAP_KEY,
+        BigtableOptionsFactory.BIGTABLE_MULTIGET_RANGE_MAX_KEY_GAP_DEFAULT);
+    int maxKeysPerRange = configuration.getInt(
+        BigtableOptionsFactory.BIGTABLE_MULTIGET_RANGE_MAX_KEYS_KEY,
+        BigtableOptionsFactory.BIGTABLE_MULTIGET_RANGE_MAX_KEYS_DEFAULT);
+    return new MultiGetPlanner(minKeysPerRange, maxKeyGap, maxKeysPerRange);
+  }
+
+  private final int minKeysPerRange;
+  private final long maxKeyGap;
+  private final int maxKeysPerRange;
+
+  /**
+   * @param minKeysPerRange The minimum number of distinct keys a range read must serve.
+   * @param maxKeyGap The maximum number of possible keys between consecutive keys of a range.
+   * @param maxKeysPerRange The maximum number of distinct keys a range read may serve.
+   */
+  MultiGetPlanner(int minKeysPerRange, long maxKeyGap, int maxKeysPerRange) {
+    Preconditions.checkArgument(minKeysPerRange > 1, "minKeysPerRange must be at least 2");
+    Preconditions.checkArgument(maxKeyGap >= 0, "maxKeyGap must not be negative");
+    Preconditions.checkArgument(maxKeysPerRange >= minKeysPerRange,
+        "maxKeysPerRange must be at least minKeysPerRange");
+    this.minKeysPerRange = minKeysPerRange;
+    this.maxKeyGap = maxKeyGap;
+    this.maxKeysPerRange = maxKeysPerRange;
+  }
+
+  /**
+   * Group point reads into range reads.
+   * @param requests Point reads, each with a row key.  Null entries are ignored.
+   * @return The range reads.  Requests that aren't served by a range read should be sent as they
+   *         are.
+   */
+  List<RangeRead> plan(List<ReadRowsRequest> requests) {
+    // Requests that are the same apart from their row key can share a read.
+    Map<ReadRowsRequest, List<Integer>> groups = new LinkedHashMap<>();
+    for (int index = 0; index < requests.size(); index++) {
+      ReadRowsRequest request = requests.get(index);
+      if (request == null || request.getTargetCase() != ReadRowsRequest.TargetCase.ROW_KEY
+          || request.getNumRowsLimit() != 0) {
+        continue;
+      }
+      ReadRowsRequest template = request.toBuilder().clearRowKey().build();
+      List<Integer> group = groups.get(template);
+      if (group == null) {
+        group = new ArrayList<>();
+        groups.put(template, group);
+      }
+      group.add(index);
+    }
+
+    List<RangeRead> rangeReads = new ArrayList<>();
+    for (Map.Entry<ReadRowsRequest, List<Integer>> group : groups.entrySet()) {
+      if (group.getValue().size() >= minKeysPerRange) {
+        planGroup(group.getKey(), group.getValue(), requests, rangeReads);
+      }
+    }
+    return rangeReads;
+  }
+
+  private void planGroup(ReadRowsRequest template, List<Integer> indexes,
+      List<ReadRowsRequest> requests, List<RangeRead> rangeReads) {
+    final byte[][] keys = new byte[requests.size()][];
+    for (int index : indexes) {
+      keys[index] = requests.get(index).getRowKey().toByteArray();
+    }
+    List<Integer> sorted = new ArrayList<>(indexes);
+    Collections.sort(sorted, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return KEY_COMPARATOR.compare(keys[a], keys[b]);
+      }
+    });
+
+    List<Integer> run = new ArrayList<>();
+    List<byte[]> runKeys = new ArrayList<>();
+    for (int index : sorted) {
+      byte[] key = keys[index];
+      if (!runKeys.isEmpty()) {
+        byte[] previous = runKeys.get(runKeys.size() - 1);
+        if (KEY_COMPARATOR.compare(previous, key) == 0) {
+          run.add(index);
+          continue;
+        }
+        if (runKeys.size() >= maxKeysPerRange || distance(previous, key) > maxKeyGap) {
+          addRangeRead(template, run, runKeys, rangeReads);
+          run = new ArrayList<>();
+          runKeys = new ArrayList<>();
+        }
+      }
+      run.add(index);
+      runKeys.add(key);
+    }
+    addRangeRead(template, run, runKeys, rangeReads);
+  }
+
+  private void addRangeRead(ReadRowsRequest template, List<Integer> run, List<byte[]> runKeys,
+      List<RangeRead> rangeReads) {
+    if (runKeys.size() < minKeysPerRange) {
+      return;
+    }
+    ReadRowsRequest.Builder builder = template.toBuilder();
+    byte[] lastKey = runKeys.get(runKeys.size() - 1);
+    builder.getRowRangeBuilder()
+        .setStartKey(ByteString.copyFrom(runKeys.get(0)))
+        // The end key is exclusive, so end at the key right after the last key.
+        .setEndKey(ByteString.copyFrom(lastKey).concat(ByteString.copyFrom(new byte[1])));
+    RowFilter keyFilter = RowFilter.newBuilder()
+        .setRowKeyRegexFilter(createKeyRegex(runKeys))
+        .build();
+    if (template.hasFilter()) {
+      builder.getFilterBuilder().clear().getChainBuilder()
+          .addFilters(keyFilter)
+          .addFilters(template.getFilter());
+    } else {
+      builder.setFilter(keyFilter);
+    }
+    rangeReads.add(new RangeRead(builder.build(), run));
+  }
+
+  /**
+   * @return A regular expression that matches exactly the given keys.
+   */
+  private static ByteString createKeyRegex(List<byte[]> keys) {
+    ByteArrayOutputStream regex = new ByteArrayOutputStream();
+    try {
+      for (int i = 0; i < keys.size(); i++) {
+        if (i > 0) {
+          regex.write(KEY_SEPARATOR);
+        }
+        ReaderExpressionHelper.writeQuotedRegularExpression(regex, keys.get(i));
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("IOException when writing to ByteArrayOutputStream", e);
+    }
+    return ByteString.copyFrom(regex.toByteArray());
+  }
+
+  /**
+   * @return The number of possible keys of the same length from {@code a} to {@code b}, where
+   *         {@code a} sorts before {@code b}, or Long.MAX_VALUE if the keys aren't comparable.
+   */
+  static long distance(byte[] a, byte[] b) {
+    if (a.length != b.length) {
+      return Long.MAX_VALUE;
+    }
+    int prefixLength = 0;
+    while (prefixLength < a.length && a[prefixLength] == b[prefixLength]) {
+      prefixLength++;
+    }
+    if (a.length - prefixLength > MAX_SUFFIX_LENGTH) {
+      return Long.MAX_VALUE;
+    }
+    long aSuffix = 0;
+    long bSuffix = 0;
+    for (int i = prefixLength; i < a.length; i++) {
+      aSuffix = (aSuffix << 8) | (a[i] & 0xff);
+      bSuffix = (bSuffix << 8) | (b[i] & 0xff);
+    }
+    return bSuffix - aSuffix;
+  }
+}
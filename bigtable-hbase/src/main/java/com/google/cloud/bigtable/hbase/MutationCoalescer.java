@@ -0,0 +1,163 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.GeneratedMessage;
+
+/**
+ * Merges {@link MutateRowRequest}s for the same row.  A row has at most one request in flight.
+ * Requests for a row that is in flight wait, and are merged in order into a single request that
+ * is sent once the in-flight request completes.  Each submitted request's callback is notified
+ * with the result of the request it was merged into.
+ */
+class MutationCoalescer {
+
+  /**
+   * The maximum number of mutations the server accepts in a single MutateRowRequest.
+   */
+  static final int MAX_MUTATIONS_PER_REQUEST = 100000;
+
+  private static class Batch {
+    private final MutateRowRequest.Builder builder;
+    private final List<FutureCallback<GeneratedMessage>> callbacks = new ArrayList<>();
+
+    Batch(MutateRowRequest request, FutureCallback<GeneratedMessage> callback) {
+      this.builder = request.toBuilder();
+      this.callbacks.add(callback);
+    }
+
+    boolean canAdd(MutateRowRequest request) {
+      return builder.getMutationsCount() + request.getMutationsCount()
+          <= MAX_MUTATIONS_PER_REQUEST;
+    }
+
+    void add(MutateRowRequest request, FutureCallback<GeneratedMessage> callback) {
+      builder.addAllMutations(request.getMutationsList());
+      callbacks.add(callback);
+    }
+  }
+
+  /**
+   * Batches that are waiting for a row's in-flight request to complete.  A row is in this map
+   * iff it has a request in flight.
+   */
+  private final Map<ByteString, ArrayDeque<Batch>> waitingBatches = new HashMap<>();
+
+  private final Function<MutateRowRequest, ListenableFuture<? extends GeneratedMessage>> issuer;
+  private final Executor callbackExecutor;
+
+  private final AtomicLong mutationCount = new AtomicLong();
+  private final AtomicLong requestCount = new AtomicLong();
+
+  MutationCoalescer(
+      Function<MutateRowRequest, ListenableFuture<? extends GeneratedMessage>> issuer,
+      Executor callbackExecutor) {
+    this.issuer = issuer;
+    this.callbackExecutor = callbackExecutor;
+  }
+
+  /**
+   * Send a request, or merge it into the next request for its row if the row has a request in
+   * flight.
+   */
+  void submit(MutateRowRequest request, FutureCallback<GeneratedMessage> callback) {
+    mutationCount.incrementAndGet();
+    ByteString rowKey = request.getRowKey();
+    synchronized (waitingBatches) {
+      ArrayDeque<Batch> waiting = waitingBatches.get(rowKey);
+      if (waiting != null) {
+        Batch last = waiting.peekLast();
+        if (last != null && last.canAdd(request)) {
+          last.add(request, callback);
+        } else {
+          waiting.addLast(new Batch(request, callback));
+        }
+        return;
+      }
+      waitingBatches.put(rowKey, new ArrayDeque<Batch>());
+    }
+    issue(rowKey, new Batch(request, callback));
+  }
+
+  private void issue(final ByteString rowKey, final Batch batch) {
+    requestCount.incrementAndGet();
+    ListenableFuture<? extends GeneratedMessage> future;
+    try {
+      future = issuer.apply(batch.builder.build());
+    } catch (RuntimeException e) {
+      future = Futures.immediateFailedFuture(e);
+    }
+    Futures.addCallback(future, new FutureCallback<GeneratedMessage>() {
+      @Override
+      public void onSuccess(GeneratedMessage result) {
+        issueNext(rowKey);
+        for (FutureCallback<GeneratedMessage> callback : batch.callbacks) {
+          callback.onSuccess(result);
+        }
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        issueNext(rowKey);
+        for (FutureCallback<GeneratedMessage> callback : batch.callbacks) {
+          callback.onFailure(t);
+        }
+      }
+    }, callbackExecutor);
+  }
+
+  private void issueNext(ByteString rowKey) {
+    Batch next;
+    synchronized (waitingBatches) {
+      ArrayDeque<Batch> waiting = waitingBatches.get(rowKey);
+      next = waiting.pollFirst();
+      if (next == null) {
+        waitingBatches.remove(rowKey);
+        return;
+      }
+    }
+    issue(rowKey, next);
+  }
+
+  /**
+   * @return The number of requests that were submitted.
+   */
+  long getMutationCount() {
+    return mutationCount.get();
+  }
+
+  /**
+   * @return The number of requests that were sent.  Together with {@link #getMutationCount()},
+   *         this gives the merge ratio.
+   */
+  long getRequestCount() {
+    return requestCount.get();
+  }
+}
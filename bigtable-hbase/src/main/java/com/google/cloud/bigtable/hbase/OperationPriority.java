@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import org.apache.hadoop.hbase.client.OperationWithAttributes;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import com.google.cloud.bigtable.grpc.RequestPriority;
+
+/**
+ * Static methods to tag HBase operations with a {@link RequestPriority}.  The tag is stored as an
+ * operation attribute.  Untagged operations get a default priority: scans and buffered mutations
+ * are {@link RequestPriority#BATCH}, everything else is {@link RequestPriority#INTERACTIVE}.
+ */
+public class OperationPriority {
+
+  /**
+   * The operation attribute that holds the name of a {@link RequestPriority}.
+   */
+  public static final String PRIORITY_ATTRIBUTE = "google.bigtable.request.priority";
+
+  /**
+   * Tag an operation with a priority.
+   */
+  public static <T extends OperationWithAttributes> T setPriority(T operation,
+      RequestPriority priority) {
+    operation.setAttribute(PRIORITY_ATTRIBUTE, Bytes.toBytes(priority.name()));
+    return operation;
+  }
+
+  /**
+   * Get the priority an operation was tagged with, or {@code defaultPriority} if it wasn't tagged
+   * or can't carry attributes (for example, {@link org.apache.hadoop.hbase.client.RowMutations}).
+   */
+  public static RequestPriority getPriority(Object operation, RequestPriority defaultPriority) {
+    if (!(operation instanceof OperationWithAttributes)) {
+      return defaultPriority;
+    }
+    byte[] value = ((OperationWithAttributes) operation).getAttribute(PRIORITY_ATTRIBUTE);
+    if (value == null) {
+      return defaultPriority;
+    }
+    try {
+      return RequestPriority.valueOf(Bytes.toString(value));
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          String.format("Unknown %s: %s", PRIORITY_ATTRIBUTE, Bytes.toString(value)), e);
+    }
+  }
+}
@@ -0,0 +1,491 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.Row;
+import com.google.bigtable.v1.RowRange;
+import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.ResultScanner;
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+
+/**
+ * Coalesces concurrent identical reads, so that reads with the same ReadRowsRequest that are
+ * issued while an earlier one is in flight share its RPC instead of sending their own.  Every
+ * caller gets its own future, so a caller can cancel its read without affecting the others.  The
+ * shared RPC is cancelled when every caller cancelled.
+ *
+ * <p>Reads and writes go through clients returned by {@link #wrap(BigtableClient)}.  Only reads
+ * through the same underlying client are coalesced, so that reads of different priorities don't
+ * share an RPC.  A read that is issued after a write of its row completed never shares an RPC that
+ * was sent before the write completed.
+ */
+public class ReadCoalescer {
+
+  /**
+   * Identifies reads that can share an RPC: the same request, through the same client.
+   */
+  private static class FlightKey {
+    private final BigtableClient client;
+    private final ReadRowsRequest request;
+
+    FlightKey(BigtableClient client, ReadRowsRequest request) {
+      this.client = client;
+      this.request = request;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof FlightKey)) {
+        return false;
+      }
+      FlightKey other = (FlightKey) obj;
+      return client == other.client && request.equals(other.request);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * System.identityHashCode(client) + request.hashCode();
+    }
+  }
+
+  /**
+   * An RPC that one or more reads are waiting for.
+   */
+  private class Flight {
+    private final FlightKey key;
+    private final ReadRowsRequest request;
+    // The map that the flight can be joined through.
+    private final ConcurrentMap<FlightKey, Flight> home;
+    private final SettableFuture<List<Row>> result = SettableFuture.create();
+    private volatile ListenableFuture<List<Row>> rpc;
+    // Guarded by this.
+    private int waiterCount = 0;
+    private boolean abandoned = false;
+
+    Flight(FlightKey key, ConcurrentMap<FlightKey, Flight> home) {
+      this.key = key;
+      this.request = key.request;
+      this.home = home;
+    }
+
+    /**
+     * @return false if every waiter cancelled and the flight can't be joined anymore.
+     */
+    synchronized boolean join() {
+      if (abandoned) {
+        return false;
+      }
+      waiterCount++;
+      return true;
+    }
+
+    void leave() {
+      synchronized (this) {
+        if (--waiterCount > 0 || result.isDone()) {
+          return;
+        }
+        abandoned = true;
+      }
+      remove();
+      result.cancel(false);
+      ListenableFuture<List<Row>> currentRpc = rpc;
+      if (currentRpc != null) {
+        currentRpc.cancel(true);
+      }
+    }
+
+    /**
+     * Stop later reads from joining the flight.
+     */
+    void remove() {
+      home.remove(key, this);
+      if (home.isEmpty()) {
+        getIndex(request).remove(getIndexKey(request), home);
+      }
+    }
+
+    void send(Function<ReadRowsRequest, ListenableFuture<List<Row>>> rpcSender) {
+      ListenableFuture<List<Row>> sentRpc;
+      try {
+        sentRpc = rpcSender.apply(request);
+      } catch (RuntimeException e) {
+        sentRpc = Futures.immediateFailedFuture(e);
+      }
+      rpc = sentRpc;
+      Futures.addCallback(sentRpc, new FutureCallback<List<Row>>() {
+        @Override
+        public void onSuccess(List<Row> rows) {
+          remove();
+          result.set(rows);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          remove();
+          result.setException(t);
+        }
+      }, MoreExecutors.directExecutor());
+      if (result.isCancelled()) {
+        // Every waiter cancelled before the RPC was assigned.
+        sentRpc.cancel(true);
+      }
+    }
+
+    /**
+     * @return A future for one waiter, which only cancels the RPC if it's the last waiter.
+     */
+    ListenableFuture<List<Row>> newWaiter() {
+      final SettableFuture<List<Row>> waiter = SettableFuture.create();
+      Futures.addCallback(result, new FutureCallback<List<Row>>() {
+        @Override
+        public void onSuccess(List<Row> rows) {
+          waiter.set(rows);
+        }
+
+        @Override
+        public void onFailure(Throwable t) {
+          waiter.setException(t);
+        }
+      }, MoreExecutors.directExecutor());
+      waiter.addListener(new Runnable() {
+        @Override
+        public void run() {
+          if (waiter.isCancelled()) {
+            leave();
+          }
+        }
+      }, MoreExecutors.directExecutor());
+      return waiter;
+    }
+  }
+
+  /**
+   * Orders row keys as unsigned bytes.
+   */
+  private static final Comparator<ByteString> ROW_KEY_COMPARATOR = new Comparator<ByteString>() {
+    @Override
+    public int compare(ByteString left, ByteString right) {
+      return ReadCoalescer.compare(left, right);
+    }
+  };
+
+  /**
+   * Flights of point reads by row key, so that a write only has to look at the reads of its row.
+   * An empty map may be removed while a flight is added to it, in which case that flight can't be
+   * joined, which is safe.  The same goes for {@link #rangeFlights}.
+   */
+  private final ConcurrentMap<ByteString, ConcurrentMap<FlightKey, Flight>> pointFlights =
+      new ConcurrentHashMap<>();
+  /**
+   * Flights of reads of ranges of rows, or of the whole table, by the first row key that they may
+   * read, so that a write doesn't have to look at reads that start after its row.
+   */
+  private final ConcurrentNavigableMap<ByteString, ConcurrentMap<FlightKey, Flight>> rangeFlights =
+      new ConcurrentSkipListMap<>(ROW_KEY_COMPARATOR);
+  private final AtomicLong rpcCount = new AtomicLong();
+  private final AtomicLong coalescedCount = new AtomicLong();
+
+  /**
+   * @return A client that coalesces identical reads with the reads of every other client that
+   *         this coalescer wrapped.
+   */
+  public BigtableClient wrap(BigtableClient client) {
+    return new CoalescingBigtableClient(client);
+  }
+
+  /**
+   * Read rows, sharing the RPC of an identical read through the same client that is in flight.
+   */
+  ListenableFuture<List<Row>> readRowsAsync(final BigtableClient client,
+      ReadRowsRequest request) {
+    return readRowsAsync(client, request,
+      new Function<ReadRowsRequest, ListenableFuture<List<Row>>>() {
+        @Override
+        public ListenableFuture<List<Row>> apply(ReadRowsRequest request) {
+          return client.readRowsAsync(request);
+        }
+      });
+  }
+
+  /**
+   * Read rows, sharing the RPC of an identical read through the same client that is in flight.
+   * If there is none, the rows are read with the rpcSender, in the calling thread.
+   */
+  private ListenableFuture<List<Row>> readRowsAsync(BigtableClient client,
+      ReadRowsRequest request, Function<ReadRowsRequest, ListenableFuture<List<Row>>> rpcSender) {
+    FlightKey key = new FlightKey(client, request);
+    while (true) {
+      ConcurrentMap<FlightKey, Flight> home = getFlights(request);
+      Flight flight = home.get(key);
+      if (flight != null) {
+        if (flight.join()) {
+          coalescedCount.incrementAndGet();
+          return flight.newWaiter();
+        }
+        // The flight was abandoned, and is being removed.
+        home.remove(key, flight);
+        continue;
+      }
+      Flight newFlight = new Flight(key, home);
+      newFlight.join();
+      if (home.putIfAbsent(key, newFlight) == null) {
+        rpcCount.incrementAndGet();
+        ListenableFuture<List<Row>> waiter = newFlight.newWaiter();
+        newFlight.send(rpcSender);
+        return waiter;
+      }
+    }
+  }
+
+  /**
+   * @return The map of flights that reads of the request can join.
+   */
+  private ConcurrentMap<FlightKey, Flight> getFlights(ReadRowsRequest request) {
+    ConcurrentMap<ByteString, ConcurrentMap<FlightKey, Flight>> index = getIndex(request);
+    ByteString indexKey = getIndexKey(request);
+    ConcurrentMap<FlightKey, Flight> flights = index.get(indexKey);
+    if (flights == null) {
+      flights = new ConcurrentHashMap<>();
+      ConcurrentMap<FlightKey, Flight> existing = index.putIfAbsent(indexKey, flights);
+      if (existing != null) {
+        flights = existing;
+      }
+    }
+    return flights;
+  }
+
+  /**
+   * @return The index that holds the flights of the request.
+   */
+  private ConcurrentMap<ByteString, ConcurrentMap<FlightKey, Flight>> getIndex(
+      ReadRowsRequest request) {
+    return request.getTargetCase() == ReadRowsRequest.TargetCase.ROW_KEY
+        ? pointFlights : rangeFlights;
+  }
+
+  /**
+   * @return The key of the request's flights in their index: the row key of a point read, the
+   *         start key of a range read, or the empty start of the table for other reads.
+   */
+  private static ByteString getIndexKey(ReadRowsRequest request) {
+    switch (request.getTargetCase()) {
+      case ROW_KEY:
+        return request.getRowKey();
+      case ROW_RANGE:
+        return request.getRowRange().getStartKey();
+      default:
+        return ByteString.EMPTY;
+    }
+  }
+
+  /**
+   * Stop later reads of a row that was written from sharing RPCs that are already in flight.
+   */
+  void onRowWritten(ByteString rowKey) {
+    pointFlights.remove(rowKey);
+    // Only reads that start at or before the row may read it.
+    for (Map.Entry<ByteString, ConcurrentMap<FlightKey, Flight>> entry
+        : rangeFlights.headMap(rowKey, true).entrySet()) {
+      ConcurrentMap<FlightKey, Flight> flights = entry.getValue();
+      Iterator<Flight> iterator = flights.values().iterator();
+      while (iterator.hasNext()) {
+        if (includesRow(iterator.next().request, rowKey)) {
+          iterator.remove();
+        }
+      }
+      if (flights.isEmpty()) {
+        rangeFlights.remove(entry.getKey(), flights);
+      }
+    }
+  }
+
+  /**
+   * @return true if a read of a range of rows, or of the whole table, may read the row.
+   */
+  private static boolean includesRow(ReadRowsRequest request, ByteString rowKey) {
+    if (request.getTargetCase() != ReadRowsRequest.TargetCase.ROW_RANGE) {
+      return true;
+    }
+    RowRange range = request.getRowRange();
+    return compare(range.getStartKey(), rowKey) <= 0
+        && (range.getEndKey().isEmpty() || compare(rowKey, range.getEndKey()) < 0);
+  }
+
+  /**
+   * Compare row keys as unsigned bytes.
+   */
+  private static int compare(ByteString left, ByteString right) {
+    int length = Math.min(left.size(), right.size());
+    for (int i = 0; i < length; i++) {
+      int difference = (left.byteAt(i) & 0xff) - (right.byteAt(i) & 0xff);
+      if (difference != 0) {
+        return difference;
+      }
+    }
+    return left.size() - right.size();
+  }
+
+  /**
+   * @return The number of reads that sent their own RPC.
+   */
+  public long getRpcCount() {
+    return rpcCount.get();
+  }
+
+  /**
+   * @return The number of reads that shared the RPC of an earlier read.
+   */
+  public long getCoalescedCount() {
+    return coalescedCount.get();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(ReadCoalescer.class)
+        .add("rpcs", getRpcCount())
+        .add("coalesced", getCoalescedCount())
+        .toString();
+  }
+
+  /**
+   * A BigtableClient that coalesces reads through a {@link ReadCoalescer}.  Point reads that
+   * return a scanner are coalesced too, since they return at most one row.
+   */
+  private class CoalescingBigtableClient extends ForwardingBigtableClient {
+
+    CoalescingBigtableClient(BigtableClient delegate) {
+      super(delegate);
+    }
+
+    @Override
+    protected void onRowWritten(ByteString rowKey) {
+      ReadCoalescer.this.onRowWritten(rowKey);
+    }
+
+    @Override
+    public ListenableFuture<List<Row>> readRowsAsync(ReadRowsRequest request) {
+      return ReadCoalescer.this.readRowsAsync(delegate, request);
+    }
+
+    /**
+     * Point reads are coalesced, but a point read that doesn't find a flight to join reads the
+     * row with {@link BigtableClient#readRows(ReadRowsRequest)}, so that it keeps the retries of
+     * that scanner.
+     */
+    @Override
+    public ResultScanner<Row> readRows(ReadRowsRequest request) {
+      if (request.getTargetCase() != ReadRowsRequest.TargetCase.ROW_KEY) {
+        return delegate.readRows(request);
+      }
+      return new FutureResultScanner(ReadCoalescer.this.readRowsAsync(delegate, request,
+        new Function<ReadRowsRequest, ListenableFuture<List<Row>>>() {
+          @Override
+          public ListenableFuture<List<Row>> apply(ReadRowsRequest request) {
+            return readAll(delegate, request);
+          }
+        }));
+    }
+  }
+
+  /**
+   * Read every row of a scanner in the calling thread.
+   */
+  private static ListenableFuture<List<Row>> readAll(BigtableClient client,
+      ReadRowsRequest request) {
+    List<Row> rows = new ArrayList<>();
+    try {
+      ResultScanner<Row> scanner = client.readRows(request);
+      try {
+        for (Row row = scanner.next(); row != null; row = scanner.next()) {
+          rows.add(row);
+        }
+      } finally {
+        scanner.close();
+      }
+    } catch (IOException e) {
+      return Futures.immediateFailedFuture(e);
+    }
+    return Futures.immediateFuture(rows);
+  }
+
+  /**
+   * Returns the rows of a future, waiting for them on the first read.
+   */
+  private static class FutureResultScanner implements ResultScanner<Row> {
+    private final ListenableFuture<List<Row>> future;
+    private Iterator<Row> rows;
+
+    FutureResultScanner(ListenableFuture<List<Row>> future) {
+      this.future = future;
+    }
+
+    @Override
+    public Row next() throws IOException {
+      if (rows == null) {
+        try {
+          rows = future.get().iterator();
+        } catch (InterruptedException e) {
+          future.cancel(true);
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for a read.");
+        } catch (ExecutionException e) {
+          throw new IOException("Error in a coalesced read.", e.getCause());
+        }
+      }
+      return rows.hasNext() ? rows.next() : null;
+    }
+
+    @Override
+    public Row[] next(int count) throws IOException {
+      List<Row> result = new ArrayList<>();
+      for (int i = 0; i < count; i++) {
+        Row row = next();
+        if (row == null) {
+          break;
+        }
+        result.add(row);
+      }
+      return result.toArray(new Row[result.size()]);
+    }
+
+    @Override
+    public void close() {
+      future.cancel(true);
+    }
+  }
+}
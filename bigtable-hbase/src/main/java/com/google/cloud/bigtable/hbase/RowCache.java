@@ -0,0 +1,234 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.hadoop.conf.Configuration;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.Row;
+import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.protobuf.ByteString;
+
+/**
+ * A bounded cache of the rows of one table that were read by point reads, such as Gets.  Each row
+ * can be cached for several reads of different columns or filters, so a cached read is keyed by
+ * its complete ReadRowsRequest.  Rows are evicted when the cache is full, and expire a fixed time
+ * after they were read.
+ *
+ * <p>Reads and writes go through a client returned by {@link #wrap(BigtableClient)}.  A write
+ * removes its row from the cache once it completes, and a read that was in flight while a write of
+ * its row completed isn't cached.  Writes that aren't made through a wrapped client are only seen
+ * once the row expires.
+ */
+public class RowCache {
+
+  /**
+   * The cached value of a read that found no row.
+   */
+  static final Row MISSING_ROW = Row.getDefaultInstance();
+
+  private static final int GENERATION_STRIPE_COUNT = 64;
+
+  /**
+   * Create a cache with the size and expiry from the configuration.
+   */
+  public static RowCache fromConfiguration(Configuration configuration) {
+    return new RowCache(
+        configuration.getLong(BigtableOptionsFactory.BIGTABLE_ROW_CACHE_MAX_ROWS_KEY,
+          BigtableOptionsFactory.BIGTABLE_ROW_CACHE_MAX_ROWS_DEFAULT),
+        configuration.getLong(BigtableOptionsFactory.BIGTABLE_ROW_CACHE_TTL_MS_KEY,
+          BigtableOptionsFactory.BIGTABLE_ROW_CACHE_TTL_MS_DEFAULT));
+  }
+
+  // The cached reads of each row.
+  private final Cache<ByteString, ConcurrentMap<ReadRowsRequest, Row>> rows;
+
+  // Each write completion increments the generation of its row's stripe.  A read is only cached
+  // if the generation of its row didn't change while it was in flight.
+  private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPE_COUNT);
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong evictionCount = new AtomicLong();
+  private final AtomicLong invalidationCount = new AtomicLong();
+
+  /**
+   * @param maxRows The maximum number of rows to cache.
+   * @param ttlMillis How long a row is cached after it was read.
+   */
+  public RowCache(long maxRows, long ttlMillis) {
+    this(maxRows, ttlMillis, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  RowCache(long maxRows, long ttlMillis, Ticker ticker) {
+    Preconditions.checkArgument(maxRows > 0, "maxRows must be positive");
+    Preconditions.checkArgument(ttlMillis > 0, "ttlMillis must be positive");
+    this.rows = CacheBuilder.newBuilder()
+        .maximumSize(maxRows)
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+        .ticker(ticker)
+        .removalListener(new RemovalListener<ByteString, ConcurrentMap<ReadRowsRequest, Row>>() {
+          @Override
+          public void onRemoval(
+              RemovalNotification<ByteString, ConcurrentMap<ReadRowsRequest, Row>> notification) {
+            if (notification.wasEvicted()) {
+              evictionCount.incrementAndGet();
+            }
+          }
+        })
+        .build();
+  }
+
+  /**
+   * @return A client that serves point reads from this cache where it can, and that removes rows
+   *         from this cache when they are written.
+   */
+  public BigtableClient wrap(BigtableClient client) {
+    return new RowCachingBigtableClient(client, this);
+  }
+
+  /**
+   * @return true if the result of the request can be cached.
+   */
+  static boolean isCacheable(ReadRowsRequest request) {
+    return request.getTargetCase() == ReadRowsRequest.TargetCase.ROW_KEY
+        && request.getNumRowsLimit() == 0;
+  }
+
+  /**
+   * @return The cached row for the request, {@link #MISSING_ROW} if the request found no row, or
+   *         null if the request isn't cached.
+   */
+  Row get(ReadRowsRequest request) {
+    ConcurrentMap<ReadRowsRequest, Row> reads = rows.getIfPresent(request.getRowKey());
+    Row row = reads == null ? null : reads.get(request);
+    if (row == null) {
+      missCount.incrementAndGet();
+    } else {
+      hitCount.incrementAndGet();
+    }
+    return row;
+  }
+
+  /**
+   * @return A token to pass to {@link #put(ReadRowsRequest, Row, long)} once the read of the row
+   *         completes.  It must be taken before the read is sent.
+   */
+  long startRead(ByteString rowKey) {
+    return generations.get(getStripe(rowKey));
+  }
+
+  /**
+   * Cache the result of a read, unless its row was written while the read was in flight.
+   * @param row The row that was read, or null if the row doesn't exist.
+   * @param generation The token from {@link #startRead(ByteString)}.
+   */
+  void put(ReadRowsRequest request, Row row, long generation) {
+    ByteString rowKey = request.getRowKey();
+    int stripe = getStripe(rowKey);
+    if (generations.get(stripe) != generation) {
+      return;
+    }
+    Row value = row == null ? MISSING_ROW : row;
+    ConcurrentMap<ReadRowsRequest, Row> reads = rows.getIfPresent(rowKey);
+    if (reads == null) {
+      rows.asMap().putIfAbsent(rowKey, new ConcurrentHashMap<ReadRowsRequest, Row>());
+      reads = rows.getIfPresent(rowKey);
+      if (reads == null) {
+        return;
+      }
+    }
+    reads.put(request, value);
+    // A write that completed while the read was being added may not have seen it.
+    if (generations.get(stripe) != generation) {
+      reads.remove(request, value);
+    }
+  }
+
+  /**
+   * Remove the cached reads of a row that was written.
+   */
+  void invalidate(ByteString rowKey) {
+    generations.incrementAndGet(getStripe(rowKey));
+    rows.invalidate(rowKey);
+    invalidationCount.incrementAndGet();
+  }
+
+  private static int getStripe(ByteString rowKey) {
+    return (rowKey.hashCode() & Integer.MAX_VALUE) % GENERATION_STRIPE_COUNT;
+  }
+
+  /**
+   * @return The number of reads that were served from the cache.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return The number of cacheable reads that were not in the cache.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return The number of rows that were removed because the cache was full or they expired.
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * @return The number of writes that removed a row from the cache.
+   */
+  public long getInvalidationCount() {
+    return invalidationCount.get();
+  }
+
+  /**
+   * @return The approximate number of cached rows.
+   */
+  public long size() {
+    return rows.size();
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(RowCache.class)
+        .add("rows", size())
+        .add("hits", getHitCount())
+        .add("misses", getMissCount())
+        .add("evictions", getEvictionCount())
+        .add("invalidations", getInvalidationCount())
+        .toString();
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.Row;
+import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.ResultScanner;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.ByteString;
+
+/**
+ * A BigtableClient that serves point reads from a {@link RowCache}, and removes rows from the
+ * cache when they are written.  Everything else is passed to the wrapped client.
+ */
+class RowCachingBigtableClient extends ForwardingBigtableClient {
+
+  private final RowCache rowCache;
+
+  RowCachingBigtableClient(BigtableClient delegate, RowCache rowCache) {
+    super(delegate);
+    this.rowCache = rowCache;
+  }
+
+  @Override
+  protected void onRowWritten(ByteString rowKey) {
+    rowCache.invalidate(rowKey);
+  }
+
+  @Override
+  public ResultScanner<Row> readRows(final ReadRowsRequest request) {
+    if (!RowCache.isCacheable(request)) {
+      return delegate.readRows(request);
+    }
+    Row cachedRow = rowCache.get(request);
+    if (cachedRow != null) {
+      return new CachedRowScanner(cachedRow == RowCache.MISSING_ROW ? null : cachedRow);
+    }
+    final long generation = rowCache.startRead(request.getRowKey());
+    final ResultScanner<Row> scanner = delegate.readRows(request);
+    // A point read returns at most one row, which is cached when it's read.
+    return new ResultScanner<Row>() {
+      private boolean read = false;
+
+      @Override
+      public Row next() throws IOException {
+        Row row = scanner.next();
+        if (!read) {
+          read = true;
+          rowCache.put(request, row, generation);
+        }
+        return row;
+      }
+
+      @Override
+      public Row[] next(int count) throws IOException {
+        Row[] rows = scanner.next(count);
+        if (!read && count > 0) {
+          read = true;
+          rowCache.put(request, rows.length == 0 ? null : rows[0], generation);
+        }
+        return rows;
+      }
+
+      @Override
+      public void close() throws IOException {
+        scanner.close();
+      }
+    };
+  }
+
+  @Override
+  public ListenableFuture<List<Row>> readRowsAsync(final ReadRowsRequest request) {
+    if (!RowCache.isCacheable(request)) {
+      return delegate.readRowsAsync(request);
+    }
+    Row cachedRow = rowCache.get(request);
+    if (cachedRow != null) {
+      return Futures.immediateFuture(cachedRow == RowCache.MISSING_ROW
+          ? Collections.<Row> emptyList()
+          : Collections.singletonList(cachedRow));
+    }
+    final long generation = rowCache.startRead(request.getRowKey());
+    ListenableFuture<List<Row>> future = delegate.readRowsAsync(request);
+    Futures.addCallback(future, new FutureCallback<List<Row>>() {
+      @Override
+      public void onSuccess(List<Row> rows) {
+        rowCache.put(request, rows.isEmpty() ? null : rows.get(0), generation);
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+      }
+    }, MoreExecutors.directExecutor());
+    return future;
+  }
+
+  /**
+   * Returns a cached row, or nothing if the row doesn't exist.
+   */
+  private static class CachedRowScanner implements ResultScanner<Row> {
+    private Row row;
+
+    CachedRowScanner(Row row) {
+      this.row = row;
+    }
+
+    @Override
+    public Row next() {
+      Row next = row;
+      row = null;
+      return next;
+    }
+
+    @Override
+    public Row[] next(int count) {
+      Row next = next();
+      return next == null || count == 0 ? new Row[0] : new Row[] { next };
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
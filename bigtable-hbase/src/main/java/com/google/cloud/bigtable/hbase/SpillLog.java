@@ -0,0 +1,463 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import com.google.cloud.bigtable.config.Logger;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * An append-only log of serialized mutations, stored in memory-mapped segment files in a local
+ * directory.  {@link BigtableBufferedMutator} appends to it when its memory budget is exhausted and
+ * drains it in order as capacity returns.
+ * <p>
+ * Each record moves through three states: appended, taken (handed to an RPC by
+ * {@link #take(Record)}) and acknowledged (the RPC completed).  A segment file is deleted once
+ * it is full and all of its records are acknowledged.
+ * <p>
+ * Each log keeps its segments in its own subdirectory of the directory that it is opened in, so
+ * that several logs, in this process or others, can share a directory.  Segments that are left
+ * over when a process exits are replayed in full by the next {@link SpillLog} that opens the
+ * directory, so a mutation may be sent more than once.
+ * <p>
+ * Records are laid out as a 4 byte length, a 1 byte type and the data.  The length is written
+ * last, so a record that was only partially written reads as the end of the segment.
+ */
+public class SpillLog implements Closeable {
+
+  protected static final Logger LOG = new Logger(SpillLog.class);
+
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String LOCK_FILE_NAME = "spill.lock";
+  private static final String INSTANCE_PREFIX = "instance-";
+
+  /**
+   * Held while a log is opened, together with the lock file of the shared directory, so that a
+   * log never takes over the subdirectory of another log that is being opened.  File locks only
+   * keep other processes out.
+   */
+  private static final Object OPEN_LOCK = new Object();
+  private static final int RECORD_HEADER_SIZE = 4 + 1;
+
+  /**
+   * A record that was read from the log.
+   */
+  public static class Record {
+    private final Segment segment;
+    private final int nextPosition;
+    private final byte type;
+    private final byte[] data;
+
+    private Record(Segment segment, int nextPosition, byte type, byte[] data) {
+      this.segment = segment;
+      this.nextPosition = nextPosition;
+      this.type = type;
+      this.data = data;
+    }
+
+    public byte getType() {
+      return type;
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+  }
+
+  private static class Segment {
+    private final File file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int writePosition = 0;
+    private int readPosition = 0;
+    private int recordCount = 0;
+    private int acknowledgedCount = 0;
+    private boolean sealed = false;
+
+    private Segment(File file, int size) throws IOException {
+      this.file = file;
+      this.channel = new RandomAccessFile(file, "rw").getChannel();
+      this.buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(size, channel.size()));
+    }
+
+    private int remaining() {
+      return buffer.capacity() - writePosition;
+    }
+
+    /**
+     * Find the end of the records that were written by a previous process.
+     */
+    private void recover() {
+      while (writePosition + RECORD_HEADER_SIZE <= buffer.capacity()) {
+        int length = buffer.getInt(writePosition);
+        if (length <= 0 || writePosition + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+          break;
+        }
+        writePosition += RECORD_HEADER_SIZE + length;
+        recordCount++;
+      }
+      sealed = true;
+    }
+
+    private boolean isDone() {
+      return sealed && acknowledgedCount == recordCount;
+    }
+
+    private void close(boolean delete) throws IOException {
+      buffer.force();
+      channel.close();
+      if (delete && !file.delete()) {
+        LOG.warn("Could not delete spill segment %s", file);
+      }
+    }
+  }
+
+  private final File directory;
+  private final int segmentSize;
+  private final int maxSegments;
+  private final RandomAccessFile lockFile;
+  private final FileLock lock;
+
+  /** Segments that still have records that weren't acknowledged, oldest first. */
+  private final Deque<Segment> segments = new ArrayDeque<>();
+  private long nextSegmentId = 0;
+  private long appendedCount = 0;
+  private long takenCount = 0;
+  private boolean closed = false;
+
+  /** Flushes waiting for records to be taken, keyed by the appended count they wait for. */
+  private final NavigableMap<Long, SettableFuture<Void>> pendingFlushes = new TreeMap<>();
+
+  /**
+   * Open a log in a new subdirectory of {@code parentDirectory}, picking up any records that
+   * earlier logs that are no longer open left behind.
+   * @param segmentSize The size of each segment file.
+   * @param maxSize The maximum total size of the segment files.  {@link #append(byte, byte[])}
+   *          waits while the log is this big.
+   * @throws IOException if the directory can't be used.
+   */
+  public SpillLog(File parentDirectory, int segmentSize, long maxSize) throws IOException {
+    Preconditions.checkArgument(segmentSize > RECORD_HEADER_SIZE, "segmentSize is too small");
+    Preconditions.checkArgument(maxSize >= segmentSize, "maxSize must be at least segmentSize");
+    if (!parentDirectory.isDirectory() && !parentDirectory.mkdirs()) {
+      throw new IOException("Could not create spill directory " + parentDirectory);
+    }
+    this.directory = new File(parentDirectory, INSTANCE_PREFIX + UUID.randomUUID());
+    this.segmentSize = segmentSize;
+    this.maxSegments = (int) Math.min(Integer.MAX_VALUE, maxSize / segmentSize);
+    synchronized (OPEN_LOCK) {
+      try (RandomAccessFile parentLockFile =
+              new RandomAccessFile(new File(parentDirectory, LOCK_FILE_NAME), "rw");
+          FileLock parentLock = parentLockFile.getChannel().lock()) {
+        if (!directory.mkdir()) {
+          throw new IOException("Could not create spill directory " + directory);
+        }
+        this.lockFile = new RandomAccessFile(new File(directory, LOCK_FILE_NAME), "rw");
+        this.lock = lockFile.getChannel().lock();
+        adoptOrphanedSegments(parentDirectory);
+      }
+    }
+    recoverSegments();
+  }
+
+  /**
+   * Move the segments of logs that are no longer open into this log's directory, oldest first,
+   * so that they are replayed before anything that is appended.
+   */
+  private void adoptOrphanedSegments(File parentDirectory) throws IOException {
+    // Earlier versions kept the segments of a single log in the shared directory itself.
+    adoptSegments(parentDirectory);
+    File[] instances = parentDirectory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(INSTANCE_PREFIX);
+      }
+    });
+    Arrays.sort(instances);
+    for (File instance : instances) {
+      if (instance.equals(directory)) {
+        continue;
+      }
+      File instanceLockFile = new File(instance, LOCK_FILE_NAME);
+      try (RandomAccessFile orphanLockFile = new RandomAccessFile(instanceLockFile, "rw")) {
+        FileLock orphanLock;
+        try {
+          orphanLock = orphanLockFile.getChannel().tryLock();
+        } catch (OverlappingFileLockException e) {
+          // Another SpillLog in this JVM is using it.
+          orphanLock = null;
+        }
+        if (orphanLock == null) {
+          continue;
+        }
+        try {
+          adoptSegments(instance);
+        } finally {
+          orphanLock.release();
+        }
+      }
+      if (!instanceLockFile.delete() || !instance.delete()) {
+        LOG.warn("Could not delete spill directory %s", instance);
+      }
+    }
+  }
+
+  private void adoptSegments(File segmentDirectory) throws IOException {
+    for (File segment : listSegments(segmentDirectory)) {
+      File adopted = newSegmentFile();
+      if (!segment.renameTo(adopted)) {
+        throw new IOException("Could not move spill segment " + segment + " to " + adopted);
+      }
+    }
+  }
+
+  private File[] listSegments(File segmentDirectory) {
+    File[] files = segmentDirectory.listFiles(new FilenameFilter() {
+      @Override
+      public boolean accept(File dir, String name) {
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+      }
+    });
+    // The ids are zero padded, so sorting by name sorts by age.
+    Arrays.sort(files);
+    return files;
+  }
+
+  private File newSegmentFile() {
+    return new File(directory,
+        String.format("%s%019d%s", SEGMENT_PREFIX, nextSegmentId++, SEGMENT_SUFFIX));
+  }
+
+  private void recoverSegments() throws IOException {
+    for (File file : listSegments(directory)) {
+      Segment segment = new Segment(file, 0);
+      segment.recover();
+      if (segment.recordCount == 0) {
+        segment.close(true);
+      } else {
+        segments.add(segment);
+        appendedCount += segment.recordCount;
+      }
+    }
+    if (appendedCount > 0) {
+      LOG.info("Replaying %d spilled mutations from %s", appendedCount, directory);
+    }
+  }
+
+  /**
+   * @return true if a record with {@code length} bytes of data fits in a segment.
+   */
+  public boolean canAppend(int length) {
+    return RECORD_HEADER_SIZE + length <= segmentSize;
+  }
+
+  /**
+   * @return true if every record that was appended has been taken.
+   */
+  public synchronized boolean isEmpty() {
+    return takenCount == appendedCount;
+  }
+
+  /**
+   * Append a record, waiting if the log is at its maximum size.
+   */
+  public synchronized void append(byte type, byte[] data)
+      throws IOException, InterruptedException {
+    Preconditions.checkArgument(canAppend(data.length), "The record is too big to spill.");
+    Preconditions.checkState(!closed, "The spill log is closed.");
+    int recordSize = RECORD_HEADER_SIZE + data.length;
+    Segment segment = segments.peekLast();
+    if (segment == null || segment.sealed || segment.remaining() < recordSize) {
+      if (segment != null && !segment.sealed) {
+        seal(segment);
+      }
+      while (segments.size() >= maxSegments) {
+        wait();
+        if (closed) {
+          throw new IOException("The spill log was closed.");
+        }
+      }
+      segment = new Segment(newSegmentFile(), segmentSize);
+      segments.add(segment);
+    }
+    ByteBuffer buffer = segment.buffer;
+    int position = segment.writePosition;
+    buffer.put(position + 4, type);
+    ByteBuffer dataBuffer = buffer.duplicate();
+    dataBuffer.position(position + RECORD_HEADER_SIZE);
+    dataBuffer.put(data);
+    buffer.putInt(position, data.length);
+    segment.writePosition += recordSize;
+    segment.recordCount++;
+    appendedCount++;
+    notifyAll();
+  }
+
+  private void seal(Segment segment) throws IOException {
+    segment.sealed = true;
+    if (segment.isDone()) {
+      removeSegment(segment);
+    }
+  }
+
+  /**
+   * Wait until there is a record that hasn't been taken, and read it.  The same record is
+   * returned until it is passed to {@link #take(Record)}.
+   * @return The oldest record that wasn't taken, or null if the log was closed.
+   */
+  public synchronized Record peek() throws InterruptedException {
+    while (!closed && takenCount == appendedCount) {
+      wait();
+    }
+    if (closed) {
+      return null;
+    }
+    for (Segment segment : segments) {
+      if (segment.readPosition < segment.writePosition) {
+        int position = segment.readPosition;
+        int length = segment.buffer.getInt(position);
+        byte type = segment.buffer.get(position + 4);
+        byte[] data = new byte[length];
+        ByteBuffer dataBuffer = segment.buffer.duplicate();
+        dataBuffer.position(position + RECORD_HEADER_SIZE);
+        dataBuffer.get(data);
+        return new Record(segment, position + RECORD_HEADER_SIZE + length, type, data);
+      }
+    }
+    throw new IllegalStateException("Spill log record counts are inconsistent.");
+  }
+
+  /**
+   * Mark a record from {@link #peek()} as handed off, so that the next record can be read.
+   */
+  public void take(Record record) {
+    List<SettableFuture<Void>> completedFlushes = null;
+    synchronized (this) {
+      Preconditions.checkState(record.segment.readPosition + RECORD_HEADER_SIZE
+          + record.data.length == record.nextPosition, "Records must be taken in order.");
+      record.segment.readPosition = record.nextPosition;
+      takenCount++;
+      Map<Long, SettableFuture<Void>> completed = pendingFlushes.headMap(takenCount, true);
+      if (!completed.isEmpty()) {
+        completedFlushes = new ArrayList<>(completed.values());
+        completed.clear();
+      }
+      notifyAll();
+    }
+    if (completedFlushes != null) {
+      for (SettableFuture<Void> flush : completedFlushes) {
+        flush.set(null);
+      }
+    }
+  }
+
+  /**
+   * Mark a taken record as complete.  Its segment is deleted once every record in it is
+   * acknowledged and no more records will be appended to it.
+   */
+  public synchronized void acknowledge(Record record) throws IOException {
+    Segment segment = record.segment;
+    segment.acknowledgedCount++;
+    if (segment.isDone()) {
+      removeSegment(segment);
+      notifyAll();
+    }
+  }
+
+  private void removeSegment(Segment segment) throws IOException {
+    segments.remove(segment);
+    segment.close(true);
+  }
+
+  /**
+   * @return A future that is set when every record that has been appended so far is taken.
+   */
+  public synchronized ListenableFuture<Void> registerFlush() {
+    if (takenCount == appendedCount) {
+      return Futures.immediateFuture(null);
+    }
+    SettableFuture<Void> future = pendingFlushes.get(appendedCount);
+    if (future == null) {
+      future = SettableFuture.create();
+      pendingFlushes.put(appendedCount, future);
+    }
+    return future;
+  }
+
+  @VisibleForTesting
+  synchronized int getSegmentCount() {
+    return segments.size();
+  }
+
+  /**
+   * @return The subdirectory that this log keeps its segments in.
+   */
+  @VisibleForTesting
+  File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Close the log.  Segments with records that weren't acknowledged are kept so that they can be
+   * replayed.  {@link #peek()} returns null from now on.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    notifyAll();
+    boolean keptSegments = false;
+    for (Segment segment : segments) {
+      boolean done = segment.acknowledgedCount == segment.recordCount;
+      segment.close(done);
+      keptSegments |= !done;
+    }
+    segments.clear();
+    lock.release();
+    lockFile.close();
+    if (!keptSegments
+        && (!new File(directory, LOCK_FILE_NAME).delete() || !directory.delete())) {
+      LOG.warn("Could not delete spill directory %s", directory);
+    }
+  }
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.cloud.bigtable.config.Logger;
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.RateLimiter;
+
+/**
+ * Throttles writes issued by {@link BigtableBufferedMutator}s to a configurable number of
+ * mutations per second and bytes per second.  A single instance is shared by all of the buffered
+ * mutators of a connection, so the limits apply to the connection as a whole.  Either limit can be
+ * changed while writes are in progress; a rate of zero or less disables that limit.
+ */
+public class WriteRateLimiter {
+
+  protected static final Logger LOG = new Logger(WriteRateLimiter.class);
+
+  // A null limiter means unlimited.  Readers take a snapshot of these references so that a
+  // concurrent switch between limited and unlimited is safe.
+  private volatile RateLimiter mutationLimiter;
+  private volatile RateLimiter byteLimiter;
+
+  private final AtomicLong mutationCount = new AtomicLong();
+  private final AtomicLong byteCount = new AtomicLong();
+  private final AtomicLong throttledNanos = new AtomicLong();
+  private final long startTimeNanos = System.nanoTime();
+
+  /**
+   * Creates a limiter that does not throttle.
+   */
+  public WriteRateLimiter() {
+    this(0, 0);
+  }
+
+  public WriteRateLimiter(double mutationsPerSecond, double bytesPerSecond) {
+    this.mutationLimiter = updateLimiter(null, mutationsPerSecond);
+    this.byteLimiter = updateLimiter(null, bytesPerSecond);
+  }
+
+  /**
+   * Sets the maximum number of mutations per second.  A value of zero or less removes the limit.
+   */
+  public synchronized void setMutationsPerSecond(double mutationsPerSecond) {
+    mutationLimiter = updateLimiter(mutationLimiter, mutationsPerSecond);
+    LOG.info("Write throttling set to %s mutations per second.", describeRate(mutationLimiter));
+  }
+
+  /**
+   * Sets the maximum number of bytes per second.  A value of zero or less removes the limit.
+   */
+  public synchronized void setBytesPerSecond(double bytesPerSecond) {
+    byteLimiter = updateLimiter(byteLimiter, bytesPerSecond);
+    LOG.info("Write throttling set to %s bytes per second.", describeRate(byteLimiter));
+  }
+
+  /**
+   * The maximum number of mutations per second, or 0 if mutations are not limited.
+   */
+  public double getMutationsPerSecond() {
+    return getRate(mutationLimiter);
+  }
+
+  /**
+   * The maximum number of bytes per second, or 0 if bytes are not limited.
+   */
+  public double getBytesPerSecond() {
+    return getRate(byteLimiter);
+  }
+
+  /**
+   * Blocks until a single mutation of the given size may be issued.
+   *
+   * @param byteSize The size of the mutation, in bytes.
+   * @return The number of nanoseconds the calling thread was throttled.
+   */
+  public long acquire(long byteSize) {
+    double waitSeconds = 0;
+    RateLimiter currentMutationLimiter = mutationLimiter;
+    if (currentMutationLimiter != null) {
+      waitSeconds += currentMutationLimiter.acquire();
+    }
+    RateLimiter currentByteLimiter = byteLimiter;
+    if (currentByteLimiter != null && byteSize > 0) {
+      waitSeconds += currentByteLimiter.acquire((int) Math.min(byteSize, Integer.MAX_VALUE));
+    }
+    mutationCount.incrementAndGet();
+    byteCount.addAndGet(byteSize);
+
+    long waitNanos = (long) (waitSeconds * TimeUnit.SECONDS.toNanos(1));
+    if (waitNanos > 0) {
+      throttledNanos.addAndGet(waitNanos);
+    }
+    return waitNanos;
+  }
+
+  /**
+   * Whether either of the limits is currently in effect.
+   */
+  public boolean isEnabled() {
+    return mutationLimiter != null || byteLimiter != null;
+  }
+
+  /**
+   * The total number of mutations that passed through this limiter.
+   */
+  public long getMutationCount() {
+    return mutationCount.get();
+  }
+
+  /**
+   * The total number of bytes that passed through this limiter.
+   */
+  public long getByteCount() {
+    return byteCount.get();
+  }
+
+  /**
+   * The cumulative time, summed across all writing threads, spent waiting on this limiter.
+   */
+  public long getThrottledTime(TimeUnit unit) {
+    return unit.convert(throttledNanos.get(), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * The average number of mutations per second since this limiter was created.
+   */
+  public double getAverageMutationsPerSecond() {
+    return perSecond(mutationCount.get());
+  }
+
+  /**
+   * The average number of bytes per second since this limiter was created.
+   */
+  public double getAverageBytesPerSecond() {
+    return perSecond(byteCount.get());
+  }
+
+  private double perSecond(long count) {
+    long elapsedNanos = Math.max(1, System.nanoTime() - startTimeNanos);
+    return count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(WriteRateLimiter.class)
+        .add("mutationsPerSecondLimit", describeRate(mutationLimiter))
+        .add("bytesPerSecondLimit", describeRate(byteLimiter))
+        .add("mutations", getMutationCount())
+        .add("bytes", getByteCount())
+        .add("averageMutationsPerSecond", String.format("%.1f", getAverageMutationsPerSecond()))
+        .add("averageBytesPerSecond", String.format("%.1f", getAverageBytesPerSecond()))
+        .add("throttledMs", getThrottledTime(TimeUnit.MILLISECONDS))
+        .toString();
+  }
+
+  private static RateLimiter updateLimiter(RateLimiter current, double rate) {
+    if (rate <= 0) {
+      return null;
+    } else if (current == null) {
+      return RateLimiter.create(rate);
+    } else {
+      current.setRate(rate);
+      return current;
+    }
+  }
+
+  private static double getRate(RateLimiter limiter) {
+    return limiter == null ? 0 : limiter.getRate();
+  }
+
+  private static String describeRate(RateLimiter limiter) {
+    return limiter == null ? "unlimited" : String.valueOf(limiter.getRate());
+  }
+}
@@ -17,18 +17,25 @@ package com.google.cloud.bigtable.hbase.adapters;
 
 import com.google.api.client.util.Throwables;
 import com.google.bigtable.v1.Row;
+import com.google.cloud.bigtable.config.Logger;
 
+import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.client.AbstractClientScanner;
 import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.client.ResultScanner;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
 
 /**
  * Adapt a Bigtable ResultScanner to an HBase Result Scanner.
  */
 public class BigtableResultScannerAdapter {
 
+  private static final Logger LOG = new Logger(BigtableResultScannerAdapter.class);
+
   final ResponseAdapter<Row, Result> rowAdapter;
 
   public BigtableResultScannerAdapter(ResponseAdapter<Row, Result> rowAdapter) {
@@ -58,4 +65,60 @@ public class BigtableResultScannerAdapter {
       }
     };
   }
+
+  /**
+   * Adapt a scanner of rows that still need to be filtered by the client.  Each row that the
+   * evaluator keeps is returned as Results of at most batch cells, or as a single Result if batch
+   * isn't positive.  The scan ends once the evaluator won't keep any more rows.
+   */
+  public ResultScanner adapt(
+      final com.google.cloud.bigtable.grpc.ResultScanner<Row> bigtableResultScanner,
+      final ClientSideFilterEvaluator evaluator,
+      final int batch) {
+    return new AbstractClientScanner() {
+      private final Deque<Result> pendingResults = new ArrayDeque<>();
+
+      @Override
+      public Result next() throws IOException {
+        while (pendingResults.isEmpty()) {
+          if (evaluator.isDone()) {
+            return null;
+          }
+          Row row = bigtableResultScanner.next();
+          if (row == null) {
+            // Null signals EOF.
+            return null;
+          }
+          Result result = evaluator.filterRow(rowAdapter.adaptResponse(row));
+          if (result != null) {
+            addBatches(result);
+          }
+        }
+        return pendingResults.poll();
+      }
+
+      private void addBatches(Result result) {
+        Cell[] cells = result.rawCells();
+        if (batch <= 0 || cells.length <= batch) {
+          pendingResults.add(result);
+          return;
+        }
+        for (int start = 0; start < cells.length; start += batch) {
+          int end = Math.min(start + batch, cells.length);
+          pendingResults.add(Result.create(Arrays.copyOfRange(cells, start, end)));
+        }
+      }
+
+      @Override
+      public void close() {
+        LOG.debug("Client-side filtering kept %d of %d rows read.",
+            evaluator.getRowsKept(), evaluator.getRowsRead());
+        try {
+          bigtableResultScanner.close();
+        } catch (IOException ioe) {
+          throw Throwables.propagate(ioe);
+        }
+      }
+    };
+  }
 }
@@ -19,11 +19,14 @@ import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.CellUtil;
 import org.apache.hadoop.hbase.client.Mutation;
 
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.LinkedList;
+import com.google.protobuf.BigtableZeroCopyByteStringUtil;
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Set;
 
 /**
  * Helper class to deduplicate Cells in a mutation.
@@ -32,49 +35,66 @@ import java.util.Map;
  */
 public class CellDeduplicationHelper {
 
-  protected static class QualifierOnlyKey {
-    final byte[] qualifier;
-
-    public QualifierOnlyKey(byte[] qualifier) {
-      this.qualifier = qualifier;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
-      }
-
-      QualifierOnlyKey that = (QualifierOnlyKey) o;
-
-      return Arrays.equals(qualifier, that.qualifier);
-    }
-
-    @Override
-    public int hashCode() {
-      return Arrays.hashCode(qualifier);
-    }
-  }
+  /**
+   * Families with at most this many cells are deduplicated by comparing every pair of cells,
+   * which doesn't allocate.  Larger families use a hash set of the qualifiers.
+   */
+  private static final int MAX_PAIRWISE_CELLS = 16;
 
   /**
    * Given a Mutation and a family with potentially duplicate cell family:qualifier combinations,
-   * remove all entries except for the last for that family:qualifier pair.
+   * remove all entries except for the last for that family:qualifier pair.  The remaining cells
+   * are returned in their original order.  The returned list must not be modified.
    */
   public static List<Cell> deduplicateFamily(Mutation mutation, byte[] family) {
-    List<Cell> result = new LinkedList<>();
-    Map<QualifierOnlyKey, Cell> latestCells = new HashMap<>();
     List<Cell> familyCells = mutation.getFamilyCellMap().get(family);
     if (familyCells == null || family.length == 0) {
-      return new LinkedList<>();
+      return Collections.emptyList();
+    }
+    int size = familyCells.size();
+    if (size == 1) {
+      return familyCells;
+    }
+    if (size <= MAX_PAIRWISE_CELLS) {
+      return deduplicatePairwise(familyCells);
+    }
+    // Walk backwards so that the last cell for each qualifier is the one that's kept.
+    Cell[] kept = new Cell[size];
+    int keptCount = 0;
+    Set<ByteString> qualifiers = new HashSet<>();
+    for (int i = size - 1; i >= 0; i--) {
+      Cell cell = familyCells.get(i);
+      ByteString qualifier = BigtableZeroCopyByteStringUtil.wrap(
+          cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+      if (qualifiers.add(qualifier)) {
+        kept[keptCount++] = cell;
+      }
     }
-    for (Cell cell : familyCells) {
-      QualifierOnlyKey key = new QualifierOnlyKey(CellUtil.cloneQualifier(cell));
-      latestCells.put(key, cell);
+    List<Cell> result = new ArrayList<>(keptCount);
+    for (int i = keptCount - 1; i >= 0; i--) {
+      result.add(kept[i]);
     }
-    result.addAll(latestCells.values());
     return result;
   }
+
+  private static List<Cell> deduplicatePairwise(List<Cell> familyCells) {
+    int size = familyCells.size();
+    List<Cell> result = null;
+    for (int i = 0; i < size; i++) {
+      Cell cell = familyCells.get(i);
+      boolean overwritten = false;
+      for (int j = i + 1; j < size && !overwritten; j++) {
+        overwritten = CellUtil.matchingQualifier(cell, familyCells.get(j));
+      }
+      if (overwritten) {
+        if (result == null) {
+          result = new ArrayList<>(familyCells.subList(0, i));
+        }
+      } else if (result != null) {
+        result.add(cell);
+      }
+    }
+    // Without duplicates, the family's own list is returned.
+    return result == null ? familyCells : result;
+  }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.Filter.ReturnCode;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluates an HBase Filter on the rows of a scan in the client, the way an HBase region server
+ * evaluates it: the row key is filtered first, then each cell in order, following the filter's
+ * requests to skip columns, skip the rest of the row or seek to a hint, and finally the row as a
+ * whole.  After filtering, at most maxVersions cells of each column are kept.
+ *
+ * <p>The filter is stateful, so an evaluator is used for the rows of a single scan, in order.
+ */
+public class ClientSideFilterEvaluator {
+
+  private final Filter filter;
+  private final int maxVersions;
+  private boolean done = false;
+  private long rowsRead = 0;
+  private long rowsKept = 0;
+
+  /**
+   * @param maxVersions The number of versions of each column to keep after filtering, or
+   *        Integer.MAX_VALUE to keep them all.
+   */
+  public ClientSideFilterEvaluator(Filter filter, int maxVersions) {
+    this.filter = filter;
+    this.maxVersions = maxVersions;
+  }
+
+  /**
+   * @return The cells of the row that the filter keeps, or null if it filters out the whole row.
+   */
+  public Result filterRow(Result row) throws IOException {
+    rowsRead++;
+    if (isDone()) {
+      return null;
+    }
+    filter.reset();
+    byte[] rowKey = row.getRow();
+    if (filter.filterRowKey(rowKey, 0, rowKey.length)) {
+      return null;
+    }
+
+    List<Cell> keptCells = new ArrayList<>();
+    Cell skippedColumn = null;
+    Cell seekHint = null;
+    for (Cell cell : row.rawCells()) {
+      if (seekHint != null && KeyValue.COMPARATOR.compare(cell, seekHint) < 0) {
+        continue;
+      }
+      seekHint = null;
+      if (skippedColumn != null && CellUtil.matchingColumn(cell, skippedColumn)) {
+        continue;
+      }
+      skippedColumn = null;
+      if (filter.filterAllRemaining()) {
+        break;
+      }
+      ReturnCode returnCode = filter.filterKeyValue(cell);
+      if (returnCode == ReturnCode.NEXT_ROW) {
+        break;
+      }
+      switch (returnCode) {
+        case INCLUDE:
+          keptCells.add(filter.transformCell(cell));
+          break;
+        case INCLUDE_AND_NEXT_COL:
+          keptCells.add(filter.transformCell(cell));
+          skippedColumn = cell;
+          break;
+        case NEXT_COL:
+          skippedColumn = cell;
+          break;
+        case SEEK_NEXT_USING_HINT:
+          seekHint = filter.getNextCellHint(cell);
+          break;
+        default:
+          // SKIP
+          break;
+      }
+    }
+
+    if (filter.hasFilterRow()) {
+      filter.filterRowCells(keptCells);
+    }
+    if (keptCells.isEmpty() || filter.filterRow()) {
+      return null;
+    }
+    rowsKept++;
+    return Result.create(limitVersions(keptCells));
+  }
+
+  /**
+   * @return true if the filter won't keep any more rows, so the scan can end.
+   */
+  public boolean isDone() throws IOException {
+    if (!done && filter.filterAllRemaining()) {
+      done = true;
+    }
+    return done;
+  }
+
+  /**
+   * @return The number of rows that were given to the filter.
+   */
+  public long getRowsRead() {
+    return rowsRead;
+  }
+
+  /**
+   * @return The number of rows that the filter kept.
+   */
+  public long getRowsKept() {
+    return rowsKept;
+  }
+
+  /**
+   * Keep the first maxVersions cells of each column.  Cells are sorted with the latest version
+   * of a column first.
+   */
+  private List<Cell> limitVersions(List<Cell> cells) {
+    if (maxVersions == Integer.MAX_VALUE) {
+      return cells;
+    }
+    List<Cell> limitedCells = new ArrayList<>(cells.size());
+    Cell column = null;
+    int versions = 0;
+    for (Cell cell : cells) {
+      if (column == null || !CellUtil.matchingColumn(cell, column)) {
+        column = cell;
+        versions = 0;
+      }
+      if (versions < maxVersions) {
+        limitedCells.add(cell);
+      }
+      versions++;
+    }
+    return limitedCells;
+  }
+}
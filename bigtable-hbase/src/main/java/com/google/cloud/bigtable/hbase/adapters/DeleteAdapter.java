@@ -21,6 +21,7 @@ import com.google.bigtable.v1.Mutation.Builder;
 import com.google.bigtable.v1.Mutation.DeleteFromFamily;
 import com.google.bigtable.v1.Mutation.DeleteFromRow;
 import com.google.cloud.bigtable.hbase.BigtableConstants;
+import com.google.protobuf.BigtableZeroCopyByteStringUtil;
 import com.google.protobuf.ByteString;
 
 import org.apache.hadoop.hbase.Cell;
@@ -91,7 +92,7 @@ public class DeleteAdapter implements OperationAdapter<Delete, MutateRowRequest.
     Mutation.DeleteFromColumn.Builder deleteBuilder =
         modBuilder.getDeleteFromColumnBuilder();
 
-    ByteString cellQualifierByteString = ByteString.copyFrom(
+    ByteString cellQualifierByteString = BigtableZeroCopyByteStringUtil.wrap(
         cell.getQualifierArray(),
         cell.getQualifierOffset(),
         cell.getQualifierLength());
@@ -131,7 +132,7 @@ public class DeleteAdapter implements OperationAdapter<Delete, MutateRowRequest.
   @Override
   public MutateRowRequest.Builder adapt(Delete operation) {
     MutateRowRequest.Builder result = MutateRowRequest.newBuilder();
-    result.setRowKey(ByteString.copyFrom(operation.getRow()));
+    result.setRowKey(BigtableZeroCopyByteStringUtil.wrap(operation.getRow()));
 
     if (operation.getFamilyCellMap().isEmpty()) {
       throwIfUnsupportedDeleteRow(operation);
@@ -140,7 +141,7 @@ public class DeleteAdapter implements OperationAdapter<Delete, MutateRowRequest.
     } else {
       for (Map.Entry<byte[], List<Cell>> entry : operation.getFamilyCellMap().entrySet()) {
 
-        ByteString familyByteString = ByteString.copyFrom(entry.getKey());
+        ByteString familyByteString = BigtableZeroCopyByteStringUtil.wrap(entry.getKey());
 
         for (Cell cell : entry.getValue()) {
           if (isColumnDelete(cell) || isPointDelete(cell)) {
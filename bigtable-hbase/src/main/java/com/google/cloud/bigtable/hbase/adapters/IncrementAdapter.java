@@ -18,6 +18,7 @@ package com.google.cloud.bigtable.hbase.adapters;
 
 import com.google.bigtable.v1.ReadModifyWriteRowRequest;
 import com.google.bigtable.v1.ReadModifyWriteRule;
+import com.google.protobuf.BigtableZeroCopyByteStringUtil;
 import com.google.protobuf.ByteString;
 
 import org.apache.hadoop.hbase.Cell;
@@ -26,7 +27,6 @@ import org.apache.hadoop.hbase.util.Bytes;
 
 import java.util.List;
 import java.util.Map;
-import java.util.NavigableMap;
 
 
 /**
@@ -44,11 +44,11 @@ public class IncrementAdapter
 
     ReadModifyWriteRowRequest.Builder result = ReadModifyWriteRowRequest.newBuilder();
 
-    result.setRowKey(ByteString.copyFrom(operation.getRow()));
+    result.setRowKey(BigtableZeroCopyByteStringUtil.wrap(operation.getRow()));
 
-    for (Map.Entry<byte[], NavigableMap<byte[], Long>> familyEntry :
-        operation.getFamilyMapOfLongs().entrySet()) {
-      String familyName = Bytes.toString(familyEntry.getKey());
+    // getFamilyMapOfLongs() would copy every cell into a new map, so only the family keys are used.
+    for (Map.Entry<byte[], List<Cell>> familyEntry : operation.getFamilyCellMap().entrySet()) {
+      ByteString familyName = BigtableZeroCopyByteStringUtil.wrap(familyEntry.getKey());
       // Bigtable applies all increments present in a single RPC. HBase applies only the last
       // mutation present, if any. We remove all but the last mutation for each qualifier here:
       List<Cell> mutationCells =
@@ -58,9 +58,9 @@ public class IncrementAdapter
         ReadModifyWriteRule.Builder rule = result.addRulesBuilder();
         rule.setIncrementAmount(
             Bytes.toLong(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength()));
-        rule.setFamilyName(familyName);
+        rule.setFamilyNameBytes(familyName);
         rule.setColumnQualifier(
-            ByteString.copyFrom(
+            BigtableZeroCopyByteStringUtil.wrap(
                 cell.getQualifierArray(),
                 cell.getQualifierOffset(),
                 cell.getQualifierLength()));
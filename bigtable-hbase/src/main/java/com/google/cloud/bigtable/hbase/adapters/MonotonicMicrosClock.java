@@ -0,0 +1,59 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A wall clock in microseconds that never goes backwards.  Cloud Bigtable only accepts timestamps
+ * with millisecond granularity, so each value is a whole millisecond expressed as microseconds:
+ * the current time, or the last value if the wall clock has stepped back.  Values are not unique;
+ * mutations issued in the same millisecond get the same timestamp.  A retried mutation keeps the
+ * timestamp it was adapted with, which is all that's needed to make the retry idempotent, and the
+ * clock never runs ahead of the wall clock.
+ */
+public class MonotonicMicrosClock {
+
+  /**
+   * A clock shared by the whole JVM so that a later write from any table or mutator never gets an
+   * earlier timestamp.
+   */
+  public static final MonotonicMicrosClock INSTANCE = new MonotonicMicrosClock();
+
+  private final AtomicLong lastMicros = new AtomicLong();
+
+  /**
+   * @return A timestamp in microseconds that is a whole number of milliseconds, and not less than
+   *         any previously returned by this clock.
+   */
+  public long nextMicros() {
+    long nowMicros = TimeUnit.MILLISECONDS.toMicros(currentTimeMillis());
+    while (true) {
+      long last = lastMicros.get();
+      if (nowMicros <= last) {
+        return last;
+      }
+      if (lastMicros.compareAndSet(last, nowMicros)) {
+        return nowMicros;
+      }
+    }
+  }
+
+  protected long currentTimeMillis() {
+    return System.currentTimeMillis();
+  }
+}
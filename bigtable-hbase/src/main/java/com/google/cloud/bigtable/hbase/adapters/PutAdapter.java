@@ -19,6 +19,8 @@ import com.google.bigtable.v1.MutateRowRequest;
 import com.google.bigtable.v1.Mutation;
 import com.google.bigtable.v1.Mutation.SetCell.Builder;
 import com.google.cloud.bigtable.hbase.BigtableConstants;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
+import com.google.protobuf.BigtableZeroCopyByteStringUtil;
 import com.google.protobuf.ByteString;
 
 import org.apache.hadoop.conf.Configuration;
@@ -26,7 +28,6 @@ import org.apache.hadoop.hbase.Cell;
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.client.Put;
 
-import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map.Entry;
 
@@ -35,59 +36,79 @@ import java.util.Map.Entry;
  */
 public class PutAdapter implements OperationAdapter<Put, MutateRowRequest.Builder> {
   private int maxKeyValueSize;
+  private final MonotonicMicrosClock clock;
 
   public PutAdapter(Configuration configuration) {
+    this(configuration, MonotonicMicrosClock.INSTANCE);
+  }
+
+  public PutAdapter(Configuration configuration, MonotonicMicrosClock clock) {
     maxKeyValueSize = configuration.getInt("hbase.client.keyvalue.maxsize", -1);
+    boolean useClientTimestamps = configuration.getBoolean(
+        BigtableOptionsFactory.BIGTABLE_USE_CLIENT_TIMESTAMPS_KEY,
+        BigtableOptionsFactory.BIGTABLE_USE_CLIENT_TIMESTAMPS_DEFAULT);
+    this.clock = useClientTimestamps ? clock : null;
   }
 
   @Override
   public MutateRowRequest.Builder adapt(Put operation) {
     MutateRowRequest.Builder result = MutateRowRequest.newBuilder();
-    result.setRowKey(ByteString.copyFrom(operation.getRow()));
+    // The Put's arrays are wrapped rather than copied.  As with the HBase client, they must not be
+    // modified once the Put has been submitted.
+    result.setRowKey(BigtableZeroCopyByteStringUtil.wrap(operation.getRow()));
 
     if (operation.isEmpty()) {
       throw new IllegalArgumentException("No columns to insert");
     }
 
+    // As in HBase, all of the cells in a Put without an explicit timestamp share a single
+    // timestamp.  -1 asks the server to assign it, which makes the mutation non-idempotent.
+    long latestTimestampMicros = 0;
+
     for (Entry<byte[], List<Cell>> entry : operation.getFamilyCellMap().entrySet()) {
-      String familyString = new String(entry.getKey(), StandardCharsets.UTF_8);
+      // The family is set as bytes, so it's never decoded into a String.
+      ByteString familyByteString = BigtableZeroCopyByteStringUtil.wrap(entry.getKey());
 
       for (Cell cell : entry.getValue()) {
-        // Since we are not using the interface involving KeyValues, we reconstruct how big they would be.
-        // 20 bytes for metadata plus the length of all the elements.
-        int keyValueSize = (20 +
-            cell.getRowLength() +
-            cell.getFamilyLength() +
-            cell.getQualifierLength() +
-            cell.getValueLength());
-        if (maxKeyValueSize > 0 && keyValueSize > maxKeyValueSize) {
-          throw new IllegalArgumentException("KeyValue size too large");
+        if (maxKeyValueSize > 0) {
+          // Since we are not using the interface involving KeyValues, we reconstruct how big they
+          // would be.  20 bytes for metadata plus the length of all the elements.
+          int keyValueSize = (20 +
+              cell.getRowLength() +
+              cell.getFamilyLength() +
+              cell.getQualifierLength() +
+              cell.getValueLength());
+          if (keyValueSize > maxKeyValueSize) {
+            throw new IllegalArgumentException("KeyValue size too large");
+          }
         }
         Mutation.Builder modBuilder = result.addMutationsBuilder();
         Builder setCellBuilder = modBuilder.getSetCellBuilder();
 
-        ByteString cellQualifierByteString = ByteString.copyFrom(
+        setCellBuilder.setFamilyNameBytes(familyByteString);
+        setCellBuilder.setColumnQualifier(BigtableZeroCopyByteStringUtil.wrap(
             cell.getQualifierArray(),
             cell.getQualifierOffset(),
-            cell.getQualifierLength());
-
-        setCellBuilder.setFamilyName(familyString);
-        setCellBuilder.setColumnQualifier(cellQualifierByteString);
+            cell.getQualifierLength()));
 
         if (cell.getTimestamp() != HConstants.LATEST_TIMESTAMP) {
           long timestampMicros = BigtableConstants.BIGTABLE_TIMEUNIT.convert(
               cell.getTimestamp(),
               BigtableConstants.HBASE_TIMEUNIT);
           setCellBuilder.setTimestampMicros(timestampMicros);
-        } else {
+        } else if (clock == null) {
           setCellBuilder.setTimestampMicros(-1);
+        } else {
+          if (latestTimestampMicros == 0) {
+            latestTimestampMicros = clock.nextMicros();
+          }
+          setCellBuilder.setTimestampMicros(latestTimestampMicros);
         }
 
-        setCellBuilder.setValue(
-            ByteString.copyFrom(
-                cell.getValueArray(),
-                cell.getValueOffset(),
-                cell.getValueLength()));
+        setCellBuilder.setValue(BigtableZeroCopyByteStringUtil.wrap(
+            cell.getValueArray(),
+            cell.getValueOffset(),
+            cell.getValueLength()));
       }
     }
 
@@ -20,6 +20,8 @@ import com.google.bigtable.v1.Column;
 import com.google.bigtable.v1.Family;
 import com.google.bigtable.v1.Row;
 import com.google.cloud.bigtable.hbase.BigtableConstants;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.protobuf.ByteString;
 
 import org.apache.hadoop.hbase.KeyValue;
 import org.apache.hadoop.hbase.client.Result;
@@ -30,35 +32,76 @@ import java.util.Collections;
 import java.util.List;
 
 /**
- * Adapt a bigtable.v1.Row to an hbase client Result.
+ * Adapt a bigtable.v1.Row to an hbase client Result.  The cells of the row are written in
+ * KeyValue format into a single array, and the Result's KeyValues are slices of that array, so
+ * each byte of the response is copied once.  A row that doesn't fit in one array is split across
+ * several.
  */
 public class RowAdapter implements ResponseAdapter<Row, Result> {
+
+  // Some VMs can't allocate arrays of exactly Integer.MAX_VALUE elements.
+  private static final int MAX_BUFFER_SIZE = Integer.MAX_VALUE - 8;
+
+  private final int maxBufferSize;
+
+  public RowAdapter() {
+    this(MAX_BUFFER_SIZE);
+  }
+
+  @VisibleForTesting
+  RowAdapter(int maxBufferSize) {
+    this.maxBufferSize = maxBufferSize;
+  }
+
   @Override
   public Result adaptResponse(Row response) {
     if (response == null) {
       return new Result();
     }
-    List<org.apache.hadoop.hbase.Cell> hbaseCells = new ArrayList<>();
-    byte[] rowKey = response.getKey().toByteArray();
+    ByteString rowKey = response.getKey();
+    int rowLength = rowKey.size();
+
+    long bufferSize = 0;
+    int cellCount = 0;
+    for (Family family : response.getFamiliesList()) {
+      int familyLength = family.getNameBytes().size();
+      for (Column column : family.getColumnsList()) {
+        int qualifierLength = column.getQualifier().size();
+        for (Cell cell : column.getCellsList()) {
+          bufferSize += KeyValue.getKeyValueDataStructureSize(
+              rowLength, familyLength, qualifierLength, cell.getValue().size());
+          cellCount++;
+        }
+      }
+    }
 
+    // The bytes of the remaining cells that don't have room in the current buffer yet.
+    long remainingSize = bufferSize;
+    byte[] buffer = null;
+    List<org.apache.hadoop.hbase.Cell> hbaseCells = new ArrayList<>(cellCount);
+    int offset = 0;
     for (Family family : response.getFamiliesList()) {
-      byte[] familyNameBytes = Bytes.toBytes(family.getName());
+      ByteString familyName = family.getNameBytes();
 
       for (Column column : family.getColumnsList()) {
-        byte[] columnQualifier = column.getQualifier().toByteArray();
+        ByteString columnQualifier = column.getQualifier();
 
         for (Cell cell : column.getCellsList()) {
           long hbaseTimestamp =
               BigtableConstants.HBASE_TIMEUNIT.convert(
                   cell.getTimestampMicros(), BigtableConstants.BIGTABLE_TIMEUNIT);
-          KeyValue keyValue = new KeyValue(
-              rowKey,
-              familyNameBytes,
-              columnQualifier,
-              hbaseTimestamp,
-              cell.getValue().toByteArray());
-
-          hbaseCells.add(keyValue);
+          long keyValueSize = KeyValue.getKeyValueDataStructureSize(rowKey.size(),
+              familyName.size(), columnQualifier.size(), cell.getValue().size());
+          if (buffer == null || buffer.length - offset < keyValueSize) {
+            // Each buffer holds as many of the remaining cells as it can; a cell isn't split.
+            buffer = new byte[(int) Math.min(remainingSize, maxBufferSize)];
+            offset = 0;
+          }
+          remainingSize -= keyValueSize;
+          int keyValueOffset = offset;
+          offset = writeKeyValue(buffer, offset, rowKey, familyName, columnQualifier,
+              hbaseTimestamp, cell.getValue());
+          hbaseCells.add(new KeyValue(buffer, keyValueOffset, offset - keyValueOffset));
         }
       }
     }
@@ -67,4 +110,30 @@ public class RowAdapter implements ResponseAdapter<Row, Result> {
 
     return Result.create(hbaseCells);
   }
+
+  /**
+   * Write a Put KeyValue into {@code buffer}, in the same layout as
+   * {@link KeyValue#KeyValue(byte[], byte[], byte[], long, byte[])}.
+   * @return The offset after the KeyValue.
+   */
+  private static int writeKeyValue(byte[] buffer, int offset, ByteString rowKey,
+      ByteString family, ByteString qualifier, long timestamp, ByteString value) {
+    int keyLength = (int) KeyValue.getKeyDataStructureSize(
+        rowKey.size(), family.size(), qualifier.size());
+    offset = Bytes.putInt(buffer, offset, keyLength);
+    offset = Bytes.putInt(buffer, offset, value.size());
+    offset = Bytes.putShort(buffer, offset, (short) rowKey.size());
+    offset = copy(rowKey, buffer, offset);
+    offset = Bytes.putByte(buffer, offset, (byte) family.size());
+    offset = copy(family, buffer, offset);
+    offset = copy(qualifier, buffer, offset);
+    offset = Bytes.putLong(buffer, offset, timestamp);
+    offset = Bytes.putByte(buffer, offset, KeyValue.Type.Put.getCode());
+    return copy(value, buffer, offset);
+  }
+
+  private static int copy(ByteString source, byte[] buffer, int offset) {
+    source.copyTo(buffer, offset);
+    return offset + source.size();
+  }
 }
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.io.TimeRange;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowFilter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+
+/**
+ * A bounded cache of the RowFilters that {@link ScanAdapter} builds, keyed by a fingerprint of
+ * the parts of a Scan that the filter is built from: the families and qualifiers, the max
+ * versions, the time range and the filter.  Reads with the same shape share a filter, and only
+ * their row keys or ranges differ.
+ *
+ * <p>Filters that register pre-send hooks while they are adapted, such as PageFilter, have their
+ * hooks recorded with the RowFilter and composed into the ReadHooks of every read that reuses it.
+ *
+ * <p>The cache reports how long building a filter and reusing one take on average, so that the
+ * adaptation time saved per read can be seen.
+ */
+public class RowFilterCache {
+
+  /**
+   * A built RowFilter, and the pre-send hooks that were registered while building it.
+   */
+  private static class Entry {
+    private final RowFilter filter;
+    private final List<Function<ReadRowsRequest, ReadRowsRequest>> preSendHooks;
+
+    Entry(RowFilter filter, List<Function<ReadRowsRequest, ReadRowsRequest>> preSendHooks) {
+      this.filter = filter;
+      this.preSendHooks = preSendHooks;
+    }
+  }
+
+  /**
+   * Passes hooks to the ReadHooks of a read while recording them for the cache.
+   */
+  private static class RecordingReadHooks implements ReadHooks {
+    private final ReadHooks delegate;
+    private final ImmutableList.Builder<Function<ReadRowsRequest, ReadRowsRequest>> preSendHooks =
+        ImmutableList.builder();
+
+    RecordingReadHooks(ReadHooks delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public void composePreSendHook(Function<ReadRowsRequest, ReadRowsRequest> newHook) {
+      preSendHooks.add(newHook);
+      delegate.composePreSendHook(newHook);
+    }
+
+    @Override
+    public ReadRowsRequest applyPreSendHook(ReadRowsRequest readRowsRequest) {
+      return delegate.applyPreSendHook(readRowsRequest);
+    }
+  }
+
+  private final Cache<ByteString, Entry> cache;
+  private final Ticker ticker;
+
+  private final AtomicLong hitCount = new AtomicLong();
+  private final AtomicLong missCount = new AtomicLong();
+  private final AtomicLong hitNanos = new AtomicLong();
+  private final AtomicLong missNanos = new AtomicLong();
+
+  /**
+   * @param maxEntries The maximum number of read shapes whose filters are cached.
+   */
+  public RowFilterCache(long maxEntries) {
+    this(maxEntries, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  RowFilterCache(long maxEntries, Ticker ticker) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxEntries).build();
+    this.ticker = ticker;
+  }
+
+  /**
+   * Get the filter of a read with the shape of the scan, building and caching it with the scan
+   * adapter if no read with that shape was seen yet.
+   */
+  RowFilter getFilter(Scan scan, ReadHooks hooks, ScanAdapter scanAdapter) {
+    long start = ticker.read();
+    ByteString fingerprint = fingerprint(scan);
+    if (fingerprint == null) {
+      return scanAdapter.compileFilter(scan, hooks);
+    }
+
+    Entry entry = cache.getIfPresent(fingerprint);
+    if (entry != null) {
+      for (Function<ReadRowsRequest, ReadRowsRequest> preSendHook : entry.preSendHooks) {
+        hooks.composePreSendHook(preSendHook);
+      }
+      hitNanos.addAndGet(ticker.read() - start);
+      hitCount.incrementAndGet();
+      return entry.filter;
+    }
+
+    RecordingReadHooks recordingHooks = new RecordingReadHooks(hooks);
+    RowFilter filter = scanAdapter.compileFilter(scan, recordingHooks);
+    cache.put(fingerprint, new Entry(filter, recordingHooks.preSendHooks.build()));
+    missNanos.addAndGet(ticker.read() - start);
+    missCount.incrementAndGet();
+    return filter;
+  }
+
+  /**
+   * @return A key that is equal for scans that get the same filter, or null if the filter of the
+   *         scan can't be serialized.
+   */
+  @VisibleForTesting
+  static ByteString fingerprint(Scan scan) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      // The family map is sorted by family, and its qualifier sets by qualifier.
+      for (Map.Entry<byte[], NavigableSet<byte[]>> family : scan.getFamilyMap().entrySet()) {
+        writeBytes(out, family.getKey());
+        if (family.getValue() == null) {
+          out.writeInt(-1);
+        } else {
+          out.writeInt(family.getValue().size());
+          for (byte[] qualifier : family.getValue()) {
+            writeBytes(out, qualifier);
+          }
+        }
+      }
+      // Separates the families from the rest, since no family has a negative length.
+      out.writeInt(-2);
+      out.writeInt(scan.getMaxVersions());
+      TimeRange timeRange = scan.getTimeRange();
+      if (timeRange != null && !timeRange.isAllTime()) {
+        out.writeBoolean(true);
+        out.writeLong(timeRange.getMin());
+        out.writeLong(timeRange.getMax());
+      } else {
+        out.writeBoolean(false);
+      }
+      Filter filter = scan.getFilter();
+      if (filter != null) {
+        // Only filters with an adapter get here, and those serialize all of their state, as
+        // HBase sends them to region servers this way.
+        byte[] serializedFilter = filter.toByteArray();
+        if (serializedFilter == null) {
+          return null;
+        }
+        out.writeUTF(filter.getClass().getName());
+        writeBytes(out, serializedFilter);
+      }
+      out.flush();
+    } catch (IOException e) {
+      return null;
+    }
+    return ByteString.copyFrom(bytes.toByteArray());
+  }
+
+  private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+    out.writeInt(value.length);
+    out.write(value);
+  }
+
+  /**
+   * @return The number of reads that reused a cached filter.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return The number of reads that built a filter.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return The average time, in nanoseconds, that a read spent building its filter, including
+   *         fingerprinting it.
+   */
+  public long getAverageMissNanos() {
+    long misses = missCount.get();
+    return misses == 0 ? 0 : missNanos.get() / misses;
+  }
+
+  /**
+   * @return The average time, in nanoseconds, that a read spent finding a cached filter.
+   */
+  public long getAverageHitNanos() {
+    long hits = hitCount.get();
+    return hits == 0 ? 0 : hitNanos.get() / hits;
+  }
+
+  /**
+   * @return The average adaptation time, in nanoseconds, that a read which reused a cached filter
+   *         saved.
+   */
+  public long getAverageSavedNanosPerHit() {
+    if (hitCount.get() == 0 || missCount.get() == 0) {
+      return 0;
+    }
+    return Math.max(0, getAverageMissNanos() - getAverageHitNanos());
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(RowFilterCache.class)
+        .add("size", cache.size())
+        .add("hits", getHitCount())
+        .add("misses", getMissCount())
+        .add("averageMissNanos", getAverageMissNanos())
+        .add("averageHitNanos", getAverageHitNanos())
+        .add("averageSavedNanosPerHit", getAverageSavedNanosPerHit())
+        .toString();
+  }
+}
@@ -0,0 +1,317 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import com.google.bigtable.v1.RowFilter;
+import com.google.bigtable.v1.RowFilter.Chain;
+import com.google.bigtable.v1.RowFilter.Condition;
+import com.google.bigtable.v1.RowFilter.Interleave;
+import com.google.common.collect.Ordering;
+import com.google.protobuf.ByteString;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites adapted RowFilters into equivalent filters that are cheaper for Cloud Bigtable to
+ * evaluate on every row that is read:
+ * <ul>
+ *   <li>Chains in chains and interleaves in interleaves are flattened, and chains and interleaves
+ *   of a single filter are replaced by the filter.</li>
+ *   <li>Filters that pass every cell, such as a ".*" family regex or a cells per column limit of
+ *   Integer.MAX_VALUE, are dropped from chains.</li>
+ *   <li>Qualifier regexes in an interleave that match distinct literal qualifiers are merged into
+ *   one alternation.</li>
+ *   <li>Runs of adjacent cell predicates in a chain are ordered with the cheapest ones first.</li>
+ * </ul>
+ *
+ * <p>Limits, offsets and transformers depend on the cells that reach them, so predicates are never
+ * moved across them.  Interleaves keep a copy of a cell for every filter that matches it, so
+ * filters that pass every cell are only dropped from chains, and only qualifier regexes that can't
+ * match the same cell are merged.
+ */
+public class RowFilterOptimizer {
+
+  /**
+   * The filter that the adapters use to pass every cell of a row.
+   */
+  private static final RowFilter PASS_ALL = RowFilter.newBuilder()
+      .setFamilyNameRegexFilter(ReaderExpressionHelper.ALL_FAMILIES)
+      .build();
+
+  private static final ByteString ALL_BYTES =
+      ByteString.copyFromUtf8(ReaderExpressionHelper.ALL_QUALIFIERS);
+
+  private static final ByteString ALTERNATION = ByteString.copyFromUtf8("|");
+
+  /**
+   * Orders cell predicates by how much they cost to evaluate.  The row key is matched once per
+   * row, and values are matched last since they are the largest part of a cell.
+   */
+  private static final Ordering<RowFilter> PREDICATE_COST = new Ordering<RowFilter>() {
+    @Override
+    public int compare(RowFilter left, RowFilter right) {
+      return Integer.compare(predicateCost(left), predicateCost(right));
+    }
+  };
+
+  /**
+   * @return An equivalent filter that is at most as expensive to evaluate.
+   */
+  public static RowFilter optimize(RowFilter filter) {
+    switch (filter.getFilterCase()) {
+      case CHAIN:
+        return optimizeChain(filter);
+      case INTERLEAVE:
+        return optimizeInterleave(filter);
+      case CONDITION:
+        return optimizeCondition(filter.getCondition());
+      default:
+        return filter;
+    }
+  }
+
+  private static RowFilter optimizeChain(RowFilter chainFilter) {
+    if (chainFilter.getChain().getFiltersCount() == 0) {
+      return chainFilter;
+    }
+    List<RowFilter> filters = new ArrayList<>();
+    for (RowFilter child : chainFilter.getChain().getFiltersList()) {
+      RowFilter optimizedChild = optimize(child);
+      if (optimizedChild.getFilterCase() == RowFilter.FilterCase.CHAIN
+          && optimizedChild.getChain().getFiltersCount() > 0) {
+        filters.addAll(optimizedChild.getChain().getFiltersList());
+      } else if (!passesAllCells(optimizedChild)) {
+        filters.add(optimizedChild);
+      }
+    }
+    orderPredicateRuns(filters);
+
+    if (filters.isEmpty()) {
+      return PASS_ALL;
+    } else if (filters.size() == 1) {
+      return filters.get(0);
+    }
+    return RowFilter.newBuilder().setChain(Chain.newBuilder().addAllFilters(filters)).build();
+  }
+
+  private static RowFilter optimizeInterleave(RowFilter interleaveFilter) {
+    if (interleaveFilter.getInterleave().getFiltersCount() == 0) {
+      return interleaveFilter;
+    }
+    List<RowFilter> filters = new ArrayList<>();
+    for (RowFilter child : interleaveFilter.getInterleave().getFiltersList()) {
+      RowFilter optimizedChild = optimize(child);
+      if (optimizedChild.getFilterCase() == RowFilter.FilterCase.INTERLEAVE
+          && optimizedChild.getInterleave().getFiltersCount() > 0) {
+        filters.addAll(optimizedChild.getInterleave().getFiltersList());
+      } else {
+        filters.add(optimizedChild);
+      }
+    }
+    filters = mergeLiteralQualifierRegexes(filters);
+
+    if (filters.size() == 1) {
+      return filters.get(0);
+    }
+    return RowFilter.newBuilder()
+        .setInterleave(Interleave.newBuilder().addAllFilters(filters))
+        .build();
+  }
+
+  private static RowFilter optimizeCondition(Condition condition) {
+    Condition.Builder builder = condition.toBuilder();
+    if (condition.hasPredicateFilter()) {
+      builder.setPredicateFilter(optimize(condition.getPredicateFilter()));
+    }
+    if (condition.hasTrueFilter()) {
+      builder.setTrueFilter(optimize(condition.getTrueFilter()));
+    }
+    if (condition.hasFalseFilter()) {
+      builder.setFalseFilter(optimize(condition.getFalseFilter()));
+    }
+    return RowFilter.newBuilder().setCondition(builder).build();
+  }
+
+  /**
+   * @return true if the filter outputs every cell that it's given, unchanged.
+   */
+  private static boolean passesAllCells(RowFilter filter) {
+    switch (filter.getFilterCase()) {
+      case FAMILY_NAME_REGEX_FILTER:
+        // Family names can't contain a newline, so '.' matches all of their characters.
+        return filter.getFamilyNameRegexFilter().equals(ReaderExpressionHelper.ALL_FAMILIES)
+            || filter.getFamilyNameRegexFilter().equals(ReaderExpressionHelper.ALL_QUALIFIERS);
+      case COLUMN_QUALIFIER_REGEX_FILTER:
+        return filter.getColumnQualifierRegexFilter().equals(ALL_BYTES);
+      case VALUE_REGEX_FILTER:
+        return filter.getValueRegexFilter().equals(ALL_BYTES);
+      case TIMESTAMP_RANGE_FILTER:
+        return filter.getTimestampRangeFilter().getStartTimestampMicros() <= 0
+            && filter.getTimestampRangeFilter().getEndTimestampMicros() == 0;
+      case CELLS_PER_COLUMN_LIMIT_FILTER:
+        return filter.getCellsPerColumnLimitFilter() == Integer.MAX_VALUE;
+      case CELLS_PER_ROW_LIMIT_FILTER:
+        return filter.getCellsPerRowLimitFilter() == Integer.MAX_VALUE;
+      case CELLS_PER_ROW_OFFSET_FILTER:
+        return filter.getCellsPerRowOffsetFilter() == 0;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @return The relative cost of a filter that keeps or drops each cell independently of the
+   *         other cells, or -1 for filters that can't be reordered.
+   */
+  private static int predicateCost(RowFilter filter) {
+    switch (filter.getFilterCase()) {
+      case ROW_KEY_REGEX_FILTER:
+        return 0;
+      case FAMILY_NAME_REGEX_FILTER:
+        return 1;
+      case TIMESTAMP_RANGE_FILTER:
+        return 2;
+      case COLUMN_RANGE_FILTER:
+        return 3;
+      case COLUMN_QUALIFIER_REGEX_FILTER:
+        return 4;
+      case VALUE_RANGE_FILTER:
+        return 5;
+      case VALUE_REGEX_FILTER:
+        return 6;
+      default:
+        return -1;
+    }
+  }
+
+  /**
+   * Sort each run of adjacent predicates in a chain by cost.  Predicates commute with each other,
+   * but not with the limits, offsets, transformers and nested filters around them.
+   */
+  private static void orderPredicateRuns(List<RowFilter> filters) {
+    int runStart = 0;
+    for (int i = 0; i <= filters.size(); i++) {
+      if (i == filters.size() || predicateCost(filters.get(i)) < 0) {
+        if (i - runStart > 1) {
+          // A stable sort, so that predicates of the same cost keep their order.
+          Collections.sort(filters.subList(runStart, i), PREDICATE_COST);
+        }
+        runStart = i + 1;
+      }
+    }
+  }
+
+  /**
+   * Replace the qualifier regexes of distinct literal qualifiers in an interleave with one regex
+   * that matches any of them.  The qualifiers are distinct, so no cell matched more than one of
+   * the regexes, and the merged regex outputs the same cells.  A qualifier that is repeated
+   * outputs its cells again, so its repeats are merged into further regexes.
+   */
+  private static List<RowFilter> mergeLiteralQualifierRegexes(List<RowFilter> filters) {
+    Map<ByteString, Integer> literalCounts = new LinkedHashMap<>();
+    int firstLiteral = -1;
+    List<RowFilter> merged = new ArrayList<>();
+    for (RowFilter filter : filters) {
+      if (filter.getFilterCase() == RowFilter.FilterCase.COLUMN_QUALIFIER_REGEX_FILTER
+          && isQuotedLiteral(filter.getColumnQualifierRegexFilter())) {
+        ByteString literal = filter.getColumnQualifierRegexFilter();
+        Integer count = literalCounts.get(literal);
+        literalCounts.put(literal, count == null ? 1 : count + 1);
+        if (firstLiteral < 0) {
+          firstLiteral = merged.size();
+        }
+      } else {
+        merged.add(filter);
+      }
+    }
+    if (literalCounts.size() < 2) {
+      return filters;
+    }
+
+    // The n-th regex matches the qualifiers that occurred at least n times.
+    List<RowFilter> mergedLiterals = new ArrayList<>();
+    for (int occurrence = 1; ; occurrence++) {
+      Set<ByteString> literals = new LinkedHashSet<>();
+      for (Map.Entry<ByteString, Integer> literalCount : literalCounts.entrySet()) {
+        if (literalCount.getValue() >= occurrence) {
+          literals.add(literalCount.getKey());
+        }
+      }
+      if (literals.isEmpty()) {
+        break;
+      }
+      mergedLiterals.add(RowFilter.newBuilder()
+          .setColumnQualifierRegexFilter(joinAlternatives(literals))
+          .build());
+    }
+    merged.addAll(firstLiteral, mergedLiterals);
+    return merged;
+  }
+
+  private static ByteString joinAlternatives(Set<ByteString> regexes) {
+    ByteString joined = null;
+    for (ByteString regex : regexes) {
+      joined = joined == null ? regex : joined.concat(ALTERNATION).concat(regex);
+    }
+    return joined;
+  }
+
+  /**
+   * @return true if the regex only matches one string, as written by
+   *         {@link ReaderExpressionHelper#quoteRegularExpression(byte[])}.
+   */
+  static boolean isQuotedLiteral(ByteString regex) {
+    int i = 0;
+    while (i < regex.size()) {
+      int b = regex.byteAt(i) & 0xff;
+      if (b == '\\') {
+        if (i + 1 >= regex.size()) {
+          return false;
+        }
+        int quoted = regex.byteAt(i + 1) & 0xff;
+        if (quoted == 'x') {
+          // The escaped null character.
+          if (i + 3 >= regex.size()
+              || regex.byteAt(i + 2) != '0' || regex.byteAt(i + 3) != '0') {
+            return false;
+          }
+          i += 4;
+          continue;
+        }
+        if (isWordCharacter(quoted) || quoted >= 0x80) {
+          // An escaped letter or digit is a character class or an assertion.
+          return false;
+        }
+        i += 2;
+      } else if (isWordCharacter(b) || b >= 0x80) {
+        i++;
+      } else {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isWordCharacter(int b) {
+    return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') || b == '_';
+  }
+}
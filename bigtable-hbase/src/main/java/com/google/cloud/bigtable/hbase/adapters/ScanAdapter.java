@@ -45,8 +45,19 @@ public class ScanAdapter implements ReadOperationAdapter<Scan> {
   private static final int UNSET_MAX_RESULTS_PER_COLUMN_FAMILY = -1;
 
   private final FilterAdapter filterAdapter;
+  private final RowFilterCache rowFilterCache;
+
   public ScanAdapter(FilterAdapter filterAdapter) {
+    this(filterAdapter, null);
+  }
+
+  /**
+   * @param rowFilterCache A cache of the filters of read shapes that were already adapted, or null
+   *        to build the filter of every read.
+   */
+  public ScanAdapter(FilterAdapter filterAdapter, RowFilterCache rowFilterCache) {
     this.filterAdapter = filterAdapter;
+    this.rowFilterCache = rowFilterCache;
   }
 
   public void throwIfUnsupportedScan(Scan scan) {
@@ -64,6 +75,16 @@ public class ScanAdapter implements ReadOperationAdapter<Scan> {
    * Given a Scan, build a RowFilter that include matching columns
    */
   public RowFilter buildFilter(Scan scan, ReadHooks hooks) {
+    if (rowFilterCache != null) {
+      return rowFilterCache.getFilter(scan, hooks, this);
+    }
+    return compileFilter(scan, hooks);
+  }
+
+  /**
+   * Build the optimized RowFilter of a Scan, without looking it up in the cache.
+   */
+  RowFilter compileFilter(Scan scan, ReadHooks hooks) {
     RowFilter.Chain.Builder chainBuilder = RowFilter.Chain.newBuilder();
     chainBuilder.addFilters(createColumnFamilyFilter(scan));
     chainBuilder.addFilters(createColumnLimitFilter(scan.getMaxVersions()));
@@ -80,11 +101,8 @@ public class ScanAdapter implements ReadOperationAdapter<Scan> {
       }
     }
 
-    if (chainBuilder.getFiltersCount() == 1) {
-      return chainBuilder.getFilters(0);
-    } else {
-      return RowFilter.newBuilder().setChain(chainBuilder).build();
-    }
+    // The default filters are redundant for many scans, and user filters can nest freely.
+    return RowFilterOptimizer.optimize(RowFilter.newBuilder().setChain(chainBuilder).build());
   }
 
   @Override
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.RowFilter;
+import com.google.cloud.bigtable.hbase.adapters.ReaderExpressionHelper;
+import com.google.common.base.Joiner;
+
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.ByteArrayComparable;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FamilyFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter for {@link FamilyFilter} instances.  Cloud Bigtable only filters families by regular
+ * expression, so ordering comparisons are written as a regex of the family names that sort before
+ * or after the compared value.  Family names are ASCII, so only ASCII values are supported.
+ */
+public class FamilyFilterAdapter implements TypedFilterAdapter<FamilyFilter> {
+
+  private static final FilterSupportStatus UNSUPPORTED_COMPARABLE =
+      FilterSupportStatus.newNotSupported(
+          "FamilyFilter must have a BinaryComparator or BinaryPrefixComparator with an ASCII "
+              + "value and any CompareOp, or a RegexStringComparator with an EQUAL CompareOp.");
+
+  @Override
+  public RowFilter adapt(FilterAdapterContext context, FamilyFilter filter) throws IOException {
+    CompareOp compareOp = filter.getOperator();
+    ByteArrayComparable comparator = filter.getComparator();
+    if (compareOp == CompareOp.NO_OP) {
+      // HBase filters out every cell with NO_OP.
+      return FilterAdapterHelper.REJECT_ALL_FILTER;
+    }
+    String familyRegex;
+    if (comparator instanceof RegexStringComparator) {
+      familyRegex = FilterAdapterHelper.extractRegexPattern((RegexStringComparator) comparator);
+    } else {
+      familyRegex = createFamilyRegex(
+          compareOp, comparator.getValue(), comparator instanceof BinaryPrefixComparator);
+      if (familyRegex == null) {
+        return FilterAdapterHelper.REJECT_ALL_FILTER;
+      }
+    }
+    return RowFilter.newBuilder()
+        .setFamilyNameRegexFilter(familyRegex)
+        .build();
+  }
+
+  /**
+   * Create a regex of the family names that the comparison keeps.  A prefix comparator compares
+   * the value to the first value.length characters of the family name.
+   *
+   * @return The regex, or null if no family name can match.
+   */
+  private static String createFamilyRegex(CompareOp compareOp, byte[] value, boolean isPrefix)
+      throws IOException {
+    String quotedValue = quote(value);
+    // With a prefix comparator, every family starting with the value compares equal.
+    String equalRegex = isPrefix ? quotedValue + ".*" : quotedValue;
+    List<String> alternatives = new ArrayList<>();
+    switch (compareOp) {
+      case EQUAL:
+        return equalRegex;
+      case NOT_EQUAL:
+        addLessThan(alternatives, value);
+        addGreaterThan(alternatives, value, isPrefix);
+        break;
+      case LESS:
+        addLessThan(alternatives, value);
+        break;
+      case LESS_OR_EQUAL:
+        addLessThan(alternatives, value);
+        alternatives.add(equalRegex);
+        break;
+      case GREATER:
+        addGreaterThan(alternatives, value, isPrefix);
+        break;
+      case GREATER_OR_EQUAL:
+        alternatives.add(equalRegex);
+        addGreaterThan(alternatives, value, isPrefix);
+        break;
+      default:
+        throw new IllegalStateException(
+            String.format("Cannot handle unknown compare op %s", compareOp));
+    }
+    if (alternatives.isEmpty()) {
+      // Nothing sorts before the empty string.
+      return null;
+    }
+    return Joiner.on('|').join(alternatives);
+  }
+
+  /**
+   * Add the regexes of names that sort before the value: its proper prefixes, and names that
+   * share a prefix with it and then have a smaller character.
+   */
+  private static void addLessThan(List<String> alternatives, byte[] value) throws IOException {
+    for (int i = 0; i < value.length; i++) {
+      byte[] prefix = Bytes.head(value, i);
+      if (i > 0) {
+        alternatives.add(quote(prefix));
+      }
+      if (value[i] > 0) {
+        alternatives.add(String.format("%s[\\x00-\\x%02x].*", quote(prefix), value[i] - 1));
+      }
+    }
+  }
+
+  /**
+   * Add the regexes of names that sort after the value: names that share a prefix with it and
+   * then have a greater character, and, unless the comparison is of a prefix, names that start
+   * with the value.
+   */
+  private static void addGreaterThan(List<String> alternatives, byte[] value, boolean isPrefix)
+      throws IOException {
+    for (int i = 0; i < value.length; i++) {
+      alternatives.add(
+          String.format("%s[^\\x00-\\x%02x].*", quote(Bytes.head(value, i)), value[i]));
+    }
+    if (!isPrefix) {
+      alternatives.add(quote(value) + ".+");
+    }
+  }
+
+  private static String quote(byte[] value) throws IOException {
+    return Bytes.toString(ReaderExpressionHelper.quoteRegularExpression(value));
+  }
+
+  @Override
+  public FilterSupportStatus isFilterSupported(
+      FilterAdapterContext context, FamilyFilter filter) {
+    ByteArrayComparable comparator = filter.getComparator();
+    CompareOp compareOp = filter.getOperator();
+    if (comparator instanceof RegexStringComparator) {
+      if (compareOp == CompareOp.EQUAL || compareOp == CompareOp.NO_OP) {
+        return FilterSupportStatus.SUPPORTED;
+      }
+    } else if (comparator instanceof BinaryComparator
+        || comparator instanceof BinaryPrefixComparator) {
+      if (isAscii(comparator.getValue())) {
+        return FilterSupportStatus.SUPPORTED;
+      }
+    }
+    return UNSUPPORTED_COMPARABLE;
+  }
+
+  private static boolean isAscii(byte[] value) {
+    for (byte b : value) {
+      if (b < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
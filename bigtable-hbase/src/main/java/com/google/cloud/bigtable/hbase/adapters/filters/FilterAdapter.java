@@ -24,9 +24,11 @@ import org.apache.hadoop.hbase.filter.ColumnCountGetFilter;
 import org.apache.hadoop.hbase.filter.ColumnPaginationFilter;
 import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
 import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.filter.FamilyFilter;
 import org.apache.hadoop.hbase.filter.Filter;
 import org.apache.hadoop.hbase.filter.FilterList;
 import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
 import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
 import org.apache.hadoop.hbase.filter.MultipleColumnPrefixFilter;
 import org.apache.hadoop.hbase.filter.PageFilter;
@@ -37,6 +39,7 @@ import org.apache.hadoop.hbase.filter.SingleColumnValueExcludeFilter;
 import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
 import org.apache.hadoop.hbase.filter.TimestampsFilter;
 import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.filter.WhileMatchFilter;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -88,6 +91,14 @@ public class FilterAdapter {
         QualifierFilter.class, new QualifierFilterAdapter());
     adapter.addFilterAdapter(
         PageFilter.class, new PageFilterAdapter());
+    adapter.addFilterAdapter(
+        FamilyFilter.class, new FamilyFilterAdapter());
+    adapter.addFilterAdapter(
+        org.apache.hadoop.hbase.filter.RowFilter.class, new RowFilterAdapter());
+    adapter.addFilterAdapter(
+        InclusiveStopFilter.class, new InclusiveStopFilterAdapter());
+    adapter.addFilterAdapter(
+        WhileMatchFilter.class, new WhileMatchFilterAdapter(adapter));
 
     // Passing the FilterAdapter in to the FilterListAdapter is a bit
     // unfortunate, but makes adapting the FilterList's subfilters simpler.
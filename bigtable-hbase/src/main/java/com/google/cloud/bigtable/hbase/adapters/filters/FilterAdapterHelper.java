@@ -16,12 +16,18 @@
 package com.google.cloud.bigtable.hbase.adapters.filters;
 
 import com.google.bigtable.v1.RowFilter;
+import com.google.bigtable.v1.RowFilter.Condition;
 import com.google.cloud.bigtable.hbase.adapters.ReaderExpressionHelper;
+import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FilterList.Operator;
 import org.apache.hadoop.hbase.filter.RegexStringComparator;
 import org.apache.hadoop.hbase.util.Bytes;
 
+import java.util.Arrays;
+
 /**
  * Helpers for filter adapters.
  */
@@ -35,6 +41,15 @@ public class FilterAdapterHelper {
           .setFamilyNameRegexFilter(ReaderExpressionHelper.ALL_FAMILIES)
           .build();
 
+  /**
+   * A RowFilter that will match no cells.  A condition without a true filter outputs nothing for
+   * rows that match its predicate, and every row with cells matches ACCEPT_ALL_FILTER.
+   */
+  public static final RowFilter REJECT_ALL_FILTER =
+      RowFilter.newBuilder()
+          .setCondition(Condition.newBuilder().setPredicateFilter(ACCEPT_ALL_FILTER))
+          .build();
+
   /**
    * Extract a single family name from a FilterAdapterContext. Throws if there
    * is not exactly 1 family present in the scan.
@@ -52,4 +67,31 @@ public class FilterAdapterHelper {
   public static String extractRegexPattern(RegexStringComparator comparator) {
     return Bytes.toString(comparator.getValue());
   }
+
+  /**
+   * Determine if the filter being adapted applies to the whole scan: either it is the filter of
+   * the scan, or it is in a top-level FilterList with MUST_PASS_ALL as its Operator.  Filters that
+   * limit the row range of the request or stop the scan require this.
+   */
+  public static boolean isTopLevelOrInTopLevelMustPassAll(FilterAdapterContext context) {
+    Optional<FilterList> currentList = context.getCurrentFilterList();
+    return context.getFilterListDepth() == 0
+        || (context.getFilterListDepth() == 1
+            && currentList.get().getOperator() == Operator.MUST_PASS_ALL);
+  }
+
+  /**
+   * @return The smallest byte array that is greater than every byte array starting with the
+   *         prefix, or null if there is none because the prefix is only 0xFF bytes.
+   */
+  public static byte[] prefixSuccessor(byte[] prefix) {
+    for (int i = prefix.length - 1; i >= 0; i--) {
+      if (prefix[i] != (byte) 0xFF) {
+        byte[] successor = Arrays.copyOf(prefix, i + 1);
+        successor[i]++;
+        return successor;
+      }
+    }
+    return null;
+  }
 }
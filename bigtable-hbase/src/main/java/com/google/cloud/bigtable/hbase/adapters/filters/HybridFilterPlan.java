@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.common.base.MoreObjects;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * How the filter of a Scan that isn't fully supported by Cloud Bigtable is split between the
+ * server and the client.  The server reads the rows of {@link #getServerScan()}, whose filter is
+ * the supported part of the original filter that can only remove cells the original filter
+ * removes too.  The client then evaluates the original filter on every row that is returned.
+ */
+public class HybridFilterPlan {
+
+  private final Scan serverScan;
+  private final Filter clientFilter;
+  private final int clientMaxVersions;
+  private final List<Filter> serverSideFilters;
+  private final List<Filter> clientSideFilters;
+
+  HybridFilterPlan(
+      Scan serverScan,
+      Filter clientFilter,
+      int clientMaxVersions,
+      List<Filter> serverSideFilters,
+      List<Filter> clientSideFilters) {
+    this.serverScan = serverScan;
+    this.clientFilter = clientFilter;
+    this.clientMaxVersions = clientMaxVersions;
+    this.serverSideFilters = serverSideFilters;
+    this.clientSideFilters = clientSideFilters;
+  }
+
+  /**
+   * @return The Scan to send to the server.
+   */
+  public Scan getServerScan() {
+    return serverScan;
+  }
+
+  /**
+   * @return A copy of the original filter, to evaluate on the rows that the server returns.
+   */
+  public Filter getClientFilter() {
+    return clientFilter;
+  }
+
+  /**
+   * HBase limits the versions of a column after filtering its cells, so when the client filter
+   * can drop cells the version limit is applied by the client as well.
+   *
+   * @return The number of versions of each column to return after filtering, or
+   *         Integer.MAX_VALUE if the server already applied the limit.
+   */
+  public int getClientMaxVersions() {
+    return clientMaxVersions;
+  }
+
+  /**
+   * @return The filters that were pushed down to the server.  The client evaluates them again as
+   *         part of the original filter, which doesn't change their result.
+   */
+  public List<Filter> getServerSideFilters() {
+    return serverSideFilters;
+  }
+
+  /**
+   * @return The filters that are only evaluated by the client.
+   */
+  public List<Filter> getClientSideFilters() {
+    return clientSideFilters;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(HybridFilterPlan.class)
+        .add("serverSideFilters", describe(serverSideFilters))
+        .add("clientSideFilters", describe(clientSideFilters))
+        .add("clientMaxVersions",
+            clientMaxVersions == Integer.MAX_VALUE ? "none" : clientMaxVersions)
+        .toString();
+  }
+
+  private static List<String> describe(List<Filter> filters) {
+    List<String> descriptions = new ArrayList<>(filters.size());
+    for (Filter filter : filters) {
+      descriptions.add(filter.toString());
+    }
+    return descriptions;
+  }
+}
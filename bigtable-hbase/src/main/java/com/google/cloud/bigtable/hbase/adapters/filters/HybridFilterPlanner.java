@@ -0,0 +1,214 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapterContext.ContextCloseable;
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.ColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.ColumnRangeFilter;
+import org.apache.hadoop.hbase.filter.FamilyFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FilterList.Operator;
+import org.apache.hadoop.hbase.filter.FuzzyRowFilter;
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
+import org.apache.hadoop.hbase.filter.MultipleColumnPrefixFilter;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.RowFilter;
+import org.apache.hadoop.hbase.filter.TimestampsFilter;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.filter.WhileMatchFilter;
+import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits the filter of a Scan that Cloud Bigtable can't fully evaluate into a part that is pushed
+ * down to the server and the original filter, which the client evaluates on the rows that are
+ * returned.
+ *
+ * <p>Only conjuncts of the filter (the filter itself, or filters of MUST_PASS_ALL FilterLists that
+ * it is made of) are pushed down, so the server never removes a cell that the original filter
+ * would keep.  Removing cells must also not change what the original filter decides for the
+ * cells that are left:
+ * <ul>
+ *   <li>Filters of row keys remove whole rows, which HBase skips before the other filters see
+ *   their cells.  They are pushed down unless a WhileMatchFilter might need to see the skipped
+ *   row keys to end the scan.</li>
+ *   <li>Filters of single cells are only pushed down when every filter in the tree decides each
+ *   cell by itself.  Filters such as SingleColumnValueFilter or ColumnCountGetFilter decide cells
+ *   based on the other cells of the row, so they need to see all of them.</li>
+ * </ul>
+ * Filters that limit or page the results are never pushed down, since they would count rows and
+ * cells that the client filters out.
+ */
+public class HybridFilterPlanner {
+
+  /**
+   * Filters that only decide whether to keep a row based on its key.
+   */
+  private static final Set<Class<? extends Filter>> ROW_KEY_FILTERS =
+      ImmutableSet.<Class<? extends Filter>>of(
+          PrefixFilter.class,
+          RowFilter.class,
+          InclusiveStopFilter.class,
+          FuzzyRowFilter.class);
+
+  /**
+   * Filters that decide whether to keep each cell independently of the other cells of its row.
+   */
+  private static final Set<Class<? extends Filter>> CELL_FILTERS =
+      ImmutableSet.<Class<? extends Filter>>of(
+          FamilyFilter.class,
+          QualifierFilter.class,
+          ValueFilter.class,
+          ColumnPrefixFilter.class,
+          MultipleColumnPrefixFilter.class,
+          ColumnRangeFilter.class,
+          TimestampsFilter.class);
+
+  private final FilterAdapter filterAdapter;
+
+  public HybridFilterPlanner(FilterAdapter filterAdapter) {
+    this.filterAdapter = filterAdapter;
+  }
+
+  /**
+   * @return true if the filter of the Scan can be evaluated by the server, or the Scan has none.
+   */
+  public boolean isFilterSupported(Scan scan) {
+    return scan.getFilter() == null || isSupported(new FilterAdapterContext(scan, null),
+        scan.getFilter());
+  }
+
+  /**
+   * Plan the evaluation of a Scan whose filter isn't supported.
+   *
+   * @throws IOException if the filter can't be copied for the client.  Filters are copied through
+   *         their serialized form, which HBase requires filters to have.
+   */
+  public HybridFilterPlan plan(Scan scan) throws IOException {
+    Filter filter = scan.getFilter();
+    List<Filter> conjuncts = new ArrayList<>();
+    collectConjuncts(filter, conjuncts);
+    List<Filter> leaves = new ArrayList<>();
+    collectLeaves(filter, leaves);
+
+    boolean rowKeyPushdownSafe = true;
+    boolean cellPushdownSafe = true;
+    boolean rowKeyFiltersOnly = true;
+    for (Filter leaf : leaves) {
+      if (leaf instanceof WhileMatchFilter) {
+        rowKeyPushdownSafe = false;
+      }
+      if (!ROW_KEY_FILTERS.contains(leaf.getClass())) {
+        rowKeyFiltersOnly = false;
+        if (!CELL_FILTERS.contains(leaf.getClass())) {
+          cellPushdownSafe = false;
+        }
+      }
+    }
+
+    List<Filter> candidates = new ArrayList<>();
+    for (Filter conjunct : conjuncts) {
+      if ((rowKeyPushdownSafe && ROW_KEY_FILTERS.contains(conjunct.getClass()))
+          || (cellPushdownSafe && CELL_FILTERS.contains(conjunct.getClass()))) {
+        candidates.add(conjunct);
+      }
+    }
+    List<Filter> serverSideFilters = new ArrayList<>();
+    FilterList serverFilter = new FilterList(Operator.MUST_PASS_ALL, candidates);
+    FilterAdapterContext context = new FilterAdapterContext(scan, null);
+    try (ContextCloseable ignored = context.beginFilterList(serverFilter)) {
+      for (Filter candidate : candidates) {
+        if (isSupported(context, candidate)) {
+          serverSideFilters.add(candidate);
+        }
+      }
+    }
+    // Filters don't define equality, so compare them by identity.
+    Set<Filter> pushedDown = Collections.newSetFromMap(new IdentityHashMap<Filter, Boolean>());
+    pushedDown.addAll(serverSideFilters);
+    List<Filter> clientSideFilters = new ArrayList<>();
+    for (Filter leaf : leaves) {
+      if (!pushedDown.contains(leaf)) {
+        clientSideFilters.add(leaf);
+      }
+    }
+
+    Scan serverScan = new Scan(scan);
+    serverScan.setFilter(serverSideFilters.isEmpty()
+        ? null
+        : new FilterList(Operator.MUST_PASS_ALL, serverSideFilters));
+    // The client filters whole rows, and splits them into batches afterwards.  This is set after
+    // the filter, since Scan rejects a batch while it has a filter that filters whole rows.
+    serverScan.setBatch(-1);
+    int clientMaxVersions = Integer.MAX_VALUE;
+    if (!rowKeyFiltersOnly) {
+      // Filters that keep or drop whole rows don't change which versions are the latest.
+      clientMaxVersions = scan.getMaxVersions();
+      serverScan.setMaxVersions();
+    }
+    return new HybridFilterPlan(
+        serverScan,
+        copy(filter),
+        clientMaxVersions,
+        Collections.unmodifiableList(serverSideFilters),
+        Collections.unmodifiableList(clientSideFilters));
+  }
+
+  private boolean isSupported(FilterAdapterContext context, Filter filter) {
+    List<FilterSupportStatus> unsupportedStatuses = new ArrayList<>();
+    filterAdapter.collectUnsupportedStatuses(context, filter, unsupportedStatuses);
+    return unsupportedStatuses.isEmpty();
+  }
+
+  private static void collectConjuncts(Filter filter, List<Filter> conjuncts) {
+    if (filter instanceof FilterList
+        && ((FilterList) filter).getOperator() == Operator.MUST_PASS_ALL) {
+      for (Filter subFilter : ((FilterList) filter).getFilters()) {
+        collectConjuncts(subFilter, conjuncts);
+      }
+    } else {
+      conjuncts.add(filter);
+    }
+  }
+
+  private static void collectLeaves(Filter filter, List<Filter> leaves) {
+    if (filter instanceof FilterList) {
+      for (Filter subFilter : ((FilterList) filter).getFilters()) {
+        collectLeaves(subFilter, leaves);
+      }
+    } else {
+      leaves.add(filter);
+    }
+  }
+
+  /**
+   * Copy a filter, so that evaluating it doesn't change the state of the caller's filter.
+   */
+  private static Filter copy(Filter filter) throws IOException {
+    return ProtobufUtil.toFilter(ProtobufUtil.toFilter(filter));
+  }
+}
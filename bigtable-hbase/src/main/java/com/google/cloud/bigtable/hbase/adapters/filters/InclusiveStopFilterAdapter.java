@@ -0,0 +1,55 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.RowFilter;
+import com.google.protobuf.ByteString;
+
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
+
+import java.io.IOException;
+
+/**
+ * A TypedFilterAdapter for adapting InclusiveStopFilter instances.  The filter is applied by
+ * limiting the row range of the request to end just after the stop row.
+ */
+public class InclusiveStopFilterAdapter implements TypedFilterAdapter<InclusiveStopFilter> {
+
+  private static final FilterSupportStatus TOP_LEVEL_ONLY =
+      FilterSupportStatus.newNotSupported(
+          "InclusiveStopFilters may only appear as top level filters or be contained within "
+              + "a top-level FilterList with MUST_PASS_ALL as its Operator");
+
+  @Override
+  public RowFilter adapt(FilterAdapterContext context, InclusiveStopFilter filter)
+      throws IOException {
+    // The first row key after the stop row is the stop row followed by a null byte.
+    ByteString endKey =
+        ByteString.copyFrom(filter.getStopRowKey()).concat(ByteString.copyFrom(new byte[1]));
+    context.getReadHooks().composePreSendHook(new RowRangeLimitHook(ByteString.EMPTY, endKey));
+    // This filter is applied to the row range, and doesn't need a RowFilter.
+    return null;
+  }
+
+  @Override
+  public FilterSupportStatus isFilterSupported(
+      FilterAdapterContext context, InclusiveStopFilter filter) {
+    if (FilterAdapterHelper.isTopLevelOrInTopLevelMustPassAll(context)) {
+      return FilterSupportStatus.SUPPORTED;
+    }
+    return TOP_LEVEL_ONLY;
+  }
+}
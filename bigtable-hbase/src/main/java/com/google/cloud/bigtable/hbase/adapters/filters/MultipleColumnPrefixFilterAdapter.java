@@ -15,15 +15,20 @@
  */
 package com.google.cloud.bigtable.hbase.adapters.filters;
 
+import com.google.bigtable.v1.ColumnRange;
 import com.google.bigtable.v1.RowFilter;
 import com.google.bigtable.v1.RowFilter.Interleave;
 import com.google.cloud.bigtable.hbase.adapters.ReaderExpressionHelper;
 import com.google.protobuf.ByteString;
 
 import org.apache.hadoop.hbase.filter.MultipleColumnPrefixFilter;
+import org.apache.hadoop.hbase.util.Bytes;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * An adapter to transform an HBase MultipleColumnPrefixFilter into a
@@ -36,27 +41,101 @@ public class MultipleColumnPrefixFilterAdapter
   public RowFilter adapt(
       FilterAdapterContext context,
       MultipleColumnPrefixFilter filter) throws IOException {
-    Interleave.Builder interleaveBuilder = Interleave.newBuilder();
+    List<byte[]> prefixes = getDistinctPrefixes(filter);
+    if (prefixes.isEmpty()) {
+      // HBase includes every column when there are no prefixes.
+      return FilterAdapterHelper.ACCEPT_ALL_FILTER;
+    }
+    List<RowFilter> prefixFilters;
+    if (context.getScan().numFamilies() == 1) {
+      prefixFilters = createColumnRangeFilters(
+          FilterAdapterHelper.getSingleFamilyName(context), prefixes);
+    } else {
+      prefixFilters = createQualifierRegexFilters(prefixes);
+    }
+    if (prefixFilters.size() == 1) {
+      return prefixFilters.get(0);
+    }
+    return RowFilter.newBuilder()
+        .setInterleave(Interleave.newBuilder().addAllFilters(prefixFilters))
+        .build();
+  }
+
+  /**
+   * The interleave outputs a column once for every filter that matches it, so drop the prefixes
+   * that start with another prefix: their columns already match the shorter prefix.
+   *
+   * @return The remaining prefixes in sorted order.
+   */
+  private static List<byte[]> getDistinctPrefixes(MultipleColumnPrefixFilter filter) {
+    byte[][] sortedPrefixes = filter.getPrefix().clone();
+    Arrays.sort(sortedPrefixes, Bytes.BYTES_COMPARATOR);
+    List<byte[]> prefixes = new ArrayList<>();
+    for (byte[] prefix : sortedPrefixes) {
+      // A prefix sorts right after the prefixes that it starts with.
+      if (prefixes.isEmpty() || !Bytes.startsWith(prefix, prefixes.get(prefixes.size() - 1))) {
+        prefixes.add(prefix);
+      }
+    }
+    return prefixes;
+  }
+
+  /**
+   * With a single family, each prefix is the range of qualifiers from the prefix up to its
+   * successor, which Cloud Bigtable can seek to instead of matching every qualifier against a
+   * regex.  Ranges that touch are merged.
+   */
+  private static List<RowFilter> createColumnRangeFilters(
+      String familyName, List<byte[]> prefixes) {
+    List<RowFilter> filters = new ArrayList<>();
+    ByteString rangeStart = null;
+    byte[] rangeEnd = null;
+    for (byte[] prefix : prefixes) {
+      if (rangeStart != null && !Arrays.equals(rangeEnd, prefix)) {
+        filters.add(createColumnRangeFilter(familyName, rangeStart, rangeEnd));
+        rangeStart = null;
+      }
+      if (rangeStart == null) {
+        rangeStart = ByteString.copyFrom(prefix);
+      }
+      rangeEnd = FilterAdapterHelper.prefixSuccessor(prefix);
+    }
+    filters.add(createColumnRangeFilter(familyName, rangeStart, rangeEnd));
+    return filters;
+  }
+
+  /**
+   * @param rangeEnd The exclusive end of the range, or null if the range has no end.
+   */
+  private static RowFilter createColumnRangeFilter(
+      String familyName, ByteString rangeStart, byte[] rangeEnd) {
+    ColumnRange.Builder range = ColumnRange.newBuilder()
+        .setFamilyName(familyName)
+        .setStartQualifierInclusive(rangeStart);
+    if (rangeEnd != null) {
+      range.setEndQualifierExclusive(ByteString.copyFrom(rangeEnd));
+    }
+    return RowFilter.newBuilder().setColumnRangeFilter(range).build();
+  }
+
+  private static List<RowFilter> createQualifierRegexFilters(List<byte[]> prefixes)
+      throws IOException {
+    List<RowFilter> filters = new ArrayList<>();
     ByteArrayOutputStream outputStream = null;
-    for (byte[] prefix : filter.getPrefix()) {
+    for (byte[] prefix : prefixes) {
       if (outputStream == null) {
         outputStream = new ByteArrayOutputStream(prefix.length * 2);
       }
       outputStream.reset();
 
-      ReaderExpressionHelper.writeQuotedExpression(outputStream, prefix);
+      ReaderExpressionHelper.writeQuotedRegularExpression(outputStream, prefix);
       outputStream.write(ReaderExpressionHelper.ALL_QUALIFIERS_BYTES);
 
-      RowFilter.Builder singlePrefixBuilder = RowFilter.newBuilder();
-      singlePrefixBuilder.setColumnQualifierRegexFilter(
-          ByteString.copyFrom(
-              outputStream.toByteArray()));
-
-      interleaveBuilder.addFilters(singlePrefixBuilder);
+      filters.add(RowFilter.newBuilder()
+          .setColumnQualifierRegexFilter(ByteString.copyFrom(outputStream.toByteArray()))
+          .build());
     }
-    return RowFilter.newBuilder()
-        .setInterleave(interleaveBuilder)
-        .build();
+    return filters;
   }
 
   @Override
@@ -22,10 +22,12 @@ import com.google.cloud.bigtable.hbase.adapters.ReaderExpressionHelper;
 import com.google.protobuf.ByteString;
 
 import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
 import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
 import org.apache.hadoop.hbase.filter.QualifierFilter;
 import org.apache.hadoop.hbase.filter.RegexStringComparator;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 
 /**
@@ -40,7 +42,7 @@ public class QualifierFilterAdapter implements TypedFilterAdapter<QualifierFilte
 
   private static final FilterSupportStatus UNSUPPORTED_COMPARABLE =
       FilterSupportStatus.newNotSupported(
-          "QualifierFilter must have a BinaryComparator with any "
+          "QualifierFilter must have a BinaryComparator or BinaryPrefixComparator with any "
               + "CompareOp or a RegexStringComparator with a EQUAL COmpareOp.");
 
   @Override
@@ -52,6 +54,9 @@ public class QualifierFilterAdapter implements TypedFilterAdapter<QualifierFilte
     } else if (filter.getComparator() instanceof BinaryComparator) {
       return adaptBinaryComparator(
           context, filter.getOperator(), (BinaryComparator) filter.getComparator());
+    } else if (filter.getComparator() instanceof BinaryPrefixComparator) {
+      return adaptBinaryPrefixComparator(
+          context, filter.getOperator(), (BinaryPrefixComparator) filter.getComparator());
     }
     throw new IllegalStateException(
         String.format(
@@ -62,26 +67,27 @@ public class QualifierFilterAdapter implements TypedFilterAdapter<QualifierFilte
   private RowFilter adaptBinaryComparator(
       FilterAdapterContext context, CompareOp compareOp, BinaryComparator comparator)
       throws IOException {
-    byte[] quoted = ReaderExpressionHelper.quoteRegularExpression(comparator.getValue());
-    ByteString quotedValue = ByteString.copyFrom(quoted);
+    // Column ranges compare raw qualifiers, only the regex of EQUAL is quoted.
+    ByteString value = ByteString.copyFrom(comparator.getValue());
     switch (compareOp) {
       case LESS:
         return RowFilter.newBuilder()
             .setColumnRangeFilter(
                 ColumnRange.newBuilder()
                     .setFamilyName(FilterAdapterHelper.getSingleFamilyName(context))
-                    .setEndQualifierExclusive(quotedValue))
+                    .setEndQualifierExclusive(value))
             .build();
       case LESS_OR_EQUAL:
         return RowFilter.newBuilder()
             .setColumnRangeFilter(
                 ColumnRange.newBuilder()
                     .setFamilyName(FilterAdapterHelper.getSingleFamilyName(context))
-                    .setEndQualifierInclusive(quotedValue))
+                    .setEndQualifierInclusive(value))
             .build();
       case EQUAL:
         return RowFilter.newBuilder()
-            .setColumnQualifierRegexFilter(quotedValue)
+            .setColumnQualifierRegexFilter(ByteString.copyFrom(
+                ReaderExpressionHelper.quoteRegularExpression(comparator.getValue())))
             .build();
       case NOT_EQUAL:
         // This strictly less than + strictly greater than:
@@ -94,27 +100,27 @@ public class QualifierFilterAdapter implements TypedFilterAdapter<QualifierFilte
                             .setColumnRangeFilter(
                                 ColumnRange.newBuilder()
                                     .setFamilyName(familyName)
-                                    .setEndQualifierExclusive(quotedValue)))
+                                    .setEndQualifierExclusive(value)))
                     .addFilters(
                         RowFilter.newBuilder()
                             .setColumnRangeFilter(
                                 ColumnRange.newBuilder()
                                     .setFamilyName(familyName)
-                                    .setStartQualifierExclusive(quotedValue))))
+                                    .setStartQualifierExclusive(value))))
             .build();
       case GREATER_OR_EQUAL:
         return RowFilter.newBuilder()
             .setColumnRangeFilter(
                 ColumnRange.newBuilder()
                     .setFamilyName(FilterAdapterHelper.getSingleFamilyName(context))
-                    .setStartQualifierInclusive(quotedValue))
+                    .setStartQualifierInclusive(value))
             .build();
       case GREATER:
         return RowFilter.newBuilder()
             .setColumnRangeFilter(
                 ColumnRange.newBuilder()
                     .setFamilyName(FilterAdapterHelper.getSingleFamilyName(context))
-                    .setStartQualifierExclusive(quotedValue))
+                    .setStartQualifierExclusive(value))
             .build();
       case NO_OP:
         // No-op always passes. Instead of attempting to return null or default instance,
@@ -126,6 +132,74 @@ public class QualifierFilterAdapter implements TypedFilterAdapter<QualifierFilte
     }
   }
 
+  /**
+   * A BinaryPrefixComparator compares its prefix to the first prefix.length bytes of the
+   * qualifier, so every qualifier starting with the prefix compares equal, and the qualifiers
+   * that compare greater start at the successor of the prefix.
+   */
+  private RowFilter adaptBinaryPrefixComparator(
+      FilterAdapterContext context, CompareOp compareOp, BinaryPrefixComparator comparator)
+      throws IOException {
+    byte[] prefix = comparator.getValue();
+    ByteString prefixValue = ByteString.copyFrom(prefix);
+    byte[] successorBytes = FilterAdapterHelper.prefixSuccessor(prefix);
+    // There are no qualifiers after a prefix of only 0xFF bytes.
+    ByteString successor = successorBytes == null ? null : ByteString.copyFrom(successorBytes);
+    switch (compareOp) {
+      case EQUAL:
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(prefix.length * 2);
+        ReaderExpressionHelper.writeQuotedRegularExpression(outputStream, prefix);
+        outputStream.write(ReaderExpressionHelper.ALL_QUALIFIERS_BYTES);
+        return RowFilter.newBuilder()
+            .setColumnQualifierRegexFilter(ByteString.copyFrom(outputStream.toByteArray()))
+            .build();
+      case LESS:
+        return createPrefixRangeFilter(context, null, prefixValue);
+      case LESS_OR_EQUAL:
+        return createPrefixRangeFilter(context, null, successor);
+      case GREATER:
+        if (successor == null) {
+          return FilterAdapterHelper.REJECT_ALL_FILTER;
+        }
+        return createPrefixRangeFilter(context, successor, null);
+      case GREATER_OR_EQUAL:
+        return createPrefixRangeFilter(context, prefixValue, null);
+      case NOT_EQUAL:
+        RowFilter lessThan = createPrefixRangeFilter(context, null, prefixValue);
+        if (successor == null) {
+          return lessThan;
+        }
+        return RowFilter.newBuilder()
+            .setInterleave(
+                Interleave.newBuilder()
+                    .addFilters(lessThan)
+                    .addFilters(createPrefixRangeFilter(context, successor, null)))
+            .build();
+      case NO_OP:
+        // HBase filters out every cell with NO_OP.
+        return FilterAdapterHelper.REJECT_ALL_FILTER;
+      default:
+        throw new IllegalStateException(
+            String.format("Cannot handle unknown compare op %s", compareOp));
+    }
+  }
+
+  /**
+   * Create a column range of [startInclusive, endExclusive), where a null end is unbounded.
+   */
+  private static RowFilter createPrefixRangeFilter(
+      FilterAdapterContext context, ByteString startInclusive, ByteString endExclusive) {
+    ColumnRange.Builder range = ColumnRange.newBuilder()
+        .setFamilyName(FilterAdapterHelper.getSingleFamilyName(context));
+    if (startInclusive != null) {
+      range.setStartQualifierInclusive(startInclusive);
+    }
+    if (endExclusive != null) {
+      range.setEndQualifierExclusive(endExclusive);
+    }
+    return RowFilter.newBuilder().setColumnRangeFilter(range).build();
+  }
+
   private RowFilter adaptRegexStringComparator(
       CompareOp compareOp, RegexStringComparator comparator) {
     String pattern = FilterAdapterHelper.extractRegexPattern(comparator);
@@ -152,18 +226,22 @@ public class QualifierFilterAdapter implements TypedFilterAdapter<QualifierFilte
         && CompareOp.EQUAL.equals(filter.getOperator());
   }
 
+  private static boolean isBinaryComparator(QualifierFilter filter) {
+    return filter.getComparator() instanceof BinaryComparator
+        || filter.getComparator() instanceof BinaryPrefixComparator;
+  }
+
   @Override
   public FilterSupportStatus isFilterSupported(
       FilterAdapterContext context, QualifierFilter filter) {
     // For range filters, we only support a single family:
     if (!CompareOp.EQUAL.equals(filter.getOperator())
-        && filter.getComparator() instanceof BinaryComparator
+        && isBinaryComparator(filter)
         && context.getScan().numFamilies() != 1) {
       return SINGLE_FAMILY_REQUIRED;
     }
     // Support binary comparators and regex comparators with equal compare op:
-    if ( !(filter.getComparator() instanceof BinaryComparator)
-        && !isRegexAndSupported(filter)) {
+    if (!isBinaryComparator(filter) && !isRegexAndSupported(filter)) {
       return UNSUPPORTED_COMPARABLE;
     }
     return FilterSupportStatus.SUPPORTED;
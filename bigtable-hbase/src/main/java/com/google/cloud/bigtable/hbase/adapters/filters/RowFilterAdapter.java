@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.RowFilter;
+import com.google.bigtable.v1.RowFilter.Condition;
+import com.google.cloud.bigtable.hbase.adapters.ReaderExpressionHelper;
+import com.google.protobuf.ByteString;
+
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.ByteArrayComparable;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Adapter for HBase {@link org.apache.hadoop.hbase.filter.RowFilter} instances.  Matching a row key
+ * is done with a row key regex, and ordering comparisons limit the row range of the request with
+ * a {@link RowRangeLimitHook}, so rows outside of the range aren't read at all.
+ */
+public class RowFilterAdapter
+    implements TypedFilterAdapter<org.apache.hadoop.hbase.filter.RowFilter> {
+
+  private static final FilterSupportStatus TOP_LEVEL_ONLY =
+      FilterSupportStatus.newNotSupported(
+          "RowFilters with a LESS, LESS_OR_EQUAL, GREATER or GREATER_OR_EQUAL CompareOp may only "
+              + "appear as top level filters or be contained within a top-level FilterList "
+              + "with MUST_PASS_ALL as its Operator");
+
+  @Override
+  public RowFilter adapt(
+      FilterAdapterContext context, org.apache.hadoop.hbase.filter.RowFilter filter)
+      throws IOException {
+    CompareOp compareOp = filter.getOperator();
+    ByteArrayComparable comparator = filter.getComparator();
+    if (compareOp == CompareOp.NO_OP) {
+      // HBase filters out every row with NO_OP.
+      return FilterAdapterHelper.REJECT_ALL_FILTER;
+    }
+    if (comparator instanceof RegexStringComparator) {
+      return RowFilter.newBuilder()
+          .setRowKeyRegexFilter(ByteString.copyFromUtf8(
+              FilterAdapterHelper.extractRegexPattern((RegexStringComparator) comparator)))
+          .build();
+    }
+
+    byte[] value = comparator.getValue();
+    boolean isPrefix = comparator instanceof BinaryPrefixComparator;
+    switch (compareOp) {
+      case EQUAL:
+        return createRowKeyFilter(value, isPrefix);
+      case NOT_EQUAL:
+        // Rows that match the key output nothing, as the condition has no true filter.
+        return RowFilter.newBuilder()
+            .setCondition(Condition.newBuilder()
+                .setPredicateFilter(createRowKeyFilter(value, isPrefix))
+                .setFalseFilter(FilterAdapterHelper.ACCEPT_ALL_FILTER))
+            .build();
+      default:
+        return limitRowRange(context, compareOp, value, isPrefix);
+    }
+  }
+
+  /**
+   * Limit the row range of the request to the rows that the comparison keeps.
+   *
+   * @return null if the range was limited, or a filter of every cell if no row can match.
+   */
+  private static RowFilter limitRowRange(
+      FilterAdapterContext context, CompareOp compareOp, byte[] value, boolean isPrefix) {
+    // The rows whose first value.length bytes compare greater than a prefix are the rows that
+    // start with the successor of the prefix or come after it.
+    byte[] successor = isPrefix ? FilterAdapterHelper.prefixSuccessor(value) : keySuccessor(value);
+    ByteString startKey = ByteString.EMPTY;
+    ByteString endKey = ByteString.EMPTY;
+    switch (compareOp) {
+      case LESS:
+        if (value.length == 0) {
+          return FilterAdapterHelper.REJECT_ALL_FILTER;
+        }
+        endKey = ByteString.copyFrom(value);
+        break;
+      case LESS_OR_EQUAL:
+        if (successor != null) {
+          endKey = ByteString.copyFrom(successor);
+        }
+        break;
+      case GREATER:
+        if (successor == null) {
+          return FilterAdapterHelper.REJECT_ALL_FILTER;
+        }
+        startKey = ByteString.copyFrom(successor);
+        break;
+      case GREATER_OR_EQUAL:
+        startKey = ByteString.copyFrom(value);
+        break;
+      default:
+        throw new IllegalStateException(
+            String.format("Cannot handle unknown compare op %s", compareOp));
+    }
+    context.getReadHooks().composePreSendHook(new RowRangeLimitHook(startKey, endKey));
+    // This filter is applied to the row range, and doesn't need a RowFilter.
+    return null;
+  }
+
+  /**
+   * @return The first row key after the given key.
+   */
+  private static byte[] keySuccessor(byte[] key) {
+    byte[] successor = new byte[key.length + 1];
+    System.arraycopy(key, 0, successor, 0, key.length);
+    return successor;
+  }
+
+  private static RowFilter createRowKeyFilter(byte[] value, boolean isPrefix) throws IOException {
+    ByteArrayOutputStream baos = new ByteArrayOutputStream(value.length * 2);
+    ReaderExpressionHelper.writeQuotedRegularExpression(baos, value);
+    if (isPrefix) {
+      baos.write(ReaderExpressionHelper.ALL_QUALIFIERS_BYTES);
+    }
+    return RowFilter.newBuilder()
+        .setRowKeyRegexFilter(ByteString.copyFrom(baos.toByteArray()))
+        .build();
+  }
+
+  @Override
+  public FilterSupportStatus isFilterSupported(
+      FilterAdapterContext context, org.apache.hadoop.hbase.filter.RowFilter filter) {
+    ByteArrayComparable comparator = filter.getComparator();
+    CompareOp compareOp = filter.getOperator();
+    if (comparator instanceof RegexStringComparator) {
+      if (compareOp == CompareOp.EQUAL || compareOp == CompareOp.NO_OP) {
+        return FilterSupportStatus.SUPPORTED;
+      }
+    } else if (comparator instanceof BinaryComparator
+        || comparator instanceof BinaryPrefixComparator) {
+      if (compareOp == CompareOp.EQUAL || compareOp == CompareOp.NOT_EQUAL
+          || compareOp == CompareOp.NO_OP
+          || FilterAdapterHelper.isTopLevelOrInTopLevelMustPassAll(context)) {
+        return FilterSupportStatus.SUPPORTED;
+      }
+      return TOP_LEVEL_ONLY;
+    }
+    return FilterSupportStatus.newNotSupported(
+        String.format(
+            "RowFilter must have either a BinaryComparator or BinaryPrefixComparator with any "
+                + "compareOp or a RegexStringComparator with an EQUAL compareOp. Found (%s, %s)",
+            comparator.getClass().getSimpleName(),
+            compareOp));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowRange;
+import com.google.common.base.Function;
+import com.google.common.base.MoreObjects;
+import com.google.protobuf.ByteString;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * A pre-send hook that limits a ReadRowsRequest to the rows in [startKey, endKey), so that
+ * filters of row keys are applied by reading fewer rows instead of filtering them.  An empty
+ * startKey or endKey leaves that end of the range unbounded.
+ *
+ * <p>A request of a single row that is outside of the range reads no cells, and so does a request
+ * of a range that doesn't overlap the limit.
+ */
+public class RowRangeLimitHook implements Function<ReadRowsRequest, ReadRowsRequest> {
+
+  private final ByteString startKey;
+  private final ByteString endKey;
+
+  /**
+   * @param startKey The first row to read, or an empty ByteString for no lower bound.
+   * @param endKey The row after the last row to read, or an empty ByteString for no upper bound.
+   */
+  public RowRangeLimitHook(ByteString startKey, ByteString endKey) {
+    this.startKey = startKey;
+    this.endKey = endKey;
+  }
+
+  @Override
+  public ReadRowsRequest apply(ReadRowsRequest request) {
+    switch (request.getTargetCase()) {
+      case ROW_KEY:
+        if (contains(request.getRowKey())) {
+          return request;
+        }
+        return rejectAll(request);
+      case ROW_RANGE:
+        RowRange range = request.getRowRange();
+        ByteString start = max(range.getStartKey(), startKey);
+        ByteString end = minEnd(range.getEndKey(), endKey);
+        if (!end.isEmpty() && compare(start, end) >= 0) {
+          return rejectAll(request);
+        }
+        return request.toBuilder()
+            .setRowRange(RowRange.newBuilder().setStartKey(start).setEndKey(end))
+            .build();
+      default:
+        return request.toBuilder()
+            .setRowRange(RowRange.newBuilder().setStartKey(startKey).setEndKey(endKey))
+            .build();
+    }
+  }
+
+  private boolean contains(ByteString rowKey) {
+    return compare(rowKey, startKey) >= 0
+        && (endKey.isEmpty() || compare(rowKey, endKey) < 0);
+  }
+
+  private static ReadRowsRequest rejectAll(ReadRowsRequest request) {
+    // Bigtable rejects ranges that end before they start, so filter out every cell instead.
+    return request.toBuilder().setFilter(FilterAdapterHelper.REJECT_ALL_FILTER).build();
+  }
+
+  private static ByteString max(ByteString left, ByteString right) {
+    return compare(left, right) >= 0 ? left : right;
+  }
+
+  /**
+   * @return The lesser of two range ends, where an empty end is unbounded.
+   */
+  private static ByteString minEnd(ByteString left, ByteString right) {
+    if (left.isEmpty()) {
+      return right;
+    } else if (right.isEmpty()) {
+      return left;
+    }
+    return compare(left, right) <= 0 ? left : right;
+  }
+
+  private static int compare(ByteString left, ByteString right) {
+    return Bytes.compareTo(left.toByteArray(), right.toByteArray());
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(RowRangeLimitHook.class)
+        .add("startKey", Bytes.toStringBinary(startKey.toByteArray()))
+        .add("endKey", Bytes.toStringBinary(endKey.toByteArray()))
+        .toString();
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.RowFilter;
+
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.WhileMatchFilter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A TypedFilterAdapter for adapting WhileMatchFilter instances.  A WhileMatchFilter ends the scan
+ * at the first row that its filter drops, which is the same as applying the filter when the
+ * filter keeps a leading run of rows and drops all of the rows after it.  Only such filters are
+ * supported.
+ */
+public class WhileMatchFilterAdapter implements TypedFilterAdapter<WhileMatchFilter> {
+
+  private static final FilterSupportStatus UNSUPPORTED_FILTER =
+      FilterSupportStatus.newNotSupported(
+          "WhileMatchFilter must wrap an InclusiveStopFilter, a PageFilter or a RowFilter with a "
+              + "BinaryComparator or BinaryPrefixComparator and a LESS or LESS_OR_EQUAL CompareOp.");
+
+  private final FilterAdapter subFilterAdapter;
+
+  public WhileMatchFilterAdapter(FilterAdapter subFilterAdapter) {
+    this.subFilterAdapter = subFilterAdapter;
+  }
+
+  @Override
+  public RowFilter adapt(FilterAdapterContext context, WhileMatchFilter filter)
+      throws IOException {
+    return subFilterAdapter.adaptFilter(context, filter.getFilter()).orNull();
+  }
+
+  @Override
+  public FilterSupportStatus isFilterSupported(
+      FilterAdapterContext context, WhileMatchFilter filter) {
+    Filter subFilter = filter.getFilter();
+    if (!isRowPrefixFilter(subFilter)) {
+      return UNSUPPORTED_FILTER;
+    }
+    List<FilterSupportStatus> unsupportedStatuses = new ArrayList<>();
+    subFilterAdapter.collectUnsupportedStatuses(context, subFilter, unsupportedStatuses);
+    if (unsupportedStatuses.isEmpty()) {
+      return FilterSupportStatus.SUPPORTED;
+    }
+    return FilterSupportStatus.newCompositeNotSupported(unsupportedStatuses);
+  }
+
+  /**
+   * @return true if the filter keeps rows until it drops one, and then drops every row after it.
+   */
+  private static boolean isRowPrefixFilter(Filter filter) {
+    if (filter instanceof InclusiveStopFilter || filter instanceof PageFilter) {
+      return true;
+    }
+    if (filter instanceof org.apache.hadoop.hbase.filter.RowFilter) {
+      org.apache.hadoop.hbase.filter.RowFilter rowFilter =
+          (org.apache.hadoop.hbase.filter.RowFilter) filter;
+      return (rowFilter.getComparator() instanceof BinaryComparator
+              || rowFilter.getComparator() instanceof BinaryPrefixComparator)
+          && (rowFilter.getOperator() == CompareOp.LESS
+              || rowFilter.getOperator() == CompareOp.LESS_OR_EQUAL);
+    }
+    return false;
+  }
+}
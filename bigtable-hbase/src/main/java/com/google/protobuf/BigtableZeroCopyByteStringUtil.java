@@ -0,0 +1,50 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.protobuf;
+
+/**
+ * Creates {@link ByteString}s that share an existing byte array instead of copying it.  This
+ * lives in the protobuf package because protobuf doesn't expose its wrapping constructors.
+ *
+ * <p>The array must not be modified after it is wrapped.  HBase has the same contract for the
+ * arrays of an operation that was handed to a client, so arrays that come from an operation can
+ * be wrapped.
+ */
+public final class BigtableZeroCopyByteStringUtil {
+
+  /**
+   * Wrap a byte array in a {@link ByteString} without copying it.
+   */
+  public static ByteString wrap(byte[] array) {
+    return array.length == 0 ? ByteString.EMPTY : new LiteralByteString(array);
+  }
+
+  /**
+   * Wrap a range of a byte array in a {@link ByteString} without copying it.
+   */
+  public static ByteString wrap(byte[] array, int offset, int length) {
+    if (length == 0) {
+      return ByteString.EMPTY;
+    }
+    if (offset == 0 && length == array.length) {
+      return new LiteralByteString(array);
+    }
+    return new BoundedByteString(array, offset, length);
+  }
+
+  private BigtableZeroCopyByteStringUtil() {
+  }
+}
@@ -18,12 +18,19 @@ package org.apache.hadoop.hbase.client;
 
 import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.Logger;
+import com.google.cloud.bigtable.grpc.BigtableClient;
 import com.google.cloud.bigtable.grpc.BigtableSession;
 import com.google.cloud.bigtable.grpc.BigtableTableAdminClient;
+import com.google.cloud.bigtable.grpc.RequestPriority;
+import com.google.cloud.bigtable.hbase.BatchExecutor;
 import com.google.cloud.bigtable.hbase.BigtableBufferedMutator;
 import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
 import com.google.cloud.bigtable.hbase.BigtableRegionLocator;
 import com.google.cloud.bigtable.hbase.BigtableTable;
+import com.google.cloud.bigtable.hbase.ReadCoalescer;
+import com.google.cloud.bigtable.hbase.RowCache;
+import com.google.cloud.bigtable.hbase.WriteRateLimiter;
+import com.google.cloud.bigtable.hbase.adapters.RowFilterCache;
 import com.google.common.base.MoreObjects;
 
 import org.apache.hadoop.conf.Configuration;
@@ -38,6 +45,8 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -58,6 +67,120 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
   public static final String BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_KEY =
       "google.bigtable.buffered.mutator.max.memory";
 
+  /**
+   * The maximum number of mutations per second that all of the buffered mutators of a connection
+   * may issue combined.  0 or less means no limit.  The limit can be changed on a running
+   * connection via {@link #getWriteRateLimiter()}.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_MAX_MUTATIONS_PER_SECOND_KEY =
+      "google.bigtable.buffered.mutator.throttling.mutations.per.second";
+
+  /**
+   * The maximum number of bytes per second that all of the buffered mutators of a connection
+   * may issue combined.  0 or less means no limit.  The limit can be changed on a running
+   * connection via {@link #getWriteRateLimiter()}.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_MAX_BYTES_PER_SECOND_KEY =
+      "google.bigtable.buffered.mutator.throttling.bytes.per.second";
+
+  /**
+   * The maximum amount of memory that all of the buffered mutators of a connection may use for
+   * asynchronous RPCs combined, no matter how many tables they write to.  Each mutator is also
+   * limited by its own write buffer size.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_MEMORY_KEY =
+      "google.bigtable.buffered.mutator.connection.max.memory";
+  // Default to 128MB, the write buffers of four mutators of the default size.
+  public static final long BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_MEMORY_DEFAULT =
+      128L * 1024 * 1024;
+
+  /**
+   * The maximum number of RPCs that all of the buffered mutators of a connection may have in
+   * flight combined.  Defaults to {@link #MAX_INFLIGHT_RPCS_DEFAULT} per channel, which is also
+   * the default limit of a single mutator ({@link #MAX_INFLIGHT_RPCS_KEY}).  Before this limit
+   * existed each mutator had that many RPCs to itself, so a job that writes to several tables at
+   * once now has the concurrency of one mutator in total unless this is raised.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_INFLIGHT_RPCS_KEY =
+      "google.bigtable.buffered.mutator.connection.max.inflight.rpcs";
+
+  /**
+   * A local directory where buffered mutators write Puts and Deletes when their memory budget is
+   * exhausted, instead of blocking the caller.  Spilled mutations are sent in order as capacity
+   * returns.  Mutations that are still in the directory when a process exits are sent by the
+   * next mutator for the same table, so they may be sent more than once.  For that reason a Put is
+   * only spilled if all of its cells have a timestamp, either set by the caller or by the client
+   * (see {@link BigtableOptionsFactory#BIGTABLE_USE_CLIENT_TIMESTAMPS_KEY}); other Puts wait for
+   * the budget.  Unset by default, which disables spilling.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_SPILL_DIRECTORY_KEY =
+      "google.bigtable.buffered.mutator.spill.directory";
+
+  /**
+   * The size of each memory-mapped spill segment file.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_SPILL_SEGMENT_SIZE_KEY =
+      "google.bigtable.buffered.mutator.spill.segment.size";
+  public static final int BIGTABLE_BUFFERED_MUTATOR_SPILL_SEGMENT_SIZE_DEFAULT = 64 * 1024 * 1024;
+
+  /**
+   * The maximum amount of disk space that a buffered mutator may spill to.  Writes block once
+   * this is reached.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_SPILL_MAX_SIZE_KEY =
+      "google.bigtable.buffered.mutator.spill.max.size";
+  public static final long BIGTABLE_BUFFERED_MUTATOR_SPILL_MAX_SIZE_DEFAULT =
+      1024L * 1024 * 1024;
+
+  /**
+   * If true, buffered mutators serialize each Put and Delete into a single byte array as soon as
+   * it is submitted, and don't hold on to the HBase objects while the RPC is waiting or in flight.
+   * The request is parsed back from the array when it is issued.  The memory budget counts the
+   * serialized size instead of {@link Mutation#heapSize()}.  This reduces the number of
+   * long-lived objects, at the cost of failures being reported to the
+   * {@link BufferedMutator.ExceptionListener} with mutations that only contain the row key.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_SERIALIZE_MUTATIONS_KEY =
+      "google.bigtable.buffered.mutator.serialize.mutations";
+
+  /**
+   * The number of ordered lanes in each buffered mutator.  When this is greater than 0, each
+   * mutation is assigned to a lane by the hash of its row key, and is only sent once the previous
+   * mutation in its lane has completed.  This keeps the mutations of each row in order without a
+   * flush, while mutations in different lanes are sent in parallel.  The number of lanes limits
+   * the parallelism, so it should usually be at least the maximum number of in-flight RPCs.
+   * 0, the default, sends every mutation as soon as it is submitted.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_ORDERED_LANES_KEY =
+      "google.bigtable.buffered.mutator.ordered.lanes";
+
+  /**
+   * Whether buffered mutators should merge Puts and Deletes for a row that already has a request
+   * in flight.  Each row then has at most one request in flight, and mutations submitted while
+   * it's in flight are sent together, in order, in a single MutateRowRequest once it completes.
+   * A merged request succeeds or fails as a whole.  Defaults to false.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_COALESCE_MUTATIONS_KEY =
+      "google.bigtable.buffered.mutator.coalesce.mutations";
+
+  /**
+   * If greater than 0, buffered mutators sum Increments per row, family and qualifier instead of
+   * sending each one, and send the sums at this interval in milliseconds, which bounds how stale
+   * a counter can be.  Pending sums are also sent on flush() and close().  Failures are reported
+   * for the row only, since the original Increments are not kept.  0, the default, sends each
+   * Increment as soon as it is submitted.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_INCREMENT_FLUSH_INTERVAL_MS_KEY =
+      "google.bigtable.buffered.mutator.increment.flush.interval.ms";
+
+  /**
+   * The number of distinct pending counters at which a buffered mutator sends its summed
+   * Increments without waiting for the flush interval.
+   */
+  public static final String BIGTABLE_BUFFERED_MUTATOR_INCREMENT_MAX_COUNTERS_KEY =
+      "google.bigtable.buffered.mutator.increment.max.counters";
+  public static final int BIGTABLE_BUFFERED_MUTATOR_INCREMENT_MAX_COUNTERS_DEFAULT = 10000;
+
   private static final AtomicLong SEQUENCE_GENERATOR = new AtomicLong();
   private static final Map<Long, BigtableBufferedMutator> ACTIVE_BUFFERED_MUTATORS =
       Collections.synchronizedMap(new HashMap<Long, BigtableBufferedMutator>());
@@ -102,6 +225,30 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
   private volatile boolean cleanupPool = false;
   private final BigtableOptions options;
   private final TableConfiguration tableConfig;
+  private final WriteRateLimiter writeRateLimiter;
+
+  // The memory and RPC budget, and the completion callback executor, shared by all of the
+  // buffered mutators of this connection.
+  private final BigtableBufferedMutator.HeapSizeManager bufferedMutatorSizeManager;
+  private final ExecutorService bufferedMutatorCallbackExecutor;
+
+  // The executors, with their clients and adapters, that all of the buffered mutators of a table
+  // send their mutations through.
+  private final ConcurrentMap<TableName, BatchExecutor> bufferedMutatorExecutors =
+      new ConcurrentHashMap<>();
+
+  // Coalesces identical reads of all of the tables of this connection, or null if disabled.
+  private final ReadCoalescer readCoalescer;
+
+  // The tables whose rows are cached, and the caches that have been created for them.  A cache is
+  // shared by all of the tables and buffered mutators of a table, so that their writes remove
+  // rows from it.
+  private final Set<String> rowCacheTables;
+  private final ConcurrentMap<TableName, RowCache> rowCaches = new ConcurrentHashMap<>();
+
+  // The adapted filters of the read shapes of all of the tables of this connection, or null if
+  // disabled.
+  private final RowFilterCache rowFilterCache;
 
   // A set of tables that have been disabled via BigtableAdmin.
   private Set<TableName> disabledTables = new HashSet<>();
@@ -132,6 +279,24 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
 
     this.session = new BigtableSession(options, batchPool);
     this.tableConfig = new TableConfiguration(conf);
+    this.writeRateLimiter = new WriteRateLimiter(
+        conf.getDouble(BIGTABLE_BUFFERED_MUTATOR_MAX_MUTATIONS_PER_SECOND_KEY, 0),
+        conf.getDouble(BIGTABLE_BUFFERED_MUTATOR_MAX_BYTES_PER_SECOND_KEY, 0));
+    this.bufferedMutatorSizeManager = new BigtableBufferedMutator.HeapSizeManager(
+        conf.getLong(BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_MEMORY_KEY,
+          BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_MEMORY_DEFAULT),
+        conf.getInt(BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_INFLIGHT_RPCS_KEY,
+          MAX_INFLIGHT_RPCS_DEFAULT * options.getChannelCount()));
+    this.bufferedMutatorCallbackExecutor = BigtableBufferedMutator.createHeapSizeExecutor();
+    this.readCoalescer = conf.getBoolean(BigtableOptionsFactory.BIGTABLE_COALESCE_READS_KEY,
+        BigtableOptionsFactory.BIGTABLE_COALESCE_READS_DEFAULT) ? new ReadCoalescer() : null;
+    this.rowCacheTables = new HashSet<>(
+        conf.getTrimmedStringCollection(BigtableOptionsFactory.BIGTABLE_ROW_CACHE_TABLES_KEY));
+    int filterCacheMaxEntries =
+        conf.getInt(BigtableOptionsFactory.BIGTABLE_FILTER_CACHE_MAX_ENTRIES_KEY,
+          BigtableOptionsFactory.BIGTABLE_FILTER_CACHE_MAX_ENTRIES_DEFAULT);
+    this.rowFilterCache =
+        filterCacheMaxEntries > 0 ? new RowFilterCache(filterCacheMaxEntries) : null;
   }
 
   @Override
@@ -146,7 +311,52 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
 
   @Override
   public Table getTable(TableName tableName, ExecutorService pool) throws IOException {
-    return new BigtableTable(this, tableName, options, session.getDataClient(), pool);
+    return new BigtableTable(this, tableName, options,
+        getDataClient(tableName, RequestPriority.INTERACTIVE),
+        getDataClient(tableName, RequestPriority.BATCH), pool);
+  }
+
+  /**
+   * @return The client for requests of the table with the given priority, which coalesces reads if
+   *         enabled, and goes through the row cache of the table if its rows are cached.
+   */
+  private BigtableClient getDataClient(TableName tableName, RequestPriority priority)
+      throws IOException {
+    BigtableClient client = session.getDataClient(priority);
+    if (readCoalescer != null) {
+      client = readCoalescer.wrap(client);
+    }
+    RowCache rowCache = getRowCache(tableName);
+    return rowCache == null ? client : rowCache.wrap(client);
+  }
+
+  /**
+   * @return The row cache of the table, with its hit, miss and eviction counts, or null if the
+   *         rows of the table aren't cached.
+   *         See {@link BigtableOptionsFactory#BIGTABLE_ROW_CACHE_TABLES_KEY}.
+   */
+  public RowCache getRowCache(TableName tableName) {
+    if (!rowCacheTables.contains(tableName.getNameAsString())) {
+      return null;
+    }
+    RowCache rowCache = rowCaches.get(tableName);
+    if (rowCache == null) {
+      RowCache newRowCache = RowCache.fromConfiguration(conf);
+      rowCache = rowCaches.putIfAbsent(tableName, newRowCache);
+      if (rowCache == null) {
+        rowCache = newRowCache;
+      }
+    }
+    return rowCache;
+  }
+
+  /**
+   * @return The cache of adapted read filters shared by the tables of this connection, with the
+   *         adaptation time it saved, or null if disabled.
+   *         See {@link BigtableOptionsFactory#BIGTABLE_FILTER_CACHE_MAX_ENTRIES_KEY}.
+   */
+  public RowFilterCache getRowFilterCache() {
+    return rowFilterCache;
   }
 
   @Override
@@ -163,6 +373,22 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
 
     int defaultRpcCount = MAX_INFLIGHT_RPCS_DEFAULT * options.getChannelCount();
     int maxInflightRpcs = conf.getInt(MAX_INFLIGHT_RPCS_KEY, defaultRpcCount);
+    long connectionMaxMemory = conf.getLong(BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_MEMORY_KEY,
+      BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_MEMORY_DEFAULT);
+    if (params.getWriteBufferSize() > connectionMaxMemory) {
+      LOG.warn("The write buffer size of the buffered mutator for %s is %d, but it is limited to "
+          + "the %d bytes that all of the connection's buffered mutators share.  See %s.",
+        params.getTableName(), params.getWriteBufferSize(), connectionMaxMemory,
+        BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_MEMORY_KEY);
+    }
+    int connectionMaxInflightRpcs =
+        conf.getInt(BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_INFLIGHT_RPCS_KEY, defaultRpcCount);
+    if (maxInflightRpcs > connectionMaxInflightRpcs) {
+      LOG.warn("The buffered mutator for %s may have %d RPCs in flight, but it is limited to the "
+          + "%d RPCs that all of the connection's buffered mutators share.  See %s.",
+        params.getTableName(), maxInflightRpcs, connectionMaxInflightRpcs,
+        BIGTABLE_BUFFERED_MUTATOR_CONNECTION_MAX_INFLIGHT_RPCS_KEY);
+    }
 
     final long id = SEQUENCE_GENERATOR.incrementAndGet();
 
@@ -170,10 +396,12 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
         params.getTableName(),
         maxInflightRpcs,
         params.getWriteBufferSize(),
-        session.getDataClient(),
-        options,
-        params.getPool(),
-        params.getListener()){
+        getBufferedMutatorExecutor(params.getTableName()),
+        options.getDataHost().toString(),
+        params.getListener(),
+        writeRateLimiter,
+        bufferedMutatorSizeManager,
+        bufferedMutatorCallbackExecutor){
 
       @Override
       public void close() throws IOException {
@@ -188,6 +416,23 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
     return bigtableBufferedMutator;
   }
 
+  /**
+   * @return The executor that the buffered mutators of the table share.
+   */
+  private BatchExecutor getBufferedMutatorExecutor(TableName tableName) throws IOException {
+    BatchExecutor executor = bufferedMutatorExecutors.get(tableName);
+    if (executor == null) {
+      BatchExecutor newExecutor = BigtableBufferedMutator.createBatchExecutor(conf, tableName,
+          getDataClient(tableName, RequestPriority.INTERACTIVE),
+          getDataClient(tableName, RequestPriority.BATCH), options, getBatchPool());
+      executor = bufferedMutatorExecutors.putIfAbsent(tableName, newExecutor);
+      if (executor == null) {
+        executor = newExecutor;
+      }
+    }
+    return executor;
+  }
+
   @Override
   public BufferedMutator getBufferedMutator(TableName tableName) throws IOException {
     long maxMemory = conf.getLong(
@@ -256,11 +501,24 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
     if (this.closed) {
       return;
     }
+    if (writeRateLimiter.getThrottledTime(TimeUnit.MILLISECONDS) > 0) {
+      LOG.info("Buffered mutator write throttling summary: %s", writeRateLimiter);
+    }
+    if (readCoalescer != null) {
+      LOG.info("Read coalescing summary: %s", readCoalescer);
+    }
+    for (Map.Entry<TableName, RowCache> rowCache : rowCaches.entrySet()) {
+      LOG.info("Row cache summary for %s: %s", rowCache.getKey(), rowCache.getValue());
+    }
+    if (rowFilterCache != null) {
+      LOG.info("Filter cache summary: %s", rowFilterCache);
+    }
     try {
       this.session.close();
     } catch (Exception e) {
       throw new RuntimeException("Error when shutting down clients", e);
     }
+    bufferedMutatorCallbackExecutor.shutdown();
     // If the clients are shutdown, there shouldn't be any more activity on the
     // batch pool (assuming we created it ourselves). If exceptions were raised
     // shutting down the clients, it's not entirely safe to shutdown the pool
@@ -342,4 +600,13 @@ public abstract class AbstractBigtableConnection implements Connection, Closeabl
   protected Set<TableName> getDisabledTables() {
     return disabledTables;
   }
+
+  /**
+   * The {@link WriteRateLimiter} shared by all of the {@link BufferedMutator}s of this connection.
+   * The limits can be adjusted at runtime to throttle a running job, and the limiter reports the
+   * throughput and throttled time so far.
+   */
+  public WriteRateLimiter getWriteRateLimiter() {
+    return writeRateLimiter;
+  }
 }
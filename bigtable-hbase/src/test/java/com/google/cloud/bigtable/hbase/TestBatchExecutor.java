@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.client.Append;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.OperationWithAttributes;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.client.RowMutations;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.bigtable.v1.ReadModifyWriteRowRequest;
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.cloud.bigtable.config.BigtableOptions;
+import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.RequestPriority;
+import com.google.cloud.bigtable.hbase.adapters.AppendAdapter;
+import com.google.cloud.bigtable.hbase.adapters.DeleteAdapter;
+import com.google.cloud.bigtable.hbase.adapters.GetAdapter;
+import com.google.cloud.bigtable.hbase.adapters.IncrementAdapter;
+import com.google.cloud.bigtable.hbase.adapters.MutationAdapter;
+import com.google.cloud.bigtable.hbase.adapters.PutAdapter;
+import com.google.cloud.bigtable.hbase.adapters.RowAdapter;
+import com.google.cloud.bigtable.hbase.adapters.RowMutationsAdapter;
+import com.google.cloud.bigtable.hbase.adapters.ScanAdapter;
+import com.google.cloud.bigtable.hbase.adapters.UnsupportedOperationAdapter;
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests that {@link BatchExecutor} sends each operation through the client of its priority.
+ */
+@RunWith(JUnit4.class)
+public class TestBatchExecutor {
+
+  private static final byte[] ROW = Bytes.toBytes("row");
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+  private static final byte[] QUALIFIER = Bytes.toBytes("qualifier");
+  private static final byte[] VALUE = Bytes.toBytes("value");
+
+  @Mock
+  BigtableClient interactiveClient;
+
+  @Mock
+  BigtableClient batchClient;
+
+  @Before
+  public void setUp() {
+    MockitoAnnotations.initMocks(this);
+    for (BigtableClient client : Arrays.asList(interactiveClient, batchClient)) {
+      when(client.readRowsAsync(any(ReadRowsRequest.class))).thenReturn(
+        Futures.immediateFuture(Collections.<com.google.bigtable.v1.Row> emptyList()));
+    }
+  }
+
+  private BatchExecutor createExecutor(RequestPriority defaultPriority) {
+    BigtableOptions options = new BigtableOptions.Builder()
+        .setClusterAdminHost("localhost")
+        .setTableAdminHost("localhost")
+        .setDataHost("localhost")
+        .setProjectId("project")
+        .setClusterId("cluster")
+        .setZoneId("zone")
+        .setUserAgent("testAgent")
+        .build();
+    DeleteAdapter deleteAdapter = new DeleteAdapter();
+    PutAdapter putAdapter = new PutAdapter(new Configuration(false));
+    return new BatchExecutor(
+        interactiveClient,
+        batchClient,
+        options,
+        options.getClusterName().toTableName("table"),
+        MoreExecutors.sameThreadExecutor(),
+        new GetAdapter(new ScanAdapter(FilterAdapter.buildAdapter())),
+        putAdapter,
+        deleteAdapter,
+        new RowMutationsAdapter(new MutationAdapter(deleteAdapter, putAdapter,
+            new UnsupportedOperationAdapter<Increment>("increment"),
+            new UnsupportedOperationAdapter<Append>("append"))),
+        new AppendAdapter(),
+        new IncrementAdapter(),
+        new RowAdapter(),
+        null,
+        defaultPriority);
+  }
+
+  /**
+   * Issue one operation of each kind, tagging the ones that can be tagged with {@code priority}
+   * if it isn't null.
+   */
+  private static void issueAll(BatchExecutor executor, RequestPriority priority)
+      throws Exception {
+    List<OperationWithAttributes> operations = Arrays.<OperationWithAttributes> asList(
+      new Put(ROW).addColumn(FAMILY, QUALIFIER, VALUE),
+      new Delete(ROW),
+      new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1),
+      new Append(ROW).add(FAMILY, QUALIFIER, VALUE),
+      new Get(ROW));
+    for (OperationWithAttributes operation : operations) {
+      if (priority != null) {
+        OperationPriority.setPriority(operation, priority);
+      }
+      executor.issueRequest((Row) operation);
+    }
+  }
+
+  private static void issueRowMutations(BatchExecutor executor) throws Exception {
+    RowMutations rowMutations = new RowMutations(ROW);
+    rowMutations.add(new Put(ROW).addColumn(FAMILY, QUALIFIER, VALUE));
+    executor.issueRequest(rowMutations);
+  }
+
+  /**
+   * Verify that the operations of {@link #issueAll(BatchExecutor, RequestPriority)} were sent
+   * through {@code client}.
+   */
+  private static void verifyAllIssuedThrough(BigtableClient client) {
+    // The Put and the Delete.
+    verify(client, times(2)).mutateRowAsync(any(MutateRowRequest.class));
+    // The Increment and the Append.
+    verify(client, times(2)).readModifyWriteRowAsync(any(ReadModifyWriteRowRequest.class));
+    verify(client, times(1)).readRowsAsync(any(ReadRowsRequest.class));
+  }
+
+  @Test
+  public void testUntaggedOperationsUseTheInteractiveClientByDefault() throws Exception {
+    issueAll(createExecutor(RequestPriority.INTERACTIVE), null);
+    verifyAllIssuedThrough(interactiveClient);
+    verifyZeroInteractions(batchClient);
+  }
+
+  @Test
+  public void testUntaggedOperationsUseTheBatchClientByDefault() throws Exception {
+    issueAll(createExecutor(RequestPriority.BATCH), null);
+    verifyAllIssuedThrough(batchClient);
+    verifyZeroInteractions(interactiveClient);
+  }
+
+  @Test
+  public void testTaggedOperationsUseTheClientOfTheirPriority() throws Exception {
+    issueAll(createExecutor(RequestPriority.INTERACTIVE), RequestPriority.BATCH);
+    verifyAllIssuedThrough(batchClient);
+    verifyZeroInteractions(interactiveClient);
+  }
+
+  @Test
+  public void testInteractiveOperationsOfABatchExecutor() throws Exception {
+    issueAll(createExecutor(RequestPriority.BATCH), RequestPriority.INTERACTIVE);
+    verifyAllIssuedThrough(interactiveClient);
+    verifyZeroInteractions(batchClient);
+  }
+
+  @Test
+  public void testRowMutationsUseTheDefaultPriority() throws Exception {
+    // RowMutations can't be tagged.
+    issueRowMutations(createExecutor(RequestPriority.BATCH));
+    verify(batchClient, times(1)).mutateRowAsync(any(MutateRowRequest.class));
+    verifyZeroInteractions(interactiveClient);
+  }
+
+  @Test
+  public void testAdaptedRequestsUseTheGivenPriority() throws Exception {
+    BatchExecutor executor = createExecutor(RequestPriority.INTERACTIVE);
+    MutateRowRequest mutateRequest =
+        executor.adaptMutateRowRequest(new Put(ROW).addColumn(FAMILY, QUALIFIER, VALUE));
+    ReadModifyWriteRowRequest incrementRequest =
+        executor.adaptIncrementRequest(new Increment(ROW).addColumn(FAMILY, QUALIFIER, 1));
+
+    executor.issueMutateRowRequest(mutateRequest, RequestPriority.BATCH);
+    executor.issueReadModifyWriteRowRequest(incrementRequest, RequestPriority.BATCH);
+    verify(batchClient, times(1)).mutateRowAsync(mutateRequest);
+    verify(batchClient, times(1)).readModifyWriteRowAsync(incrementRequest);
+    verifyZeroInteractions(interactiveClient);
+
+    executor.issueMutateRowRequest(mutateRequest, RequestPriority.INTERACTIVE);
+    executor.issueReadModifyWriteRowRequest(incrementRequest, RequestPriority.INTERACTIVE);
+    verify(interactiveClient, times(1)).mutateRowAsync(mutateRequest);
+    verify(interactiveClient, times(1)).readModifyWriteRowAsync(incrementRequest);
+  }
+}
@@ -16,30 +16,65 @@
 package com.google.cloud.bigtable.hbase;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.conf.Configuration;
 
 import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.AbstractBigtableConnection;
 import org.apache.hadoop.hbase.client.BufferedMutator;
 import org.apache.hadoop.hbase.client.BufferedMutator.ExceptionListener;
+import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Increment;
+import org.apache.hadoop.hbase.client.Mutation;
 import org.apache.hadoop.hbase.client.Put;
 import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
 import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Assert;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.bigtable.v1.ReadModifyWriteRowRequest;
+import com.google.cloud.bigtable.config.BigtableOptions;
+import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.RequestPriority;
+import com.google.cloud.bigtable.hbase.BigtableBufferedMutator.HeapSizeManager;
+import com.google.cloud.bigtable.hbase.adapters.DeleteAdapter;
+import com.google.cloud.bigtable.hbase.adapters.IncrementAdapter;
+import com.google.cloud.bigtable.hbase.adapters.PutAdapter;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
 
 /**
  * Tests for {@link BigtableBufferedMutator}
@@ -50,6 +85,9 @@ public class TestBigtableBufferedMutator {
   @Mock
   BatchExecutor executor;
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   private BigtableBufferedMutator underTest;
 
 
@@ -111,6 +149,546 @@ public class TestBigtableBufferedMutator {
     Assert.assertEquals(0l, underTest.sizeManager.getHeapSize());
   }
 
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFlushAsyncWaitsOnlyForEarlierMutations() throws Exception {
+    when(executor.issueRequest(any(Row.class))).thenReturn(mock(ListenableFuture.class));
+    underTest.mutate(new Put(new byte[1]));
+    Long firstId = underTest.sizeManager.pendingOperationsWithSize.firstKey();
+
+    ListenableFuture<Void> flush = underTest.flushAsync();
+    Assert.assertFalse(flush.isDone());
+
+    // A mutation after the flush shouldn't block, and the flush shouldn't wait for it.
+    underTest.mutate(new Put(new byte[1]));
+    Long secondId = underTest.sizeManager.pendingOperationsWithSize.lastKey();
+
+    underTest.sizeManager.operationComplete(firstId);
+    Assert.assertTrue(flush.isDone());
+    flush.get();
+    Assert.assertTrue(underTest.hasInflightRequests());
+
+    underTest.sizeManager.operationComplete(secondId);
+    Assert.assertTrue(underTest.flushAsync().isDone());
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFlushAsyncReportsFailures() throws Exception {
+    when(executor.issueRequest(any(Row.class))).thenReturn(mock(ListenableFuture.class));
+    underTest.mutate(new Put(new byte[1]));
+    Long id = underTest.sizeManager.pendingOperationsWithSize.firstKey();
+    ListenableFuture<Void> flush = underTest.flushAsync();
+
+    underTest.globalExceptions.add(
+        new BigtableBufferedMutator.MutationException(null, new Exception()));
+    underTest.hasExceptions.set(true);
+    underTest.sizeManager.operationComplete(id);
+    try {
+      flush.get();
+      Assert.fail("expected RetriesExhaustedWithDetailsException");
+    } catch (ExecutionException expected) {
+      Assert.assertTrue(expected.getCause() instanceof RetriesExhaustedWithDetailsException);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testFlushAsyncOnlyReportsEarlierFailures() throws Exception {
+    final List<RetriesExhaustedWithDetailsException> reported = new ArrayList<>();
+    setup(new ExceptionListener() {
+      @Override
+      public void onException(RetriesExhaustedWithDetailsException exception,
+          BufferedMutator mutator) {
+        reported.add(exception);
+      }
+    });
+    when(executor.issueRequest(any(Row.class))).thenReturn(mock(ListenableFuture.class));
+    underTest.mutate(new Put(Bytes.toBytes("row1")));
+    Long firstId = underTest.sizeManager.pendingOperationsWithSize.firstKey();
+    ListenableFuture<Void> flush = underTest.flushAsync();
+    underTest.mutate(new Put(Bytes.toBytes("row2")));
+    Long secondId = underTest.sizeManager.pendingOperationsWithSize.lastKey();
+
+    // Both mutations fail, but the flush only covers the first one.
+    underTest.globalExceptions.add(new BigtableBufferedMutator.MutationException(
+        new Put(Bytes.toBytes("row2")), new Exception(), secondId));
+    underTest.globalExceptions.add(new BigtableBufferedMutator.MutationException(
+        new Put(Bytes.toBytes("row1")), new Exception(), firstId));
+    underTest.hasExceptions.set(true);
+    underTest.sizeManager.operationComplete(firstId);
+    try {
+      flush.get();
+      Assert.fail("expected RetriesExhaustedWithDetailsException");
+    } catch (ExecutionException expected) {
+      RetriesExhaustedWithDetailsException cause =
+          (RetriesExhaustedWithDetailsException) expected.getCause();
+      Assert.assertEquals(1, cause.getNumExceptions());
+      Assert.assertArrayEquals(Bytes.toBytes("row1"), cause.getRow(0).getRow());
+    }
+    // The listener isn't called from the flush's callback.
+    Assert.assertTrue(reported.isEmpty());
+
+    // The failure of the second mutation is left for the caller's next call.
+    underTest.sizeManager.operationComplete(secondId);
+    underTest.flush();
+    Assert.assertEquals(1, reported.size());
+    Assert.assertArrayEquals(Bytes.toBytes("row2"), reported.get(0).getRow(0).getRow());
+  }
+
+  @Test
+  public void testSharedSizeManager() throws Exception {
+    BigtableOptions options = createOptions();
+    final SettableFuture<Empty> firstResponse = SettableFuture.create();
+    BigtableClient client = mock(BigtableClient.class);
+    when(client.mutateRowAsync(any(MutateRowRequest.class)))
+        .thenReturn(firstResponse)
+        .thenReturn(Futures.immediateFuture(Empty.getDefaultInstance()));
+
+    // Allow only one RPC across both mutators.
+    HeapSizeManager shared = new HeapSizeManager(
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, 1);
+    ExecutorService callbackExecutor = BigtableBufferedMutator.createHeapSizeExecutor();
+    final BigtableBufferedMutator first = createSharedMutator("table1", options, client, shared,
+      callbackExecutor);
+    final BigtableBufferedMutator second = createSharedMutator("table2", options, client, shared,
+      callbackExecutor);
+
+    first.mutate(new Put(new byte[1]).addColumn(new byte[1], new byte[1], new byte[1]));
+    final CountDownLatch secondMutated = new CountDownLatch(1);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          second.mutate(new Put(new byte[1]).addColumn(new byte[1], new byte[1], new byte[1]));
+          secondMutated.countDown();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    thread.start();
+    Assert.assertFalse(secondMutated.await(100, TimeUnit.MILLISECONDS));
+
+    firstResponse.set(Empty.getDefaultInstance());
+    Assert.assertTrue(secondMutated.await(1, TimeUnit.SECONDS));
+    thread.join();
+    first.close();
+    second.close();
+    Assert.assertFalse(callbackExecutor.isShutdown());
+    callbackExecutor.shutdown();
+  }
+
+  private static BigtableOptions createOptions() {
+    return new BigtableOptions.Builder()
+        .setClusterAdminHost("localhost")
+        .setTableAdminHost("localhost")
+        .setDataHost("localhost")
+        .setProjectId("project")
+        .setClusterId("cluster")
+        .setZoneId("zone")
+        .setUserAgent("testAgent")
+        .build();
+  }
+
+  private BigtableBufferedMutator createSharedMutator(String tableName, BigtableOptions options,
+      BigtableClient client, HeapSizeManager shared, ExecutorService callbackExecutor)
+      throws IOException {
+    return new BigtableBufferedMutator(new Configuration(), TableName.valueOf(tableName),
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, client, options,
+        Executors.newCachedThreadPool(), null, new WriteRateLimiter(), shared, callbackExecutor);
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test
+  public void testSpillWhenBudgetIsExhausted() throws Exception {
+    SettableFuture<Empty> firstResponse = SettableFuture.create();
+    when(executor.issueRequest(any(Row.class))).thenReturn((ListenableFuture) firstResponse);
+    when(executor.adaptMutateRowRequest(any(Mutation.class))).thenReturn(
+        MutateRowRequest.newBuilder().setRowKey(ByteString.copyFromUtf8("row")).build());
+    when(executor.issueMutateRowRequest(any(MutateRowRequest.class), any(RequestPriority.class)))
+        .thenReturn(Futures.immediateFuture(Empty.getDefaultInstance()));
+    SpillLog spillLog = new SpillLog(folder.getRoot(), 1024, 1024);
+    underTest = new BigtableBufferedMutator(executor,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, null, null, 1,
+        TableName.valueOf("TABLE"), new WriteRateLimiter(), spillLog, false, 0, false, null);
+
+    underTest.mutate(new Put(new byte[1]));
+    // There is only room for one RPC, so this is spilled instead of blocking.
+    underTest.mutate(new Put(new byte[1]));
+    verify(executor, times(1)).issueRequest(any(Row.class));
+    verify(executor, times(0))
+        .issueMutateRowRequest(any(MutateRowRequest.class), any(RequestPriority.class));
+    Assert.assertFalse(spillLog.isEmpty());
+    ListenableFuture<Void> flush = underTest.flushAsync();
+    Assert.assertFalse(flush.isDone());
+
+    firstResponse.set(Empty.getDefaultInstance());
+    flush.get(1, TimeUnit.SECONDS);
+    verify(executor, times(1))
+        .issueMutateRowRequest(any(MutateRowRequest.class), any(RequestPriority.class));
+    Assert.assertFalse(underTest.hasInflightRequests());
+    underTest.close();
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test
+  public void testOnlyPutsWithTimestampsAreReplayedAfterARestart() throws Exception {
+    final PutAdapter putAdapter = new PutAdapter(new Configuration(false));
+    when(executor.adaptMutateRowRequest(any(Mutation.class))).thenAnswer(
+      new Answer<MutateRowRequest>() {
+        @Override
+        public MutateRowRequest answer(InvocationOnMock invocation) {
+          return putAdapter.adapt((Put) invocation.getArguments()[0]).build();
+        }
+      });
+    SettableFuture<Empty> firstResponse = SettableFuture.create();
+    when(executor.issueRequest(any(Row.class))).thenReturn((ListenableFuture) firstResponse,
+      Futures.immediateFuture(Empty.getDefaultInstance()));
+    // The spilled Put is sent, but the process exits before it's acknowledged.
+    SettableFuture<Empty> spilledResponse = SettableFuture.create();
+    when(executor.issueMutateRowRequest(any(MutateRowRequest.class), any(RequestPriority.class)))
+        .thenReturn(spilledResponse);
+    SpillLog spillLog = new SpillLog(folder.getRoot(), 1024, 1024);
+    underTest = new BigtableBufferedMutator(executor,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, null, null, 1,
+        TableName.valueOf("TABLE"), new WriteRateLimiter(), spillLog, false, 0, false, null);
+
+    final byte[] family = Bytes.toBytes("cf");
+    final byte[] qualifier = Bytes.toBytes("q");
+    underTest.mutate(new Put(Bytes.toBytes("row0")).addColumn(family, qualifier, new byte[1]));
+    // There is only room for one RPC, so a Put with a timestamp is spilled...
+    Put timestamped =
+        new Put(Bytes.toBytes("row1")).addColumn(family, qualifier, 5L, new byte[1]);
+    underTest.mutate(timestamped);
+    Assert.assertFalse(spillLog.isEmpty());
+    // ... but a Put that the server would stamp waits for the budget.
+    final CountDownLatch mutated = new CountDownLatch(1);
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          underTest.mutate(
+            new Put(Bytes.toBytes("row2")).addColumn(family, qualifier, new byte[1]));
+          mutated.countDown();
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    thread.start();
+    Assert.assertFalse(mutated.await(100, TimeUnit.MILLISECONDS));
+
+    firstResponse.set(Empty.getDefaultInstance());
+    verify(executor, timeout(1000).times(1))
+        .issueMutateRowRequest(any(MutateRowRequest.class), any(RequestPriority.class));
+    spillLog.close();
+
+    // The next mutator for the table sends the spilled Put again, with the same timestamp.
+    BatchExecutor restartedExecutor = mock(BatchExecutor.class);
+    when(restartedExecutor.issueMutateRowRequest(any(MutateRowRequest.class),
+      any(RequestPriority.class)))
+        .thenReturn(Futures.immediateFuture(Empty.getDefaultInstance()));
+    BigtableBufferedMutator restarted = new BigtableBufferedMutator(restartedExecutor,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, null, null,
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT, TableName.valueOf("TABLE"),
+        new WriteRateLimiter(), new SpillLog(folder.getRoot(), 1024, 1024), false, 0, false,
+        null);
+    restarted.close();
+    ArgumentCaptor<MutateRowRequest> captor = ArgumentCaptor.forClass(MutateRowRequest.class);
+    verify(restartedExecutor, times(1)).issueMutateRowRequest(captor.capture(),
+      eq(RequestPriority.BATCH));
+    Assert.assertEquals(putAdapter.adapt(timestamped).build(), captor.getValue());
+    Assert.assertEquals(5000L,
+      captor.getValue().getMutations(0).getSetCell().getTimestampMicros());
+
+    spilledResponse.set(Empty.getDefaultInstance());
+    Assert.assertTrue(mutated.await(1, TimeUnit.SECONDS));
+    thread.join();
+    verify(executor, times(2)).issueRequest(any(Row.class));
+  }
+
+  @Test
+  public void testHasTimestamps() {
+    PutAdapter putAdapter = new PutAdapter(new Configuration(false));
+    byte[] row = Bytes.toBytes("row");
+    byte[] family = Bytes.toBytes("cf");
+    Put put = new Put(row).addColumn(family, Bytes.toBytes("q1"), 1L, new byte[1]);
+    Assert.assertTrue(BigtableBufferedMutator.hasTimestamps(putAdapter.adapt(put).build()));
+    put.addColumn(family, Bytes.toBytes("q2"), new byte[1]);
+    Assert.assertFalse(BigtableBufferedMutator.hasTimestamps(putAdapter.adapt(put).build()));
+    Assert.assertTrue(BigtableBufferedMutator.hasTimestamps(
+      new DeleteAdapter().adapt(new Delete(row)).build()));
+  }
+
+  @Test
+  public void testSerializeMutations() throws Exception {
+    Put put = new Put(Bytes.toBytes("row")).addColumn(new byte[1], new byte[1], new byte[1]);
+    MutateRowRequest request = new PutAdapter(new Configuration(false)).adapt(put).build();
+    SettableFuture<Empty> response = SettableFuture.create();
+    when(executor.adaptMutateRowRequest(any(Mutation.class))).thenReturn(request);
+    when(executor.issueMutateRowRequest(request, RequestPriority.BATCH)).thenReturn(response);
+    final List<Row> failedRows = new ArrayList<>();
+    ExceptionListener listener = new ExceptionListener() {
+      @Override
+      public void onException(RetriesExhaustedWithDetailsException exception,
+          BufferedMutator mutator) {
+        for (int i = 0; i < exception.getNumExceptions(); i++) {
+          failedRows.add(exception.getRow(i));
+        }
+      }
+    };
+    underTest = new BigtableBufferedMutator(executor,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, listener, null,
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT, TableName.valueOf("TABLE"),
+        new WriteRateLimiter(), null, true, 0, false, null);
+
+    underTest.mutate(put);
+    verify(executor, times(0)).issueRequest(any(Row.class));
+    // Only the serialized request is kept, so that's what the budget counts.
+    Assert.assertEquals(request.getSerializedSize(), underTest.sizeManager.getHeapSize());
+    // The request is parsed from those bytes, so it doesn't share the Put's arrays.
+    ArgumentCaptor<MutateRowRequest> captor = ArgumentCaptor.forClass(MutateRowRequest.class);
+    verify(executor, times(1)).issueMutateRowRequest(captor.capture(),
+      eq(RequestPriority.BATCH));
+    Assert.assertEquals(request, captor.getValue());
+    Assert.assertNotSame(request, captor.getValue());
+
+    response.setException(new IOException());
+    underTest.flush();
+    Assert.assertEquals(1, failedRows.size());
+    Assert.assertArrayEquals(Bytes.toBytes("row"), failedRows.get(0).getRow());
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test
+  public void testOrderedLanes() throws Exception {
+    SettableFuture<Empty> first = SettableFuture.create();
+    ListenableFuture second = Futures.immediateFuture(Empty.getDefaultInstance());
+    when(executor.issueRequest(any(Row.class))).thenReturn((ListenableFuture) first, second);
+    underTest = new BigtableBufferedMutator(executor,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, null, null,
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT, TableName.valueOf("TABLE"),
+        new WriteRateLimiter(), null, false, 1, false, null);
+
+    underTest.mutate(
+      new Put(Bytes.toBytes("row")).addColumn(new byte[1], new byte[1], new byte[1]));
+    underTest.mutate(
+      new Put(Bytes.toBytes("row")).addColumn(new byte[1], new byte[1], new byte[2]));
+    // The second mutation waits for the first one to complete.
+    verify(executor, times(1)).issueRequest(any(Row.class));
+    Assert.assertTrue(underTest.hasInflightRequests());
+
+    first.set(Empty.getDefaultInstance());
+    underTest.flush();
+    verify(executor, times(2)).issueRequest(any(Row.class));
+    Assert.assertFalse(underTest.hasInflightRequests());
+  }
+
+  @Test
+  public void testCoalesceMutations() throws Exception {
+    SettableFuture<Empty> first = SettableFuture.create();
+    SettableFuture<Empty> merged = SettableFuture.create();
+    when(executor.adaptMutateRowRequest(any(Mutation.class))).thenAnswer(
+      new Answer<MutateRowRequest>() {
+        @Override
+        public MutateRowRequest answer(InvocationOnMock invocation) {
+          Mutation mutation = (Mutation) invocation.getArguments()[0];
+          return MutateRowRequest.newBuilder()
+              .setRowKey(ByteString.copyFrom(mutation.getRow()))
+              .addMutations(com.google.bigtable.v1.Mutation.getDefaultInstance())
+              .build();
+        }
+      });
+    when(executor.issueMutateRowRequest(any(MutateRowRequest.class), any(RequestPriority.class)))
+        .thenReturn(first, merged);
+    underTest = new BigtableBufferedMutator(executor,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, null, null,
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT, TableName.valueOf("TABLE"),
+        new WriteRateLimiter(), null, false, 0, true, null);
+
+    for (int i = 0; i < 3; i++) {
+      underTest.mutate(new Put(Bytes.toBytes("row")).addColumn(new byte[1], new byte[1],
+        new byte[i]));
+    }
+    // The first Put is in flight, and the next two wait for it.
+    verify(executor, times(1))
+        .issueMutateRowRequest(any(MutateRowRequest.class), any(RequestPriority.class));
+    Assert.assertEquals(3, underTest.sizeManager.pendingOperationsWithSize.size());
+
+    first.set(Empty.getDefaultInstance());
+    ArgumentCaptor<MutateRowRequest> captor = ArgumentCaptor.forClass(MutateRowRequest.class);
+    verify(executor, timeout(1000).times(2)).issueMutateRowRequest(captor.capture(),
+      eq(RequestPriority.BATCH));
+    Assert.assertEquals(2, captor.getValue().getMutationsCount());
+
+    merged.set(Empty.getDefaultInstance());
+    underTest.flush();
+    Assert.assertFalse(underTest.hasInflightRequests());
+    Assert.assertEquals(3, underTest.getCoalescedMutationCount());
+    Assert.assertEquals(2, underTest.getCoalescedRequestCount());
+  }
+
+  @Test
+  public void testCoalesceMutationsFromConfiguration() throws Exception {
+    BigtableClient client = mock(BigtableClient.class);
+    when(client.mutateRowAsync(any(MutateRowRequest.class)))
+        .thenReturn(Futures.immediateFuture(Empty.getDefaultInstance()));
+    Configuration configuration = new Configuration(false);
+    configuration.setBoolean(
+      AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_COALESCE_MUTATIONS_KEY, true);
+    underTest = new BigtableBufferedMutator(configuration, TableName.valueOf("TABLE"),
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, client,
+        createOptions(), Executors.newCachedThreadPool(), null, new WriteRateLimiter());
+
+    underTest.mutate(
+      new Put(Bytes.toBytes("row")).addColumn(new byte[1], new byte[1], new byte[1]));
+    underTest.flush();
+    verify(client, times(1)).mutateRowAsync(any(MutateRowRequest.class));
+    Assert.assertFalse(underTest.hasInflightRequests());
+    Assert.assertEquals(0l, underTest.sizeManager.getHeapSize());
+    underTest.close();
+  }
+
+  @Test
+  public void testMutationsAreSentThroughTheClientOfTheirPriority() throws Exception {
+    BigtableClient interactiveClient = mock(BigtableClient.class);
+    BigtableClient batchClient = mock(BigtableClient.class);
+    for (BigtableClient client : Arrays.asList(interactiveClient, batchClient)) {
+      when(client.mutateRowAsync(any(MutateRowRequest.class)))
+          .thenReturn(Futures.immediateFuture(Empty.getDefaultInstance()));
+      when(client.readModifyWriteRowAsync(any(ReadModifyWriteRowRequest.class)))
+          .thenReturn(Futures.immediateFuture(com.google.bigtable.v1.Row.getDefaultInstance()));
+    }
+    // Coalesced and summed mutations take other paths than the rest.
+    Configuration configuration = new Configuration(false);
+    configuration.setBoolean(
+      AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_COALESCE_MUTATIONS_KEY, true);
+    configuration.setLong(
+      AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_INCREMENT_FLUSH_INTERVAL_MS_KEY,
+      TimeUnit.HOURS.toMillis(1));
+    underTest = new BigtableBufferedMutator(configuration, TableName.valueOf("TABLE"),
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT,
+        interactiveClient, batchClient, createOptions(), Executors.newCachedThreadPool(), null,
+        new WriteRateLimiter(), null, null);
+
+    underTest.mutate(
+      new Put(Bytes.toBytes("row1")).addColumn(new byte[1], new byte[1], new byte[1]));
+    underTest.mutate(new Delete(Bytes.toBytes("row2")));
+    underTest.mutate(new Increment(Bytes.toBytes("row3")).addColumn(Bytes.toBytes("cf"),
+      Bytes.toBytes("counter"), 1));
+    underTest.mutate(OperationPriority.setPriority(
+      new Put(Bytes.toBytes("row4")).addColumn(new byte[1], new byte[1], new byte[1]),
+      RequestPriority.INTERACTIVE));
+    underTest.mutate(OperationPriority.setPriority(
+      new Increment(Bytes.toBytes("row5")).addColumn(Bytes.toBytes("cf"),
+        Bytes.toBytes("counter"), 1),
+      RequestPriority.INTERACTIVE));
+    underTest.flush();
+
+    verify(batchClient, times(2)).mutateRowAsync(any(MutateRowRequest.class));
+    verify(batchClient, times(1)).readModifyWriteRowAsync(any(ReadModifyWriteRowRequest.class));
+    verify(interactiveClient, times(1)).mutateRowAsync(any(MutateRowRequest.class));
+    verify(interactiveClient, times(1))
+        .readModifyWriteRowAsync(any(ReadModifyWriteRowRequest.class));
+    Assert.assertEquals(2, underTest.getCoalescedMutationCount());
+    underTest.close();
+  }
+
+  @Test
+  public void testIncrementAggregation() throws Exception {
+    when(executor.adaptIncrementRequest(any(Increment.class))).thenAnswer(
+      new Answer<ReadModifyWriteRowRequest>() {
+        @Override
+        public ReadModifyWriteRowRequest answer(InvocationOnMock invocation) {
+          Increment increment = (Increment) invocation.getArguments()[0];
+          return new IncrementAdapter().adapt(increment).setTableName("table").build();
+        }
+      });
+    when(executor.issueReadModifyWriteRowRequest(any(ReadModifyWriteRowRequest.class),
+        any(RequestPriority.class)))
+        .thenReturn(Futures.immediateFuture(com.google.bigtable.v1.Row.getDefaultInstance()));
+    underTest = new BigtableBufferedMutator(executor,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, null, null,
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT, TableName.valueOf("TABLE"),
+        new WriteRateLimiter(), null, false, 0, false,
+        new IncrementAccumulator(100, TimeUnit.HOURS.toMillis(1)));
+
+    for (int i = 0; i < 3; i++) {
+      underTest.mutate(new Increment(Bytes.toBytes("row")).addColumn(Bytes.toBytes("cf"),
+        Bytes.toBytes("counter"), 2));
+    }
+    verify(executor, times(0)).issueRequest(any(Row.class));
+    verify(executor, times(0)).issueReadModifyWriteRowRequest(any(ReadModifyWriteRowRequest.class),
+        any(RequestPriority.class));
+
+    underTest.flush();
+    ArgumentCaptor<ReadModifyWriteRowRequest> captor =
+        ArgumentCaptor.forClass(ReadModifyWriteRowRequest.class);
+    verify(executor, times(1)).issueReadModifyWriteRowRequest(captor.capture(),
+      eq(RequestPriority.BATCH));
+    Assert.assertEquals(1, captor.getValue().getRulesCount());
+    Assert.assertEquals(6, captor.getValue().getRules(0).getIncrementAmount());
+    Assert.assertFalse(underTest.hasInflightRequests());
+    underTest.close();
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Test
+  public void testPendingIncrementsAreSentBeforeOtherMutationsOfTheRow() throws Exception {
+    when(executor.adaptIncrementRequest(any(Increment.class))).thenAnswer(
+      new Answer<ReadModifyWriteRowRequest>() {
+        @Override
+        public ReadModifyWriteRowRequest answer(InvocationOnMock invocation) {
+          Increment increment = (Increment) invocation.getArguments()[0];
+          return new IncrementAdapter().adapt(increment).setTableName("table").build();
+        }
+      });
+    when(executor.issueReadModifyWriteRowRequest(any(ReadModifyWriteRowRequest.class),
+        any(RequestPriority.class)))
+        .thenReturn(Futures.immediateFuture(com.google.bigtable.v1.Row.getDefaultInstance()));
+    when(executor.issueRequest(any(Row.class)))
+        .thenReturn((ListenableFuture) Futures.immediateFuture(Empty.getDefaultInstance()));
+    underTest = new BigtableBufferedMutator(executor,
+        AbstractBigtableConnection.BIGTABLE_BUFFERED_MUTATOR_MAX_MEMORY_DEFAULT, null, null,
+        AbstractBigtableConnection.MAX_INFLIGHT_RPCS_DEFAULT, TableName.valueOf("TABLE"),
+        new WriteRateLimiter(), null, false, 0, false,
+        new IncrementAccumulator(100, TimeUnit.HOURS.toMillis(1)));
+
+    underTest.mutate(new Increment(Bytes.toBytes("row")).addColumn(Bytes.toBytes("cf"),
+      Bytes.toBytes("counter"), 2));
+    underTest.mutate(new Increment(Bytes.toBytes("other")).addColumn(Bytes.toBytes("cf"),
+      Bytes.toBytes("counter"), 2));
+    Delete delete = new Delete(Bytes.toBytes("row"));
+    underTest.mutate(delete);
+
+    // The increment of the deleted row is sent before the Delete, the other row's is still
+    // pending.
+    ArgumentCaptor<ReadModifyWriteRowRequest> captor =
+        ArgumentCaptor.forClass(ReadModifyWriteRowRequest.class);
+    InOrder inOrder = inOrder(executor);
+    inOrder.verify(executor).issueReadModifyWriteRowRequest(captor.capture(),
+      eq(RequestPriority.BATCH));
+    inOrder.verify(executor).issueRequest(delete);
+    Assert.assertEquals("row", captor.getValue().getRowKey().toStringUtf8());
+    underTest.flush();
+    verify(executor, times(2)).issueReadModifyWriteRowRequest(
+        any(ReadModifyWriteRowRequest.class), any(RequestPriority.class));
+    underTest.close();
+  }
+
+  @Test
+  public void testIncrementHeapSizeIncludesObjectOverhead() {
+    ReadModifyWriteRowRequest request = new IncrementAdapter().adapt(
+      new Increment(Bytes.toBytes("row")).addColumn(Bytes.toBytes("cf"), Bytes.toBytes("q"), 1))
+        .setTableName("table").build();
+    Assert.assertTrue(BigtableBufferedMutator.estimateHeapSize(request)
+        > 2 * request.getSerializedSize());
+  }
+
   @Test
   public void testException() {
     underTest.hasExceptions.set(true);
@@ -137,4 +137,16 @@ public class TestBigtableOptionsFactory {
     BigtableOptionsFactory.fromConfiguration(configuration);
   }
 
+  @Test
+  public void testAsyncReadLimits() throws IOException {
+    configuration.set(BigtableOptionsFactory.BIGTABLE_HOST_KEY, TEST_HOST);
+    configuration.setBoolean(BigtableOptionsFactory.BIGTABE_USE_SERVICE_ACCOUNTS_KEY, false);
+    configuration.setBoolean(BigtableOptionsFactory.BIGTABLE_NULL_CREDENTIAL_ENABLE_KEY, true);
+    configuration.setInt(BigtableOptionsFactory.BIGTABLE_ASYNC_READ_MAX_ROWS_KEY, 100);
+    configuration.setLong(BigtableOptionsFactory.BIGTABLE_ASYNC_READ_MAX_BYTES_KEY, 1 << 20);
+    BigtableOptions options = BigtableOptionsFactory.fromConfiguration(configuration);
+    Assert.assertEquals(100, options.getMaxAsyncReadRows());
+    Assert.assertEquals(1 << 20, options.getMaxAsyncReadBytes());
+  }
+
 }
@@ -24,6 +24,7 @@ import com.google.cloud.bigtable.config.BigtableOptions;
 import com.google.cloud.bigtable.config.RetryOptions;
 import com.google.cloud.bigtable.grpc.BigtableClient;
 import com.google.cloud.bigtable.grpc.ResultScanner;
+import com.google.common.util.concurrent.Futures;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.ServiceException;
 
@@ -32,6 +33,7 @@ import org.apache.hadoop.hbase.TableName;
 import org.apache.hadoop.hbase.client.AbstractBigtableConnection;
 import org.apache.hadoop.hbase.client.Delete;
 import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.junit.Assert;
 import org.junit.Before;
@@ -45,6 +47,9 @@ import org.mockito.MockitoAnnotations;
 
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Executors;
 
 /**
@@ -63,13 +68,14 @@ public class TestBigtableTable {
   @Mock
   public BigtableClient mockClient;
 
+  public BigtableOptions options;
   public BigtableTable table;
 
   @Before
   public void setup() throws UnknownHostException {
     MockitoAnnotations.initMocks(this);
 
-    BigtableOptions options = new BigtableOptions.Builder()
+    options = new BigtableOptions.Builder()
         .setClusterAdminHost("localhost")
         .setTableAdminHost("localhost")
         .setDataHost("localhost")
@@ -140,17 +146,13 @@ public class TestBigtableTable {
         argument.getValue().getTableName());
     Chain expectedColumnSpecFilter =
         Chain.newBuilder()
-          .addFilters(
-              RowFilter.newBuilder()
-                  .setChain(
-                      Chain.newBuilder()
-                          .addFilters(
-                              RowFilter.newBuilder()
-                                  .setFamilyNameRegexFilter("family"))
-                          .addFilters(
-                              RowFilter.newBuilder()
-                                  .setColumnQualifierRegexFilter(
-                                      ByteString.copyFromUtf8("qualifier")))))
+            .addFilters(
+                RowFilter.newBuilder()
+                    .setFamilyNameRegexFilter("family"))
+            .addFilters(
+                RowFilter.newBuilder()
+                    .setColumnQualifierRegexFilter(
+                        ByteString.copyFromUtf8("qualifier")))
             .addFilters(RowFilter.newBuilder().setCellsPerColumnLimitFilter(1))
         .build();
 
@@ -158,4 +160,135 @@ public class TestBigtableTable {
         expectedColumnSpecFilter,
         argument.getValue().getFilter().getChain());
   }
+
+  @Test
+  public void denseGetsAreReadAsARange() throws IOException {
+    Configuration config = new Configuration();
+    config.setInt(BigtableOptionsFactory.BIGTABLE_MULTIGET_RANGE_MIN_KEYS_KEY, 3);
+    Mockito.when(mockConnection.getConfiguration()).thenReturn(config);
+    table = new BigtableTable(
+        mockConnection,
+        TableName.valueOf(TEST_TABLE),
+        options,
+        mockClient,
+        Executors.newCachedThreadPool());
+
+    Row row1 = createRow("rowKey1");
+    Row row3 = createRow("rowKey3");
+    Row otherRow = createRow("otherRowKey");
+    Mockito.when(mockClient.readRowsAsync(Mockito.any(ReadRowsRequest.class)))
+        .thenReturn(Futures.immediateFuture(Arrays.asList(row1, row3)))
+        .thenReturn(Futures.immediateFuture(Collections.singletonList(otherRow)));
+
+    Result[] results = table.get(Arrays.asList(
+        new Get(Bytes.toBytes("rowKey3")),
+        new Get(Bytes.toBytes("rowKey2")),
+        new Get(Bytes.toBytes("rowKey1")),
+        new Get(Bytes.toBytes("otherRowKey"))));
+
+    ArgumentCaptor<ReadRowsRequest> argument =
+        ArgumentCaptor.forClass(ReadRowsRequest.class);
+    Mockito.verify(mockClient, Mockito.times(2)).readRowsAsync(argument.capture());
+    List<ReadRowsRequest> requests = argument.getAllValues();
+    Assert.assertEquals("rowKey1", requests.get(0).getRowRange().getStartKey().toStringUtf8());
+    Assert.assertEquals("otherRowKey", requests.get(1).getRowKey().toStringUtf8());
+
+    Assert.assertEquals(4, results.length);
+    Assert.assertEquals("rowKey3", Bytes.toString(results[0].getRow()));
+    Assert.assertTrue(results[1].isEmpty());
+    Assert.assertEquals("rowKey1", Bytes.toString(results[2].getRow()));
+    Assert.assertEquals("otherRowKey", Bytes.toString(results[3].getRow()));
+  }
+
+  @Test
+  public void existsReadsAtMostOneCellWithoutItsValue() throws IOException {
+    Mockito.when(mockClient.readRows(Mockito.any(ReadRowsRequest.class)))
+        .thenReturn(new ResultScanner<Row>() {
+          @Override
+          public Row next() throws IOException {
+            return createRow("rowKey1");
+          }
+
+          @Override
+          public Row[] next(int i) throws IOException {
+            return new Row[i];
+          }
+
+          @Override
+          public void close() throws IOException {
+          }
+        });
+
+    Assert.assertTrue(table.exists(new Get(Bytes.toBytes("rowKey1"))));
+
+    ArgumentCaptor<ReadRowsRequest> argument =
+        ArgumentCaptor.forClass(ReadRowsRequest.class);
+    Mockito.verify(mockClient).readRows(argument.capture());
+    assertIsExistenceCheck(argument.getValue());
+  }
+
+  @Test
+  public void existsAllReadsAtMostOneCellPerRow() throws IOException {
+    Mockito.when(mockClient.readRowsAsync(Mockito.any(ReadRowsRequest.class)))
+        .thenReturn(Futures.immediateFuture(Collections.singletonList(createRow("rowKey1"))))
+        .thenReturn(Futures.immediateFuture(Collections.<Row> emptyList()));
+
+    boolean[] exists = table.existsAll(Arrays.asList(
+        new Get(Bytes.toBytes("rowKey1")),
+        new Get(Bytes.toBytes("rowKey2"))));
+
+    Assert.assertTrue(exists[0]);
+    Assert.assertFalse(exists[1]);
+    ArgumentCaptor<ReadRowsRequest> argument =
+        ArgumentCaptor.forClass(ReadRowsRequest.class);
+    Mockito.verify(mockClient, Mockito.times(2)).readRowsAsync(argument.capture());
+    for (ReadRowsRequest request : argument.getAllValues()) {
+      assertIsExistenceCheck(request);
+    }
+  }
+
+  @Test
+  public void existsIsFalseForARowWithoutCells() throws IOException {
+    // For example, when the filter of the Get removed all of the row's cells.
+    final Row emptyRow = Row.newBuilder().setKey(ByteString.copyFromUtf8("rowKey1")).build();
+    Mockito.when(mockClient.readRows(Mockito.any(ReadRowsRequest.class)))
+        .thenReturn(new ResultScanner<Row>() {
+          @Override
+          public Row next() throws IOException {
+            return emptyRow;
+          }
+
+          @Override
+          public Row[] next(int i) throws IOException {
+            return new Row[i];
+          }
+
+          @Override
+          public void close() throws IOException {
+          }
+        });
+    Mockito.when(mockClient.readRowsAsync(Mockito.any(ReadRowsRequest.class)))
+        .thenReturn(Futures.immediateFuture(Collections.singletonList(emptyRow)));
+
+    Assert.assertFalse(table.exists(new Get(Bytes.toBytes("rowKey1"))));
+    Assert.assertFalse(table.existsAll(Arrays.asList(new Get(Bytes.toBytes("rowKey1"))))[0]);
+  }
+
+  private static void assertIsExistenceCheck(ReadRowsRequest request) {
+    Chain chain = request.getFilter().getChain();
+    int filterCount = chain.getFiltersCount();
+    Assert.assertEquals(1, chain.getFilters(filterCount - 2).getCellsPerRowLimitFilter());
+    Assert.assertTrue(chain.getFilters(filterCount - 1).getStripValueTransformer());
+  }
+
+  private static Row createRow(String rowKey) {
+    Row.Builder builder = Row.newBuilder().setKey(ByteString.copyFromUtf8(rowKey));
+    builder.addFamiliesBuilder()
+        .setName("family")
+        .addColumnsBuilder()
+        .setQualifier(ByteString.copyFromUtf8("qualifier"))
+        .addCellsBuilder()
+        .setValue(ByteString.copyFromUtf8("value"));
+    return builder.build();
+  }
 }
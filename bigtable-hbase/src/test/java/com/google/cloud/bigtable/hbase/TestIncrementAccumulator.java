@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.bigtable.v1.ReadModifyWriteRowRequest;
+import com.google.bigtable.v1.ReadModifyWriteRule;
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests for {@link IncrementAccumulator}
+ */
+@RunWith(JUnit4.class)
+public class TestIncrementAccumulator {
+
+  @Test
+  public void testIncrementsAreSummedPerCounter() {
+    IncrementAccumulator underTest = new IncrementAccumulator(100, 1000);
+    underTest.add(createRequest("row1", "a", 1));
+    underTest.add(createRequest("row1", "a", 2));
+    underTest.add(createRequest("row1", "b", 3));
+    underTest.add(createRequest("row2", "a", 4));
+    Assert.assertEquals(3, underTest.getCounterCount());
+
+    List<ReadModifyWriteRowRequest> requests = underTest.drain();
+    Assert.assertEquals(2, requests.size());
+    for (ReadModifyWriteRowRequest request : requests) {
+      Assert.assertEquals("table", request.getTableName());
+      if (request.getRowKey().toStringUtf8().equals("row1")) {
+        Assert.assertEquals(2, request.getRulesCount());
+        Assert.assertEquals("a", request.getRules(0).getColumnQualifier().toStringUtf8());
+        Assert.assertEquals(3, request.getRules(0).getIncrementAmount());
+        Assert.assertEquals(3, request.getRules(1).getIncrementAmount());
+      } else {
+        Assert.assertEquals(1, request.getRulesCount());
+        Assert.assertEquals(4, request.getRules(0).getIncrementAmount());
+      }
+    }
+    Assert.assertEquals(0, underTest.getCounterCount());
+    Assert.assertTrue(underTest.drain().isEmpty());
+  }
+
+  @Test
+  public void testAddSignalsFlushAtMaxCounters() {
+    IncrementAccumulator underTest = new IncrementAccumulator(2, 1000);
+    Assert.assertFalse(underTest.add(createRequest("row", "a", 1)));
+    Assert.assertFalse(underTest.add(createRequest("row", "a", 1)));
+    Assert.assertTrue(underTest.add(createRequest("row", "b", 1)));
+    underTest.drain();
+    Assert.assertFalse(underTest.add(createRequest("row", "b", 1)));
+  }
+
+  private static ReadModifyWriteRowRequest createRequest(String rowKey, String qualifier,
+      long amount) {
+    return ReadModifyWriteRowRequest.newBuilder()
+        .setTableName("table")
+        .setRowKey(ByteString.copyFromUtf8(rowKey))
+        .addRules(ReadModifyWriteRule.newBuilder()
+            .setFamilyName("cf")
+            .setColumnQualifier(ByteString.copyFromUtf8(qualifier))
+            .setIncrementAmount(amount))
+        .build();
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowFilter;
+import com.google.protobuf.ByteString;
+
+/**
+ * Tests for {@link MultiGetPlanner}
+ */
+@RunWith(JUnit4.class)
+public class TestMultiGetPlanner {
+
+  private static final RowFilter FAMILY_FILTER =
+      RowFilter.newBuilder().setFamilyNameRegexFilter("family").build();
+
+  @Test
+  public void testDenseKeysAreReadAsARange() {
+    MultiGetPlanner underTest = new MultiGetPlanner(3, 4, 100);
+    List<ReadRowsRequest> requests = Arrays.asList(
+        createRequest("row-5", FAMILY_FILTER),
+        createRequest("row-1", FAMILY_FILTER),
+        null,
+        createRequest("row-3", FAMILY_FILTER),
+        createRequest("row-z", FAMILY_FILTER));
+
+    List<MultiGetPlanner.RangeRead> rangeReads = underTest.plan(requests);
+    Assert.assertEquals(1, rangeReads.size());
+    MultiGetPlanner.RangeRead rangeRead = rangeReads.get(0);
+    Assert.assertEquals(Arrays.asList(1, 3, 0), rangeRead.getIndexes());
+
+    ReadRowsRequest request = rangeRead.getRequest();
+    Assert.assertEquals("table", request.getTableName());
+    Assert.assertEquals("row-1", request.getRowRange().getStartKey().toStringUtf8());
+    Assert.assertEquals("row-5\0", request.getRowRange().getEndKey().toStringUtf8());
+    Assert.assertEquals("row\\-1|row\\-3|row\\-5",
+        request.getFilter().getChain().getFilters(0).getRowKeyRegexFilter().toStringUtf8());
+    Assert.assertEquals(FAMILY_FILTER, request.getFilter().getChain().getFilters(1));
+  }
+
+  @Test
+  public void testSparseKeysAreNotCombined() {
+    MultiGetPlanner underTest = new MultiGetPlanner(2, 1, 100);
+    List<ReadRowsRequest> requests = Arrays.asList(
+        createRequest("row-1", FAMILY_FILTER),
+        createRequest("row-3", FAMILY_FILTER),
+        createRequest("row-10", FAMILY_FILTER));
+    Assert.assertTrue(underTest.plan(requests).isEmpty());
+  }
+
+  @Test
+  public void testOnlyRequestsWithTheSameFilterAreCombined() {
+    MultiGetPlanner underTest = new MultiGetPlanner(2, 4, 100);
+    List<ReadRowsRequest> requests = Arrays.asList(
+        createRequest("row-1", FAMILY_FILTER),
+        createRequest("row-2", RowFilter.getDefaultInstance()),
+        createRequest("row-3", FAMILY_FILTER),
+        createRequest("row-4", RowFilter.getDefaultInstance()));
+
+    List<MultiGetPlanner.RangeRead> rangeReads = underTest.plan(requests);
+    Assert.assertEquals(2, rangeReads.size());
+    Assert.assertEquals(Arrays.asList(0, 2), rangeReads.get(0).getIndexes());
+    Assert.assertEquals(Arrays.asList(1, 3), rangeReads.get(1).getIndexes());
+    // A request without a filter is only filtered by key.
+    Assert.assertEquals("row\\-2|row\\-4",
+        rangeReads.get(1).getRequest().getFilter().getRowKeyRegexFilter().toStringUtf8());
+  }
+
+  @Test
+  public void testDuplicateKeysShareARange() {
+    MultiGetPlanner underTest = new MultiGetPlanner(2, 4, 100);
+    List<ReadRowsRequest> requests = Arrays.asList(
+        createRequest("row-1", FAMILY_FILTER),
+        createRequest("row-1", FAMILY_FILTER),
+        createRequest("row-2", FAMILY_FILTER));
+
+    List<MultiGetPlanner.RangeRead> rangeReads = underTest.plan(requests);
+    Assert.assertEquals(1, rangeReads.size());
+    Assert.assertEquals(Arrays.asList(0, 1, 2), rangeReads.get(0).getIndexes());
+    Assert.assertEquals("row\\-1|row\\-2",
+        rangeReads.get(0).getRequest().getFilter().getChain().getFilters(0)
+            .getRowKeyRegexFilter().toStringUtf8());
+
+    // Two Gets of one row aren't enough distinct keys.
+    Assert.assertTrue(underTest.plan(requests.subList(0, 2)).isEmpty());
+  }
+
+  @Test
+  public void testLongRunsAreSplit() {
+    MultiGetPlanner underTest = new MultiGetPlanner(2, 4, 3);
+    List<ReadRowsRequest> requests = Arrays.asList(
+        createRequest("row-1", FAMILY_FILTER),
+        createRequest("row-2", FAMILY_FILTER),
+        createRequest("row-2", FAMILY_FILTER),
+        createRequest("row-3", FAMILY_FILTER),
+        createRequest("row-4", FAMILY_FILTER),
+        createRequest("row-5", FAMILY_FILTER),
+        createRequest("row-6", FAMILY_FILTER),
+        createRequest("row-7", FAMILY_FILTER));
+
+    List<MultiGetPlanner.RangeRead> rangeReads = underTest.plan(requests);
+    Assert.assertEquals(2, rangeReads.size());
+    Assert.assertEquals(Arrays.asList(0, 1, 2, 3), rangeReads.get(0).getIndexes());
+    Assert.assertEquals("row\\-1|row\\-2|row\\-3",
+        rangeReads.get(0).getRequest().getFilter().getChain().getFilters(0)
+            .getRowKeyRegexFilter().toStringUtf8());
+    Assert.assertEquals(Arrays.asList(4, 5, 6), rangeReads.get(1).getIndexes());
+    // The last key is left over, and too few for a range read.
+    Assert.assertEquals("row-6\0",
+        rangeReads.get(1).getRequest().getRowRange().getEndKey().toStringUtf8());
+  }
+
+  @Test
+  public void testDistance() {
+    Assert.assertEquals(2, MultiGetPlanner.distance(Bytes.toBytes("a1"), Bytes.toBytes("a3")));
+    Assert.assertEquals(256,
+        MultiGetPlanner.distance(new byte[] { 0, (byte) 0xff }, new byte[] { 1, (byte) 0xff }));
+    Assert.assertEquals(Long.MAX_VALUE,
+        MultiGetPlanner.distance(Bytes.toBytes("a1"), Bytes.toBytes("a10")));
+    Assert.assertEquals(Long.MAX_VALUE,
+        MultiGetPlanner.distance(Bytes.toBytes("a12345678"), Bytes.toBytes("b12345678")));
+  }
+
+  private static ReadRowsRequest createRequest(String rowKey, RowFilter filter) {
+    ReadRowsRequest.Builder builder = ReadRowsRequest.newBuilder()
+        .setTableName("table")
+        .setRowKey(ByteString.copyFromUtf8(rowKey));
+    if (!filter.equals(RowFilter.getDefaultInstance())) {
+      builder.setFilter(filter);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.bigtable.v1.Mutation;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.GeneratedMessage;
+
+/**
+ * Tests for {@link MutationCoalescer}
+ */
+@RunWith(JUnit4.class)
+public class TestMutationCoalescer {
+
+  private final List<MutateRowRequest> issuedRequests = new ArrayList<>();
+  private final List<SettableFuture<GeneratedMessage>> responses = new ArrayList<>();
+  private final List<Throwable> failures = new ArrayList<>();
+  private int successCount;
+
+  private MutationCoalescer underTest;
+
+  @Before
+  public void setup() {
+    underTest = new MutationCoalescer(
+        new Function<MutateRowRequest, ListenableFuture<? extends GeneratedMessage>>() {
+          @Override
+          public ListenableFuture<? extends GeneratedMessage> apply(MutateRowRequest request) {
+            SettableFuture<GeneratedMessage> response = SettableFuture.create();
+            issuedRequests.add(request);
+            responses.add(response);
+            return response;
+          }
+        }, MoreExecutors.sameThreadExecutor());
+  }
+
+  @Test
+  public void testDifferentRowsAreNotMerged() {
+    underTest.submit(createRequest("row1", 1), createCallback());
+    underTest.submit(createRequest("row2", 1), createCallback());
+    Assert.assertEquals(2, issuedRequests.size());
+  }
+
+  @Test
+  public void testWaitingRequestsAreMergedInOrder() {
+    underTest.submit(createRequest("row", 1), createCallback());
+    underTest.submit(createRequest("row", 2), createCallback());
+    underTest.submit(createRequest("row", 3), createCallback());
+    Assert.assertEquals(1, issuedRequests.size());
+
+    responses.get(0).set(null);
+    Assert.assertEquals(2, issuedRequests.size());
+    MutateRowRequest merged = issuedRequests.get(1);
+    Assert.assertEquals(5, merged.getMutationsCount());
+    Assert.assertEquals(ByteString.copyFromUtf8("2"),
+      merged.getMutations(0).getSetCell().getValue());
+    Assert.assertEquals(ByteString.copyFromUtf8("3"),
+      merged.getMutations(2).getSetCell().getValue());
+    Assert.assertEquals(1, successCount);
+
+    // Every request merged into a failed request is notified.
+    responses.get(1).setException(new IOException());
+    Assert.assertEquals(2, failures.size());
+    Assert.assertEquals(3, underTest.getMutationCount());
+    Assert.assertEquals(2, underTest.getRequestCount());
+
+    // The row is no longer in flight.
+    underTest.submit(createRequest("row", 1), createCallback());
+    Assert.assertEquals(3, issuedRequests.size());
+  }
+
+  @Test
+  public void testMutationLimitIsRespected() {
+    int half = MutationCoalescer.MAX_MUTATIONS_PER_REQUEST / 2 + 1;
+    underTest.submit(createRequest("row", 1), createCallback());
+    underTest.submit(createRequest("row", half), createCallback());
+    underTest.submit(createRequest("row", half), createCallback());
+
+    responses.get(0).set(null);
+    Assert.assertEquals(half, issuedRequests.get(1).getMutationsCount());
+    responses.get(1).set(null);
+    Assert.assertEquals(half, issuedRequests.get(2).getMutationsCount());
+  }
+
+  private static MutateRowRequest createRequest(String rowKey, int mutationCount) {
+    MutateRowRequest.Builder builder =
+        MutateRowRequest.newBuilder().setRowKey(ByteString.copyFromUtf8(rowKey));
+    Mutation mutation = Mutation.newBuilder()
+        .setSetCell(Mutation.SetCell.newBuilder()
+            .setValue(ByteString.copyFromUtf8(String.valueOf(mutationCount))))
+        .build();
+    for (int i = 0; i < mutationCount; i++) {
+      builder.addMutations(mutation);
+    }
+    return builder.build();
+  }
+
+  private FutureCallback<GeneratedMessage> createCallback() {
+    return new FutureCallback<GeneratedMessage>() {
+      @Override
+      public void onSuccess(GeneratedMessage result) {
+        successCount++;
+      }
+
+      @Override
+      public void onFailure(Throwable t) {
+        failures.add(t);
+      }
+    };
+  }
+}
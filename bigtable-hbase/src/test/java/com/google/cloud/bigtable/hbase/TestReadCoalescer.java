@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.Row;
+import com.google.bigtable.v1.RowRange;
+import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.cloud.bigtable.grpc.ResultScanner;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+
+/**
+ * Tests for {@link ReadCoalescer}
+ */
+@RunWith(JUnit4.class)
+public class TestReadCoalescer {
+
+  private static final ByteString ROW_KEY = ByteString.copyFromUtf8("row");
+  private static final ReadRowsRequest REQUEST =
+      ReadRowsRequest.newBuilder().setTableName("table").setRowKey(ROW_KEY).build();
+  private static final Row ROW = Row.newBuilder().setKey(ROW_KEY).build();
+
+  @Mock
+  private BigtableClient client;
+
+  private SettableFuture<List<Row>> rpc;
+  private ReadCoalescer readCoalescer;
+  private BigtableClient underTest;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    rpc = SettableFuture.create();
+    Mockito.when(client.readRowsAsync(REQUEST)).thenReturn(rpc);
+    readCoalescer = new ReadCoalescer();
+    underTest = readCoalescer.wrap(client);
+  }
+
+  @Test
+  public void testConcurrentReadsShareAnRpc() throws Exception {
+    ListenableFuture<List<Row>> first = underTest.readRowsAsync(REQUEST);
+    ListenableFuture<List<Row>> second = underTest.readRowsAsync(REQUEST);
+    ResultScanner<Row> third = underTest.readRows(REQUEST);
+    rpc.set(Collections.singletonList(ROW));
+
+    Assert.assertEquals(ROW, first.get().get(0));
+    Assert.assertEquals(ROW, second.get().get(0));
+    Assert.assertEquals(ROW, third.next());
+    Assert.assertNull(third.next());
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(REQUEST);
+    Assert.assertEquals(1, readCoalescer.getRpcCount());
+    Assert.assertEquals(2, readCoalescer.getCoalescedCount());
+  }
+
+  @Test
+  public void testReadsAfterCompletionSendANewRpc() throws Exception {
+    rpc.set(Collections.singletonList(ROW));
+    underTest.readRowsAsync(REQUEST).get();
+    Mockito.when(client.readRowsAsync(REQUEST))
+        .thenReturn(Futures.immediateFuture(Collections.<Row> emptyList()));
+
+    Assert.assertTrue(underTest.readRowsAsync(REQUEST).get().isEmpty());
+    Mockito.verify(client, Mockito.times(2)).readRowsAsync(REQUEST);
+  }
+
+  @Test
+  public void testErrorsArePassedToEveryReader() throws Exception {
+    ListenableFuture<List<Row>> first = underTest.readRowsAsync(REQUEST);
+    ResultScanner<Row> second = underTest.readRows(REQUEST);
+    RuntimeException error = new RuntimeException("Error");
+    rpc.setException(error);
+
+    try {
+      first.get();
+      Assert.fail("Expected an ExecutionException");
+    } catch (ExecutionException e) {
+      Assert.assertSame(error, e.getCause());
+    }
+    try {
+      second.next();
+      Assert.fail("Expected an IOException");
+    } catch (IOException e) {
+      Assert.assertSame(error, e.getCause());
+    }
+  }
+
+  @Test
+  public void testCancellingOneReaderDoesNotCancelTheRpc() throws Exception {
+    ListenableFuture<List<Row>> first = underTest.readRowsAsync(REQUEST);
+    ListenableFuture<List<Row>> second = underTest.readRowsAsync(REQUEST);
+    first.cancel(true);
+    Assert.assertFalse(rpc.isCancelled());
+
+    rpc.set(Collections.singletonList(ROW));
+    Assert.assertEquals(ROW, second.get().get(0));
+  }
+
+  @Test
+  public void testCancellingEveryReaderCancelsTheRpc() throws Exception {
+    ListenableFuture<List<Row>> first = underTest.readRowsAsync(REQUEST);
+    ListenableFuture<List<Row>> second = underTest.readRowsAsync(REQUEST);
+    first.cancel(true);
+    second.cancel(true);
+    Assert.assertTrue(rpc.isCancelled());
+
+    // A later read doesn't join the cancelled RPC.
+    Mockito.when(client.readRowsAsync(REQUEST))
+        .thenReturn(Futures.immediateFuture(Collections.singletonList(ROW)));
+    Assert.assertEquals(ROW, underTest.readRowsAsync(REQUEST).get().get(0));
+  }
+
+  @Test
+  public void testReadsAfterAWriteDoNotJoinEarlierRpcs() throws Exception {
+    MutateRowRequest mutation = MutateRowRequest.newBuilder().setRowKey(ROW_KEY).build();
+    Mockito.when(client.mutateRowAsync(mutation))
+        .thenReturn(Futures.immediateFuture(Empty.getDefaultInstance()));
+
+    ListenableFuture<List<Row>> first = underTest.readRowsAsync(REQUEST);
+    underTest.mutateRowAsync(mutation).get();
+    SettableFuture<List<Row>> secondRpc = SettableFuture.create();
+    Mockito.when(client.readRowsAsync(REQUEST)).thenReturn(secondRpc);
+    ListenableFuture<List<Row>> second = underTest.readRowsAsync(REQUEST);
+
+    rpc.set(Collections.<Row> emptyList());
+    secondRpc.set(Collections.singletonList(ROW));
+    Assert.assertTrue(first.get().isEmpty());
+    Assert.assertEquals(ROW, second.get().get(0));
+    Mockito.verify(client, Mockito.times(2)).readRowsAsync(REQUEST);
+  }
+
+  @Test
+  public void testPointReadScannersKeepTheirRetries() throws Exception {
+    @SuppressWarnings("unchecked")
+    ResultScanner<Row> scanner = Mockito.mock(ResultScanner.class);
+    Mockito.when(scanner.next()).thenReturn(ROW, (Row) null);
+    Mockito.when(client.readRows(REQUEST)).thenReturn(scanner);
+
+    ResultScanner<Row> first = underTest.readRows(REQUEST);
+    Assert.assertEquals(ROW, first.next());
+    Assert.assertNull(first.next());
+    // The read went through the client's scanner, which resumes after errors.
+    Mockito.verify(client, Mockito.times(1)).readRows(REQUEST);
+    Mockito.verify(client, Mockito.never()).readRowsAsync(REQUEST);
+    Mockito.verify(scanner).close();
+  }
+
+  @Test
+  public void testReadsThroughDifferentClientsDoNotShareAnRpc() throws Exception {
+    BigtableClient otherClient = Mockito.mock(BigtableClient.class);
+    Mockito.when(otherClient.readRowsAsync(REQUEST))
+        .thenReturn(Futures.immediateFuture(Collections.singletonList(ROW)));
+    BigtableClient otherUnderTest = readCoalescer.wrap(otherClient);
+
+    ListenableFuture<List<Row>> first = underTest.readRowsAsync(REQUEST);
+    ListenableFuture<List<Row>> second = otherUnderTest.readRowsAsync(REQUEST);
+    Assert.assertEquals(ROW, second.get().get(0));
+    Assert.assertFalse(first.isDone());
+    Assert.assertEquals(2, readCoalescer.getRpcCount());
+    Assert.assertEquals(0, readCoalescer.getCoalescedCount());
+  }
+
+  @Test
+  public void testWritesOnlyAffectReadsOfTheirRow() throws Exception {
+    ByteString otherRowKey = ByteString.copyFromUtf8("other");
+    MutateRowRequest mutation = MutateRowRequest.newBuilder().setRowKey(otherRowKey).build();
+    Mockito.when(client.mutateRowAsync(mutation))
+        .thenReturn(Futures.immediateFuture(Empty.getDefaultInstance()));
+    ReadRowsRequest includingRange = ReadRowsRequest.newBuilder()
+        .setRowRange(RowRange.newBuilder().setStartKey(ByteString.copyFromUtf8("o")))
+        .build();
+    ReadRowsRequest excludingRange = ReadRowsRequest.newBuilder()
+        .setRowRange(RowRange.newBuilder().setEndKey(ByteString.copyFromUtf8("o")))
+        .build();
+    ReadRowsRequest laterRange = ReadRowsRequest.newBuilder()
+        .setRowRange(RowRange.newBuilder().setStartKey(ByteString.copyFromUtf8("p")))
+        .build();
+    ReadRowsRequest tableRead = ReadRowsRequest.newBuilder().setTableName("table").build();
+    List<ReadRowsRequest> requests =
+        Arrays.asList(REQUEST, includingRange, excludingRange, laterRange, tableRead);
+    for (ReadRowsRequest request : requests) {
+      Mockito.when(client.readRowsAsync(request))
+          .thenReturn(SettableFuture.<List<Row>> create());
+    }
+
+    for (ReadRowsRequest request : requests) {
+      underTest.readRowsAsync(request);
+    }
+    underTest.mutateRowAsync(mutation).get();
+    for (ReadRowsRequest request : requests) {
+      underTest.readRowsAsync(request);
+    }
+
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(REQUEST);
+    Mockito.verify(client, Mockito.times(2)).readRowsAsync(includingRange);
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(excludingRange);
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(laterRange);
+    Mockito.verify(client, Mockito.times(2)).readRowsAsync(tableRead);
+  }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.MockitoAnnotations;
+
+import com.google.bigtable.v1.MutateRowRequest;
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.Row;
+import com.google.bigtable.v1.RowFilter;
+import com.google.cloud.bigtable.grpc.BigtableClient;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.Empty;
+
+/**
+ * Tests for {@link RowCache}
+ */
+@RunWith(JUnit4.class)
+public class TestRowCache {
+
+  private static final ByteString ROW_KEY = ByteString.copyFromUtf8("row");
+  private static final ReadRowsRequest REQUEST =
+      ReadRowsRequest.newBuilder().setTableName("table").setRowKey(ROW_KEY).build();
+  private static final Row ROW = Row.newBuilder().setKey(ROW_KEY).build();
+
+  private static class FakeTicker extends Ticker {
+    private long nanos = 0;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+  @Mock
+  private BigtableClient client;
+
+  private FakeTicker ticker;
+  private RowCache rowCache;
+  private BigtableClient underTest;
+
+  @Before
+  public void setup() {
+    MockitoAnnotations.initMocks(this);
+    ticker = new FakeTicker();
+    rowCache = new RowCache(10, 1000, ticker);
+    underTest = rowCache.wrap(client);
+    Mockito.when(client.readRowsAsync(Mockito.any(ReadRowsRequest.class)))
+        .thenReturn(Futures.immediateFuture(Collections.singletonList(ROW)));
+  }
+
+  @Test
+  public void testReadsAreServedFromTheCache() throws Exception {
+    Assert.assertEquals(ROW, underTest.readRowsAsync(REQUEST).get().get(0));
+    Assert.assertEquals(ROW, underTest.readRowsAsync(REQUEST).get().get(0));
+    Assert.assertEquals(ROW, underTest.readRows(REQUEST).next());
+
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(REQUEST);
+    Assert.assertEquals(2, rowCache.getHitCount());
+    Assert.assertEquals(1, rowCache.getMissCount());
+  }
+
+  @Test
+  public void testReadsWithADifferentFilterAreCachedSeparately() throws Exception {
+    ReadRowsRequest filteredRequest = REQUEST.toBuilder()
+        .setFilter(RowFilter.newBuilder().setFamilyNameRegexFilter("family"))
+        .build();
+    underTest.readRowsAsync(REQUEST).get();
+    underTest.readRowsAsync(filteredRequest).get();
+
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(REQUEST);
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(filteredRequest);
+  }
+
+  @Test
+  public void testMissingRowsAreCached() throws Exception {
+    Mockito.when(client.readRowsAsync(REQUEST))
+        .thenReturn(Futures.immediateFuture(Collections.<Row> emptyList()));
+    Assert.assertTrue(underTest.readRowsAsync(REQUEST).get().isEmpty());
+    Assert.assertTrue(underTest.readRowsAsync(REQUEST).get().isEmpty());
+    Assert.assertNull(underTest.readRows(REQUEST).next());
+
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(REQUEST);
+  }
+
+  @Test
+  public void testRangeReadsAreNotCached() throws Exception {
+    ReadRowsRequest rangeRequest = ReadRowsRequest.newBuilder().setTableName("table").build();
+    underTest.readRowsAsync(rangeRequest).get();
+    underTest.readRowsAsync(rangeRequest).get();
+
+    Mockito.verify(client, Mockito.times(2)).readRowsAsync(rangeRequest);
+    Assert.assertEquals(0, rowCache.size());
+  }
+
+  @Test
+  public void testWritesInvalidateTheRow() throws Exception {
+    MutateRowRequest mutation = MutateRowRequest.newBuilder().setRowKey(ROW_KEY).build();
+    SettableFuture<Empty> mutationFuture = SettableFuture.create();
+    Mockito.when(client.mutateRowAsync(mutation)).thenReturn(mutationFuture);
+
+    underTest.readRowsAsync(REQUEST).get();
+    underTest.mutateRowAsync(mutation);
+    // The row is cached until the write completes.
+    underTest.readRowsAsync(REQUEST).get();
+    Mockito.verify(client, Mockito.times(1)).readRowsAsync(REQUEST);
+
+    mutationFuture.set(Empty.getDefaultInstance());
+    underTest.readRowsAsync(REQUEST).get();
+    Mockito.verify(client, Mockito.times(2)).readRowsAsync(REQUEST);
+    Assert.assertEquals(1, rowCache.getInvalidationCount());
+
+    underTest.mutateRow(mutation);
+    underTest.readRowsAsync(REQUEST).get();
+    Mockito.verify(client, Mockito.times(3)).readRowsAsync(REQUEST);
+  }
+
+  @Test
+  public void testReadsInFlightDuringAWriteAreNotCached() throws Exception {
+    SettableFuture<List<Row>> readFuture = SettableFuture.create();
+    Mockito.when(client.readRowsAsync(REQUEST)).thenReturn(readFuture);
+
+    underTest.readRowsAsync(REQUEST);
+    rowCache.invalidate(ROW_KEY);
+    readFuture.set(Collections.singletonList(ROW));
+
+    Assert.assertNull(rowCache.get(REQUEST));
+  }
+
+  @Test
+  public void testRowsExpire() throws Exception {
+    underTest.readRowsAsync(REQUEST).get();
+    ticker.nanos += TimeUnit.MILLISECONDS.toNanos(1001);
+    underTest.readRowsAsync(REQUEST).get();
+
+    Mockito.verify(client, Mockito.times(2)).readRowsAsync(REQUEST);
+    Assert.assertEquals(1, rowCache.getEvictionCount());
+  }
+
+  @Test
+  public void testRowsAreEvictedWhenTheCacheIsFull() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      underTest.readRowsAsync(
+          REQUEST.toBuilder().setRowKey(ByteString.copyFromUtf8("row" + i)).build()).get();
+    }
+    Assert.assertTrue(rowCache.size() <= 10);
+    Assert.assertTrue(rowCache.getEvictionCount() >= 10);
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Tests for {@link SpillLog}
+ */
+@RunWith(JUnit4.class)
+public class TestSpillLog {
+
+  // Room for two records of "record-N" per segment.
+  private static final int SEGMENT_SIZE = 30;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRecordsAreReadInOrder() throws Exception {
+    SpillLog underTest = new SpillLog(folder.getRoot(), SEGMENT_SIZE, SEGMENT_SIZE * 10);
+    Assert.assertTrue(underTest.isEmpty());
+    for (int i = 0; i < 5; i++) {
+      underTest.append((byte) i, Bytes.toBytes("record-" + i));
+    }
+    Assert.assertFalse(underTest.isEmpty());
+    Assert.assertEquals(3, underTest.getSegmentCount());
+
+    for (int i = 0; i < 5; i++) {
+      SpillLog.Record record = underTest.peek();
+      Assert.assertEquals(i, record.getType());
+      Assert.assertEquals("record-" + i, Bytes.toString(record.getData()));
+      underTest.take(record);
+      underTest.acknowledge(record);
+    }
+    Assert.assertTrue(underTest.isEmpty());
+    // Full segments are deleted once they are acknowledged; the last one is still open.
+    Assert.assertEquals(1, underTest.getSegmentCount());
+    underTest.close();
+    // Nothing is left to replay, so the log's own directory is deleted too.
+    Assert.assertFalse(underTest.getDirectory().exists());
+  }
+
+  @Test
+  public void testUnacknowledgedRecordsAreReplayed() throws Exception {
+    File directory = folder.getRoot();
+    SpillLog log = new SpillLog(directory, SEGMENT_SIZE, SEGMENT_SIZE * 10);
+    for (int i = 0; i < 3; i++) {
+      log.append((byte) 1, Bytes.toBytes("record-" + i));
+    }
+    SpillLog.Record record = log.peek();
+    log.take(record);
+    log.acknowledge(record);
+    // The second record is sent, but not acknowledged.
+    log.take(log.peek());
+    log.close();
+
+    SpillLog reopened = new SpillLog(directory, SEGMENT_SIZE, SEGMENT_SIZE * 10);
+    // The first segment was not finished, so it is replayed in full.
+    for (int i = 0; i < 3; i++) {
+      record = reopened.peek();
+      Assert.assertEquals("record-" + i, Bytes.toString(record.getData()));
+      reopened.take(record);
+    }
+    Assert.assertTrue(reopened.isEmpty());
+    reopened.close();
+  }
+
+  @Test
+  public void testOpenLogsShareADirectory() throws Exception {
+    File directory = folder.getRoot();
+    SpillLog first = new SpillLog(directory, SEGMENT_SIZE, SEGMENT_SIZE * 10);
+    first.append((byte) 1, Bytes.toBytes("record-0"));
+    SpillLog second = new SpillLog(directory, SEGMENT_SIZE, SEGMENT_SIZE * 10);
+    // The records of a log that is open aren't replayed by another log.
+    Assert.assertTrue(second.isEmpty());
+    second.append((byte) 1, Bytes.toBytes("record-1"));
+    Assert.assertEquals("record-0", Bytes.toString(first.peek().getData()));
+    Assert.assertEquals("record-1", Bytes.toString(second.peek().getData()));
+    first.close();
+    second.close();
+
+    // Once both are closed, the next log replays the records of both.
+    SpillLog third = new SpillLog(directory, SEGMENT_SIZE, SEGMENT_SIZE * 10);
+    Set<String> replayed = new HashSet<>();
+    for (int i = 0; i < 2; i++) {
+      SpillLog.Record record = third.peek();
+      replayed.add(Bytes.toString(record.getData()));
+      third.take(record);
+      third.acknowledge(record);
+    }
+    Assert.assertEquals(new HashSet<>(Arrays.asList("record-0", "record-1")), replayed);
+    Assert.assertTrue(third.isEmpty());
+    third.close();
+    Assert.assertFalse(first.getDirectory().exists());
+    Assert.assertFalse(second.getDirectory().exists());
+  }
+
+  @Test
+  public void testRegisterFlush() throws Exception {
+    SpillLog underTest = new SpillLog(folder.getRoot(), SEGMENT_SIZE, SEGMENT_SIZE * 10);
+    Assert.assertTrue(underTest.registerFlush().isDone());
+    underTest.append((byte) 1, Bytes.toBytes("record-0"));
+    ListenableFuture<Void> flush = underTest.registerFlush();
+    underTest.append((byte) 1, Bytes.toBytes("record-1"));
+    Assert.assertFalse(flush.isDone());
+
+    underTest.take(underTest.peek());
+    Assert.assertTrue(flush.isDone());
+    Assert.assertFalse(underTest.registerFlush().isDone());
+    underTest.close();
+  }
+
+  @Test
+  public void testPeekReturnsNullWhenClosed() throws Exception {
+    final SpillLog underTest = new SpillLog(folder.getRoot(), SEGMENT_SIZE, SEGMENT_SIZE * 10);
+    Thread closer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(100);
+          underTest.close();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    closer.start();
+    Assert.assertNull(underTest.peek());
+    closer.join();
+  }
+}
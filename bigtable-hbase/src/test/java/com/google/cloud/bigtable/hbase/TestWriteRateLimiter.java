@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for {@link WriteRateLimiter}
+ */
+@RunWith(JUnit4.class)
+public class TestWriteRateLimiter {
+
+  @Test
+  public void testUnlimited() {
+    WriteRateLimiter underTest = new WriteRateLimiter();
+    Assert.assertFalse(underTest.isEnabled());
+    for (int i = 0; i < 1000; i++) {
+      Assert.assertEquals(0, underTest.acquire(1000));
+    }
+    Assert.assertEquals(1000, underTest.getMutationCount());
+    Assert.assertEquals(1000 * 1000, underTest.getByteCount());
+    Assert.assertEquals(0, underTest.getThrottledTime(TimeUnit.NANOSECONDS));
+  }
+
+  @Test
+  public void testMutationLimit() {
+    WriteRateLimiter underTest = new WriteRateLimiter(10, 0);
+    Assert.assertTrue(underTest.isEnabled());
+    Assert.assertEquals(10, underTest.getMutationsPerSecond(), 0.01);
+    Assert.assertEquals(0, underTest.getBytesPerSecond(), 0.01);
+    long start = System.nanoTime();
+    for (int i = 0; i < 6; i++) {
+      underTest.acquire(1);
+    }
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    // The first permit is free, the next five are spaced 100ms apart.
+    Assert.assertTrue("Elapsed " + elapsedMs, elapsedMs >= 400);
+    Assert.assertTrue(underTest.getThrottledTime(TimeUnit.MILLISECONDS) >= 400);
+  }
+
+  @Test
+  public void testByteLimit() {
+    WriteRateLimiter underTest = new WriteRateLimiter(0, 1000);
+    long start = System.nanoTime();
+    underTest.acquire(500);
+    underTest.acquire(500);
+    underTest.acquire(1);
+    long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    Assert.assertTrue("Elapsed " + elapsedMs, elapsedMs >= 900);
+  }
+
+  @Test
+  public void testAdjustAtRuntime() {
+    WriteRateLimiter underTest = new WriteRateLimiter();
+    underTest.setMutationsPerSecond(5);
+    Assert.assertTrue(underTest.isEnabled());
+    Assert.assertEquals(5, underTest.getMutationsPerSecond(), 0.01);
+    underTest.setMutationsPerSecond(20);
+    Assert.assertEquals(20, underTest.getMutationsPerSecond(), 0.01);
+    underTest.setMutationsPerSecond(0);
+    Assert.assertFalse(underTest.isEnabled());
+    Assert.assertEquals(0, underTest.acquire(1));
+  }
+}
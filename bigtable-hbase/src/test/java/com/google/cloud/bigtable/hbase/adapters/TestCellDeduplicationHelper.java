@@ -62,4 +62,42 @@ public class TestCellDeduplicationHelper {
       }
     }
   }
+
+  @Test
+  public void testLargeFamiliesAreDeduplicatedInOrder() {
+    Append append = new Append(Bytes.toBytes("Ignored"));
+    byte[] family = Bytes.toBytes("fam1");
+    for (int i = 0; i < 40; i++) {
+      append.add(family, Bytes.toBytes("qual" + (i % 20)), Bytes.toBytes("val" + i));
+    }
+
+    List<Cell> deduplicatedCells = CellDeduplicationHelper.deduplicateFamily(append, family);
+
+    Assert.assertEquals(20, deduplicatedCells.size());
+    for (int i = 0; i < 20; i++) {
+      Cell cell = deduplicatedCells.get(i);
+      Assert.assertArrayEquals(Bytes.toBytes("qual" + i), CellUtil.cloneQualifier(cell));
+      Assert.assertArrayEquals(Bytes.toBytes("val" + (i + 20)), CellUtil.cloneValue(cell));
+    }
+  }
+
+  @Test
+  public void testSmallFamiliesKeepTheLastCellInOrder() {
+    Append append = new Append(Bytes.toBytes("Ignored"));
+    byte[] family = Bytes.toBytes("fam1");
+    append.add(family, Bytes.toBytes("qual1"), Bytes.toBytes("val1.1"));
+    append.add(family, Bytes.toBytes("qual2"), Bytes.toBytes("val2.1"));
+    append.add(family, Bytes.toBytes("qual1"), Bytes.toBytes("val1.2"));
+    append.add(family, Bytes.toBytes("qual3"), Bytes.toBytes("val3.1"));
+
+    List<Cell> deduplicatedCells = CellDeduplicationHelper.deduplicateFamily(append, family);
+
+    Assert.assertEquals(3, deduplicatedCells.size());
+    Assert.assertArrayEquals(Bytes.toBytes("val2.1"),
+      CellUtil.cloneValue(deduplicatedCells.get(0)));
+    Assert.assertArrayEquals(Bytes.toBytes("val1.2"),
+      CellUtil.cloneValue(deduplicatedCells.get(1)));
+    Assert.assertArrayEquals(Bytes.toBytes("val3.1"),
+      CellUtil.cloneValue(deduplicatedCells.get(2)));
+  }
 }
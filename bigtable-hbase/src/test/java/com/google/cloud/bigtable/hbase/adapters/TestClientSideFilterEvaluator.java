@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.ColumnPaginationFilter;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.DependentColumnFilter;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.RowFilter;
+import org.apache.hadoop.hbase.filter.SubstringComparator;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the {@link ClientSideFilterEvaluator}
+ */
+@RunWith(JUnit4.class)
+public class TestClientSideFilterEvaluator {
+
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+
+  private static Cell createCell(String row, String qualifier, long timestamp, String value) {
+    return new KeyValue(Bytes.toBytes(row), FAMILY, Bytes.toBytes(qualifier), timestamp,
+        Bytes.toBytes(value));
+  }
+
+  private static Result createRow(Cell... cells) {
+    List<Cell> sortedCells = new ArrayList<>(Arrays.asList(cells));
+    Collections.sort(sortedCells, KeyValue.COMPARATOR);
+    return Result.create(sortedCells);
+  }
+
+  private static List<String> getValues(Result result) {
+    List<String> values = new ArrayList<>();
+    for (Cell cell : result.rawCells()) {
+      values.add(Bytes.toString(CellUtil.cloneValue(cell)));
+    }
+    return values;
+  }
+
+  @Test
+  public void testCellsAreFiltered() throws IOException {
+    ClientSideFilterEvaluator evaluator = new ClientSideFilterEvaluator(
+        new ValueFilter(CompareOp.EQUAL, new SubstringComparator("match")),
+        Integer.MAX_VALUE);
+    Result result = evaluator.filterRow(createRow(
+        createCell("row", "q1", 1L, "a match"),
+        createCell("row", "q2", 1L, "no"),
+        createCell("row", "q3", 1L, "matches")));
+
+    Assert.assertEquals(Arrays.asList("a match", "matches"), getValues(result));
+  }
+
+  @Test
+  public void testRowsWithoutCellsAreFilteredOut() throws IOException {
+    ClientSideFilterEvaluator evaluator = new ClientSideFilterEvaluator(
+        new ValueFilter(CompareOp.EQUAL, new SubstringComparator("match")),
+        Integer.MAX_VALUE);
+
+    Assert.assertNull(evaluator.filterRow(createRow(createCell("row", "q1", 1L, "no"))));
+    Assert.assertEquals(1, evaluator.getRowsRead());
+    Assert.assertEquals(0, evaluator.getRowsKept());
+  }
+
+  @Test
+  public void testRowKeyIsFiltered() throws IOException {
+    ClientSideFilterEvaluator evaluator = new ClientSideFilterEvaluator(
+        new RowFilter(CompareOp.EQUAL, new SubstringComparator("2")),
+        Integer.MAX_VALUE);
+
+    Assert.assertNull(evaluator.filterRow(createRow(createCell("row1", "q", 1L, "v"))));
+    Assert.assertNotNull(evaluator.filterRow(createRow(createCell("row2", "q", 1L, "v"))));
+  }
+
+  @Test
+  public void testColumnsAreSkipped() throws IOException {
+    // Skips the first column, then includes one cell of the next column.
+    ClientSideFilterEvaluator evaluator = new ClientSideFilterEvaluator(
+        new ColumnPaginationFilter(1, 1), Integer.MAX_VALUE);
+    Result result = evaluator.filterRow(createRow(
+        createCell("row", "q1", 2L, "q1v2"),
+        createCell("row", "q1", 1L, "q1v1"),
+        createCell("row", "q2", 2L, "q2v2"),
+        createCell("row", "q2", 1L, "q2v1"),
+        createCell("row", "q3", 1L, "q3v1")));
+
+    Assert.assertEquals(Arrays.asList("q2v2"), getValues(result));
+  }
+
+  @Test
+  public void testDependentColumnFilter() throws IOException {
+    ClientSideFilterEvaluator evaluator = new ClientSideFilterEvaluator(
+        new DependentColumnFilter(FAMILY, Bytes.toBytes("q1")), Integer.MAX_VALUE);
+    Result result = evaluator.filterRow(createRow(
+        createCell("row", "q1", 1L, "q1v1"),
+        createCell("row", "q2", 1L, "q2v1"),
+        createCell("row", "q2", 2L, "q2v2")));
+
+    // Only the cells with a timestamp of the dependent column are kept.
+    Assert.assertEquals(Arrays.asList("q1v1", "q2v1"), getValues(result));
+    Assert.assertNull(evaluator.filterRow(createRow(createCell("row2", "q2", 1L, "q2v1"))));
+  }
+
+  @Test
+  public void testVersionsAreLimitedAfterFiltering() throws IOException {
+    ClientSideFilterEvaluator evaluator = new ClientSideFilterEvaluator(
+        new ValueFilter(CompareOp.NOT_EQUAL, new BinaryComparator(Bytes.toBytes("skip"))), 2);
+    Result result = evaluator.filterRow(createRow(
+        createCell("row", "q1", 4L, "skip"),
+        createCell("row", "q1", 3L, "q1v3"),
+        createCell("row", "q1", 2L, "q1v2"),
+        createCell("row", "q1", 1L, "q1v1"),
+        createCell("row", "q2", 1L, "q2v1")));
+
+    Assert.assertEquals(Arrays.asList("q1v3", "q1v2", "q2v1"), getValues(result));
+  }
+
+  @Test
+  public void testScanEndsOnceTheFilterIsDone() throws IOException {
+    ClientSideFilterEvaluator evaluator =
+        new ClientSideFilterEvaluator(new PageFilter(2), Integer.MAX_VALUE);
+    Assert.assertNotNull(evaluator.filterRow(createRow(createCell("row1", "q", 1L, "v"))));
+    Assert.assertFalse(evaluator.isDone());
+    Assert.assertNotNull(evaluator.filterRow(createRow(createCell("row2", "q", 1L, "v"))));
+    Assert.assertTrue(evaluator.isDone());
+    Assert.assertNull(evaluator.filterRow(createRow(createCell("row3", "q", 1L, "v"))));
+    Assert.assertEquals(2, evaluator.getRowsKept());
+  }
+}
@@ -18,7 +18,6 @@ package com.google.cloud.bigtable.hbase.adapters;
 import com.google.bigtable.v1.ReadRowsRequest;
 import com.google.bigtable.v1.RowFilter;
 import com.google.bigtable.v1.RowFilter.Chain;
-import com.google.bigtable.v1.RowFilter.Interleave;
 import com.google.cloud.bigtable.hbase.DataGenerationHelper;
 import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
 import com.google.common.base.Function;
@@ -76,14 +75,12 @@ public class TestGetAdapter {
     Get get = makeValidGet(dataHelper.randomData("rk1"));
     get.setMaxVersions(10);
     ReadRowsRequest.Builder rowRequestBuilder = getAdapter.adapt(get, throwingReadHooks);
+    // The filter of all families passes every cell, and is optimized away.
     Assert.assertEquals(
-        Chain.newBuilder()
-            .addFilters(RowFilter.newBuilder()
-                .setFamilyNameRegexFilter(".*"))
-            .addFilters(RowFilter.newBuilder()
-                .setCellsPerColumnLimitFilter(10))
+        RowFilter.newBuilder()
+            .setCellsPerColumnLimitFilter(10)
             .build(),
-        rowRequestBuilder.getFilter().getChain());
+        rowRequestBuilder.getFilter());
   }
 
   @Test
@@ -91,14 +88,12 @@ public class TestGetAdapter {
     Get get = makeValidGet(dataHelper.randomData("rk1"));
     get.addFamily(Bytes.toBytes("f1"));
     ReadRowsRequest.Builder rowRequestBuilder = getAdapter.adapt(get, throwingReadHooks);
+    // A limit of Integer.MAX_VALUE versions passes every cell, and is optimized away.
     Assert.assertEquals(
-        Chain.newBuilder()
-            .addFilters(RowFilter.newBuilder()
-                .setFamilyNameRegexFilter("f1"))
-            .addFilters(RowFilter.newBuilder()
-                .setCellsPerColumnLimitFilter(Integer.MAX_VALUE))
+        RowFilter.newBuilder()
+            .setFamilyNameRegexFilter("f1")
             .build(),
-        rowRequestBuilder.getFilter().getChain());
+        rowRequestBuilder.getFilter());
   }
 
   @Test
@@ -108,14 +103,10 @@ public class TestGetAdapter {
     ReadRowsRequest.Builder rowRequestBuilder = getAdapter.adapt(get, throwingReadHooks);
     Assert.assertEquals(
         Chain.newBuilder()
-            .addFilters(
-                RowFilter.newBuilder().setChain(Chain.newBuilder()
-                    .addFilters(RowFilter.newBuilder()
-                        .setFamilyNameRegexFilter("f1"))
-                    .addFilters(RowFilter.newBuilder()
-                        .setColumnQualifierRegexFilter(ByteString.copyFromUtf8("q1")))))
             .addFilters(RowFilter.newBuilder()
-                .setCellsPerColumnLimitFilter(Integer.MAX_VALUE))
+                .setFamilyNameRegexFilter("f1"))
+            .addFilters(RowFilter.newBuilder()
+                .setColumnQualifierRegexFilter(ByteString.copyFromUtf8("q1")))
             .build(),
         rowRequestBuilder.getFilter().getChain());
   }
@@ -126,23 +117,13 @@ public class TestGetAdapter {
     get.addColumn(Bytes.toBytes("f1"), Bytes.toBytes("q1"));
     get.addColumn(Bytes.toBytes("f1"), Bytes.toBytes("q2"));
     ReadRowsRequest.Builder rowRequestBuilder = getAdapter.adapt(get, throwingReadHooks);
+    // The interleave of the qualifiers is merged into one regex.
     Assert.assertEquals(
         Chain.newBuilder()
-            .addFilters(
-                RowFilter.newBuilder().setChain(Chain.newBuilder()
-                    .addFilters(RowFilter.newBuilder()
-                        .setFamilyNameRegexFilter("f1"))
-                    .addFilters(RowFilter.newBuilder()
-                        .setInterleave(
-                            Interleave.newBuilder()
-                                .addFilters(RowFilter.newBuilder()
-                                    .setColumnQualifierRegexFilter(
-                                        ByteString.copyFromUtf8("q1")))
-                                .addFilters(RowFilter.newBuilder()
-                                    .setColumnQualifierRegexFilter(
-                                        ByteString.copyFromUtf8("q2")))))))
             .addFilters(RowFilter.newBuilder()
-                .setCellsPerColumnLimitFilter(Integer.MAX_VALUE))
+                .setFamilyNameRegexFilter("f1"))
+            .addFilters(RowFilter.newBuilder()
+                .setColumnQualifierRegexFilter(ByteString.copyFromUtf8("q1|q2")))
             .build(),
         rowRequestBuilder.getFilter().getChain());
   }
@@ -19,6 +19,7 @@ import com.google.bigtable.v1.MutateRowRequest;
 import com.google.bigtable.v1.Mutation;
 import com.google.bigtable.v1.Mutation.MutationCase;
 import com.google.bigtable.v1.Mutation.SetCell;
+import com.google.cloud.bigtable.hbase.BigtableOptionsFactory;
 import com.google.cloud.bigtable.hbase.DataGenerationHelper;
 
 import org.apache.hadoop.conf.Configuration;
@@ -176,4 +177,46 @@ public class TestPutAdapter {
     Put emptyPut = new Put(row);
     adapter.adapt(emptyPut);
   }
+
+  @Test
+  public void testClientTimestamps() {
+    Configuration configuration = new Configuration();
+    configuration.setBoolean(BigtableOptionsFactory.BIGTABLE_USE_CLIENT_TIMESTAMPS_KEY, true);
+    PutAdapter clientTimestampAdapter = new PutAdapter(configuration, new MonotonicMicrosClock() {
+      @Override
+      protected long currentTimeMillis() {
+        return 5L;
+      }
+    });
+
+    byte[] row = dataHelper.randomData("rk-");
+    byte[] family = dataHelper.randomData("f1");
+    Put hbasePut = new Put(row);
+    hbasePut.addColumn(family, dataHelper.randomData("qual1"), dataHelper.randomData("v1"));
+    hbasePut.addColumn(family, dataHelper.randomData("qual2"), dataHelper.randomData("v2"));
+    hbasePut.addColumn(family, dataHelper.randomData("qual3"), 2L, dataHelper.randomData("v3"));
+
+    MutateRowRequest.Builder rowMutationBuilder = clientTimestampAdapter.adapt(hbasePut);
+    Assert.assertEquals(3, rowMutationBuilder.getMutationsCount());
+    // Cells without a timestamp share one client timestamp, explicit timestamps are kept.
+    Assert.assertEquals(5000L, rowMutationBuilder.getMutations(0).getSetCell().getTimestampMicros());
+    Assert.assertEquals(5000L, rowMutationBuilder.getMutations(1).getSetCell().getTimestampMicros());
+    Assert.assertEquals(2000L, rowMutationBuilder.getMutations(2).getSetCell().getTimestampMicros());
+
+    // The clock doesn't move, so the next Put gets the same millisecond rather than a later one.
+    rowMutationBuilder = clientTimestampAdapter.adapt(hbasePut);
+    Assert.assertEquals(5000L, rowMutationBuilder.getMutations(0).getSetCell().getTimestampMicros());
+  }
+
+  @Test
+  public void testClientTimestampsAreWholeMilliseconds() {
+    MonotonicMicrosClock clock = new MonotonicMicrosClock();
+    long last = 0;
+    for (int i = 0; i < 100; i++) {
+      long next = clock.nextMicros();
+      Assert.assertEquals(0, next % 1000);
+      Assert.assertTrue(next >= last);
+      last = next;
+    }
+  }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import com.google.bigtable.v1.Cell;
+import com.google.bigtable.v1.Column;
+import com.google.bigtable.v1.Family;
+import com.google.bigtable.v1.Row;
+import com.google.protobuf.ByteString;
+
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class TestRowAdapter {
+
+  private final RowAdapter adapter = new RowAdapter();
+
+  @Test
+  public void testNullRow() {
+    Assert.assertTrue(adapter.adaptResponse(null).isEmpty());
+  }
+
+  @Test
+  public void testCellsAreSortedKeyValues() {
+    Result result = adapter.adaptResponse(createRow());
+
+    assertSortedKeyValues(result);
+    org.apache.hadoop.hbase.Cell[] cells = result.rawCells();
+    Assert.assertSame(((KeyValue) cells[0]).getBuffer(), ((KeyValue) cells[3]).getBuffer());
+  }
+
+  @Test
+  public void testRowsAreSplitAcrossBuffers() {
+    // Room for the first two cells of the row, but not the third.
+    Result result = new RowAdapter(64).adaptResponse(createRow());
+
+    assertSortedKeyValues(result);
+    org.apache.hadoop.hbase.Cell[] cells = result.rawCells();
+    Assert.assertNotSame(((KeyValue) cells[0]).getBuffer(), ((KeyValue) cells[3]).getBuffer());
+    for (org.apache.hadoop.hbase.Cell cell : cells) {
+      Assert.assertTrue(((KeyValue) cell).getBuffer().length <= 64);
+    }
+  }
+
+  private static Row createRow() {
+    return Row.newBuilder()
+        .setKey(ByteString.copyFromUtf8("row"))
+        .addFamilies(Family.newBuilder()
+            .setName("f2")
+            .addColumns(createColumn("q", 2000, "v3")))
+        .addFamilies(Family.newBuilder()
+            .setName("f1")
+            .addColumns(createColumn("q2", 1000, ""))
+            .addColumns(Column.newBuilder()
+                .setQualifier(ByteString.copyFromUtf8("q1"))
+                .addCells(Cell.newBuilder()
+                    .setTimestampMicros(1000)
+                    .setValue(ByteString.copyFromUtf8("v1")))
+                .addCells(Cell.newBuilder()
+                    .setTimestampMicros(3000)
+                    .setValue(ByteString.copyFromUtf8("v2")))))
+        .build();
+  }
+
+  private static void assertSortedKeyValues(Result result) {
+    org.apache.hadoop.hbase.Cell[] cells = result.rawCells();
+    Assert.assertEquals(4, cells.length);
+    assertCell(new KeyValue(Bytes.toBytes("row"), Bytes.toBytes("f1"), Bytes.toBytes("q1"), 3L,
+        Bytes.toBytes("v2")), cells[0]);
+    assertCell(new KeyValue(Bytes.toBytes("row"), Bytes.toBytes("f1"), Bytes.toBytes("q1"), 1L,
+        Bytes.toBytes("v1")), cells[1]);
+    assertCell(new KeyValue(Bytes.toBytes("row"), Bytes.toBytes("f1"), Bytes.toBytes("q2"), 1L,
+        new byte[0]), cells[2]);
+    assertCell(new KeyValue(Bytes.toBytes("row"), Bytes.toBytes("f2"), Bytes.toBytes("q"), 2L,
+        Bytes.toBytes("v3")), cells[3]);
+    Assert.assertArrayEquals(Bytes.toBytes("v3"),
+      result.getValue(Bytes.toBytes("f2"), Bytes.toBytes("q")));
+  }
+
+  private static Column createColumn(String qualifier, long timestampMicros, String value) {
+    return Column.newBuilder()
+        .setQualifier(ByteString.copyFromUtf8(qualifier))
+        .addCells(Cell.newBuilder()
+            .setTimestampMicros(timestampMicros)
+            .setValue(ByteString.copyFromUtf8(value)))
+        .build();
+  }
+
+  private static void assertCell(KeyValue expected, org.apache.hadoop.hbase.Cell actual) {
+    // The cell is written in the same layout as a KeyValue built from separate arrays.
+    KeyValue keyValue = (KeyValue) actual;
+    Assert.assertTrue(Bytes.equals(
+        expected.getBuffer(), expected.getOffset(), expected.getLength(),
+        keyValue.getBuffer(), keyValue.getOffset(), keyValue.getLength()));
+  }
+}
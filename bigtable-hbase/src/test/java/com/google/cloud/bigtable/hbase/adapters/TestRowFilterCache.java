@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowFilter;
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
+import com.google.common.base.Ticker;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+/**
+ * Tests for {@link RowFilterCache}
+ */
+@RunWith(JUnit4.class)
+public class TestRowFilterCache {
+
+  private static final byte[] FAMILY = Bytes.toBytes("family");
+  private static final byte[] QUALIFIER = Bytes.toBytes("qualifier");
+
+  private static class FakeTicker extends Ticker {
+    private long nanos = 0;
+
+    @Override
+    public long read() {
+      return nanos;
+    }
+  }
+
+  private FakeTicker ticker;
+  private RowFilterCache rowFilterCache;
+  private GetAdapter getAdapter;
+
+  @Before
+  public void setup() {
+    ticker = new FakeTicker();
+    rowFilterCache = new RowFilterCache(10, ticker);
+    getAdapter = new GetAdapter(new ScanAdapter(FilterAdapter.buildAdapter(), rowFilterCache));
+  }
+
+  private ReadRowsRequest adapt(Get get) {
+    return getAdapter.adapt(get, new DefaultReadHooks()).build();
+  }
+
+  @Test
+  public void testGetsOfTheSameShapeShareAFilter() throws IOException {
+    ReadRowsRequest first = adapt(new Get(Bytes.toBytes("row1")).addColumn(FAMILY, QUALIFIER));
+    ReadRowsRequest second = adapt(new Get(Bytes.toBytes("row2")).addColumn(FAMILY, QUALIFIER));
+
+    Assert.assertSame(first.getFilter(), second.getFilter());
+    Assert.assertEquals("row2", second.getRowKey().toStringUtf8());
+    Assert.assertEquals(1, rowFilterCache.getMissCount());
+    Assert.assertEquals(1, rowFilterCache.getHitCount());
+  }
+
+  @Test
+  public void testCachedFilterMatchesTheBuiltFilter() throws IOException {
+    Get get = new Get(Bytes.toBytes("row"))
+        .addFamily(FAMILY)
+        .setMaxVersions(3)
+        .setTimeRange(10, 20)
+        .setFilter(new ValueFilter(CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("v"))));
+    GetAdapter uncachedAdapter = new GetAdapter(new ScanAdapter(FilterAdapter.buildAdapter()));
+    RowFilter expected = uncachedAdapter.adapt(get, new DefaultReadHooks()).getFilter();
+
+    Assert.assertEquals(expected, adapt(get).getFilter());
+    Assert.assertEquals(expected, adapt(get).getFilter());
+    Assert.assertEquals(1, rowFilterCache.getHitCount());
+  }
+
+  @Test
+  public void testEachPartOfTheShapeIsFingerprinted() throws IOException {
+    byte[] row = Bytes.toBytes("row");
+    adapt(new Get(row).addFamily(FAMILY));
+    adapt(new Get(row).addColumn(FAMILY, QUALIFIER));
+    adapt(new Get(row).addColumn(FAMILY, Bytes.toBytes("otherQualifier")));
+    adapt(new Get(row).addFamily(FAMILY).setMaxVersions(2));
+    adapt(new Get(row).addFamily(FAMILY).setTimeRange(0, 100));
+    adapt(new Get(row).addFamily(FAMILY).setFilter(
+        new ValueFilter(CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("a")))));
+    adapt(new Get(row).addFamily(FAMILY).setFilter(
+        new ValueFilter(CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("b")))));
+
+    Assert.assertEquals(7, rowFilterCache.getMissCount());
+    Assert.assertEquals(0, rowFilterCache.getHitCount());
+  }
+
+  @Test
+  public void testPreSendHooksAreReplayedOnHits() throws IOException {
+    ScanAdapter scanAdapter = new ScanAdapter(FilterAdapter.buildAdapter(), rowFilterCache);
+    Scan scan = new Scan().addFamily(FAMILY).setFilter(new PageFilter(5));
+    scanAdapter.adapt(scan, new DefaultReadHooks());
+
+    DefaultReadHooks hooks = new DefaultReadHooks();
+    ReadRowsRequest request = hooks.applyPreSendHook(scanAdapter.adapt(scan, hooks).build());
+    Assert.assertEquals(1, rowFilterCache.getHitCount());
+    Assert.assertEquals(5, request.getNumRowsLimit());
+  }
+
+  @Test
+  public void testSavedTimeIsReported() {
+    ScanAdapter slowAdapter = new ScanAdapter(FilterAdapter.buildAdapter(), rowFilterCache) {
+      @Override
+      RowFilter compileFilter(Scan scan, ReadHooks hooks) {
+        ticker.nanos += 1000;
+        return super.compileFilter(scan, hooks);
+      }
+    };
+    Scan scan = new Scan().addFamily(FAMILY);
+    slowAdapter.buildFilter(scan, new DefaultReadHooks());
+    slowAdapter.buildFilter(scan, new DefaultReadHooks());
+    slowAdapter.buildFilter(scan, new DefaultReadHooks());
+
+    Assert.assertEquals(1000, rowFilterCache.getAverageMissNanos());
+    Assert.assertEquals(0, rowFilterCache.getAverageHitNanos());
+    Assert.assertEquals(1000, rowFilterCache.getAverageSavedNanosPerHit());
+  }
+}
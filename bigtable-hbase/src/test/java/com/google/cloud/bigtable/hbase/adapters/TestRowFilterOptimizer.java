@@ -0,0 +1,459 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters;
+
+import com.google.bigtable.v1.ColumnRange;
+import com.google.bigtable.v1.RowFilter;
+import com.google.bigtable.v1.RowFilter.Chain;
+import com.google.bigtable.v1.RowFilter.Condition;
+import com.google.bigtable.v1.RowFilter.Interleave;
+import com.google.bigtable.v1.TimestampRange;
+import com.google.common.collect.ComparisonChain;
+import com.google.common.primitives.UnsignedBytes;
+import com.google.protobuf.ByteString;
+
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for {@link RowFilterOptimizer}.  Besides checking the shape of optimized filters, this
+ * evaluates random filters and their optimized forms against a model of how Cloud Bigtable
+ * applies RowFilters to rows, and checks that they output the same cells.
+ */
+@RunWith(JUnit4.class)
+public class TestRowFilterOptimizer {
+
+  private static final int RANDOM_FILTER_COUNT = 5000;
+
+  private static RowFilter chain(RowFilter... filters) {
+    Chain.Builder chain = Chain.newBuilder();
+    for (RowFilter filter : filters) {
+      chain.addFilters(filter);
+    }
+    return RowFilter.newBuilder().setChain(chain).build();
+  }
+
+  private static RowFilter interleave(RowFilter... filters) {
+    Interleave.Builder interleave = Interleave.newBuilder();
+    for (RowFilter filter : filters) {
+      interleave.addFilters(filter);
+    }
+    return RowFilter.newBuilder().setInterleave(interleave).build();
+  }
+
+  private static RowFilter family(String regex) {
+    return RowFilter.newBuilder().setFamilyNameRegexFilter(regex).build();
+  }
+
+  private static RowFilter qualifier(String regex) {
+    return RowFilter.newBuilder()
+        .setColumnQualifierRegexFilter(ByteString.copyFrom(regex, StandardCharsets.ISO_8859_1))
+        .build();
+  }
+
+  private static RowFilter literalQualifier(String qualifier) {
+    try {
+      return RowFilter.newBuilder()
+          .setColumnQualifierRegexFilter(ByteString.copyFrom(
+              ReaderExpressionHelper.quoteRegularExpression(
+                  qualifier.getBytes(StandardCharsets.ISO_8859_1))))
+          .build();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static RowFilter value(String regex) {
+    return RowFilter.newBuilder()
+        .setValueRegexFilter(ByteString.copyFrom(regex, StandardCharsets.ISO_8859_1))
+        .build();
+  }
+
+  private static RowFilter columnLimit(int limit) {
+    return RowFilter.newBuilder().setCellsPerColumnLimitFilter(limit).build();
+  }
+
+  private static RowFilter timestamps(long start, long end) {
+    return RowFilter.newBuilder()
+        .setTimestampRangeFilter(TimestampRange.newBuilder()
+            .setStartTimestampMicros(start)
+            .setEndTimestampMicros(end))
+        .build();
+  }
+
+  @Test
+  public void testDefaultScanFilterIsReducedToTheVersionLimit() {
+    Assert.assertEquals(columnLimit(1),
+        RowFilterOptimizer.optimize(chain(interleave(family(".*")), columnLimit(1))));
+  }
+
+  @Test
+  public void testNestedChainsAndInterleavesAreFlattened() {
+    RowFilter filter = chain(
+        chain(family("f"), chain(qualifier("a"))),
+        interleave(interleave(value("x"), value("y")), value("z")));
+    Assert.assertEquals(
+        chain(family("f"), qualifier("a"), interleave(value("x"), value("y"), value("z"))),
+        RowFilterOptimizer.optimize(filter));
+  }
+
+  @Test
+  public void testFiltersOfEveryCellAreOnlyDroppedFromChains() {
+    Assert.assertEquals(family("f"), RowFilterOptimizer.optimize(
+        chain(family(".*"), timestamps(0, 0), family("f"), columnLimit(Integer.MAX_VALUE))));
+    // An interleave outputs a cell once for each filter that matches it.
+    RowFilter interleave = interleave(family(".*"), family("f"));
+    Assert.assertEquals(interleave, RowFilterOptimizer.optimize(interleave));
+  }
+
+  @Test
+  public void testLiteralQualifiersAreMerged() {
+    Assert.assertEquals(
+        interleave(qualifier("a|b\\.c|\\x00"), value("v")),
+        RowFilterOptimizer.optimize(interleave(
+            literalQualifier("a"), value("v"), literalQualifier("b.c"),
+            literalQualifier("\0"))));
+  }
+
+  @Test
+  public void testRegexesAndRepeatedQualifiersAreNotMerged() {
+    RowFilter regexes = interleave(qualifier("a"), qualifier("a\\C*"), qualifier("\\d"));
+    Assert.assertEquals(regexes, RowFilterOptimizer.optimize(regexes));
+    Assert.assertEquals(
+        interleave(qualifier("a|b"), qualifier("a")),
+        RowFilterOptimizer.optimize(interleave(qualifier("a"), qualifier("b"), qualifier("a"))));
+  }
+
+  @Test
+  public void testPredicatesAreNotMovedAcrossLimits() {
+    RowFilter filter = chain(
+        value("v"), qualifier("q"), family("f"), columnLimit(2), value("w"), timestamps(1, 2));
+    Assert.assertEquals(
+        chain(family("f"), qualifier("q"), value("v"), columnLimit(2), timestamps(1, 2), value("w")),
+        RowFilterOptimizer.optimize(filter));
+  }
+
+  @Test
+  public void testConditionsAreOptimizedInside() {
+    RowFilter filter = RowFilter.newBuilder()
+        .setCondition(Condition.newBuilder()
+            .setPredicateFilter(chain(family(".*"), value("v")))
+            .setTrueFilter(interleave(qualifier("a"), qualifier("b"))))
+        .build();
+    Assert.assertEquals(
+        RowFilter.newBuilder()
+            .setCondition(Condition.newBuilder()
+                .setPredicateFilter(value("v"))
+                .setTrueFilter(qualifier("a|b")))
+            .build(),
+        RowFilterOptimizer.optimize(filter));
+  }
+
+  @Test
+  public void testQuotedLiteralsAreRecognized() throws IOException {
+    for (String literal : new String[] { "", "abc_123", "a.b", "\\C*", "\0", "(a|b)", "é" }) {
+      Assert.assertTrue(literal, RowFilterOptimizer.isQuotedLiteral(ByteString.copyFrom(
+          ReaderExpressionHelper.quoteRegularExpression(Bytes.toBytes(literal)))));
+    }
+    for (String regex : new String[] { ".*", "\\C*", "a|b", "\\d", "a\\", "\\x0" }) {
+      Assert.assertFalse(regex, RowFilterOptimizer.isQuotedLiteral(ByteString.copyFromUtf8(regex)));
+    }
+  }
+
+  @Test
+  public void testOptimizedFiltersOutputTheSameCells() {
+    Random random = new Random(1);
+    List<Row> rows = createRows();
+    for (int i = 0; i < RANDOM_FILTER_COUNT; i++) {
+      RowFilter filter = randomFilter(random, 3);
+      RowFilter optimized = RowFilterOptimizer.optimize(filter);
+      for (Row row : rows) {
+        Assert.assertEquals(
+            "Filter:\n" + filter + "\nOptimized:\n" + optimized + "\nRow: " + row.key,
+            evaluate(filter, row.key, row.cells),
+            evaluate(optimized, row.key, row.cells));
+      }
+      Assert.assertEquals(optimized, RowFilterOptimizer.optimize(optimized));
+    }
+  }
+
+  // A model of a row and of how Cloud Bigtable applies filters to it.
+
+  private static class Cell implements Comparable<Cell> {
+    final String family;
+    final String qualifier;
+    final long timestampMicros;
+    final String value;
+
+    Cell(String family, String qualifier, long timestampMicros, String value) {
+      this.family = family;
+      this.qualifier = qualifier;
+      this.timestampMicros = timestampMicros;
+      this.value = value;
+    }
+
+    @Override
+    public int compareTo(Cell other) {
+      return ComparisonChain.start()
+          .compare(family, other.family)
+          .compare(qualifier, other.qualifier)
+          .compare(other.timestampMicros, timestampMicros)
+          .compare(value, other.value)
+          .result();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Cell && compareTo((Cell) obj) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return family.hashCode() ^ qualifier.hashCode() ^ value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return family + ":" + qualifier + "@" + timestampMicros + "=" + value;
+    }
+  }
+
+  private static class Row {
+    final String key;
+    final List<Cell> cells;
+
+    Row(String key, List<Cell> cells) {
+      this.key = key;
+      this.cells = cells;
+    }
+  }
+
+  /**
+   * Strings hold one byte per character, like ISO-8859-1, so they sort like byte arrays.
+   */
+  private static List<Row> createRows() {
+    List<Row> rows = new ArrayList<>();
+    String[] qualifiers = { "", "a", "a.b", "b", "\0q", "é" };
+    String[] families = { "cf1", "cf2" };
+    int rowIndex = 0;
+    for (String key : new String[] { "row1", "row2", "\0row" }) {
+      List<Cell> cells = new ArrayList<>();
+      for (String family : families) {
+        for (String qualifier : qualifiers) {
+          for (long timestamp = 1; timestamp <= 3; timestamp++) {
+            if ((rowIndex + qualifier.length() + timestamp) % 4 != 0) {
+              cells.add(new Cell(family, qualifier, timestamp * 1000,
+                  (timestamp % 2 == 0 ? "v" : "w") + rowIndex));
+            }
+          }
+        }
+      }
+      Collections.sort(cells);
+      rows.add(new Row(key, cells));
+      rowIndex++;
+    }
+    return rows;
+  }
+
+  private static List<Cell> evaluate(RowFilter filter, String rowKey, List<Cell> cells) {
+    List<Cell> output = new ArrayList<>();
+    switch (filter.getFilterCase()) {
+      case CHAIN:
+        output.addAll(cells);
+        for (RowFilter child : filter.getChain().getFiltersList()) {
+          output = evaluate(child, rowKey, output);
+        }
+        return output;
+      case INTERLEAVE:
+        for (RowFilter child : filter.getInterleave().getFiltersList()) {
+          output.addAll(evaluate(child, rowKey, cells));
+        }
+        Collections.sort(output);
+        return output;
+      case CONDITION:
+        Condition condition = filter.getCondition();
+        boolean matched = !evaluate(condition.getPredicateFilter(), rowKey, cells).isEmpty();
+        if (matched && condition.hasTrueFilter()) {
+          return evaluate(condition.getTrueFilter(), rowKey, cells);
+        } else if (!matched && condition.hasFalseFilter()) {
+          return evaluate(condition.getFalseFilter(), rowKey, cells);
+        }
+        return output;
+      case ROW_KEY_REGEX_FILTER:
+        return matches(filter.getRowKeyRegexFilter(), rowKey) ? cells : output;
+      case FAMILY_NAME_REGEX_FILTER:
+        Pattern familyPattern = toPattern(filter.getFamilyNameRegexFilter());
+        for (Cell cell : cells) {
+          if (familyPattern.matcher(cell.family).matches()) {
+            output.add(cell);
+          }
+        }
+        return output;
+      case COLUMN_QUALIFIER_REGEX_FILTER:
+        for (Cell cell : cells) {
+          if (matches(filter.getColumnQualifierRegexFilter(), cell.qualifier)) {
+            output.add(cell);
+          }
+        }
+        return output;
+      case VALUE_REGEX_FILTER:
+        for (Cell cell : cells) {
+          if (matches(filter.getValueRegexFilter(), cell.value)) {
+            output.add(cell);
+          }
+        }
+        return output;
+      case COLUMN_RANGE_FILTER:
+        ColumnRange range = filter.getColumnRangeFilter();
+        Comparator<byte[]> comparator = UnsignedBytes.lexicographicalComparator();
+        for (Cell cell : cells) {
+          byte[] qualifier = cell.qualifier.getBytes(StandardCharsets.ISO_8859_1);
+          if (cell.family.equals(range.getFamilyName())
+              && comparator.compare(qualifier, range.getStartQualifierInclusive().toByteArray()) >= 0
+              && comparator.compare(qualifier, range.getEndQualifierExclusive().toByteArray()) < 0) {
+            output.add(cell);
+          }
+        }
+        return output;
+      case TIMESTAMP_RANGE_FILTER:
+        TimestampRange timestamps = filter.getTimestampRangeFilter();
+        for (Cell cell : cells) {
+          if (cell.timestampMicros >= timestamps.getStartTimestampMicros()
+              && (timestamps.getEndTimestampMicros() == 0
+                  || cell.timestampMicros < timestamps.getEndTimestampMicros())) {
+            output.add(cell);
+          }
+        }
+        return output;
+      case CELLS_PER_ROW_OFFSET_FILTER:
+        return cells.subList(Math.min(cells.size(), filter.getCellsPerRowOffsetFilter()),
+            cells.size());
+      case CELLS_PER_ROW_LIMIT_FILTER:
+        return cells.subList(0, Math.min(cells.size(), filter.getCellsPerRowLimitFilter()));
+      case CELLS_PER_COLUMN_LIMIT_FILTER:
+        Map<String, Integer> columnCounts = new HashMap<>();
+        for (Cell cell : cells) {
+          String column = cell.family + ":" + cell.qualifier;
+          int count = columnCounts.containsKey(column) ? columnCounts.get(column) : 0;
+          if (count < filter.getCellsPerColumnLimitFilter()) {
+            output.add(cell);
+          }
+          columnCounts.put(column, count + 1);
+        }
+        return output;
+      case STRIP_VALUE_TRANSFORMER:
+        for (Cell cell : cells) {
+          output.add(new Cell(cell.family, cell.qualifier, cell.timestampMicros, ""));
+        }
+        return output;
+      default:
+        throw new IllegalArgumentException("Filter not modeled: " + filter);
+    }
+  }
+
+  private static boolean matches(ByteString regex, String value) {
+    return toPattern(regex.toString(StandardCharsets.ISO_8859_1)).matcher(value).matches();
+  }
+
+  /**
+   * Translate an RE2 regex over bytes into a java regex over ISO-8859-1 strings.
+   */
+  private static Pattern toPattern(String regex) {
+    StringBuilder pattern = new StringBuilder();
+    for (int i = 0; i < regex.length(); i++) {
+      char c = regex.charAt(i);
+      if (c == '\\' && i + 1 < regex.length()) {
+        char next = regex.charAt(++i);
+        pattern.append(next == 'C' ? "(?s:.)" : "\\" + next);
+      } else {
+        pattern.append(c);
+      }
+    }
+    return Pattern.compile(pattern.toString());
+  }
+
+  // Random filters, made from the filters that the adapters use.
+
+  private static final RowFilter[] LEAF_FILTERS = {
+      family(".*"), family("\\C*"), family("cf1"), family("cf2"), family("cf.*"),
+      literalQualifier(""), literalQualifier("a"), literalQualifier("a.b"),
+      literalQualifier("b"), literalQualifier("\0q"), literalQualifier("é"),
+      qualifier("\\C*"), qualifier("a\\C*"), qualifier("a|b"), qualifier("."),
+      value("\\C*"), value("v\\C*"), value("w1"), value(""),
+      timestamps(0, 0), timestamps(2000, 0), timestamps(0, 3000), timestamps(1000, 2000),
+      columnLimit(1), columnLimit(2), columnLimit(Integer.MAX_VALUE),
+      RowFilter.newBuilder().setCellsPerRowLimitFilter(1).build(),
+      RowFilter.newBuilder().setCellsPerRowLimitFilter(5).build(),
+      RowFilter.newBuilder().setCellsPerRowLimitFilter(Integer.MAX_VALUE).build(),
+      RowFilter.newBuilder().setCellsPerRowOffsetFilter(0).build(),
+      RowFilter.newBuilder().setCellsPerRowOffsetFilter(3).build(),
+      RowFilter.newBuilder().setStripValueTransformer(true).build(),
+      RowFilter.newBuilder().setRowKeyRegexFilter(ByteString.copyFromUtf8("row\\C*")).build(),
+      RowFilter.newBuilder().setRowKeyRegexFilter(ByteString.copyFromUtf8("\\C*")).build(),
+      RowFilter.newBuilder()
+          .setColumnRangeFilter(ColumnRange.newBuilder()
+              .setFamilyName("cf1")
+              .setStartQualifierInclusive(ByteString.copyFromUtf8("a"))
+              .setEndQualifierExclusive(ByteString.copyFromUtf8("b")))
+          .build(),
+  };
+
+  private static RowFilter randomFilter(Random random, int depth) {
+    int kind = depth == 0 ? 0 : random.nextInt(6);
+    switch (kind) {
+      case 1:
+      case 2:
+        Chain.Builder chain = Chain.newBuilder();
+        for (int i = 1 + random.nextInt(4); i > 0; i--) {
+          chain.addFilters(randomFilter(random, depth - 1));
+        }
+        return RowFilter.newBuilder().setChain(chain).build();
+      case 3:
+      case 4:
+        Interleave.Builder interleave = Interleave.newBuilder();
+        for (int i = 1 + random.nextInt(4); i > 0; i--) {
+          interleave.addFilters(randomFilter(random, depth - 1));
+        }
+        return RowFilter.newBuilder().setInterleave(interleave).build();
+      case 5:
+        Condition.Builder condition = Condition.newBuilder()
+            .setPredicateFilter(randomFilter(random, depth - 1));
+        if (random.nextBoolean()) {
+          condition.setTrueFilter(randomFilter(random, depth - 1));
+        }
+        if (random.nextBoolean()) {
+          condition.setFalseFilter(randomFilter(random, depth - 1));
+        }
+        return RowFilter.newBuilder().setCondition(condition).build();
+      default:
+        return LEAF_FILTERS[random.nextInt(LEAF_FILTERS.length)];
+    }
+  }
+}
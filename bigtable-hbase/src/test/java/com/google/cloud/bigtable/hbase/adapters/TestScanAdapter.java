@@ -18,7 +18,6 @@ package com.google.cloud.bigtable.hbase.adapters;
 import com.google.bigtable.v1.ReadRowsRequest;
 import com.google.bigtable.v1.ReadRowsRequest.TargetCase;
 import com.google.bigtable.v1.RowFilter;
-import com.google.bigtable.v1.RowFilter.Chain;
 import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapter;
 import com.google.common.base.Function;
 
@@ -70,12 +69,9 @@ public class TestScanAdapter {
     scan.setMaxVersions(10);
     ReadRowsRequest.Builder rowRequestBuilder = scanAdapter.adapt(scan, throwingReadHooks);
     Assert.assertEquals(
-        Chain.newBuilder()
-            .addFilters(RowFilter.newBuilder()
-                .setFamilyNameRegexFilter(".*"))
-            .addFilters(RowFilter.newBuilder()
-                .setCellsPerColumnLimitFilter(10))
+        RowFilter.newBuilder()
+            .setCellsPerColumnLimitFilter(10)
             .build(),
-        rowRequestBuilder.getFilter().getChain());
+        rowRequestBuilder.getFilter());
   }
 }
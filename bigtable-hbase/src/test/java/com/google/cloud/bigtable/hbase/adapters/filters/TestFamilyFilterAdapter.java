@@ -0,0 +1,157 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.RowFilter;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.ByteArrayComparable;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FamilyFilter;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.regex.Pattern;
+
+/**
+ * Tests for the {@link FamilyFilterAdapter}
+ */
+@RunWith(JUnit4.class)
+public class TestFamilyFilterAdapter {
+
+  // Family names are never empty.
+  private static final String[] FAMILIES = {
+      "a", "f", "f-", "f.1", "f0", "f1", "f1-", "f10", "f1a", "f2", "fa", "g", "z", "Z", "_"
+  };
+
+  FamilyFilterAdapter adapter = new FamilyFilterAdapter();
+  FilterAdapterContext context = new FilterAdapterContext(new Scan(), null);
+
+  private String adaptToRegex(CompareOp op, ByteArrayComparable comparator) throws IOException {
+    RowFilter rowFilter = adapter.adapt(context, new FamilyFilter(op, comparator));
+    return rowFilter.getFamilyNameRegexFilter();
+  }
+
+  /**
+   * Check that the adapted regex matches exactly the families that HBase keeps.
+   */
+  private void assertMatchesHBase(CompareOp op, ByteArrayComparable comparator)
+      throws IOException {
+    FamilyFilter filter = new FamilyFilter(op, comparator);
+    RowFilter rowFilter = adapter.adapt(context, filter);
+    for (String family : FAMILIES) {
+      byte[] familyBytes = Bytes.toBytes(family);
+      // HBase keeps a family if compareTo doesn't filter it out.
+      int compareResult = comparator.compareTo(familyBytes, 0, familyBytes.length);
+      boolean expected;
+      switch (op) {
+        case LESS:
+          expected = compareResult > 0;
+          break;
+        case LESS_OR_EQUAL:
+          expected = compareResult >= 0;
+          break;
+        case EQUAL:
+          expected = compareResult == 0;
+          break;
+        case NOT_EQUAL:
+          expected = compareResult != 0;
+          break;
+        case GREATER_OR_EQUAL:
+          expected = compareResult <= 0;
+          break;
+        case GREATER:
+          expected = compareResult < 0;
+          break;
+        default:
+          throw new IllegalArgumentException(op.toString());
+      }
+      // The filter that rejects every family is a condition.
+      boolean actual = rowFilter.getFilterCase() != RowFilter.FilterCase.CONDITION
+          && Pattern.matches(rowFilter.getFamilyNameRegexFilter(), family);
+      Assert.assertEquals(
+          String.format("%s %s \"%s\"", op, Bytes.toString(comparator.getValue()), family),
+          expected,
+          actual);
+    }
+  }
+
+  @Test
+  public void testEqualBinaryComparator() throws IOException {
+    Assert.assertEquals(
+        "f\\.1", adaptToRegex(CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("f.1"))));
+  }
+
+  @Test
+  public void testEqualBinaryPrefixComparator() throws IOException {
+    Assert.assertEquals(
+        "f1.*", adaptToRegex(CompareOp.EQUAL, new BinaryPrefixComparator(Bytes.toBytes("f1"))));
+  }
+
+  @Test
+  public void testRegexComparator() throws IOException {
+    Assert.assertEquals(
+        "f[0-9]", adaptToRegex(CompareOp.EQUAL, new RegexStringComparator("f[0-9]")));
+  }
+
+  @Test
+  public void testNoOpRejectsAllFamilies() throws IOException {
+    Assert.assertEquals(
+        FilterAdapterHelper.REJECT_ALL_FILTER,
+        adapter.adapt(context, new FamilyFilter(
+            CompareOp.NO_OP, new BinaryComparator(Bytes.toBytes("f1")))));
+  }
+
+  @Test
+  public void testComparisonsMatchHBase() throws IOException {
+    CompareOp[] ops = {
+        CompareOp.LESS, CompareOp.LESS_OR_EQUAL, CompareOp.EQUAL,
+        CompareOp.NOT_EQUAL, CompareOp.GREATER_OR_EQUAL, CompareOp.GREATER
+    };
+    for (String value : new String[] { "", "f", "f1", "f1-", "fa" }) {
+      for (CompareOp op : ops) {
+        assertMatchesHBase(op, new BinaryComparator(Bytes.toBytes(value)));
+        assertMatchesHBase(op, new BinaryPrefixComparator(Bytes.toBytes(value)));
+      }
+    }
+  }
+
+  @Test
+  public void testSupportedComparators() {
+    Assert.assertTrue(adapter.isFilterSupported(context, new FamilyFilter(
+        CompareOp.GREATER, new BinaryComparator(Bytes.toBytes("f1")))).isSupported());
+    Assert.assertTrue(adapter.isFilterSupported(context, new FamilyFilter(
+        CompareOp.NOT_EQUAL, new BinaryPrefixComparator(Bytes.toBytes("f")))).isSupported());
+    Assert.assertTrue(adapter.isFilterSupported(context, new FamilyFilter(
+        CompareOp.EQUAL, new RegexStringComparator("f.*"))).isSupported());
+  }
+
+  @Test
+  public void testUnsupportedComparators() {
+    Assert.assertFalse(adapter.isFilterSupported(context, new FamilyFilter(
+        CompareOp.LESS, new RegexStringComparator("f.*"))).isSupported());
+    Assert.assertFalse(adapter.isFilterSupported(context, new FamilyFilter(
+        CompareOp.EQUAL, new BinaryComparator(new byte[] { (byte) 0xc3, (byte) 0xa9 })))
+        .isSupported());
+  }
+}
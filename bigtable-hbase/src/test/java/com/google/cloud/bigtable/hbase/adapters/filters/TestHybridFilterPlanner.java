@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.DependentColumnFilter;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FilterList.Operator;
+import org.apache.hadoop.hbase.filter.PageFilter;
+import org.apache.hadoop.hbase.filter.PrefixFilter;
+import org.apache.hadoop.hbase.filter.QualifierFilter;
+import org.apache.hadoop.hbase.filter.SubstringComparator;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.filter.WhileMatchFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests for the {@link HybridFilterPlanner}
+ */
+@RunWith(JUnit4.class)
+public class TestHybridFilterPlanner {
+
+  HybridFilterPlanner planner = new HybridFilterPlanner(FilterAdapter.buildAdapter());
+
+  private static Filter createSubstringValueFilter() {
+    return new ValueFilter(CompareOp.EQUAL, new SubstringComparator("value"));
+  }
+
+  private static Filter createQualifierFilter() {
+    return new QualifierFilter(CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("q1")));
+  }
+
+  private static Scan createScan(Filter... filters) {
+    Scan scan = new Scan();
+    scan.setFilter(filters.length == 1
+        ? filters[0]
+        : new FilterList(Operator.MUST_PASS_ALL, filters));
+    return scan;
+  }
+
+  private static List<Filter> getServerFilters(HybridFilterPlan plan) {
+    Filter serverFilter = plan.getServerScan().getFilter();
+    if (serverFilter == null) {
+      return Collections.emptyList();
+    }
+    return ((FilterList) serverFilter).getFilters();
+  }
+
+  @Test
+  public void testIsFilterSupported() {
+    Assert.assertTrue(planner.isFilterSupported(new Scan()));
+    Assert.assertTrue(planner.isFilterSupported(createScan(createQualifierFilter())));
+    Assert.assertFalse(planner.isFilterSupported(createScan(createSubstringValueFilter())));
+  }
+
+  @Test
+  public void testRowKeyFilterIsPushedDown() throws IOException {
+    Filter prefixFilter = new PrefixFilter(Bytes.toBytes("row"));
+    Filter dependentColumnFilter =
+        new DependentColumnFilter(Bytes.toBytes("family"), Bytes.toBytes("q1"));
+    HybridFilterPlan plan = planner.plan(createScan(prefixFilter, dependentColumnFilter));
+
+    Assert.assertEquals(Arrays.asList(prefixFilter), getServerFilters(plan));
+    Assert.assertEquals(Arrays.asList(prefixFilter), plan.getServerSideFilters());
+    Assert.assertEquals(Arrays.asList(dependentColumnFilter), plan.getClientSideFilters());
+  }
+
+  @Test
+  public void testCellFiltersArePushedDownWithOtherCellFilters() throws IOException {
+    Filter qualifierFilter = createQualifierFilter();
+    Filter valueFilter = createSubstringValueFilter();
+    HybridFilterPlan plan = planner.plan(createScan(qualifierFilter, valueFilter));
+
+    Assert.assertEquals(Arrays.asList(qualifierFilter), getServerFilters(plan));
+    Assert.assertEquals(Arrays.asList(valueFilter), plan.getClientSideFilters());
+  }
+
+  @Test
+  public void testCellFiltersAreNotPushedDownWithRowFilters() throws IOException {
+    // The dependent column filter has to see the cells that the qualifier filter drops.
+    Filter qualifierFilter = createQualifierFilter();
+    Filter dependentColumnFilter =
+        new DependentColumnFilter(Bytes.toBytes("family"), Bytes.toBytes("q2"));
+    HybridFilterPlan plan = planner.plan(createScan(qualifierFilter, dependentColumnFilter));
+
+    Assert.assertTrue(getServerFilters(plan).isEmpty());
+    Assert.assertEquals(
+        Arrays.asList(qualifierFilter, dependentColumnFilter), plan.getClientSideFilters());
+  }
+
+  @Test
+  public void testDisjunctsAreNotPushedDown() throws IOException {
+    Filter prefixFilter = new PrefixFilter(Bytes.toBytes("row"));
+    Filter valueFilter = createSubstringValueFilter();
+    Scan scan = new Scan();
+    scan.setFilter(new FilterList(Operator.MUST_PASS_ONE, prefixFilter, valueFilter));
+    HybridFilterPlan plan = planner.plan(scan);
+
+    Assert.assertNull(plan.getServerScan().getFilter());
+    Assert.assertEquals(Arrays.asList(prefixFilter, valueFilter), plan.getClientSideFilters());
+  }
+
+  @Test
+  public void testRowKeyFiltersAreNotPushedDownWithWhileMatchFilter() throws IOException {
+    Filter prefixFilter = new PrefixFilter(Bytes.toBytes("row"));
+    Filter whileMatchFilter = new WhileMatchFilter(createSubstringValueFilter());
+    HybridFilterPlan plan = planner.plan(createScan(prefixFilter, whileMatchFilter));
+
+    Assert.assertNull(plan.getServerScan().getFilter());
+  }
+
+  @Test
+  public void testPageFilterIsNotPushedDown() throws IOException {
+    Filter pageFilter = new PageFilter(10);
+    Filter valueFilter = createSubstringValueFilter();
+    HybridFilterPlan plan = planner.plan(createScan(valueFilter, pageFilter));
+
+    Assert.assertNull(plan.getServerScan().getFilter());
+    Assert.assertEquals(Arrays.asList(valueFilter, pageFilter), plan.getClientSideFilters());
+  }
+
+  @Test
+  public void testVersionLimitIsAppliedByTheClient() throws IOException {
+    Scan scan = createScan(createQualifierFilter(), createSubstringValueFilter());
+    scan.setMaxVersions(2);
+    scan.setBatch(5);
+    HybridFilterPlan plan = planner.plan(scan);
+
+    Assert.assertEquals(2, plan.getClientMaxVersions());
+    Assert.assertEquals(Integer.MAX_VALUE, plan.getServerScan().getMaxVersions());
+    Assert.assertEquals(-1, plan.getServerScan().getBatch());
+    // The caller's scan is unchanged.
+    Assert.assertEquals(2, scan.getMaxVersions());
+    Assert.assertEquals(5, scan.getBatch());
+  }
+
+  @Test
+  public void testBatchIsClearedWithRowFilters() throws IOException {
+    // Scan rejects a batch once it has a filter that filters whole rows, but not the reverse.
+    Scan scan = new Scan();
+    scan.setBatch(5);
+    scan.setFilter(new DependentColumnFilter(Bytes.toBytes("family"), Bytes.toBytes("q1")));
+    HybridFilterPlan plan = planner.plan(scan);
+
+    Assert.assertEquals(-1, plan.getServerScan().getBatch());
+    Assert.assertNull(plan.getServerScan().getFilter());
+  }
+
+  @Test
+  public void testVersionLimitIsAppliedByTheServerForRowKeyFilters() throws IOException {
+    Scan scan = createScan(new org.apache.hadoop.hbase.filter.RowFilter(
+        CompareOp.EQUAL, new SubstringComparator("row")));
+    scan.setMaxVersions(2);
+    HybridFilterPlan plan = planner.plan(scan);
+
+    Assert.assertEquals(Integer.MAX_VALUE, plan.getClientMaxVersions());
+    Assert.assertEquals(2, plan.getServerScan().getMaxVersions());
+  }
+
+  @Test
+  public void testClientFilterIsACopy() throws IOException {
+    Filter pageFilter = new PageFilter(10);
+    Scan scan = createScan(createSubstringValueFilter(), pageFilter);
+    HybridFilterPlan plan = planner.plan(scan);
+
+    Assert.assertNotSame(scan.getFilter(), plan.getClientFilter());
+    Assert.assertTrue(plan.getClientFilter() instanceof FilterList);
+    List<Filter> clientFilters = ((FilterList) plan.getClientFilter()).getFilters();
+    Assert.assertEquals(2, clientFilters.size());
+    Assert.assertNotSame(pageFilter, clientFilters.get(1));
+    Assert.assertEquals(10, ((PageFilter) clientFilters.get(1)).getPageSize());
+  }
+}
@@ -15,8 +15,10 @@
  */
 package com.google.cloud.bigtable.hbase.adapters.filters;
 
+import com.google.bigtable.v1.ColumnRange;
 import com.google.bigtable.v1.RowFilter;
 import com.google.bigtable.v1.RowFilter.Interleave;
+import com.google.protobuf.ByteString;
 
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.MultipleColumnPrefixFilter;
@@ -37,19 +39,67 @@ public class TestMultipleColumnPrefxiFilterAdapter {
 
   @Test
   public void multiplePrefixesAreAdapted() throws IOException {
-    // Return all columns in all families that are prefixed by "prefix" or prefix2.
+    // Return all columns in all families that are prefixed by "prefix1" or prefix2.
     MultipleColumnPrefixFilter filter =
         new MultipleColumnPrefixFilter(
-            new byte[][]{Bytes.toBytes("prefix"), Bytes.toBytes("prefix2")});
+            new byte[][]{Bytes.toBytes("prefix1"), Bytes.toBytes("prefix2")});
 
     RowFilter rowFilter = filterAdapter.adapt(emptyScanContext, filter);
     Interleave interleave = rowFilter.getInterleave();
     Assert.assertEquals(2, interleave.getFiltersCount());
     Assert.assertEquals(
-        "prefix\\C*",
+        "prefix1\\C*",
         interleave.getFilters(0).getColumnQualifierRegexFilter().toStringUtf8());
     Assert.assertEquals(
         "prefix2\\C*",
         interleave.getFilters(1).getColumnQualifierRegexFilter().toStringUtf8());
   }
+
+  @Test
+  public void prefixesCoveredByShorterPrefixesAreDropped() throws IOException {
+    // Every column prefixed by "prefix2" is already matched by "prefix".
+    MultipleColumnPrefixFilter filter =
+        new MultipleColumnPrefixFilter(
+            new byte[][]{Bytes.toBytes("prefix2"), Bytes.toBytes("prefix")});
+
+    RowFilter rowFilter = filterAdapter.adapt(emptyScanContext, filter);
+    Assert.assertEquals("prefix\\C*", rowFilter.getColumnQualifierRegexFilter().toStringUtf8());
+  }
+
+  @Test
+  public void prefixesAreQuoted() throws IOException {
+    MultipleColumnPrefixFilter filter =
+        new MultipleColumnPrefixFilter(new byte[][]{Bytes.toBytes("a@b.")});
+
+    RowFilter rowFilter = filterAdapter.adapt(emptyScanContext, filter);
+    Assert.assertEquals("a\\@b\\.\\C*", rowFilter.getColumnQualifierRegexFilter().toStringUtf8());
+  }
+
+  @Test
+  public void singleFamilyPrefixesAreColumnRanges() throws IOException {
+    Scan scan = new Scan().addFamily(Bytes.toBytes("family"));
+    FilterAdapterContext context = new FilterAdapterContext(scan, null);
+    // "b" starts where the range of "a" ends, so their ranges are merged.
+    MultipleColumnPrefixFilter filter =
+        new MultipleColumnPrefixFilter(
+            new byte[][]{Bytes.toBytes("a"), Bytes.toBytes("b"), Bytes.toBytes("d")});
+
+    RowFilter rowFilter = filterAdapter.adapt(context, filter);
+    Interleave interleave = rowFilter.getInterleave();
+    Assert.assertEquals(2, interleave.getFiltersCount());
+    Assert.assertEquals(
+        ColumnRange.newBuilder()
+            .setFamilyName("family")
+            .setStartQualifierInclusive(ByteString.copyFromUtf8("a"))
+            .setEndQualifierExclusive(ByteString.copyFromUtf8("c"))
+            .build(),
+        interleave.getFilters(0).getColumnRangeFilter());
+    Assert.assertEquals(
+        ColumnRange.newBuilder()
+            .setFamilyName("family")
+            .setStartQualifierInclusive(ByteString.copyFromUtf8("d"))
+            .setEndQualifierExclusive(ByteString.copyFromUtf8("e"))
+            .build(),
+        interleave.getFilters(1).getColumnRangeFilter());
+  }
 }
@@ -19,6 +19,7 @@ import java.io.IOException;
 
 import org.apache.hadoop.hbase.client.Scan;
 import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
 import org.apache.hadoop.hbase.filter.ByteArrayComparable;
 import org.apache.hadoop.hbase.filter.CompareFilter;
 import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
@@ -155,4 +156,89 @@ public class TestQualifierFilterAdapter {
             .setColumnQualifierRegexFilter(ByteString.copyFromUtf8(pattern))
             .build());
   }
+
+  @Test
+  public void testColumnRangesAreNotQuoted() throws IOException {
+    byte[] value = Bytes.toBytes("Foo.1");
+    assertAdaptedForm(
+        new BinaryComparator(value),
+        CompareOp.LESS,
+        RowFilter.newBuilder()
+            .setColumnRangeFilter(
+                ColumnRange.newBuilder()
+                    .setFamilyName(FAMILY_NAME)
+                    .setEndQualifierExclusive(ByteString.copyFrom(value)))
+            .build());
+  }
+
+  @Test
+  public void testEqualBinaryPrefixQualifierFilter() throws IOException {
+    assertAdaptedForm(
+        new BinaryPrefixComparator(FOO_BYTES),
+        CompareOp.EQUAL,
+        RowFilter.newBuilder()
+            .setColumnQualifierRegexFilter(ByteString.copyFromUtf8("Foo\\C*"))
+            .build());
+  }
+
+  @Test
+  public void testBinaryPrefixQualifierRanges() throws IOException {
+    // The successor of the prefix "Foo".
+    ByteString fop = ByteString.copyFromUtf8("Fop");
+    assertAdaptedForm(
+        new BinaryPrefixComparator(FOO_BYTES),
+        CompareOp.LESS_OR_EQUAL,
+        RowFilter.newBuilder()
+            .setColumnRangeFilter(
+                ColumnRange.newBuilder()
+                    .setFamilyName(FAMILY_NAME)
+                    .setEndQualifierExclusive(fop))
+            .build());
+    assertAdaptedForm(
+        new BinaryPrefixComparator(FOO_BYTES),
+        CompareOp.GREATER,
+        RowFilter.newBuilder()
+            .setColumnRangeFilter(
+                ColumnRange.newBuilder()
+                    .setFamilyName(FAMILY_NAME)
+                    .setStartQualifierInclusive(fop))
+            .build());
+    assertAdaptedForm(
+        new BinaryPrefixComparator(FOO_BYTES),
+        CompareOp.NOT_EQUAL,
+        RowFilter.newBuilder()
+            .setInterleave(
+                Interleave.newBuilder()
+                    .addFilters(
+                        RowFilter.newBuilder()
+                            .setColumnRangeFilter(
+                                ColumnRange.newBuilder()
+                                    .setFamilyName(FAMILY_NAME)
+                                    .setEndQualifierExclusive(FOO_BYTESTRING)))
+                    .addFilters(
+                        RowFilter.newBuilder()
+                            .setColumnRangeFilter(
+                                ColumnRange.newBuilder()
+                                    .setFamilyName(FAMILY_NAME)
+                                    .setStartQualifierInclusive(fop))))
+            .build());
+  }
+
+  @Test
+  public void testNoOpBinaryPrefixQualifierFilter() throws IOException {
+    assertAdaptedForm(
+        new BinaryPrefixComparator(FOO_BYTES),
+        CompareOp.NO_OP,
+        FilterAdapterHelper.REJECT_ALL_FILTER);
+  }
+
+  @Test
+  public void testBinaryPrefixRangesRequireASingleFamily() {
+    QualifierFilter filter =
+        new QualifierFilter(CompareOp.GREATER, new BinaryPrefixComparator(FOO_BYTES));
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), null);
+    Assert.assertFalse(adapter.isFilterSupported(context, filter).isSupported());
+    Assert.assertTrue(
+        adapter.isFilterSupported(scanWithOnFamilyScanContext, filter).isSupported());
+  }
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowFilter;
+import com.google.bigtable.v1.RowRange;
+import com.google.cloud.bigtable.hbase.adapters.DefaultReadHooks;
+import com.google.cloud.bigtable.hbase.adapters.ReadHooks;
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapterContext.ContextCloseable;
+import com.google.protobuf.ByteString;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.ByteArrayComparable;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FilterList.Operator;
+import org.apache.hadoop.hbase.filter.RegexStringComparator;
+import org.apache.hadoop.hbase.filter.SubstringComparator;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+/**
+ * Tests for the {@link RowFilterAdapter}
+ */
+@RunWith(JUnit4.class)
+public class TestRowFilterAdapter {
+
+  RowFilterAdapter adapter = new RowFilterAdapter();
+
+  private static org.apache.hadoop.hbase.filter.RowFilter createFilter(
+      CompareOp op, ByteArrayComparable comparator) {
+    return new org.apache.hadoop.hbase.filter.RowFilter(op, comparator);
+  }
+
+  /**
+   * Adapt the filter and return the row range that it limits a full table scan to.
+   */
+  private RowRange adaptToRowRange(org.apache.hadoop.hbase.filter.RowFilter filter)
+      throws IOException {
+    ReadHooks hooks = new DefaultReadHooks();
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), hooks);
+    Assert.assertNull(adapter.adapt(context, filter));
+    ReadRowsRequest request = hooks.applyPreSendHook(ReadRowsRequest.newBuilder()
+        .setRowRange(RowRange.getDefaultInstance())
+        .build());
+    Assert.assertFalse(request.hasFilter());
+    return request.getRowRange();
+  }
+
+  private static RowRange range(String start, String end) {
+    return RowRange.newBuilder()
+        .setStartKey(ByteString.copyFromUtf8(start))
+        .setEndKey(ByteString.copyFromUtf8(end))
+        .build();
+  }
+
+  @Test
+  public void testEqualBinaryComparator() throws IOException {
+    RowFilter rowFilter = adapter.adapt(
+        new FilterAdapterContext(new Scan(), null),
+        createFilter(CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("row.1"))));
+    Assert.assertEquals("row\\.1", rowFilter.getRowKeyRegexFilter().toStringUtf8());
+  }
+
+  @Test
+  public void testEqualBinaryPrefixComparator() throws IOException {
+    RowFilter rowFilter = adapter.adapt(
+        new FilterAdapterContext(new Scan(), null),
+        createFilter(CompareOp.EQUAL, new BinaryPrefixComparator(Bytes.toBytes("row"))));
+    Assert.assertEquals("row\\C*", rowFilter.getRowKeyRegexFilter().toStringUtf8());
+  }
+
+  @Test
+  public void testNotEqualIsAConditionWithoutATrueFilter() throws IOException {
+    RowFilter rowFilter = adapter.adapt(
+        new FilterAdapterContext(new Scan(), null),
+        createFilter(CompareOp.NOT_EQUAL, new BinaryComparator(Bytes.toBytes("row"))));
+    Assert.assertEquals(
+        "row", rowFilter.getCondition().getPredicateFilter().getRowKeyRegexFilter().toStringUtf8());
+    Assert.assertFalse(rowFilter.getCondition().hasTrueFilter());
+    Assert.assertEquals(
+        FilterAdapterHelper.ACCEPT_ALL_FILTER, rowFilter.getCondition().getFalseFilter());
+  }
+
+  @Test
+  public void testRegexComparator() throws IOException {
+    RowFilter rowFilter = adapter.adapt(
+        new FilterAdapterContext(new Scan(), null),
+        createFilter(CompareOp.EQUAL, new RegexStringComparator("row.*")));
+    Assert.assertEquals("row.*", rowFilter.getRowKeyRegexFilter().toStringUtf8());
+  }
+
+  @Test
+  public void testNoOpRejectsAllRows() throws IOException {
+    RowFilter rowFilter = adapter.adapt(
+        new FilterAdapterContext(new Scan(), null),
+        createFilter(CompareOp.NO_OP, new BinaryComparator(Bytes.toBytes("row"))));
+    Assert.assertEquals(FilterAdapterHelper.REJECT_ALL_FILTER, rowFilter);
+  }
+
+  @Test
+  public void testBinaryComparatorRanges() throws IOException {
+    BinaryComparator comparator = new BinaryComparator(Bytes.toBytes("row"));
+    Assert.assertEquals(
+        range("", "row"), adaptToRowRange(createFilter(CompareOp.LESS, comparator)));
+    Assert.assertEquals(
+        range("", "row\0"), adaptToRowRange(createFilter(CompareOp.LESS_OR_EQUAL, comparator)));
+    Assert.assertEquals(
+        range("row\0", ""), adaptToRowRange(createFilter(CompareOp.GREATER, comparator)));
+    Assert.assertEquals(
+        range("row", ""), adaptToRowRange(createFilter(CompareOp.GREATER_OR_EQUAL, comparator)));
+  }
+
+  @Test
+  public void testBinaryPrefixComparatorRanges() throws IOException {
+    BinaryPrefixComparator comparator = new BinaryPrefixComparator(Bytes.toBytes("row"));
+    Assert.assertEquals(
+        range("", "row"), adaptToRowRange(createFilter(CompareOp.LESS, comparator)));
+    Assert.assertEquals(
+        range("", "rox"), adaptToRowRange(createFilter(CompareOp.LESS_OR_EQUAL, comparator)));
+    Assert.assertEquals(
+        range("rox", ""), adaptToRowRange(createFilter(CompareOp.GREATER, comparator)));
+    Assert.assertEquals(
+        range("row", ""), adaptToRowRange(createFilter(CompareOp.GREATER_OR_EQUAL, comparator)));
+  }
+
+  @Test
+  public void testRangeIsIntersectedWithTheScan() throws IOException {
+    ReadHooks hooks = new DefaultReadHooks();
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), hooks);
+    adapter.adapt(
+        context, createFilter(CompareOp.LESS, new BinaryComparator(Bytes.toBytes("row5"))));
+    ReadRowsRequest request = hooks.applyPreSendHook(ReadRowsRequest.newBuilder()
+        .setRowRange(range("row1", "row9"))
+        .build());
+    Assert.assertEquals(range("row1", "row5"), request.getRowRange());
+  }
+
+  @Test
+  public void testNothingIsLessThanTheEmptyKey() throws IOException {
+    RowFilter rowFilter = adapter.adapt(
+        new FilterAdapterContext(new Scan(), new DefaultReadHooks()),
+        createFilter(CompareOp.LESS, new BinaryComparator(new byte[0])));
+    Assert.assertEquals(FilterAdapterHelper.REJECT_ALL_FILTER, rowFilter);
+  }
+
+  @Test
+  public void testRangesAreSupportedAtTopLevel() {
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), new DefaultReadHooks());
+    org.apache.hadoop.hbase.filter.RowFilter filter =
+        createFilter(CompareOp.GREATER, new BinaryComparator(Bytes.toBytes("row")));
+    Assert.assertTrue(adapter.isFilterSupported(context, filter).isSupported());
+
+    FilterList filterList = new FilterList(Operator.MUST_PASS_ALL, filter);
+    try (ContextCloseable ignored = context.beginFilterList(filterList)) {
+      Assert.assertTrue(adapter.isFilterSupported(context, filter).isSupported());
+    }
+  }
+
+  @Test
+  public void testRangesAreNotSupportedInMustPassOne() {
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), new DefaultReadHooks());
+    org.apache.hadoop.hbase.filter.RowFilter rangeFilter =
+        createFilter(CompareOp.GREATER, new BinaryComparator(Bytes.toBytes("row")));
+    org.apache.hadoop.hbase.filter.RowFilter equalFilter =
+        createFilter(CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("row")));
+    FilterList filterList = new FilterList(Operator.MUST_PASS_ONE, rangeFilter, equalFilter);
+    try (ContextCloseable ignored = context.beginFilterList(filterList)) {
+      Assert.assertFalse(adapter.isFilterSupported(context, rangeFilter).isSupported());
+      Assert.assertTrue(adapter.isFilterSupported(context, equalFilter).isSupported());
+    }
+  }
+
+  @Test
+  public void testUnsupportedComparators() {
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), null);
+    Assert.assertFalse(adapter.isFilterSupported(
+        context, createFilter(CompareOp.EQUAL, new SubstringComparator("row"))).isSupported());
+    Assert.assertFalse(adapter.isFilterSupported(
+        context, createFilter(CompareOp.LESS, new RegexStringComparator("row"))).isSupported());
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowRange;
+import com.google.protobuf.ByteString;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Tests for the {@link RowRangeLimitHook}
+ */
+@RunWith(JUnit4.class)
+public class TestRowRangeLimitHook {
+
+  RowRangeLimitHook hook =
+      new RowRangeLimitHook(ByteString.copyFromUtf8("b"), ByteString.copyFromUtf8("d"));
+
+  private static RowRange range(String start, String end) {
+    return RowRange.newBuilder()
+        .setStartKey(ByteString.copyFromUtf8(start))
+        .setEndKey(ByteString.copyFromUtf8(end))
+        .build();
+  }
+
+  private static ReadRowsRequest rangeRequest(String start, String end) {
+    return ReadRowsRequest.newBuilder().setRowRange(range(start, end)).build();
+  }
+
+  private static ReadRowsRequest rowKeyRequest(String rowKey) {
+    return ReadRowsRequest.newBuilder().setRowKey(ByteString.copyFromUtf8(rowKey)).build();
+  }
+
+  @Test
+  public void testUnboundedRangeIsLimited() {
+    Assert.assertEquals(range("b", "d"), hook.apply(rangeRequest("", "")).getRowRange());
+  }
+
+  @Test
+  public void testOverlappingRangesAreIntersected() {
+    Assert.assertEquals(range("b", "c"), hook.apply(rangeRequest("a", "c")).getRowRange());
+    Assert.assertEquals(range("c", "d"), hook.apply(rangeRequest("c", "")).getRowRange());
+    Assert.assertEquals(range("bb", "cc"), hook.apply(rangeRequest("bb", "cc")).getRowRange());
+  }
+
+  @Test
+  public void testDisjointRangeReadsNothing() {
+    ReadRowsRequest request = hook.apply(rangeRequest("d", "e"));
+    Assert.assertEquals(FilterAdapterHelper.REJECT_ALL_FILTER, request.getFilter());
+  }
+
+  @Test
+  public void testRowKeys() {
+    ReadRowsRequest inRange = rowKeyRequest("c");
+    Assert.assertSame(inRange, hook.apply(inRange));
+    Assert.assertEquals(
+        FilterAdapterHelper.REJECT_ALL_FILTER, hook.apply(rowKeyRequest("d")).getFilter());
+    Assert.assertEquals(
+        FilterAdapterHelper.REJECT_ALL_FILTER, hook.apply(rowKeyRequest("a")).getFilter());
+  }
+
+  @Test
+  public void testEmptyEndIsUnbounded() {
+    RowRangeLimitHook startOnly =
+        new RowRangeLimitHook(ByteString.copyFromUtf8("b"), ByteString.EMPTY);
+    Assert.assertEquals(range("b", "z"), startOnly.apply(rangeRequest("a", "z")).getRowRange());
+    Assert.assertEquals(
+        FilterAdapterHelper.REJECT_ALL_FILTER, startOnly.apply(rowKeyRequest("a")).getFilter());
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2015 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.bigtable.hbase.adapters.filters;
+
+import com.google.bigtable.v1.ReadRowsRequest;
+import com.google.bigtable.v1.RowRange;
+import com.google.cloud.bigtable.hbase.adapters.DefaultReadHooks;
+import com.google.cloud.bigtable.hbase.adapters.ReadHooks;
+import com.google.cloud.bigtable.hbase.adapters.filters.FilterAdapterContext.ContextCloseable;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.CompareFilter.CompareOp;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FilterList.Operator;
+import org.apache.hadoop.hbase.filter.InclusiveStopFilter;
+import org.apache.hadoop.hbase.filter.RowFilter;
+import org.apache.hadoop.hbase.filter.ValueFilter;
+import org.apache.hadoop.hbase.filter.WhileMatchFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+public class TestWhileMatchFilterAdapter {
+
+  FilterAdapter filterAdapter = FilterAdapter.buildAdapter();
+  WhileMatchFilterAdapter adapter = new WhileMatchFilterAdapter(filterAdapter);
+
+  @Test
+  public void wrappedFilterIsAdapted() throws IOException {
+    ReadHooks hooks = new DefaultReadHooks();
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), hooks);
+    WhileMatchFilter filter = new WhileMatchFilter(
+        new RowFilter(CompareOp.LESS_OR_EQUAL, new BinaryComparator(Bytes.toBytes("row5"))));
+    Assert.assertNull(adapter.adapt(context, filter));
+
+    ReadRowsRequest request = hooks.applyPreSendHook(ReadRowsRequest.newBuilder()
+        .setRowRange(RowRange.getDefaultInstance())
+        .build());
+    Assert.assertEquals("row5\0", request.getRowRange().getEndKey().toStringUtf8());
+  }
+
+  @Test
+  public void filtersThatEndTheScanAreSupported() {
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), new DefaultReadHooks());
+    Assert.assertTrue(adapter.isFilterSupported(context,
+        new WhileMatchFilter(new InclusiveStopFilter(Bytes.toBytes("row5")))).isSupported());
+    Assert.assertTrue(adapter.isFilterSupported(context,
+        new WhileMatchFilter(new RowFilter(
+            CompareOp.LESS, new BinaryComparator(Bytes.toBytes("row5"))))).isSupported());
+  }
+
+  @Test
+  public void otherFiltersAreNotSupported() {
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), new DefaultReadHooks());
+    // HBase stops at the first row that doesn't match, so these would skip rows instead.
+    Assert.assertFalse(adapter.isFilterSupported(context,
+        new WhileMatchFilter(new RowFilter(
+            CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("row5"))))).isSupported());
+    Assert.assertFalse(adapter.isFilterSupported(context,
+        new WhileMatchFilter(new ValueFilter(
+            CompareOp.EQUAL, new BinaryComparator(Bytes.toBytes("value"))))).isSupported());
+  }
+
+  @Test
+  public void wrappedFilterMustBeSupported() {
+    FilterAdapterContext context = new FilterAdapterContext(new Scan(), new DefaultReadHooks());
+    WhileMatchFilter filter =
+        new WhileMatchFilter(new InclusiveStopFilter(Bytes.toBytes("row5")));
+    FilterList filterList = new FilterList(Operator.MUST_PASS_ONE, filter);
+    try (ContextCloseable ignored = context.beginFilterList(filterList)) {
+      Assert.assertFalse(adapter.isFilterSupported(context, filter).isSupported());
+    }
+  }
+}